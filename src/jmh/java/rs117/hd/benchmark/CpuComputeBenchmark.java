@@ -0,0 +1,102 @@
+package rs117.hd.benchmark;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.opengl.compute.CpuComputeManager;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CpuComputeBenchmark
+{
+	// roughly the number of faces in a busy frame
+	private static final int TOTAL_FACES = 1 << 17;
+
+	@Param({"6", "64", "512", "2048", "6144", "24576"})
+	public int modelFaces;
+
+	@Param({"false", "true"})
+	public boolean pooled;
+
+	private final CpuComputeManager cpuComputeManager = new CpuComputeManager();
+	private IntBuffer models;
+	private int modelCount;
+	private IntBuffer vertices;
+	private FloatBuffer uvs;
+	private FloatBuffer normals;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(117);
+		vertices = IntBuffer.allocate(TOTAL_FACES * 12);
+		uvs = FloatBuffer.allocate(TOTAL_FACES * 12);
+		normals = FloatBuffer.allocate(TOTAL_FACES * 12);
+		for (int i = 0; i < TOTAL_FACES * 3; i++)
+		{
+			int priority = random.nextInt(12);
+			vertices.put(random.nextInt(256) - 128).put(random.nextInt(256) - 128).put(random.nextInt(256) - 128).put(priority << 16);
+			uvs.put(random.nextFloat()).put(random.nextFloat()).put(random.nextFloat()).put(0);
+			normals.put(random.nextFloat() - .5f).put(random.nextFloat() - .5f).put(random.nextFloat() - .5f).put(0);
+		}
+
+		// models spread across the scene in front of the camera
+		modelCount = TOTAL_FACES / modelFaces;
+		models = IntBuffer.allocate(modelCount * CpuComputeManager.MODEL_INFO_SIZE);
+		for (int i = 0; i < modelCount; i++)
+		{
+			int offset = i * modelFaces * 3;
+			int radius = 180;
+			models.put(offset).put(offset).put(modelFaces).put(offset)
+				.put(radius << 12 | random.nextInt(2048))
+				.put(random.nextInt(13312)).put(-random.nextInt(512)).put(random.nextInt(13312));
+		}
+		models.flip();
+
+		cpuComputeManager.setView(1024, 256, 400, 300, 512, 6656, -1500, 0);
+		if (pooled)
+		{
+			cpuComputeManager.startUp();
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		cpuComputeManager.shutDown();
+	}
+
+	@Benchmark
+	public IntBuffer compute()
+	{
+		int outputSize = modelCount * modelFaces * 3;
+		if (modelFaces == CpuComputeManager.UNORDERED_MAX_FACES)
+		{
+			cpuComputeManager.compute(models, modelCount, new IntBuffer[0], new int[0], vertices, uvs, normals, outputSize);
+		}
+		else
+		{
+			// sorted passes only differ in the size of their models
+			cpuComputeManager.compute(IntBuffer.allocate(0), 0, new IntBuffer[] { models }, new int[] { modelCount },
+				vertices, uvs, normals, outputSize);
+		}
+		return cpuComputeManager.getOutVertices();
+	}
+}
@@ -0,0 +1,181 @@
+package rs117.hd.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.Model;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.model.ModelColorCache;
+import rs117.hd.model.ModelHasher;
+import rs117.hd.model.ModelPusher;
+import rs117.hd.opengl.compute.ComputeSizeClassTimer;
+import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneUploader;
+import rs117.hd.scene.TileMaterialTable;
+import rs117.hd.utils.DrawCallbackCapture;
+import rs117.hd.utils.DrawCallbackCapture.Call;
+import rs117.hd.utils.DrawCallbackCapture.CapturedModel;
+import rs117.hd.utils.DrawCallbackCapture.Frame;
+import rs117.hd.utils.DrawCallbackRecorder;
+import rs117.hd.utils.FrameTimer;
+
+/**
+ * Feeds the frames of a draw callback capture through the plugin's draw callbacks, without a client or a GL context.
+ * This covers everything the plugin does on the client thread for each tile and model, including model pushing
+ * and batching, but not drawScene and postDrawScene, which only hand the frame over to the GL thread.
+ *
+ * Models are replayed as themselves, rather than as the actors or objects they were resolved from, so recolors
+ * which depend on the renderable being drawn aren't applied.
+ */
+public class DrawCallbackReplay
+{
+	public final HdPlugin hdPlugin = new HdPlugin();
+
+	private final List<Frame> frames;
+	private final Model[] models;
+	private final Object[][] tiles;
+	private Frame frame;
+
+	public DrawCallbackReplay(DrawCallbackCapture capture)
+	{
+		frames = capture.frames;
+
+		Client client = Stub.of(Client.class)
+			.answers("getCameraX2", args -> frame.cameraX2)
+			.answers("getCameraY2", args -> frame.cameraY2)
+			.answers("getCameraZ2", args -> frame.cameraZ2)
+			.answers("get3dZoom", args -> frame.zoom3d)
+			.answers("getRasterizer3D_clipMidX2", args -> frame.clipMidX2)
+			.answers("getRasterizer3D_clipNegativeMidX", args -> frame.clipNegativeMidX)
+			.answers("getRasterizer3D_clipNegativeMidY", args -> frame.clipNegativeMidY)
+			.answers("getRasterizer3D_clipMidY2", args -> frame.clipMidY2)
+			.answers("getCameraYaw", args -> frame.cameraYaw)
+			.answers("getCameraPitch", args -> frame.cameraPitch)
+			.answers("getPlane", args -> frame.plane)
+			.build();
+
+		HdPluginConfig config = new HdPluginConfig() {};
+		SceneUploader sceneUploader = new SceneUploader();
+		// the capture has no scene, so tile materials are resolved without the table
+		TileMaterialTable tileMaterialTable = new TileMaterialTable();
+		ProceduralGenerator proceduralGenerator = Stub.inject(new ProceduralGenerator(), client, hdPlugin, tileMaterialTable);
+		Stub.inject(tileMaterialTable, client, proceduralGenerator);
+		ModelPusher modelPusher = Stub.inject(new ModelPusher(), hdPlugin, config, client, proceduralGenerator, tileMaterialTable,
+			new ModelColorCache());
+		Stub.inject(hdPlugin, client, config, sceneUploader, proceduralGenerator, modelPusher, tileMaterialTable,
+			new ModelHasher(), new DrawCallbackRecorder(), new FrameTimer(), new ComputeSizeClassTimer());
+		hdPlugin.initFrameBuffers();
+
+		models = new Model[capture.models.size()];
+		for (int i = 0; i < models.length; i++)
+		{
+			models[i] = createModel(capture.models.get(i), sceneUploader.sceneId);
+		}
+
+		// tile paints and tile models are only drawn from the scene buffers, so identical ones can share a stub
+		Map<List<Integer>, Object> tileStubs = new HashMap<>();
+		tiles = new Object[frames.size()][];
+		for (int f = 0; f < frames.size(); f++)
+		{
+			List<Call> calls = frames.get(f).calls;
+			tiles[f] = new Object[calls.size()];
+			for (int c = 0; c < calls.size(); c++)
+			{
+				Call call = calls.get(c);
+				if (call.type == Call.MODEL)
+				{
+					continue;
+				}
+
+				List<Integer> key = Arrays.asList(call.type, call.bufferOffset, call.uvBufferOffset, call.bufferLength);
+				tiles[f][c] = tileStubs.computeIfAbsent(key, k ->
+					Stub.of(call.type == Call.SCENE_PAINT ? SceneTilePaint.class : SceneTileModel.class)
+						.returns("getBufferOffset", call.bufferOffset)
+						.returns("getUvBufferOffset", call.uvBufferOffset)
+						.returns("getBufferLen", call.bufferLength)
+						.build());
+			}
+		}
+	}
+
+	private static Model createModel(CapturedModel model, int sceneId)
+	{
+		return Stub.of(Model.class)
+			.returns("getSceneId", model.sceneModel ? sceneId : sceneId + 1)
+			.returns("getFaceCount", model.faceCount)
+			.returns("getVerticesCount", model.verticesCount)
+			.returns("getBufferOffset", model.bufferOffset)
+			.returns("getUvBufferOffset", model.uvBufferOffset)
+			.returns("getRadius", model.radius)
+			.returns("getXYZMag", model.xyzMag)
+			.returns("getBottomY", model.bottomY)
+			.returns("getModelHeight", model.modelHeight)
+			.returns("getOverrideAmount", model.overrideAmount)
+			.returns("getOverrideHue", model.overrideHue)
+			.returns("getOverrideSaturation", model.overrideSaturation)
+			.returns("getOverrideLuminance", model.overrideLuminance)
+			.returns("getVerticesX", model.verticesX)
+			.returns("getVerticesY", model.verticesY)
+			.returns("getVerticesZ", model.verticesZ)
+			.returns("getVertexNormalsX", model.vertexNormalsX)
+			.returns("getVertexNormalsY", model.vertexNormalsY)
+			.returns("getVertexNormalsZ", model.vertexNormalsZ)
+			.returns("getFaceIndices1", model.faceIndices1)
+			.returns("getFaceIndices2", model.faceIndices2)
+			.returns("getFaceIndices3", model.faceIndices3)
+			.returns("getFaceColors1", model.faceColors1)
+			.returns("getFaceColors2", model.faceColors2)
+			.returns("getFaceColors3", model.faceColors3)
+			.returns("getFaceTextures", model.faceTextures)
+			.returns("getFaceTextureUVCoordinates", model.faceTextureUVCoordinates)
+			.returns("getFaceTransparencies", model.faceTransparencies)
+			.returns("getFaceRenderPriorities", model.faceRenderPriorities)
+			.build();
+	}
+
+	public int getFrameCount()
+	{
+		return frames.size();
+	}
+
+	/**
+	 * Replays the draw callbacks of a frame, and then empties the buffers they were written into.
+	 */
+	public void replayFrame(int index)
+	{
+		frame = frames.get(index);
+		hdPlugin.beginSceneDraw();
+
+		List<Call> calls = frame.calls;
+		Object[] frameTiles = tiles[index];
+		for (int i = 0; i < calls.size(); i++)
+		{
+			Call call = calls.get(i);
+			switch (call.type)
+			{
+				case Call.SCENE_PAINT:
+					hdPlugin.drawScenePaint(call.orientation, call.pitchSin, call.pitchCos, call.yawSin, call.yawCos,
+						call.x, call.y, call.z, (SceneTilePaint) frameTiles[i], call.tileZ, call.tileX, call.tileY,
+						call.zoom, call.centerX, call.centerY);
+					break;
+				case Call.SCENE_TILE_MODEL:
+					hdPlugin.drawSceneModel(call.orientation, call.pitchSin, call.pitchCos, call.yawSin, call.yawCos,
+						call.x, call.y, call.z, (SceneTileModel) frameTiles[i], call.tileZ, call.tileX, call.tileY,
+						call.zoom, call.centerX, call.centerY);
+					break;
+				case Call.MODEL:
+					Model model = models[call.model];
+					hdPlugin.draw(model, call.orientation, call.pitchSin, call.pitchCos, call.yawSin, call.yawCos,
+						call.x, call.y, call.z, call.hash);
+					break;
+			}
+		}
+
+		hdPlugin.resetFrameBuffers();
+	}
+}
@@ -0,0 +1,149 @@
+package rs117.hd.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.Model;
+import net.runelite.api.Perspective;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.utils.DrawCallbackCapture;
+import rs117.hd.utils.DrawCallbackRecorder;
+
+/**
+ * Replays recorded frames through the draw callbacks. Captures are recorded in the client with the developer tools,
+ * and passed in with {@code ./gradlew jmh -PjmhInclude=DrawCallbackReplayBenchmark -PjmhCapture=<file>}.
+ * Without a capture, a synthetic one is recorded from stubs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DrawCallbackReplayBenchmark
+{
+	private static final int SYNTHETIC_FRAMES = 20;
+	private static final int SYNTHETIC_MODELS_PER_FRAME = 300;
+
+	@Param({""})
+	public String captureFile;
+
+	private DrawCallbackReplay replay;
+	private int frame;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		File file;
+		if (captureFile.isEmpty())
+		{
+			file = File.createTempFile("synthetic", ".rlhdcap");
+			file.deleteOnExit();
+			recordSyntheticCapture(file);
+		}
+		else
+		{
+			file = new File(captureFile);
+		}
+
+		replay = new DrawCallbackReplay(DrawCallbackCapture.read(file));
+	}
+
+	@Benchmark
+	public void replayFrame()
+	{
+		replay.replayFrame(frame++ % replay.getFrameCount());
+	}
+
+	/**
+	 * Records frames of the ground plane of a synthetic scene, with models of various sizes scattered in front of
+	 * the camera. Some of the models are drawn several times per frame, like the models of a crowd of NPCs.
+	 */
+	private static void recordSyntheticCapture(File file)
+	{
+		SyntheticScene scene = new SyntheticScene(117);
+		Random random = new Random(117);
+
+		Client client = Stub.of(Client.class)
+			.returns("getCameraX2", Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE)
+			.returns("getCameraY2", -1500)
+			.returns("getCameraZ2", Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE)
+			.returns("get3dZoom", 512)
+			.returns("getRasterizer3D_clipMidX2", 382)
+			.returns("getRasterizer3D_clipNegativeMidX", -382)
+			.returns("getRasterizer3D_clipNegativeMidY", -251)
+			.returns("getRasterizer3D_clipMidY2", 251)
+			.build();
+
+		int[] faceCounts = { 64, 256, 512, 1024, 4096 };
+		Model[] models = new Model[50];
+		for (int i = 0; i < models.length; i++)
+		{
+			models[i] = scene.createModel(faceCounts[i % faceCounts.length]);
+		}
+
+		// each tile has a 2 triangle paint in the scene buffers, with the length packed like the scene uploader does
+		SceneTilePaint[][] paints = new SceneTilePaint[Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+		for (int x = 0; x < Constants.SCENE_SIZE; x++)
+		{
+			for (int y = 0; y < Constants.SCENE_SIZE; y++)
+			{
+				int offset = (x * Constants.SCENE_SIZE + y) * 6;
+				paints[x][y] = Stub.of(SceneTilePaint.class)
+					.returns("getBufferOffset", offset)
+					.returns("getUvBufferOffset", offset)
+					.returns("getBufferLen", 6 << 1)
+					.build();
+			}
+		}
+		SceneTileModel tileModel = Stub.of(SceneTileModel.class)
+			.returns("getBufferOffset", Constants.SCENE_SIZE * Constants.SCENE_SIZE * 6)
+			.returns("getUvBufferOffset", -1)
+			.returns("getBufferLen", 24 << 1)
+			.build();
+
+		int pitch = 256;
+		int pitchSin = Perspective.SINE[pitch];
+		int pitchCos = Perspective.COSINE[pitch];
+		DrawCallbackRecorder recorder = new DrawCallbackRecorder();
+		recorder.start(file);
+		for (int f = 0; f < SYNTHETIC_FRAMES; f++)
+		{
+			recorder.drawScene(client, 0, 0, 0, pitch, 0, 0);
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					recorder.drawScenePaint(0, pitchSin, pitchCos, 0, 65536, 0, 0, 0, paints[x][y], 0, x, y, 512, 382, 251);
+					if ((x + y) % 16 == 0)
+					{
+						recorder.drawSceneModel(0, pitchSin, pitchCos, 0, 65536, 0, 0, 0, tileModel, 0, x, y, 512, 382, 251);
+					}
+				}
+			}
+			for (int i = 0; i < SYNTHETIC_MODELS_PER_FRAME; i++)
+			{
+				Model model = models[random.nextInt(models.length)];
+				recorder.draw(model, false, random.nextInt(2048), pitchSin, pitchCos, 0, 65536,
+					random.nextInt(2000) - 1000, random.nextInt(600), 500 + random.nextInt(2500), i);
+			}
+			recorder.postDrawScene();
+		}
+		recorder.shutDown();
+	}
+}
@@ -0,0 +1,53 @@
+package rs117.hd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.scene.EnvironmentManager;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvironmentManagerBenchmark
+{
+	private HdPlugin hdPlugin;
+	private EnvironmentManager environmentManager;
+	private int frame;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticScene scene = new SyntheticScene(117);
+		hdPlugin = new HdPlugin();
+		HdPluginConfig config = new HdPluginConfig() {};
+
+		environmentManager = Stub.inject(new EnvironmentManager(), scene.client, config, hdPlugin);
+		environmentManager.loadSceneEnvironments();
+		environmentManager.update();
+	}
+
+	@Benchmark
+	public void update()
+	{
+		// pan the camera diagonally across the scene, one tile per frame
+		int tile = frame++ % Constants.SCENE_SIZE;
+		hdPlugin.camTarget[0] = tile * Perspective.LOCAL_TILE_SIZE;
+		hdPlugin.camTarget[1] = tile * Perspective.LOCAL_TILE_SIZE;
+		environmentManager.update();
+	}
+}
@@ -0,0 +1,108 @@
+package rs117.hd.benchmark;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Constants;
+import net.runelite.api.GameObject;
+import net.runelite.api.Perspective;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.scene.lighting.Light;
+import rs117.hd.scene.lighting.LightConfig;
+import rs117.hd.scene.lighting.LightManager;
+import rs117.hd.scene.lighting.SceneLight;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightManagerBenchmark
+{
+	private static final int MAX_DISTANCE = 50;
+	private static final int MAX_LIGHTS = 100;
+
+	// the number of game objects with lights in the scene
+	@Param({"100", "1000", "5000"})
+	public int lightCount;
+
+	private LightManager lightManager;
+	private final List<GameObject> litObjects = new ArrayList<>();
+	private int nextObject;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticScene scene = new SyntheticScene(117);
+		HdPlugin hdPlugin = new HdPlugin();
+		HdPluginConfig config = new HdPluginConfig() {};
+		hdPlugin.camTarget[0] = Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE;
+		hdPlugin.camTarget[1] = Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE;
+		hdPlugin.camTarget[2] = scene.tileHeights[0][Constants.SCENE_SIZE / 2][Constants.SCENE_SIZE / 2] - 500;
+
+		lightManager = Stub.inject(new LightManager(), config, scene.client, hdPlugin);
+		lightManager.reloadLightConfiguration();
+
+		// objects with lights from the default configuration, spread across the floors of all planes
+		ListMultimap<Integer, Light> objectLights = ArrayListMultimap.create();
+		LightConfig.load(new ArrayList<>(), ArrayListMultimap.create(), objectLights, ArrayListMultimap.create());
+		Integer[] objectIds = objectLights.keySet().toArray(new Integer[0]);
+		Random random = new Random(117);
+		while (litObjects.size() < lightCount)
+		{
+			GameObject object = scene.addGameObject(
+				random.nextInt(Constants.MAX_Z), random.nextInt(Constants.SCENE_SIZE), random.nextInt(Constants.SCENE_SIZE),
+				objectIds[random.nextInt(objectIds.length)]);
+			if (object != null)
+			{
+				litObjects.add(object);
+			}
+		}
+
+		lightManager.loadSceneLights();
+		lightManager.update();
+	}
+
+	@Benchmark
+	public void update()
+	{
+		lightManager.update();
+	}
+
+	@Benchmark
+	public ArrayList<SceneLight> getVisibleLights()
+	{
+		return lightManager.getVisibleLights(MAX_DISTANCE, MAX_LIGHTS);
+	}
+
+	@Benchmark
+	public void loadSceneLights()
+	{
+		lightManager.reset();
+		lightManager.loadSceneLights();
+	}
+
+	@Benchmark
+	public void respawnObject()
+	{
+		GameObject object = litObjects.get(nextObject++ % litObjects.size());
+		lightManager.removeObjectLight(object);
+		lightManager.addObjectLight(object, object.getPlane());
+	}
+}
@@ -0,0 +1,55 @@
+package rs117.hd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.model.ModelHasher;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelHasherBenchmark
+{
+	@Param({"64", "512", "4096"})
+	public int faceCount;
+
+	private final ModelHasher modelHasher = new ModelHasher();
+	private Model model;
+
+	@Setup
+	public void setup()
+	{
+		model = new SyntheticScene(117).createModel(faceCount);
+	}
+
+	/**
+	 * Mirrors how models are hashed when batching is enabled: the face data is hashed once per model,
+	 * and then combined with the vertex data.
+	 */
+	@Benchmark
+	public long calculateBatchHash()
+	{
+		modelHasher.setModel(model);
+		return modelHasher.calculateBatchHash();
+	}
+
+	@Benchmark
+	public long calculateColorCacheHash()
+	{
+		modelHasher.setModel(model);
+		return modelHasher.calculateColorCacheHash();
+	}
+}
@@ -0,0 +1,80 @@
+package rs117.hd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.model.ModelColorCache;
+import rs117.hd.model.ModelHasher;
+import rs117.hd.model.ModelPusher;
+import rs117.hd.model.objects.ObjectProperties;
+import rs117.hd.model.objects.ObjectType;
+import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.TileMaterialTable;
+import rs117.hd.utils.buffer.GpuFloatBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelPusherBenchmark
+{
+	@Param({"64", "512", "4096"})
+	public int faceCount;
+
+	// true for scene models, which are uploaded once, and false for dynamic models which hit the model cache
+	@Param({"true", "false"})
+	public boolean noCache;
+
+	private ModelPusher modelPusher;
+	private Model model;
+	private long hash;
+	private long hashCheck;
+
+	private final GpuIntBuffer vertexBuffer = new GpuIntBuffer();
+	private final GpuFloatBuffer uvBuffer = new GpuFloatBuffer();
+	private final GpuFloatBuffer normalBuffer = new GpuFloatBuffer();
+
+	@Setup
+	public void setup()
+	{
+		SyntheticScene scene = new SyntheticScene(117);
+		HdPlugin hdPlugin = new HdPlugin();
+		HdPluginConfig config = new HdPluginConfig() {};
+		TileMaterialTable tileMaterialTable = new TileMaterialTable();
+		ProceduralGenerator proceduralGenerator = Stub.inject(new ProceduralGenerator(), scene.client, hdPlugin, tileMaterialTable);
+		Stub.inject(tileMaterialTable, scene.client, proceduralGenerator);
+		// the persistent color cache is left stopped, so it always misses
+		modelPusher = Stub.inject(new ModelPusher(), hdPlugin, config, scene.client, proceduralGenerator, tileMaterialTable,
+			new ModelColorCache());
+
+		model = scene.createModel(faceCount);
+		ModelHasher modelHasher = new ModelHasher();
+		modelHasher.setModel(model);
+		hash = modelHasher.calculateColorCacheHash();
+		hashCheck = modelHasher.calculateColorCacheCheck();
+	}
+
+	@Benchmark
+	public int[] pushModel()
+	{
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
+		return modelPusher.pushModel(null, model, vertexBuffer, uvBuffer, normalBuffer, 50, 50, 0, ObjectProperties.NONE, ObjectType.NONE, noCache, hash, hashCheck);
+	}
+}
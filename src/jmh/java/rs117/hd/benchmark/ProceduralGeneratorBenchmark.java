@@ -0,0 +1,70 @@
+package rs117.hd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Scene;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.HdPlugin;
+import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.TileMaterialTable;
+
+/**
+ * Runs the scene load steps of the {@link ProceduralGenerator} over a full synthetic scene.
+ * The steps are measured individually, in the order they run on scene load, since each depends on the previous one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProceduralGeneratorBenchmark
+{
+	private ProceduralGenerator proceduralGenerator;
+	private Scene scene;
+
+	@Setup
+	public void setup()
+	{
+		SyntheticScene syntheticScene = new SyntheticScene(117);
+		HdPlugin hdPlugin = new HdPlugin();
+		hdPlugin.configGroundBlending = true;
+		hdPlugin.configGroundTextures = true;
+		hdPlugin.configWinterTheme = false;
+
+		scene = syntheticScene.scene;
+		TileMaterialTable tileMaterialTable = new TileMaterialTable();
+		proceduralGenerator = Stub.inject(new ProceduralGenerator(), syntheticScene.client, hdPlugin, tileMaterialTable);
+		Stub.inject(tileMaterialTable, syntheticScene.client, proceduralGenerator);
+		tileMaterialTable.build(scene);
+		proceduralGenerator.generateUnderwaterTerrain(scene);
+		proceduralGenerator.calculateTerrainNormals(scene);
+		proceduralGenerator.generateTerrainData(scene);
+	}
+
+	@Benchmark
+	public void generateUnderwaterTerrain()
+	{
+		proceduralGenerator.generateUnderwaterTerrain(scene);
+	}
+
+	@Benchmark
+	public void calculateTerrainNormals()
+	{
+		proceduralGenerator.calculateTerrainNormals(scene);
+	}
+
+	@Benchmark
+	public void generateTerrainData()
+	{
+		proceduralGenerator.generateTerrainData(scene);
+	}
+}
@@ -0,0 +1,158 @@
+package rs117.hd.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Constants;
+import net.runelite.api.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
+import rs117.hd.model.ModelColorCache;
+import rs117.hd.model.ModelPusher;
+import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneSnapshot;
+import rs117.hd.scene.SceneUploader;
+import rs117.hd.scene.TileMaterialTable;
+import rs117.hd.utils.buffer.GpuFloatBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+/**
+ * Runs the steps of a scene load over scene snapshots. Snapshots are taken in the client with the developer tools,
+ * and passed in with {@code ./gradlew jmh -PjmhInclude=SceneLoadBenchmark -PjmhSnapshots=<file or directory>},
+ * where a directory runs every snapshot in it, so a corpus of typical and worst case scenes can be compared.
+ * Without a snapshot, one is taken of a synthetic scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SceneLoadBenchmark
+{
+	@Param({""})
+	public String snapshotFile;
+
+	private SnapshotScene scene;
+	private TileMaterialTable tileMaterialTable;
+	private ProceduralGenerator proceduralGenerator;
+	private SceneUploader sceneUploader;
+
+	private final GpuIntBuffer vertexBuffer = new GpuIntBuffer();
+	private final GpuFloatBuffer uvBuffer = new GpuFloatBuffer();
+	private final GpuFloatBuffer normalBuffer = new GpuFloatBuffer();
+
+	@Setup
+	public void setup() throws IOException
+	{
+		File file;
+		if (snapshotFile.isEmpty())
+		{
+			file = File.createTempFile("synthetic", ".rlhdscene");
+			file.deleteOnExit();
+			createSyntheticSnapshot().write(file);
+		}
+		else
+		{
+			file = new File(snapshotFile);
+		}
+		scene = new SnapshotScene(SceneSnapshot.read(file));
+
+		HdPlugin hdPlugin = new HdPlugin();
+		hdPlugin.configGroundBlending = true;
+		hdPlugin.configGroundTextures = true;
+		hdPlugin.configWinterTheme = false;
+		HdPluginConfig config = new HdPluginConfig() {};
+
+		tileMaterialTable = new TileMaterialTable();
+		proceduralGenerator = Stub.inject(new ProceduralGenerator(), scene.client, hdPlugin, tileMaterialTable);
+		Stub.inject(tileMaterialTable, scene.client, proceduralGenerator);
+		ModelPusher modelPusher = Stub.inject(new ModelPusher(), hdPlugin, config, scene.client, proceduralGenerator,
+			tileMaterialTable, new ModelColorCache());
+		sceneUploader = Stub.inject(new SceneUploader(), scene.client, hdPlugin, proceduralGenerator, modelPusher,
+			tileMaterialTable, config);
+
+		// each step depends on the ones before it
+		tileMaterialTable.build(scene.scene);
+		proceduralGenerator.generateUnderwaterTerrain(scene.scene);
+		proceduralGenerator.calculateTerrainNormals(scene.scene);
+		proceduralGenerator.generateTerrainData(scene.scene);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		sceneUploader.shutDown();
+	}
+
+	@Benchmark
+	public void buildTileMaterialTable()
+	{
+		tileMaterialTable.build(scene.scene);
+	}
+
+	@Benchmark
+	public void generateUnderwaterTerrain()
+	{
+		proceduralGenerator.generateUnderwaterTerrain(scene.scene);
+	}
+
+	@Benchmark
+	public void calculateTerrainNormals()
+	{
+		proceduralGenerator.calculateTerrainNormals(scene.scene);
+	}
+
+	@Benchmark
+	public void generateTerrainData()
+	{
+		proceduralGenerator.generateTerrainData(scene.scene);
+	}
+
+	@Benchmark
+	public void uploadScene()
+	{
+		sceneUploader.upload(scene.scene, vertexBuffer, uvBuffer, normalBuffer);
+	}
+
+	/**
+	 * Takes a snapshot of a synthetic scene with a model of one of a few sizes on every fourth tile of the ground plane.
+	 * Models are shared between objects, as they are for repeated objects in a real scene.
+	 */
+	private static SceneSnapshot createSyntheticSnapshot()
+	{
+		SyntheticScene syntheticScene = new SyntheticScene(117);
+		Random random = new Random(117);
+
+		int[] faceCounts = { 16, 64, 256, 1024 };
+		Model[] models = new Model[40];
+		for (int i = 0; i < models.length; i++)
+		{
+			models[i] = syntheticScene.createModel(faceCounts[i % faceCounts.length]);
+		}
+
+		for (int x = 0; x < Constants.SCENE_SIZE; x += 2)
+		{
+			for (int y = 0; y < Constants.SCENE_SIZE; y += 2)
+			{
+				int model = random.nextInt(models.length);
+				syntheticScene.addGameObject(0, x, y, 1000 + model, models[model]);
+			}
+		}
+
+		return SceneSnapshot.capture(syntheticScene.client);
+	}
+}
@@ -0,0 +1,257 @@
+package rs117.hd.benchmark;
+
+import java.util.ArrayList;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.DecorativeObject;
+import net.runelite.api.GameObject;
+import net.runelite.api.GameState;
+import net.runelite.api.GroundObject;
+import net.runelite.api.Model;
+import net.runelite.api.NPC;
+import net.runelite.api.Perspective;
+import net.runelite.api.Point;
+import net.runelite.api.Renderable;
+import net.runelite.api.Scene;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import net.runelite.api.Tile;
+import net.runelite.api.WallObject;
+import net.runelite.api.coords.Angle;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
+import rs117.hd.scene.SceneSnapshot;
+import rs117.hd.scene.SceneSnapshot.SnapshotModel;
+import rs117.hd.scene.SceneSnapshot.SnapshotObject;
+import rs117.hd.scene.SceneSnapshot.SnapshotTile;
+import rs117.hd.scene.SceneSnapshot.SnapshotTileModel;
+
+/**
+ * A scene built from stubs over a {@link SceneSnapshot}, standing in for the client the snapshot was taken from.
+ * Tile paints, tile models and models keep the buffer offsets and scene IDs the scene uploader assigns to them,
+ * so the scene can be uploaded repeatedly like a live one.
+ */
+public class SnapshotScene
+{
+	public final Client client;
+	public final Scene scene;
+	public final Tile[][][] tiles = new Tile[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+
+	private final int baseX;
+	private final int baseY;
+	private final Model[] models;
+	private final GameObject[] gameObjects;
+	private final Renderable otherRenderable = Stub.of(Renderable.class).build();
+
+	public SnapshotScene(SceneSnapshot snapshot)
+	{
+		baseX = snapshot.baseX;
+		baseY = snapshot.baseY;
+
+		models = new Model[snapshot.models.size()];
+		for (int i = 0; i < models.length; i++)
+		{
+			models[i] = createModel(snapshot.models.get(i));
+		}
+
+		gameObjects = new GameObject[snapshot.gameObjects.size()];
+		for (int i = 0; i < gameObjects.length; i++)
+		{
+			SnapshotObject object = snapshot.gameObjects.get(i);
+			gameObjects[i] = objectStub(GameObject.class, object)
+				.returns("getRenderable", renderable(object.renderable1))
+				.returns("getOrientation", new Angle(object.orientation))
+				.returns("sizeX", object.sizeX)
+				.returns("sizeY", object.sizeY)
+				.build();
+		}
+
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					SnapshotTile tile = snapshot.tiles[z][x][y];
+					tiles[z][x][y] = tile == null ? null : createTile(tile);
+				}
+			}
+		}
+
+		scene = Stub.of(Scene.class)
+			.returns("getTiles", tiles)
+			.returns("getOverlayIds", snapshot.overlayIds)
+			.returns("getUnderlayIds", snapshot.underlayIds)
+			.build();
+
+		client = Stub.of(Client.class)
+			.returns("getGameState", GameState.LOGGED_IN)
+			.returns("getScene", scene)
+			.returns("getTileHeights", snapshot.tileHeights)
+			.returns("getBaseX", snapshot.baseX)
+			.returns("getBaseY", snapshot.baseY)
+			.returns("getPlane", snapshot.plane)
+			.returns("isInInstancedRegion", snapshot.instanced)
+			.returns("getInstanceTemplateChunks", snapshot.instanceTemplateChunks)
+			.returns("getCachedNPCs", new NPC[32768])
+			.returns("getNpcs", new ArrayList<NPC>())
+			.build();
+	}
+
+	private Tile createTile(SnapshotTile tile)
+	{
+		Stub<Tile> stub = Stub.of(Tile.class)
+			.returns("getPlane", tile.plane)
+			.returns("getRenderLevel", tile.renderLevel)
+			.returns("getSceneLocation", new Point(tile.x, tile.y))
+			.returns("getLocalLocation", LocalPoint.fromScene(tile.x, tile.y))
+			.returns("getWorldLocation", new WorldPoint(tile.worldX, tile.worldY, tile.worldPlane))
+			.returns("getBridge", tile.bridge == null ? null : createTile(tile.bridge));
+
+		if (tile.paint != null)
+		{
+			int[] buffers = new int[3];
+			stub.returns("getSceneTilePaint", bufferStub(SceneTilePaint.class, buffers)
+				.returns("getSwColor", tile.paint.swColor)
+				.returns("getSeColor", tile.paint.seColor)
+				.returns("getNwColor", tile.paint.nwColor)
+				.returns("getNeColor", tile.paint.neColor)
+				.returns("getTexture", tile.paint.texture)
+				.returns("isFlat", tile.paint.flat)
+				.build());
+		}
+
+		SnapshotTileModel model = tile.tileModel;
+		if (model != null)
+		{
+			int[] buffers = new int[3];
+			stub.returns("getSceneTileModel", bufferStub(SceneTileModel.class, buffers)
+				.returns("getShape", model.shape)
+				.returns("getRotation", model.rotation)
+				.returns("isFlat", model.flat)
+				.returns("getFaceX", model.faceX)
+				.returns("getFaceY", model.faceY)
+				.returns("getFaceZ", model.faceZ)
+				.returns("getVertexX", model.vertexX)
+				.returns("getVertexY", model.vertexY)
+				.returns("getVertexZ", model.vertexZ)
+				.returns("getTriangleColorA", model.triangleColorA)
+				.returns("getTriangleColorB", model.triangleColorB)
+				.returns("getTriangleColorC", model.triangleColorC)
+				.returns("getTriangleTextureId", model.triangleTextureId)
+				.build());
+		}
+
+		if (tile.wallObject != null)
+		{
+			stub.returns("getWallObject", objectStub(WallObject.class, tile.wallObject)
+				.returns("getRenderable1", renderable(tile.wallObject.renderable1))
+				.returns("getRenderable2", renderable(tile.wallObject.renderable2))
+				.returns("getOrientationA", tile.wallObject.orientationA)
+				.returns("getOrientationB", tile.wallObject.orientationB)
+				.returns("getConfig", tile.wallObject.config)
+				.build());
+		}
+
+		if (tile.groundObject != null)
+		{
+			stub.returns("getGroundObject", objectStub(GroundObject.class, tile.groundObject)
+				.returns("getRenderable", renderable(tile.groundObject.renderable1))
+				.build());
+		}
+
+		if (tile.decorativeObject != null)
+		{
+			stub.returns("getDecorativeObject", objectStub(DecorativeObject.class, tile.decorativeObject)
+				.returns("getRenderable", renderable(tile.decorativeObject.renderable1))
+				.returns("getRenderable2", renderable(tile.decorativeObject.renderable2))
+				.build());
+		}
+
+		GameObject[] objects = new GameObject[tile.gameObjects == null ? 0 : tile.gameObjects.length];
+		for (int i = 0; i < objects.length; i++)
+		{
+			int index = tile.gameObjects[i];
+			objects[i] = index == -1 ? null : gameObjects[index];
+		}
+		stub.returns("getGameObjects", objects);
+
+		return stub.build();
+	}
+
+	private <T> Stub<T> objectStub(Class<T> type, SnapshotObject object)
+	{
+		return Stub.of(type)
+			.returns("getId", object.id)
+			.returns("getX", object.x)
+			.returns("getY", object.y)
+			.returns("getPlane", object.plane)
+			.returns("getLocalLocation", new LocalPoint(object.x, object.y))
+			.returns("getWorldLocation", new WorldPoint(
+				baseX + (object.x >> Perspective.LOCAL_COORD_BITS),
+				baseY + (object.y >> Perspective.LOCAL_COORD_BITS),
+				object.plane));
+	}
+
+	private Renderable renderable(int index)
+	{
+		switch (index)
+		{
+			case SceneSnapshot.NO_RENDERABLE:
+				return null;
+			case SceneSnapshot.OTHER_RENDERABLE:
+				return otherRenderable;
+			default:
+				return models[index];
+		}
+	}
+
+	/**
+	 * Stubs the buffer offset, uv buffer offset and buffer length, which the scene uploader sets, with the given array.
+	 */
+	private static <T> Stub<T> bufferStub(Class<T> type, int[] buffers)
+	{
+		return Stub.of(type)
+			.answers("getBufferOffset", args -> buffers[0])
+			.answers("setBufferOffset", args -> buffers[0] = (int) args[0])
+			.answers("getUvBufferOffset", args -> buffers[1])
+			.answers("setUvBufferOffset", args -> buffers[1] = (int) args[0])
+			.answers("getBufferLen", args -> buffers[2])
+			.answers("setBufferLen", args -> buffers[2] = (int) args[0]);
+	}
+
+	private static Model createModel(SnapshotModel model)
+	{
+		int[] sceneId = new int[1];
+		return bufferStub(Model.class, new int[3])
+			.answers("getSceneId", args -> sceneId[0])
+			.answers("setSceneId", args -> sceneId[0] = (int) args[0])
+			.returns("getFaceCount", model.faceCount)
+			.returns("getVerticesCount", model.verticesCount)
+			.returns("getRadius", model.radius)
+			.returns("getBottomY", model.bottomY)
+			.returns("getModelHeight", model.modelHeight)
+			.returns("getXYZMag", model.xyzMag)
+			.returns("getOverrideAmount", model.overrideAmount)
+			.returns("getOverrideHue", model.overrideHue)
+			.returns("getOverrideSaturation", model.overrideSaturation)
+			.returns("getOverrideLuminance", model.overrideLuminance)
+			.returns("getVerticesX", model.verticesX)
+			.returns("getVerticesY", model.verticesY)
+			.returns("getVerticesZ", model.verticesZ)
+			.returns("getVertexNormalsX", model.vertexNormalsX)
+			.returns("getVertexNormalsY", model.vertexNormalsY)
+			.returns("getVertexNormalsZ", model.vertexNormalsZ)
+			.returns("getFaceIndices1", model.faceIndices1)
+			.returns("getFaceIndices2", model.faceIndices2)
+			.returns("getFaceIndices3", model.faceIndices3)
+			.returns("getFaceColors1", model.faceColors1)
+			.returns("getFaceColors2", model.faceColors2)
+			.returns("getFaceColors3", model.faceColors3)
+			.returns("getFaceTextures", model.faceTextures)
+			.returns("getFaceTextureUVCoordinates", model.faceTextureUVCoordinates)
+			.returns("getFaceTransparencies", model.faceTransparencies)
+			.returns("getFaceRenderPriorities", model.faceRenderPriorities)
+			.build();
+	}
+}
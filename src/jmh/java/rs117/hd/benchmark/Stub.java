@@ -0,0 +1,143 @@
+package rs117.hd.benchmark;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import javax.inject.Inject;
+
+/**
+ * Builds stand-ins for RuneLite API interfaces using dynamic proxies, so that benchmarks
+ * can run without a game client. Only the methods a benchmark relies on need to be answered,
+ * everything else returns the default value for its return type.
+ */
+public class Stub<T>
+{
+	private final Class<T> type;
+	private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+
+	private Stub(Class<T> type)
+	{
+		this.type = type;
+	}
+
+	public static <T> Stub<T> of(Class<T> type)
+	{
+		return new Stub<>(type);
+	}
+
+	public Stub<T> returns(String methodName, Object value)
+	{
+		answers.put(methodName, args -> value);
+		return this;
+	}
+
+	public Stub<T> answers(String methodName, Function<Object[], Object> answer)
+	{
+		answers.put(methodName, answer);
+		return this;
+	}
+
+	public T build()
+	{
+		// copy the answers so the builder can be reused for similar stubs
+		final Map<String, Function<Object[], Object>> answers = new HashMap<>(this.answers);
+		final Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (self, method, args) ->
+		{
+			Function<Object[], Object> answer = answers.get(method.getName());
+			if (answer != null)
+			{
+				return answer.apply(args);
+			}
+
+			switch (method.getName())
+			{
+				case "equals":
+					return self == args[0];
+				case "hashCode":
+					return System.identityHashCode(self);
+				case "toString":
+					return type.getSimpleName() + " stub";
+				default:
+					return defaultValue(method);
+			}
+		});
+		return type.cast(proxy);
+	}
+
+	private static Object defaultValue(Method method)
+	{
+		Class<?> returnType = method.getReturnType();
+		if (!returnType.isPrimitive() || returnType == void.class)
+		{
+			return null;
+		}
+		if (returnType == boolean.class)
+		{
+			return false;
+		}
+		if (returnType == byte.class)
+		{
+			return (byte) 0;
+		}
+		if (returnType == short.class)
+		{
+			return (short) 0;
+		}
+		if (returnType == char.class)
+		{
+			return (char) 0;
+		}
+		if (returnType == int.class)
+		{
+			return 0;
+		}
+		if (returnType == long.class)
+		{
+			return 0L;
+		}
+		if (returnType == float.class)
+		{
+			return 0f;
+		}
+		return 0d;
+	}
+
+	/**
+	 * Assigns each {@link Inject} field of the target with the first dependency of a compatible type,
+	 * in place of the injector used by the plugin.
+	 */
+	public static <T> T inject(T target, Object... dependencies)
+	{
+		for (Class<?> c = target.getClass(); c != Object.class; c = c.getSuperclass())
+		{
+			for (Field field : c.getDeclaredFields())
+			{
+				if (!field.isAnnotationPresent(Inject.class))
+				{
+					continue;
+				}
+
+				for (Object dependency : dependencies)
+				{
+					if (field.getType().isInstance(dependency))
+					{
+						try
+						{
+							field.setAccessible(true);
+							field.set(target, dependency);
+						}
+						catch (IllegalAccessException e)
+						{
+							throw new RuntimeException("Unable to inject " + field, e);
+						}
+						break;
+					}
+				}
+			}
+		}
+		return target;
+	}
+}
@@ -0,0 +1,247 @@
+package rs117.hd.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.GameObject;
+import net.runelite.api.GameState;
+import net.runelite.api.Model;
+import net.runelite.api.NPC;
+import net.runelite.api.Perspective;
+import net.runelite.api.Point;
+import net.runelite.api.Renderable;
+import net.runelite.api.Scene;
+import net.runelite.api.SceneTilePaint;
+import net.runelite.api.Tile;
+import net.runelite.api.coords.Angle;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * A deterministic, fully populated scene built from stubs, standing in for a logged in client.
+ * The ground plane is covered in tile paints with a patch of water in the middle,
+ * and the upper planes contain a few solid floors to give lights something to be above or below.
+ * The camera looks north over the middle of the scene.
+ */
+public class SyntheticScene
+{
+	public static final int BASE_X = 3200;
+	public static final int BASE_Y = 3200;
+
+	// overlay ID which is treated as water everywhere
+	private static final int WATER_OVERLAY_ID = -128;
+	private static final int WATER_MIN = 40;
+	private static final int WATER_MAX = 64;
+
+	public final Client client;
+	public final Scene scene;
+	public final Tile[][][] tiles = new Tile[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final int[][][] tileHeights = new int[Constants.MAX_Z][Constants.SCENE_SIZE + 1][Constants.SCENE_SIZE + 1];
+	public final byte[][][] overlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final byte[][][] underlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final GameObject[][][][] gameObjects = new GameObject[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE][];
+
+	private final Random random;
+
+	public SyntheticScene(long seed)
+	{
+		random = new Random(seed);
+
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					// gently rolling terrain, with each plane roughly one storey above the last
+					tileHeights[z][x][y] = -z * 240 - (int) (Math.sin(x / 7.0) * Math.cos(y / 11.0) * 200) - random.nextInt(16);
+				}
+			}
+		}
+
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					if (z > 0 && (x / 8 + y / 8) % 3 != 0)
+					{
+						continue;
+					}
+
+					boolean water = z == 0 && x >= WATER_MIN && x < WATER_MAX && y >= WATER_MIN && y < WATER_MAX;
+					overlayIds[z][x][y] = (byte) (water ? WATER_OVERLAY_ID : 0);
+					underlayIds[z][x][y] = (byte) (1 + random.nextInt(100));
+					tiles[z][x][y] = createTile(z, x, y);
+				}
+			}
+		}
+
+		scene = Stub.of(Scene.class)
+			.returns("getTiles", tiles)
+			.returns("getOverlayIds", overlayIds)
+			.returns("getUnderlayIds", underlayIds)
+			.build();
+
+		client = Stub.of(Client.class)
+			.returns("getGameState", GameState.LOGGED_IN)
+			.returns("getScene", scene)
+			.returns("getTileHeights", tileHeights)
+			.returns("getBaseX", BASE_X)
+			.returns("getBaseY", BASE_Y)
+			.returns("getPlane", 0)
+			.returns("isInInstancedRegion", false)
+			.returns("getCachedNPCs", new NPC[32768])
+			.returns("getNpcs", new ArrayList<NPC>())
+			.returns("getCameraX", Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE)
+			.returns("getCameraY", Constants.SCENE_SIZE / 2 * Perspective.LOCAL_TILE_SIZE - 2000)
+			.returns("getCameraZ", -1500)
+			.returns("getCameraYaw", 0)
+			.returns("getCameraPitch", 256)
+			.returns("getScale", 512)
+			.returns("getCenterX", 382)
+			.returns("getCenterY", 251)
+			.returns("getViewportWidth", 765)
+			.returns("getViewportHeight", 503)
+			.returns("getInstanceTemplateChunks", new int[Constants.MAX_Z][Constants.SCENE_SIZE / 8][Constants.SCENE_SIZE / 8])
+			.build();
+	}
+
+	private Tile createTile(int z, int x, int y)
+	{
+		GameObject[] objects = gameObjects[z][x][y] = new GameObject[5];
+
+		SceneTilePaint paint = Stub.of(SceneTilePaint.class)
+			.returns("getSwColor", randomHsl())
+			.returns("getSeColor", randomHsl())
+			.returns("getNwColor", randomHsl())
+			.returns("getNeColor", randomHsl())
+			.returns("getTexture", -1)
+			.build();
+
+		return Stub.of(Tile.class)
+			.returns("getSceneTilePaint", paint)
+			.returns("getRenderLevel", z)
+			.returns("getPlane", z)
+			.returns("getSceneLocation", new Point(x, y))
+			.returns("getLocalLocation", LocalPoint.fromScene(x, y))
+			.returns("getWorldLocation", new WorldPoint(BASE_X + x, BASE_Y + y, z))
+			.returns("getGameObjects", objects)
+			.build();
+	}
+
+	/**
+	 * Places a single tile game object with the given ID on the tile, if the tile exists and has room for it.
+	 *
+	 * @return the game object, or null if it couldn't be placed
+	 */
+	public GameObject addGameObject(int z, int x, int y, int id)
+	{
+		return addGameObject(z, x, y, id, null);
+	}
+
+	/**
+	 * Places a single tile game object with the given ID and renderable on the tile, if the tile exists and has room for it.
+	 *
+	 * @return the game object, or null if it couldn't be placed
+	 */
+	public GameObject addGameObject(int z, int x, int y, int id, Renderable renderable)
+	{
+		GameObject[] objects = gameObjects[z][x][y];
+		if (objects == null)
+		{
+			return null;
+		}
+
+		for (int i = 0; i < objects.length; i++)
+		{
+			if (objects[i] == null)
+			{
+				LocalPoint localLocation = LocalPoint.fromScene(x, y);
+				return objects[i] = Stub.of(GameObject.class)
+					.returns("getId", id)
+					.returns("getPlane", z)
+					.returns("getX", localLocation.getX())
+					.returns("getY", localLocation.getY())
+					.returns("getLocalLocation", localLocation)
+					.returns("getWorldLocation", new WorldPoint(BASE_X + x, BASE_Y + y, z))
+					.returns("sizeX", 1)
+					.returns("sizeY", 1)
+					.returns("getOrientation", new Angle(0))
+					.returns("getRenderable", renderable)
+					.build();
+			}
+		}
+		return null;
+	}
+
+	private int randomHsl()
+	{
+		// green-brown hues with medium saturation, similar to typical ground colors
+		int hue = 8 + random.nextInt(10);
+		int saturation = 2 + random.nextInt(4);
+		int lightness = 30 + random.nextInt(60);
+		return hue << 10 | saturation << 7 | lightness;
+	}
+
+	/**
+	 * Creates a closed-looking model with the given number of faces, with vertex normals and
+	 * a mix of smooth and flat shaded faces, but without textures or transparency.
+	 */
+	public Model createModel(int faceCount)
+	{
+		int vertexCount = faceCount / 2 + 3;
+		int[] verticesX = new int[vertexCount];
+		int[] verticesY = new int[vertexCount];
+		int[] verticesZ = new int[vertexCount];
+		int[] normalsX = new int[vertexCount];
+		int[] normalsY = new int[vertexCount];
+		int[] normalsZ = new int[vertexCount];
+		for (int i = 0; i < vertexCount; i++)
+		{
+			verticesX[i] = random.nextInt(256) - 128;
+			verticesY[i] = -random.nextInt(256);
+			verticesZ[i] = random.nextInt(256) - 128;
+			normalsX[i] = random.nextInt(512) - 256;
+			normalsY[i] = random.nextInt(512) - 256;
+			normalsZ[i] = random.nextInt(512) - 256;
+		}
+
+		int[] indices1 = new int[faceCount];
+		int[] indices2 = new int[faceCount];
+		int[] indices3 = new int[faceCount];
+		int[] colors1 = new int[faceCount];
+		int[] colors2 = new int[faceCount];
+		int[] colors3 = new int[faceCount];
+		for (int face = 0; face < faceCount; face++)
+		{
+			indices1[face] = random.nextInt(vertexCount);
+			indices2[face] = random.nextInt(vertexCount);
+			indices3[face] = random.nextInt(vertexCount);
+			colors1[face] = randomHsl();
+			// a third color of -1 marks the face as flat shaded
+			boolean flat = random.nextInt(4) == 0;
+			colors2[face] = flat ? colors1[face] : randomHsl();
+			colors3[face] = flat ? -1 : randomHsl();
+		}
+
+		return Stub.of(Model.class)
+			.returns("getFaceCount", faceCount)
+			.returns("getVerticesCount", vertexCount)
+			.returns("getVerticesX", verticesX)
+			.returns("getVerticesY", verticesY)
+			.returns("getVerticesZ", verticesZ)
+			.returns("getVertexNormalsX", normalsX)
+			.returns("getVertexNormalsY", normalsY)
+			.returns("getVertexNormalsZ", normalsZ)
+			.returns("getFaceIndices1", indices1)
+			.returns("getFaceIndices2", indices2)
+			.returns("getFaceIndices3", indices3)
+			.returns("getFaceColors1", colors1)
+			.returns("getFaceColors2", colors2)
+			.returns("getFaceColors3", colors3)
+			.build();
+	}
+}
@@ -0,0 +1,89 @@
+package rs117.hd.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rs117.hd.utils.HDUtils;
+
+/**
+ * Compares the packed vertex keys against the string-based hash they replaced,
+ * over every vertex of a full scene grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VertexKeyBenchmark
+{
+	private int[][][] tileHeights;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(117);
+		tileHeights = new int[Constants.MAX_Z][Constants.SCENE_SIZE + 1][Constants.SCENE_SIZE + 1];
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					tileHeights[z][x][y] = -random.nextInt(2048);
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public long packedKeys()
+	{
+		long sum = 0;
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					sum += HDUtils.vertexKey(x * Perspective.LOCAL_TILE_SIZE, y * Perspective.LOCAL_TILE_SIZE, tileHeights[z][x][y]);
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long stringHashes()
+	{
+		long sum = 0;
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					int[] vertex = new int[]{x * Perspective.LOCAL_TILE_SIZE, y * Perspective.LOCAL_TILE_SIZE, tileHeights[z][x][y]};
+					StringBuilder s = new StringBuilder();
+					for (int component : vertex)
+					{
+						s.append(component).append(",");
+					}
+					sum += s.toString().hashCode();
+				}
+			}
+		}
+		return sum;
+	}
+}
@@ -25,6 +25,7 @@
  */
 package rs117.hd;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.primitives.Ints;
 import com.google.inject.Provides;
 import com.jogamp.nativewindow.AbstractGraphicsConfiguration;
@@ -56,26 +57,37 @@ import rs117.hd.config.DefaultSkyColor;
 import rs117.hd.config.FogDepthMode;
 import rs117.hd.config.UIScalingMode;
 import rs117.hd.data.materials.Material;
+import rs117.hd.model.ModelColorCache;
 import rs117.hd.model.ModelHasher;
 import rs117.hd.model.ModelPusher;
 import rs117.hd.model.TempModelInfo;
 import rs117.hd.model.objects.ObjectProperties;
 import rs117.hd.model.objects.ObjectType;
 import rs117.hd.opengl.compute.ComputeMode;
+import rs117.hd.opengl.compute.ComputeSizeClass;
+import rs117.hd.opengl.compute.ComputeSizeClassTimer;
+import rs117.hd.opengl.compute.CpuComputeManager;
 import rs117.hd.opengl.compute.OpenCLManager;
+import rs117.hd.opengl.shader.ProgramCache;
 import rs117.hd.opengl.shader.Shader;
 import rs117.hd.opengl.shader.ShaderException;
 import rs117.hd.opengl.shader.Template;
 import rs117.hd.scene.EnvironmentManager;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.SceneTileTable;
 import rs117.hd.scene.SceneUploader;
 import rs117.hd.scene.TextureManager;
+import rs117.hd.scene.TileMaterialTable;
+import rs117.hd.scene.lighting.LightClusters;
 import rs117.hd.scene.lighting.LightManager;
 import rs117.hd.scene.lighting.SceneLight;
 import rs117.hd.utils.*;
+import rs117.hd.utils.FrameTimer.Section;
 import rs117.hd.utils.buffer.GLBuffer;
 import rs117.hd.utils.buffer.GpuFloatBuffer;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.JoglStreamingGL;
+import rs117.hd.utils.buffer.PersistentBufferRing;
 
 import javax.inject.Inject;
 import javax.swing.*;
@@ -90,6 +102,7 @@ import java.nio.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 
 import static com.jogamp.opengl.GL.*;
 import static com.jogamp.opengl.GL2ES2.GL_STREAM_DRAW;
@@ -108,10 +121,12 @@ import static rs117.hd.utils.GLUtil.*;
 @Slf4j
 public class HdPlugin extends Plugin implements DrawCallbacks
 {
-	// This is the maximum number of triangles the compute shaders support
+	// This is the maximum number of triangles the compute shaders sort in shared memory,
+	// models with more are sorted in global memory by the extra large compute shader
 	public static final int MAX_TRIANGLE = 6144;
-	public static final int SMALL_TRIANGLE_COUNT = 512;
 	private static final int FLAG_SCENE_BUFFER = Integer.MIN_VALUE;
+	// the minimum number of extra vertices and uvs the scene buffers have room for
+	private static final int SCENE_BUFFER_MIN_HEADROOM = 1 << 16;
 	private static final int DEFAULT_DISTANCE = 25;
 	static final int MAX_DISTANCE = 90;
 	static final int MAX_FOG_DEPTH = 100;
@@ -130,6 +145,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private OpenCLManager openCLManager;
 
+	@Inject
+	private CpuComputeManager cpuComputeManager;
+
 	@Inject
 	private ClientThread clientThread;
 
@@ -139,6 +157,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private TextureManager textureManager;
 
+	@Inject
+	private ProgramCache programCache;
+
 	@Inject
 	private LightManager lightManager;
 
@@ -148,6 +169,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private SceneUploader sceneUploader;
 
+	@Inject
+	private ModelColorCache modelColorCache;
+
 	@Inject
 	private DrawManager drawManager;
 
@@ -157,6 +181,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private ProceduralGenerator proceduralGenerator;
 
+	@Inject
+	private TileMaterialTable tileMaterialTable;
+
 	@Inject
 	private ConfigManager configManager;
 
@@ -173,6 +200,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private DeveloperTools developerTools;
 
+	@Inject
+	private DrawCallbackRecorder drawCallbackRecorder;
+
+	@Inject
+	private FrameTimer frameTimer;
+
+	@Inject
+	private ComputeSizeClassTimer computeSizeClassTimer;
+
 	private ComputeMode computeMode = ComputeMode.OPENGL;
 
 	private Canvas canvas;
@@ -200,20 +236,23 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	static final Shader COMPUTE_PROGRAM = new Shader()
 		.add(GL4.GL_COMPUTE_SHADER, "comp.glsl");
 
-	static final Shader SMALL_COMPUTE_PROGRAM = new Shader()
-		.add(GL4.GL_COMPUTE_SHADER, "comp_small.glsl");
+	static final Shader XLARGE_COMPUTE_PROGRAM = new Shader()
+		.add(GL4.GL_COMPUTE_SHADER, "comp_xlarge.glsl");
 
 	static final Shader UNORDERED_COMPUTE_PROGRAM = new Shader()
 		.add(GL4.GL_COMPUTE_SHADER, "comp_unordered.glsl");
 
+	static final Shader CULL_COMPUTE_PROGRAM = new Shader()
+		.add(GL4.GL_COMPUTE_SHADER, "comp_cull.glsl");
+
 	static final Shader UI_PROGRAM = new Shader()
 		.add(GL4.GL_VERTEX_SHADER, "vertui.glsl")
 		.add(GL4.GL_FRAGMENT_SHADER, "fragui.glsl");
 
 	private int glProgram = -1;
-	private int glComputeProgram = -1;
-	private int glSmallComputeProgram = -1;
+	private int glXLargeComputeProgram = -1;
 	private int glUnorderedComputeProgram = -1;
+	private int glCullComputeProgram = -1;
 	private int glUiProgram = -1;
 	private int glShadowProgram = -1;
 
@@ -241,12 +280,29 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private final GLBuffer tmpVertexBuffer = new GLBuffer(); // temporary scene vertex buffer
 	private final GLBuffer tmpUvBuffer = new GLBuffer(); // temporary scene uv buffer
 	private final GLBuffer tmpNormalBuffer = new GLBuffer(); // temporary scene normal buffer
-	private final GLBuffer tmpModelBufferLarge = new GLBuffer(); // scene model buffer, large
-	private final GLBuffer tmpModelBufferSmall = new GLBuffer(); // scene model buffer, small
+	private final GLBuffer tmpModelBufferXLarge = new GLBuffer(); // scene model buffer, extra large
 	private final GLBuffer tmpModelBufferUnordered = new GLBuffer(); // scene model buffer, unordered
 	private final GLBuffer tmpOutBuffer = new GLBuffer(); // target vertex buffer for compute shaders
 	private final GLBuffer tmpOutUvBuffer = new GLBuffer(); // target uv buffer for compute shaders
 	private final GLBuffer tmpOutNormalBuffer = new GLBuffer(); // target normal buffer for compute shaders
+	private final GLBuffer tmpXLargeScratchBuffer = new GLBuffer(); // sort arrays of the extra large compute shader
+
+	// buffers for culling tiles on the GPU
+	private final SceneTileTable sceneTileTable = new SceneTileTable();
+	private final GLBuffer sceneTileTableBuffer = new GLBuffer(); // descriptors of the tiles in the scene buffers
+	private final GLBuffer tmpTileSlotBuffer = new GLBuffer(); // table slots of the tiles the client wants drawn
+	private final GLBuffer tmpCulledTileBuffer = new GLBuffer(); // model info of the visible tiles
+	private final GLBuffer tileDispatchBuffer = new GLBuffer(); // indirect dispatch of the visible tiles
+	private final GLBuffer tileDrawBuffer = new GLBuffer(); // indirect draws of the visible tiles, then the models
+	private final IntBuffer tileCommandsBuf = GpuIntBuffer.allocateDirect(8);
+
+	// replaces the temporary buffers above while persistent buffer streaming is enabled
+	private PersistentBufferRing bufferRing;
+	private PersistentBufferRing.Stream tmpVertexStream;
+	private PersistentBufferRing.Stream tmpUvStream;
+	private PersistentBufferRing.Stream tmpNormalStream;
+	private PersistentBufferRing.Stream tmpModelStreamXLarge;
+	private PersistentBufferRing.Stream tmpModelStreamUnordered;
 
 	private int textureArrayId;
 	private int textureHDArrayId;
@@ -257,25 +313,62 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private final GLBuffer lightsUniformBuffer = new GLBuffer();
 	private ByteBuffer lightsUniformBuf;
 
+	private final LightClusters lightClusters = new LightClusters();
+	private final GLBuffer clusterLightsBuffer = new GLBuffer();
+	private final GLBuffer clusterIndicesBuffer = new GLBuffer();
+	private FloatBuffer clusterLightsBuf;
+	private IntBuffer clusterIndicesBuf;
+	private int texClusterLights = -1;
+	private int texClusterLightIndices = -1;
+	private boolean clusteredLightingSupported;
+	// whether the lights of the current frame have been binned into clusters
+	private boolean clusteredLightingActive;
+
 	private GpuIntBuffer vertexBuffer;
 	private GpuFloatBuffer uvBuffer;
 	private GpuFloatBuffer normalBuffer;
 
 	private GpuIntBuffer modelBufferUnordered;
-	private GpuIntBuffer modelBufferSmall;
-	private GpuIntBuffer modelBuffer;
+	private GpuIntBuffer modelBufferXLarge;
+	private GpuIntBuffer tileSlotBuffer;
 
 	private int unorderedModels;
 
 	/**
-	 * number of models in small buffer
+	 * whether tiles are pushed as slots in the scene tile table this frame, to be culled on the GPU
 	 */
-	private int smallModels;
+	private boolean tileCullingActive;
 
 	/**
-	 * number of models in large buffer
+	 * number of tile slots pushed for culling, and the number of vertices they could draw
 	 */
-	private int largeModels;
+	private int tileSlotCount;
+	private int tileSlotVertexCount;
+
+	/**
+	 * the size classes models are sorted in by the compute shaders, from smallest to largest,
+	 * each with its own program and model buffer
+	 */
+	private ComputeSizeClass[] computeSizeClasses;
+
+	/**
+	 * the model buffers and counts of each size class followed by the extra large models, passed to the
+	 * CPU compute backend each frame, and only reallocated along with the size classes
+	 */
+	private IntBuffer[] cpuSortedModels;
+	private int[] cpuSortedCounts;
+
+	/**
+	 * number of models and faces in extra large buffer
+	 */
+	private int xlargeModels;
+	private int xlargeFaces;
+
+	/**
+	 * number of faces up to the end of the last extra large model in the target buffer,
+	 * which the scratch buffer of the extra large compute shader needs room for
+	 */
+	private int xlargeScratchFaces;
 
 	/**
 	 * offset in the target buffer for model
@@ -343,6 +436,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	// Point light uniforms
 	private int uniPointLightsCount;
+	private int uniClusteredLighting;
+	private int uniClusterLights;
+	private int uniClusterLightIndices;
+	private int uniClusterRotation;
+	private int uniClusterProjection;
+	private int uniClusterTileSize;
 
 	private int uniProjectionMatrix;
 	private int uniLightProjectionMatrix;
@@ -356,9 +455,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	private int uniTexturesHD;
 	private int uniTextureOffsets;
 	private int uniAnimationCurrent;
-
-	private int uniBlockSmall;
-	private int uniBlockLarge;
+	private int uniCullTileCount;
+	private int uniCullViewportWidth;
+	private int uniCullViewportHeight;
+	private int uniCullDrawDistance;
+	private int uniCullUnderwaterPass;
+
+	private int uniBlockXLarge;
+	private int uniBlockCull;
 	private int uniBlockMain;
 	private int uniBlockMaterials;
 	private int uniShadowBlockMaterials;
@@ -373,6 +477,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	// useful for pulling new data into the scene buffer
 	@Setter
 	private long nextSceneReload = 0;
+	private boolean sceneReuploadRequested = false;
 
 	// some necessary data for reloading the scene while in POH to fix major performance loss
 	@Setter
@@ -399,7 +504,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Setter
 	private boolean isInGauntlet = false;
 
-	private final Map<Integer, TempModelInfo> tempModelInfoMap = new HashMap<>();
+	private final Map<Long, TempModelInfo> tempModelInfoMap = new HashMap<>();
 
 	@Subscribe
 	public void onChatMessage(final ChatMessage event) {
@@ -442,6 +547,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		configExpandShadowDraw = config.expandShadowDraw();
 		configHdInfernalTexture = config.hdInfernalTexture();
 		configWinterTheme = config.winterTheme();
+		modelHasher.setVerificationEnabled(config.verifyModelHashes());
 
 		clientThread.invoke(() ->
 		{
@@ -450,7 +556,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				targetBufferOffset = 0;
 				fboSceneHandle = rboSceneHandle = -1; // AA FBO
 				fboShadowMap = -1;
-				unorderedModels = smallModels = largeModels = 0;
+				unorderedModels = xlargeModels = 0;
 
 				canvas = client.getCanvas();
 
@@ -459,17 +565,19 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 					return false;
 				}
 				
-				computeMode = OSType.getOSType() == OSType.MacOS ? ComputeMode.OPENCL : ComputeMode.OPENGL;
+				if (config.cpuCompute())
+				{
+					computeMode = ComputeMode.CPU;
+					cpuComputeManager.startUp();
+				}
+				else
+				{
+					computeMode = OSType.getOSType() == OSType.MacOS ? ComputeMode.OPENCL : ComputeMode.OPENGL;
+				}
 
 				canvas.setIgnoreRepaint(true);
 
-				vertexBuffer = new GpuIntBuffer();
-				uvBuffer = new GpuFloatBuffer();
-				normalBuffer = new GpuFloatBuffer();
-
-				modelBufferUnordered = new GpuIntBuffer();
-				modelBufferSmall = new GpuIntBuffer();
-				modelBuffer = new GpuIntBuffer();
+				initFrameBuffers();
 
 				if (log.isDebugEnabled())
 				{
@@ -596,7 +704,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 					initUniformBuffer();
 					initMaterialsUniformBuffer();
 					initLightsUniformBuffer();
+					initLightClusters();
 					initBuffers();
+					initBufferStreaming();
 					initShadowMapFbo();
 				});
 
@@ -616,6 +726,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				// load all dynamic scene lights from text file
 				lightManager.startUp();
 
+				if (config.persistentModelCache())
+				{
+					modelColorCache.startUp();
+				}
+
 				if (client.getGameState() == GameState.LOGGED_IN)
 				{
 					ThreadUtils.invokeOnMainThread(this::uploadScene);
@@ -643,19 +758,26 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 		((Component) client).removeComponentListener(resizeListener);
 		lightManager.shutDown();
+		sceneUploader.shutDown();
+		modelColorCache.shutDown();
 
 		clientThread.invoke(() ->
 		{
 			client.setGpu(false);
 			client.setDrawCallbacks(null);
 			client.setUnlockedFps(false);
+			drawCallbackRecorder.shutDown();
 
 			ThreadUtils.invokeOnMainThread(() ->
 			{
 				openCLManager.cleanup();
+				cpuComputeManager.shutDown();
 				
 				if (gl != null)
 				{
+					frameTimer.destroy(gl);
+					computeSizeClassTimer.destroy(gl);
+
 					if (textureArrayId != -1)
 					{
 						textureManager.freeTextureArray(gl, textureArrayId);
@@ -667,11 +789,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 						textureManager.freeTextureArray(gl, textureHDArrayId);
 						textureHDArrayId = -1;
 					}
+					textureManager.shutDown();
 
 					destroyGlBuffer(uniformBuffer);
 					destroyGlBuffer(materialsUniformBuffer);
 					destroyGlBuffer(lightsUniformBuffer);
+					shutdownLightClusters();
 
+					shutdownBufferStreaming();
 					shutdownBuffers();
 					shutdownInterfaceTexture();
 					shutdownPrograms();
@@ -714,9 +839,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			uvBuffer = null;
 			normalBuffer = null;
 
-			modelBufferSmall = null;
-			modelBuffer = null;
+			computeSizeClasses = null;
+			cpuSortedModels = null;
+			cpuSortedCounts = null;
+			modelBufferXLarge = null;
 			modelBufferUnordered = null;
+			tileSlotBuffer = null;
 
 			lastAnisotropicFilteringLevel = -1;
 
@@ -749,6 +877,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		return configManager.getConfig(HdPluginConfig.class);
 	}
 
+	// only depends on constants, so it's only generated once
+	private String fetchMaterialCases;
+
 	private String generateFetchMaterialCases(int from, int to)
 	{
 		int length = to - from;
@@ -762,45 +893,63 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			" : " + generateFetchMaterialCases(middle, to);
 	}
 
-	private void initPrograms() throws ShaderException
+	private String resolveShaderConstant(String key)
 	{
-		String versionHeader = OSType.getOSType() == OSType.Linux ? LINUX_VERSION_HEADER : WINDOWS_VERSION_HEADER;
-		Template template = new Template();
-		template.add(key ->
+		switch (key)
 		{
-			switch (key)
-			{
-				case "version_header":
-					return versionHeader;
-				case "MAX_MATERIALS":
-					return String.format("#define %s %d\n", key, MAX_MATERIALS);
-				case "CONST_MACOS_INTEL_WORKAROUND":
-					boolean isAppleM1 = OSType.getOSType() == OSType.MacOS && System.getProperty("os.arch").equals("aarch64");
-					return String.format("#define %s %d\n", key, config.macosIntelWorkaround() && !isAppleM1 ? 1 : 0);
-				case "MACOS_INTEL_WORKAROUND_MATERIAL_CASES":
-					return "return " + generateFetchMaterialCases(0, MAX_MATERIALS) + ";";
-			}
-			return null;
-		});
+			case "version_header":
+				return OSType.getOSType() == OSType.Linux ? LINUX_VERSION_HEADER : WINDOWS_VERSION_HEADER;
+			case "MAX_MATERIALS":
+				return String.format("#define %s %d\n", key, MAX_MATERIALS);
+			case "LIGHT_CLUSTERS":
+				return String.format("#define CLUSTERS_X %d\n#define CLUSTERS_Y %d\n#define CLUSTERS_Z %d\n#define CLUSTER_NEAR_PLANE %d.0\n",
+					LightClusters.CLUSTERS_X, LightClusters.CLUSTERS_Y, LightClusters.CLUSTERS_Z, LightClusters.NEAR_PLANE);
+			case "CONST_MACOS_INTEL_WORKAROUND":
+				boolean isAppleM1 = OSType.getOSType() == OSType.MacOS && System.getProperty("os.arch").equals("aarch64");
+				return String.format("#define %s %d\n", key, config.macosIntelWorkaround() && !isAppleM1 ? 1 : 0);
+			case "MACOS_INTEL_WORKAROUND_MATERIAL_CASES":
+				if (fetchMaterialCases == null)
+				{
+					fetchMaterialCases = "return " + generateFetchMaterialCases(0, MAX_MATERIALS) + ";";
+				}
+				return fetchMaterialCases;
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a template which resolves the given constants before the shader files.
+	 * Includes are cached per template, so programs compiled with different constants need their own.
+	 */
+	private Template createTemplate(Function<String, String> constants)
+	{
+		Template template = new Template();
+		template.add(constants);
 		if (developerMode)
 		{
 			template.add(developerTools::shaderResolver);
 		}
-		template.addInclude(HdPlugin.class);
+		return template.addInclude(HdPlugin.class);
+	}
 
-		glProgram = PROGRAM.compile(gl, template);
-		glUiProgram = UI_PROGRAM.compile(gl, template);
-		glShadowProgram = SHADOW_PROGRAM.compile(gl, template);
+	private void initPrograms() throws ShaderException
+	{
+		Template template = createTemplate(this::resolveShaderConstant);
+
+		glProgram = PROGRAM.compile(gl, template, programCache);
+		glUiProgram = UI_PROGRAM.compile(gl, template, programCache);
+		glShadowProgram = SHADOW_PROGRAM.compile(gl, template, programCache);
 		
 		if (computeMode == ComputeMode.OPENCL)
 		{
-			openCLManager.init(gl);
+			openCLManager.init(gl, computeSizeClasses);
 		}
-		else
+		else if (computeMode == ComputeMode.OPENGL)
 		{
-			glComputeProgram = COMPUTE_PROGRAM.compile(gl, template);
-			glSmallComputeProgram = SMALL_COMPUTE_PROGRAM.compile(gl, template);
-			glUnorderedComputeProgram = UNORDERED_COMPUTE_PROGRAM.compile(gl, template);
+			compileComputeSizeClasses();
+			glXLargeComputeProgram = XLARGE_COMPUTE_PROGRAM.compile(gl, template, programCache);
+			glUnorderedComputeProgram = UNORDERED_COMPUTE_PROGRAM.compile(gl, template, programCache);
+			glCullComputeProgram = CULL_COMPUTE_PROGRAM.compile(gl, template, programCache);
 		}
 
 		initUniforms();
@@ -811,6 +960,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		gl.glUniform1i(uniTextures, 1); // texture sampler array is bound to texture1
 		gl.glUniform1i(uniTexturesHD, 2); // HD texture sampler array is bound to texture2
 		gl.glUniform1i(uniShadowMap, 3); // shadow map sampler is bound to texture3
+		gl.glUniform1i(uniClusterLights, 4); // clustered light data is bound to texture4
+		gl.glUniform1i(uniClusterLightIndices, 5); // clustered light indices are bound to texture5
 
 		gl.glUseProgram(0);
 
@@ -871,11 +1022,22 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		uniTextureOffsets = gl.glGetUniformLocation(glProgram, "textureOffsets");
 		uniAnimationCurrent = gl.glGetUniformLocation(glProgram, "animationCurrent");
 
-		uniBlockSmall = gl.glGetUniformBlockIndex(glSmallComputeProgram, "uniforms");
-		uniBlockLarge = gl.glGetUniformBlockIndex(glComputeProgram, "uniforms");
+		uniBlockXLarge = gl.glGetUniformBlockIndex(glXLargeComputeProgram, "uniforms");
+		uniBlockCull = gl.glGetUniformBlockIndex(glCullComputeProgram, "uniforms");
+		uniCullTileCount = gl.glGetUniformLocation(glCullComputeProgram, "tileCount");
+		uniCullViewportWidth = gl.glGetUniformLocation(glCullComputeProgram, "viewportWidth");
+		uniCullViewportHeight = gl.glGetUniformLocation(glCullComputeProgram, "viewportHeight");
+		uniCullDrawDistance = gl.glGetUniformLocation(glCullComputeProgram, "drawDistance");
+		uniCullUnderwaterPass = gl.glGetUniformLocation(glCullComputeProgram, "underwaterPass");
 		uniBlockMain = gl.glGetUniformBlockIndex(glProgram, "uniforms");
 		uniBlockMaterials = gl.glGetUniformBlockIndex(glProgram, "materials");
 		uniBlockPointLights = gl.glGetUniformBlockIndex(glProgram, "pointLights");
+		uniClusteredLighting = gl.glGetUniformLocation(glProgram, "clusteredLighting");
+		uniClusterLights = gl.glGetUniformLocation(glProgram, "clusterLights");
+		uniClusterLightIndices = gl.glGetUniformLocation(glProgram, "clusterLightIndices");
+		uniClusterRotation = gl.glGetUniformLocation(glProgram, "clusterRotation");
+		uniClusterProjection = gl.glGetUniformLocation(glProgram, "clusterProjection");
+		uniClusterTileSize = gl.glGetUniformLocation(glProgram, "clusterTileSize");
 
 		// Shadow program uniforms
 		uniShadowBlockMaterials = gl.glGetUniformBlockIndex(glShadowProgram, "materials");
@@ -892,16 +1054,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glProgram = -1;
 		}
 
-		if (glComputeProgram != -1)
-		{
-			gl.glDeleteProgram(glComputeProgram);
-			glComputeProgram = -1;
-		}
+		shutdownComputeSizeClassPrograms();
 
-		if (glSmallComputeProgram != -1)
+		if (glXLargeComputeProgram != -1)
 		{
-			gl.glDeleteProgram(glSmallComputeProgram);
-			glSmallComputeProgram = -1;
+			gl.glDeleteProgram(glXLargeComputeProgram);
+			glXLargeComputeProgram = -1;
 		}
 
 		if (glUnorderedComputeProgram != -1)
@@ -910,6 +1068,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			glUnorderedComputeProgram = -1;
 		}
 
+		if (glCullComputeProgram != -1)
+		{
+			gl.glDeleteProgram(glCullComputeProgram);
+			glCullComputeProgram = -1;
+		}
+
 		if (glUiProgram != -1)
 		{
 			gl.glDeleteProgram(glUiProgram);
@@ -923,6 +1087,93 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
+	/**
+	 * Compiles comp.glsl for each size class, with the size of the class defined by the COMPUTE_SIZE include.
+	 */
+	private void compileComputeSizeClasses() throws ShaderException
+	{
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			Template template = createTemplate(key -> key.equals("COMPUTE_SIZE") ? sizeClass.getDefines() : resolveShaderConstant(key));
+			sizeClass.glProgram = COMPUTE_PROGRAM.compile(gl, template, programCache);
+			sizeClass.uniBlock = gl.glGetUniformBlockIndex(sizeClass.glProgram, "uniforms");
+		}
+	}
+
+	private void shutdownComputeSizeClassPrograms()
+	{
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			if (sizeClass.glProgram != -1)
+			{
+				gl.glDeleteProgram(sizeClass.glProgram);
+				sizeClass.glProgram = -1;
+			}
+		}
+	}
+
+	/**
+	 * Creates the size classes from the config, which have to be given buffers and programs before they're used.
+	 */
+	private ComputeSizeClass[] createComputeSizeClasses()
+	{
+		int[] sizes = ComputeSizeClass.parseSizes(config.computeSizeClasses());
+		ComputeSizeClass[] sizeClasses = new ComputeSizeClass[sizes.length];
+		String[] names = new String[sizes.length + 1];
+		int[] capacities = new int[sizes.length + 1];
+		for (int i = 0; i < sizes.length; i++)
+		{
+			sizeClasses[i] = new ComputeSizeClass(sizes[i]);
+			names[i] = sizeClasses[i].getName();
+			capacities[i] = sizeClasses[i].threadCount * sizeClasses[i].facesPerThread;
+		}
+		// the extra large models are timed after the size classes
+		names[sizes.length] = "> " + MAX_TRIANGLE;
+		computeSizeClassTimer.setPasses(names, capacities);
+		cpuSortedModels = new IntBuffer[sizes.length + 1];
+		cpuSortedCounts = new int[sizes.length + 1];
+		return sizeClasses;
+	}
+
+	/**
+	 * Replaces the size classes after the config has changed, between frames.
+	 */
+	private void recreateComputeSizeClasses()
+	{
+		shutdownBufferStreaming();
+		shutdownComputeSizeClassPrograms();
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			destroyGlBuffer(sizeClass.glModelBuffer);
+		}
+
+		computeSizeClasses = createComputeSizeClasses();
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			initGlBuffer(sizeClass.glModelBuffer);
+		}
+
+		try
+		{
+			if (computeMode == ComputeMode.OPENCL)
+			{
+				openCLManager.compileSizeClasses(computeSizeClasses);
+			}
+			else if (computeMode == ComputeMode.OPENGL)
+			{
+				compileComputeSizeClasses();
+			}
+		}
+		catch (ShaderException ex)
+		{
+			log.error("Failed to compile compute size classes", ex);
+			stopPlugin();
+			return;
+		}
+
+		initBufferStreaming();
+	}
+
 	public void recompilePrograms()
 	{
 		clientThread.invoke(() ->
@@ -1008,12 +1259,65 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		initGlBuffer(tmpVertexBuffer);
 		initGlBuffer(tmpUvBuffer);
 		initGlBuffer(tmpNormalBuffer);
-		initGlBuffer(tmpModelBufferLarge);
-		initGlBuffer(tmpModelBufferSmall);
+		initGlBuffer(tmpModelBufferXLarge);
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			initGlBuffer(sizeClass.glModelBuffer);
+		}
 		initGlBuffer(tmpModelBufferUnordered);
 		initGlBuffer(tmpOutBuffer);
 		initGlBuffer(tmpOutUvBuffer);
 		initGlBuffer(tmpOutNormalBuffer);
+		initGlBuffer(tmpXLargeScratchBuffer);
+		initGlBuffer(sceneTileTableBuffer);
+		initGlBuffer(tmpTileSlotBuffer);
+		initGlBuffer(tmpCulledTileBuffer);
+		initGlBuffer(tileDispatchBuffer);
+		initGlBuffer(tileDrawBuffer);
+
+		// the new table buffer needs every descriptor
+		sceneTileTable.clear();
+	}
+
+	private void initBufferStreaming()
+	{
+		if (gl == null || !config.persistentBufferStreaming() || computeMode != ComputeMode.OPENGL)
+		{
+			return;
+		}
+
+		JoglStreamingGL streamingGL = new JoglStreamingGL(gl);
+		if (!PersistentBufferRing.isSupported(streamingGL))
+		{
+			log.info("Persistent buffer streaming is unsupported by the GPU driver, falling back to buffer uploads");
+			return;
+		}
+
+		bufferRing = new PersistentBufferRing(streamingGL);
+		tmpVertexStream = bufferRing.add(vertexBuffer);
+		tmpUvStream = bufferRing.add(uvBuffer);
+		tmpNormalStream = bufferRing.add(normalBuffer);
+		tmpModelStreamXLarge = bufferRing.add(modelBufferXLarge);
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			sizeClass.modelStream = bufferRing.add(sizeClass.modelBuffer);
+		}
+		tmpModelStreamUnordered = bufferRing.add(modelBufferUnordered);
+	}
+
+	private void shutdownBufferStreaming()
+	{
+		if (bufferRing != null)
+		{
+			bufferRing.destroy();
+			bufferRing = null;
+			tmpVertexStream = tmpUvStream = tmpNormalStream = null;
+			tmpModelStreamXLarge = tmpModelStreamUnordered = null;
+			for (ComputeSizeClass sizeClass : computeSizeClasses)
+			{
+				sizeClass.modelStream = null;
+			}
+		}
 	}
 
 	private void initGlBuffer(GLBuffer glBuffer)
@@ -1030,12 +1334,21 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		destroyGlBuffer(tmpVertexBuffer);
 		destroyGlBuffer(tmpUvBuffer);
 		destroyGlBuffer(tmpNormalBuffer);
-		destroyGlBuffer(tmpModelBufferLarge);
-		destroyGlBuffer(tmpModelBufferSmall);
+		destroyGlBuffer(tmpModelBufferXLarge);
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			destroyGlBuffer(sizeClass.glModelBuffer);
+		}
 		destroyGlBuffer(tmpModelBufferUnordered);
 		destroyGlBuffer(tmpOutBuffer);
 		destroyGlBuffer(tmpOutUvBuffer);
 		destroyGlBuffer(tmpOutNormalBuffer);
+		destroyGlBuffer(tmpXLargeScratchBuffer);
+		destroyGlBuffer(sceneTileTableBuffer);
+		destroyGlBuffer(tmpTileSlotBuffer);
+		destroyGlBuffer(tmpCulledTileBuffer);
+		destroyGlBuffer(tileDispatchBuffer);
+		destroyGlBuffer(tileDrawBuffer);
 	}
 
 	private void destroyGlBuffer(GLBuffer glBuffer)
@@ -1140,9 +1453,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	private void initLightsUniformBuffer()
 	{
-		if (config.maxDynamicLights().getValue() > MAX_LIGHTS)
+		if (config.maxDynamicLights().getValue() > MAX_LIGHTS && !config.clusteredLighting())
 		{
-			log.warn("Number of max dynamic lights exceeds value of MAX_LIGHTS");
+			log.warn("Number of max dynamic lights exceeds value of MAX_LIGHTS, which only clustered lighting can exceed");
 		}
 
 		initGlBuffer(lightsUniformBuffer);
@@ -1153,6 +1466,57 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		gl.glBindBuffer(GL_UNIFORM_BUFFER, 0);
 	}
 
+	private void initLightClusters()
+	{
+		// texture buffers are used instead of storage buffers, since those aren't available before OpenGL 4.3
+		int maxTexels = glGetInteger(gl, gl.GL_MAX_TEXTURE_BUFFER_SIZE);
+		clusteredLightingSupported = maxTexels >= LightClusters.INDEX_BUFFER_SIZE;
+		if (!clusteredLightingSupported)
+		{
+			log.info("Clustered lighting is unsupported by the GPU driver, which only allows texture buffers of {} texels", maxTexels);
+		}
+
+		int lightsSize = LightClusters.MAX_LIGHTS * LightClusters.LIGHT_TEXELS * 4;
+		clusterLightsBuf = ByteBuffer.allocateDirect(lightsSize * SCALAR_BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		clusterIndicesBuf = ByteBuffer.allocateDirect(LightClusters.INDEX_BUFFER_SIZE * SCALAR_BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+		initGlBuffer(clusterLightsBuffer);
+		gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, clusterLightsBuffer.glBufferId);
+		gl.glBufferData(gl.GL_TEXTURE_BUFFER, (long) lightsSize * SCALAR_BYTES, null, GL_DYNAMIC_DRAW);
+		initGlBuffer(clusterIndicesBuffer);
+		gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, clusterIndicesBuffer.glBufferId);
+		gl.glBufferData(gl.GL_TEXTURE_BUFFER, (long) LightClusters.INDEX_BUFFER_SIZE * SCALAR_BYTES, null, GL_DYNAMIC_DRAW);
+		gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, 0);
+
+		texClusterLights = glGenTexture(gl);
+		gl.glBindTexture(gl.GL_TEXTURE_BUFFER, texClusterLights);
+		gl.glTexBuffer(gl.GL_TEXTURE_BUFFER, gl.GL_RGBA32F, clusterLightsBuffer.glBufferId);
+		texClusterLightIndices = glGenTexture(gl);
+		gl.glBindTexture(gl.GL_TEXTURE_BUFFER, texClusterLightIndices);
+		gl.glTexBuffer(gl.GL_TEXTURE_BUFFER, gl.GL_R32I, clusterIndicesBuffer.glBufferId);
+		gl.glBindTexture(gl.GL_TEXTURE_BUFFER, 0);
+	}
+
+	private void shutdownLightClusters()
+	{
+		destroyGlBuffer(clusterLightsBuffer);
+		destroyGlBuffer(clusterIndicesBuffer);
+
+		if (texClusterLights != -1)
+		{
+			glDeleteTexture(gl, texClusterLights);
+			texClusterLights = -1;
+		}
+
+		if (texClusterLightIndices != -1)
+		{
+			glDeleteTexture(gl, texClusterLightIndices);
+			texClusterLightIndices = -1;
+		}
+
+		clusteredLightingActive = false;
+	}
+
 	private void initAAFbo(int width, int height, int aaSamples)
 	{
 		// Create and bind the FBO
@@ -1249,9 +1613,67 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
+	/**
+	 * Allocates the buffers the draw callbacks write each frame's models into.
+	 */
+	@VisibleForTesting
+	public void initFrameBuffers()
+	{
+		vertexBuffer = new GpuIntBuffer();
+		uvBuffer = new GpuFloatBuffer();
+		normalBuffer = new GpuFloatBuffer();
+
+		modelBufferUnordered = new GpuIntBuffer();
+		computeSizeClasses = createComputeSizeClasses();
+		modelBufferXLarge = new GpuIntBuffer();
+		tileSlotBuffer = new GpuIntBuffer();
+	}
+
+	/**
+	 * Empties the buffers the draw callbacks write into, once a frame has been drawn.
+	 */
+	@VisibleForTesting
+	public void resetFrameBuffers()
+	{
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			sizeClass.modelBuffer.clear();
+			sizeClass.modelCount = sizeClass.faceCount = 0;
+		}
+		modelBufferXLarge.clear();
+		modelBufferUnordered.clear();
+		tileSlotBuffer.clear();
+
+		xlargeModels = xlargeFaces = unorderedModels = 0;
+		xlargeScratchFaces = 0;
+		tempOffset = 0;
+		tempUvOffset = 0;
+		tempModelInfoMap.clear();
+	}
+
+	/**
+	 * Prepares for the draw callbacks of a scene draw.
+	 */
+	@VisibleForTesting
+	public void beginSceneDraw()
+	{
+		// Only reset the target buffer offset right before drawing the scene. That way if there are frames
+		// after this that don't involve a scene draw, like during LOADING/HOPPING/CONNECTION_LOST, we can
+		// still redraw the previous frame's scene to emulate the client behavior of not painting over the
+		// viewport buffer.
+		targetBufferOffset = 0;
+		tileSlotCount = tileSlotVertexCount = 0;
+		tileCullingActive = config.gpuTileCulling() && computeMode == ComputeMode.OPENGL && glCullComputeProgram != -1;
+	}
+
 	@Override
 	public void drawScene(int cameraX, int cameraY, int cameraZ, int cameraPitch, int cameraYaw, int plane)
 	{
+		drawCallbackRecorder.drawScene(client, cameraX, cameraY, cameraZ, cameraPitch, cameraYaw, plane);
+
 		yaw = client.getCameraYaw();
 		pitch = client.getCameraPitch();
 		viewportOffsetX = client.getViewportXOffset();
@@ -1263,14 +1685,16 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		environmentManager.update();
 		lightManager.update();
 
-		// Only reset the target buffer offset right before drawing the scene. That way if there are frames
-		// after this that don't involve a scene draw, like during LOADING/HOPPING/CONNECTION_LOST, we can
-		// still redraw the previous frame's scene to emulate the client behavior of not painting over the
-		// viewport buffer.
-		targetBufferOffset = 0;
+		beginSceneDraw();
 
 		ThreadUtils.invokeOnMainThread(() ->
 		{
+			if (bufferRing != null)
+			{
+				// point the buffers at the next region before anything is written to them
+				bufferRing.beginFrame();
+			}
+
 			// UBO. Only the first 32 bytes get modified here, the rest is the constant sin/cos table.
 			// We can reuse the vertex buffer since it isn't used yet.
 			vertexBuffer.clear();
@@ -1294,16 +1718,45 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			gl.glBindBufferBase(GL_UNIFORM_BUFFER, 0, uniformBuffer.glBufferId);
 			uniformBuf.clear();
 
+			if (computeMode == ComputeMode.CPU)
+			{
+				cpuComputeManager.setView(yaw, pitch, client.getCenterX(), client.getCenterY(), client.getScale(), cameraX, cameraY, cameraZ);
+			}
+
 			// Bind materials UBO
 			gl.glBindBuffer(GL_UNIFORM_BUFFER, materialsUniformBuffer.glBufferId);
 			gl.glBindBufferBase(GL_UNIFORM_BUFFER, 1, materialsUniformBuffer.glBufferId);
 			gl.glBindBuffer(GL_UNIFORM_BUFFER, 0);
 
-			if (config.maxDynamicLights().getValue() > 0)
+			final int maxLights = config.maxDynamicLights().getValue();
+			clusteredLightingActive = maxLights > 0 && clusteredLightingSupported && config.clusteredLighting();
+			if (clusteredLightingActive)
+			{
+				// Bin the lights into clusters of the view, and upload them along with each cluster's light indices
+				ArrayList<SceneLight> visibleLights = lightManager.getVisibleLights(getDrawDistance(), Math.min(LightClusters.MAX_LIGHTS, maxLights));
+				lightClusters.setView(client.getCameraX(), client.getCameraY(), client.getCameraZ(), yaw, pitch, client.getScale(),
+					client.getCenterX(), client.getCenterY(), client.getViewportWidth(), client.getViewportHeight(),
+					getDrawDistance() * Perspective.LOCAL_TILE_SIZE);
+				lightClusters.bin(visibleLights);
+
+				clusterLightsBuf.clear();
+				lightClusters.writeLights(clusterLightsBuf);
+				clusterLightsBuf.flip();
+				gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, clusterLightsBuffer.glBufferId);
+				gl.glBufferSubData(gl.GL_TEXTURE_BUFFER, 0, (long) clusterLightsBuf.limit() * SCALAR_BYTES, clusterLightsBuf);
+
+				clusterIndicesBuf.clear();
+				lightClusters.writeIndices(clusterIndicesBuf);
+				clusterIndicesBuf.flip();
+				gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, clusterIndicesBuffer.glBufferId);
+				gl.glBufferSubData(gl.GL_TEXTURE_BUFFER, 0, (long) clusterIndicesBuf.limit() * SCALAR_BYTES, clusterIndicesBuf);
+				gl.glBindBuffer(gl.GL_TEXTURE_BUFFER, 0);
+			}
+			else if (maxLights > 0)
 			{
 				// Update lights UBO
 				lightsUniformBuf.clear();
-				ArrayList<SceneLight> visibleLights = lightManager.getVisibleLights(getDrawDistance(), config.maxDynamicLights().getValue());
+				ArrayList<SceneLight> visibleLights = lightManager.getVisibleLights(getDrawDistance(), Math.min(MAX_LIGHTS, maxLights));
 				for (SceneLight light : visibleLights)
 				{
 					lightsUniformBuf.putInt(light.x);
@@ -1332,6 +1785,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	@Override
 	public void postDrawScene()
 	{
+		drawCallbackRecorder.postDrawScene();
 		ThreadUtils.invokeOnMainThread(this::postDraw);
 	}
 
@@ -1341,48 +1795,108 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		vertexBuffer.flip();
 		uvBuffer.flip();
 		normalBuffer.flip();
-		modelBuffer.flip();
-		modelBufferSmall.flip();
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			sizeClass.modelBuffer.flip();
+		}
+		modelBufferXLarge.flip();
 		modelBufferUnordered.flip();
+		tileSlotBuffer.flip();
 
 		IntBuffer vertexBuffer = this.vertexBuffer.getBuffer();
 		FloatBuffer uvBuffer = this.uvBuffer.getBuffer();
 		FloatBuffer normalBuffer = this.normalBuffer.getBuffer();
-		IntBuffer modelBuffer = this.modelBuffer.getBuffer();
-		IntBuffer modelBufferSmall = this.modelBufferSmall.getBuffer();
+		IntBuffer modelBufferXLarge = this.modelBufferXLarge.getBuffer();
 		IntBuffer modelBufferUnordered = this.modelBufferUnordered.getBuffer();
 
-		// temp buffers
-		updateBuffer(tmpVertexBuffer, GL_ARRAY_BUFFER, vertexBuffer.limit() * Integer.BYTES, vertexBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(tmpUvBuffer, GL_ARRAY_BUFFER, uvBuffer.limit() * Float.BYTES, uvBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(tmpNormalBuffer, GL_ARRAY_BUFFER, normalBuffer.limit() * Float.BYTES, normalBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+		frameTimer.begin(Section.BUFFER_UPLOAD);
+
+		if (computeMode == ComputeMode.CPU)
+		{
+			// only the output of the compute passes is needed on the GPU
+			// the model buffers are refreshed every frame, since they're replaced when they grow
+			for (int i = 0; i < computeSizeClasses.length; i++)
+			{
+				cpuSortedModels[i] = computeSizeClasses[i].modelBuffer.getBuffer();
+				cpuSortedCounts[i] = computeSizeClasses[i].modelCount;
+			}
+			cpuSortedModels[computeSizeClasses.length] = modelBufferXLarge;
+			cpuSortedCounts[computeSizeClasses.length] = xlargeModels;
+
+			cpuComputeManager.compute(
+				modelBufferUnordered, unorderedModels,
+				cpuSortedModels, cpuSortedCounts,
+				vertexBuffer, uvBuffer, normalBuffer,
+				targetBufferOffset);
+			updateBuffer(tmpOutBuffer, GL_ARRAY_BUFFER, targetBufferOffset * 16, cpuComputeManager.getOutVertices(), GL_STREAM_DRAW, CL_MEM_WRITE_ONLY);
+			updateBuffer(tmpOutUvBuffer, GL_ARRAY_BUFFER, targetBufferOffset * 16, cpuComputeManager.getOutUvs(), GL_STREAM_DRAW, CL_MEM_WRITE_ONLY);
+			updateBuffer(tmpOutNormalBuffer, GL_ARRAY_BUFFER, targetBufferOffset * 16, cpuComputeManager.getOutNormals(), GL_STREAM_DRAW, CL_MEM_WRITE_ONLY);
+			frameTimer.end(Section.BUFFER_UPLOAD);
+			return;
+		}
+
+		if (bufferRing != null)
+		{
+			// the data has been written straight into the mapped buffers, unless some outgrew them
+			bufferRing.finishWrites();
+		}
+		else
+		{
+			// temp buffers
+			updateBuffer(tmpVertexBuffer, GL_ARRAY_BUFFER, vertexBuffer.limit() * Integer.BYTES, vertexBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(tmpUvBuffer, GL_ARRAY_BUFFER, uvBuffer.limit() * Float.BYTES, uvBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+			updateBuffer(tmpNormalBuffer, GL_ARRAY_BUFFER, normalBuffer.limit() * Float.BYTES, normalBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+
+			// model buffers
+			updateBuffer(tmpModelBufferXLarge, GL_ARRAY_BUFFER, modelBufferXLarge.limit() * Integer.BYTES, modelBufferXLarge, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+			for (ComputeSizeClass sizeClass : computeSizeClasses)
+			{
+				IntBuffer modelBuffer = sizeClass.modelBuffer.getBuffer();
+				updateBuffer(sizeClass.glModelBuffer, GL_ARRAY_BUFFER, modelBuffer.limit() * Integer.BYTES, modelBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+			}
+			updateBuffer(tmpModelBufferUnordered, GL_ARRAY_BUFFER, modelBufferUnordered.limit() * Integer.BYTES, modelBufferUnordered, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+		}
+
+		if (xlargeModels > 0)
+		{
+			updateBuffer(tmpXLargeScratchBuffer,
+				GL_ARRAY_BUFFER,
+				xlargeScratchFaces * 4 * Integer.BYTES, // each face takes up four ints
+				null,
+				GL_STREAM_DRAW,
+				CL_MEM_READ_WRITE);
+		}
 
-		// model buffers
-		updateBuffer(tmpModelBufferLarge, GL_ARRAY_BUFFER, modelBuffer.limit() * Integer.BYTES, modelBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(tmpModelBufferSmall, GL_ARRAY_BUFFER, modelBufferSmall.limit() * Integer.BYTES, modelBufferSmall, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
-		updateBuffer(tmpModelBufferUnordered, GL_ARRAY_BUFFER, modelBufferUnordered.limit() * Integer.BYTES, modelBufferUnordered, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+		if (tileSlotCount > 0)
+		{
+			IntBuffer tileSlotBuffer = this.tileSlotBuffer.getBuffer();
+			updateBuffer(tmpTileSlotBuffer, GL_ARRAY_BUFFER, tileSlotBuffer.limit() * Integer.BYTES, tileSlotBuffer, GL_DYNAMIC_DRAW, CL_MEM_READ_ONLY);
+			// a tile with underwater terrain can take up two entries
+			updateBuffer(tmpCulledTileBuffer, GL_ARRAY_BUFFER, tileSlotCount * 2 * 8 * Integer.BYTES, null, GL_STREAM_DRAW, CL_MEM_WRITE_ONLY);
+		}
 
-		// Output buffers
+		// Output buffers, with room for every pushed tile after the models in case none of them get culled
+		final int outputSize = targetBufferOffset + tileSlotVertexCount;
 		updateBuffer(tmpOutBuffer,
 			GL_ARRAY_BUFFER,
-			targetBufferOffset * 16, // each vertex is an ivec4, which is 16 bytes
+			outputSize * 16, // each vertex is an ivec4, which is 16 bytes
 			null,
 			GL_STREAM_DRAW,
 			CL_MEM_WRITE_ONLY);
 		updateBuffer(tmpOutUvBuffer,
 			GL_ARRAY_BUFFER,
-			targetBufferOffset * 16, // each vertex is an ivec4, which is 16 bytes
+			outputSize * 16, // each vertex is an ivec4, which is 16 bytes
 			null,
 			GL_STREAM_DRAW,
 			CL_MEM_WRITE_ONLY);
 		updateBuffer(tmpOutNormalBuffer,
 			GL_ARRAY_BUFFER,
-			targetBufferOffset * 16, // each vertex is an ivec4, which is 16 bytes
+			outputSize * 16, // each vertex is an ivec4, which is 16 bytes
 			null,
 			GL_STREAM_DRAW,
 			CL_MEM_WRITE_ONLY);
 
-
+		frameTimer.end(Section.BUFFER_UPLOAD);
 
 		if (computeMode == ComputeMode.OPENCL)
 		{
@@ -1392,10 +1906,10 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			// gl.glFinish();
 
 			openCLManager.compute(
-				unorderedModels, smallModels, largeModels,
+				unorderedModels, computeSizeClasses, xlargeModels,
 				sceneVertexBuffer, sceneUvBuffer,
 				tmpVertexBuffer, tmpUvBuffer,
-				tmpModelBufferUnordered, tmpModelBufferSmall, tmpModelBufferLarge,
+				tmpModelBufferUnordered, tmpModelBufferXLarge, tmpXLargeScratchBuffer,
 				tmpOutBuffer, tmpOutUvBuffer,
 				uniformBuffer,
 				tmpOutNormalBuffer, sceneNormalBuffer, tmpNormalBuffer);
@@ -1403,61 +1917,175 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 
 		/*
-		 * Compute is split into three separate programs: 'unordered', 'small', and 'large'
-		 * to save on GPU resources. Small will sort <= 512 faces, large will do <= 4096.
+		 * Compute is split into separate programs: 'unordered', one for each size class and 'extra large'
+		 * to save on GPU resources. Each size class sorts models up to its size, the last up to 6144 faces,
+		 * and extra large sorts the rest in global memory.
 		 */
 
+		frameTimer.beginGpu(gl, Section.COMPUTE);
+
 		// Bind UBO to compute programs
-		gl.glUniformBlockBinding(glSmallComputeProgram, uniBlockSmall, 0);
-		gl.glUniformBlockBinding(glComputeProgram, uniBlockLarge, 0);
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
+		{
+			gl.glUniformBlockBinding(sizeClass.glProgram, sizeClass.uniBlock, 0);
+		}
+		gl.glUniformBlockBinding(glXLargeComputeProgram, uniBlockXLarge, 0);
+
+		if (tileSlotCount > 0)
+		{
+			cullTiles();
+		}
 
 		// unordered
 		gl.glUseProgram(glUnorderedComputeProgram);
 
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferUnordered.glBufferId);
+		bindTempStorageBuffer(0, tmpModelBufferUnordered, tmpModelStreamUnordered);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
+		bindTempStorageBuffer(2, tmpVertexBuffer, tmpVertexStream);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
+		bindTempStorageBuffer(6, tmpUvBuffer, tmpUvStream);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 7, tmpOutNormalBuffer.glBufferId);
 		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 8, sceneNormalBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 9, tmpNormalBuffer.glBufferId);
+		bindTempStorageBuffer(9, tmpNormalBuffer, tmpNormalStream);
 
 		gl.glDispatchCompute(unorderedModels, 1, 1);
 
-		// small
-		gl.glUseProgram(glSmallComputeProgram);
+		if (tileSlotCount > 0)
+		{
+			// the visible tiles, which the culling pass counted into the indirect dispatch
+			gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 0, tmpCulledTileBuffer.glBufferId);
+			gl.glBindBuffer(gl.GL_DISPATCH_INDIRECT_BUFFER, tileDispatchBuffer.glBufferId);
+			gl.glDispatchComputeIndirect(0L);
+			gl.glBindBuffer(gl.GL_DISPATCH_INDIRECT_BUFFER, 0);
+		}
 
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferSmall.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 7, tmpOutNormalBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 8, sceneNormalBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 9, tmpNormalBuffer.glBufferId);
+		// the size classes share every buffer but the model buffer with the unordered program
+		boolean timeSizeClasses = frameTimer.isEnabled();
+		if (timeSizeClasses)
+		{
+			computeSizeClassTimer.beginFrame(gl);
+		}
 
-		gl.glDispatchCompute(smallModels, 1, 1);
+		for (int i = 0; i < computeSizeClasses.length; i++)
+		{
+			ComputeSizeClass sizeClass = computeSizeClasses[i];
+			if (sizeClass.modelCount > 0)
+			{
+				gl.glUseProgram(sizeClass.glProgram);
+				bindTempStorageBuffer(0, sizeClass.glModelBuffer, sizeClass.modelStream);
+				gl.glDispatchCompute(sizeClass.modelCount, 1, 1);
+			}
 
-		// large
-		gl.glUseProgram(glComputeProgram);
+			if (timeSizeClasses)
+			{
+				computeSizeClassTimer.endPass(gl, i, sizeClass.modelCount, sizeClass.faceCount);
+			}
+		}
 
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferLarge.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 7, tmpOutNormalBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 8, sceneNormalBuffer.glBufferId);
-		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 9, tmpNormalBuffer.glBufferId);
+		if (xlargeModels > 0)
+		{
+			// extra large, with the rest of the buffers still bound as well
+			gl.glUseProgram(glXLargeComputeProgram);
+
+			bindTempStorageBuffer(0, tmpModelBufferXLarge, tmpModelStreamXLarge);
+			gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 10, tmpXLargeScratchBuffer.glBufferId);
+
+			gl.glDispatchCompute(xlargeModels, 1, 1);
+		}
+
+		if (timeSizeClasses)
+		{
+			computeSizeClassTimer.endPass(gl, computeSizeClasses.length, xlargeModels, xlargeFaces);
+			computeSizeClassTimer.endFrame(gl);
+		}
+		else
+		{
+			computeSizeClassTimer.destroy(gl);
+		}
+
+		frameTimer.endGpu(gl, Section.COMPUTE);
 
-		gl.glDispatchCompute(largeModels, 1, 1);
+		if (bufferRing != null)
+		{
+			bufferRing.endFrame();
+		}
+	}
+
+	/**
+	 * Culls the tiles pushed this frame against the view frustum and draw distance, writing the model info of the
+	 * visible tiles for an indirect dispatch of the unordered compute program. The visible tiles are written after
+	 * the models in the output buffers, but the first of the two indirect draw commands draws them before the models.
+	 */
+	private void cullTiles()
+	{
+		tileCommandsBuf.clear();
+		tileCommandsBuf.put(0).put(1).put(1);
+		tileCommandsBuf.flip();
+		updateBuffer(tileDispatchBuffer, gl.GL_DISPATCH_INDIRECT_BUFFER, 3 * Integer.BYTES, tileCommandsBuf, GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+		gl.glBindBuffer(gl.GL_DISPATCH_INDIRECT_BUFFER, 0);
+
+		// count, instance count, first vertex and base instance of the tiles, followed by the models
+		tileCommandsBuf.clear();
+		tileCommandsBuf
+			.put(0).put(1).put(targetBufferOffset).put(0)
+			.put(targetBufferOffset).put(1).put(0).put(0);
+		tileCommandsBuf.flip();
+		updateBuffer(tileDrawBuffer, gl.GL_DRAW_INDIRECT_BUFFER, 8 * Integer.BYTES, tileCommandsBuf, GL_STREAM_DRAW, CL_MEM_READ_ONLY);
+		gl.glBindBuffer(gl.GL_DRAW_INDIRECT_BUFFER, 0);
+
+		gl.glUseProgram(glCullComputeProgram);
+		gl.glUniformBlockBinding(glCullComputeProgram, uniBlockCull, 0);
+		gl.glUniform1i(uniCullTileCount, tileSlotCount);
+		gl.glUniform1i(uniCullViewportWidth, client.getViewportWidth());
+		gl.glUniform1i(uniCullViewportHeight, client.getViewportHeight());
+		gl.glUniform1i(uniCullDrawDistance, getDrawDistance() * Perspective.LOCAL_TILE_SIZE);
+
+		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 0, tmpTileSlotBuffer.glBufferId);
+		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 1, sceneTileTableBuffer.glBufferId);
+		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 2, tmpCulledTileBuffer.glBufferId);
+		gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, 3, tileDispatchBuffer.glBufferId);
+		gl.glBindBufferRange(gl.GL_SHADER_STORAGE_BUFFER, 4, tileDrawBuffer.glBufferId, 0, 4 * Integer.BYTES);
+
+		// all of the underwater terrain is drawn before the surface tiles, which are partially transparent over water
+		final int workGroups = (tileSlotCount + 63) / 64;
+		gl.glUniform1i(uniCullUnderwaterPass, 1);
+		gl.glDispatchCompute(workGroups, 1, 1);
+		gl.glMemoryBarrier(gl.GL_SHADER_STORAGE_BARRIER_BIT);
+		gl.glUniform1i(uniCullUnderwaterPass, 0);
+		gl.glDispatchCompute(workGroups, 1, 1);
+
+		// the counts are read by the indirect dispatch and draw commands
+		gl.glMemoryBarrier(gl.GL_SHADER_STORAGE_BARRIER_BIT | gl.GL_COMMAND_BARRIER_BIT);
+	}
+
+	/**
+	 * Draws the output of the compute programs, starting with the tiles which were culled on the GPU, if any.
+	 */
+	private void drawSceneGeometry()
+	{
+		if (tileSlotCount == 0)
+		{
+			gl.glDrawArrays(gl.GL_TRIANGLES, 0, targetBufferOffset);
+			return;
+		}
+
+		gl.glBindBuffer(gl.GL_DRAW_INDIRECT_BUFFER, tileDrawBuffer.glBufferId);
+		gl.glMultiDrawArraysIndirect(gl.GL_TRIANGLES, 0L, 2, 0);
+		gl.glBindBuffer(gl.GL_DRAW_INDIRECT_BUFFER, 0);
+	}
+
+	private void bindTempStorageBuffer(int index, GLBuffer glBuffer, PersistentBufferRing.Stream stream)
+	{
+		if (stream == null)
+		{
+			gl.glBindBufferBase(gl.GL_SHADER_STORAGE_BUFFER, index, glBuffer.glBufferId);
+		}
+		else
+		{
+			gl.glBindBufferRange(gl.GL_SHADER_STORAGE_BUFFER, index, stream.getGlBufferId(), stream.getOffset(), stream.getRegionSize());
+		}
 	}
 
 	@Override
@@ -1465,8 +2093,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 							   SceneTilePaint paint, int tileZ, int tileX, int tileY,
 							   int zoom, int centerX, int centerY)
 	{
+		drawCallbackRecorder.drawScenePaint(orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, paint, tileZ, tileX, tileY, zoom, centerX, centerY);
+
 		if (paint.getBufferLen() > 0)
 		{
+			if (tileCullingActive && pushTileSlot(sceneTileTable.findPaint(tileZ, tileX, tileY, paint)))
+			{
+				return;
+			}
+
 			final int localX = tileX * Perspective.LOCAL_TILE_SIZE;
 			final int localY = 0;
 			final int localZ = tileY * Perspective.LOCAL_TILE_SIZE;
@@ -1521,8 +2156,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 							   SceneTileModel model, int tileZ, int tileX, int tileY,
 							   int zoom, int centerX, int centerY)
 	{
+		drawCallbackRecorder.drawSceneModel(orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, model, tileZ, tileX, tileY, zoom, centerX, centerY);
+
 		if (model.getBufferLen() > 0)
 		{
+			if (tileCullingActive && pushTileSlot(sceneTileTable.findModel(tileZ, tileX, tileY, model)))
+			{
+				return;
+			}
+
 			final int localX = tileX * Perspective.LOCAL_TILE_SIZE;
 			final int localY = 0;
 			final int localZ = tileY * Perspective.LOCAL_TILE_SIZE;
@@ -1572,6 +2214,25 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
+	/**
+	 * Pushes a tile by its slot in the scene tile table, to be culled on the GPU.
+	 *
+	 * @return false if the tile isn't in the table, in which case it must be pushed as model info instead
+	 */
+	private boolean pushTileSlot(int slot)
+	{
+		if (slot == -1)
+		{
+			return false;
+		}
+
+		tileSlotBuffer.ensureCapacity(1);
+		tileSlotBuffer.getBuffer().put(slot);
+		++tileSlotCount;
+		tileSlotVertexCount += sceneTileTable.getVertexCount(slot);
+		return true;
+	}
+
 	@Override
 	public void draw(int overlayColor)
 	{
@@ -1630,6 +2291,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		assert jawtWindow.getAWTComponent() == client.getCanvas() : "canvas invalidated";
 
+		frameTimer.begin(Section.DRAW_FRAME);
+
 		// reset the plugin if the last frame took >1min to draw
 		// why? because the user's computer was probably suspended and the buffers are no longer valid
 		if (System.currentTimeMillis() - lastFrameTime > 60000) {
@@ -1676,8 +2339,13 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			}
 			if (textureHDArrayId == -1)
 			{
+				// starts out with placeholders, which are replaced as the textures finish decoding
 				textureHDArrayId = textureManager.initTextureHDArray(textureProvider, gl);
 			}
+			else
+			{
+				textureManager.uploadDecodedHDTextures(textureProvider, gl);
+			}
 
 			// Setup anisotropic filtering
 			final int anisotropicFilteringLevel = config.anisotropicFilteringLevel();
@@ -1774,6 +2442,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 			if (configShadowsEnabled && fboShadowMap != -1 && environmentManager.currentDirectionalStrength > 0.0f)
 			{
+				frameTimer.beginGpu(gl, Section.SHADOW_PASS);
+
 				// render shadow depth map
 				gl.glViewport(0, 0, config.shadowResolution().getValue(), config.shadowResolution().getValue());
 				gl.glBindFramebuffer(gl.GL_FRAMEBUFFER, fboShadowMap);
@@ -1826,7 +2496,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				gl.glBindBuffer(GL_ARRAY_BUFFER, uvBuffer);
 				gl.glVertexAttribPointer(1, 4, gl.GL_FLOAT, false, 0, 0);
 
-				gl.glDrawArrays(gl.GL_TRIANGLES, 0, targetBufferOffset);
+				drawSceneGeometry();
 
 				gl.glDisable(gl.GL_CULL_FACE);
 				gl.glDisable(GL_DEPTH_TEST);
@@ -1834,8 +2504,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				gl.glBindFramebuffer(gl.GL_FRAMEBUFFER, 0);
 
 				gl.glUseProgram(0);
+
+				frameTimer.endGpu(gl, Section.SHADOW_PASS);
 			}
 
+			frameTimer.beginGpu(gl, Section.MAIN_PASS);
+
 			glDpiAwareViewport(renderWidthOff, renderCanvasHeight - renderViewportHeight - renderHeightOff, renderViewportWidth, renderViewportHeight);
 
 			gl.glUseProgram(glProgram);
@@ -1843,6 +2517,12 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			// bind shadow map, or dummy 1x1 texture
 			gl.glActiveTexture(gl.GL_TEXTURE3);
 			gl.glBindTexture(GL_TEXTURE_2D, texShadowMap);
+
+			// bind clustered lighting buffers
+			gl.glActiveTexture(gl.GL_TEXTURE4);
+			gl.glBindTexture(gl.GL_TEXTURE_BUFFER, texClusterLights);
+			gl.glActiveTexture(gl.GL_TEXTURE5);
+			gl.glBindTexture(gl.GL_TEXTURE_BUFFER, texClusterLightIndices);
 			gl.glActiveTexture(gl.GL_TEXTURE0);
 
 			// Setup anti-aliasing
@@ -1979,6 +2659,15 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			// lightning
 			gl.glUniform1f(uniLightningBrightness, environmentManager.lightningBrightness);
 			gl.glUniform1i(uniPointLightsCount, config.maxDynamicLights().getValue() > 0 ? lightManager.visibleLightsCount : 0);
+			gl.glUniform1i(uniClusteredLighting, clusteredLightingActive ? 1 : 0);
+			if (clusteredLightingActive)
+			{
+				gl.glUniform4f(uniClusterRotation,
+					lightClusters.getYawSin(), lightClusters.getYawCos(), lightClusters.getPitchSin(), lightClusters.getPitchCos());
+				gl.glUniform4f(uniClusterProjection,
+					lightClusters.getScale(), lightClusters.getCenterX(), lightClusters.getCenterY(), lightClusters.getDepthScale());
+				gl.glUniform2f(uniClusterTileSize, lightClusters.getTileWidth(), lightClusters.getTileHeight());
+			}
 
 			gl.glUniform1f(uniSaturation, config.saturation().getAmount());
 			gl.glUniform1f(uniContrast, config.contrast().getAmount());
@@ -2047,7 +2736,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			gl.glBindBuffer(GL_ARRAY_BUFFER, normalBuffer);
 			gl.glVertexAttribPointer(2, 4, gl.GL_FLOAT, false, 0, 0);
 
-			gl.glDrawArrays(gl.GL_TRIANGLES, 0, targetBufferOffset);
+			drawSceneGeometry();
 
 			gl.glDisable(gl.GL_BLEND);
 			gl.glDisable(gl.GL_CULL_FACE);
@@ -2066,17 +2755,9 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				gl.glBindFramebuffer(gl.GL_READ_FRAMEBUFFER, 0);
 			}
 
-			this.vertexBuffer.clear();
-			this.uvBuffer.clear();
-			this.normalBuffer.clear();
-			modelBuffer.clear();
-			modelBufferSmall.clear();
-			modelBufferUnordered.clear();
+			frameTimer.endGpu(gl, Section.MAIN_PASS);
 
-			smallModels = largeModels = unorderedModels = 0;
-			tempOffset = 0;
-			tempUvOffset = 0;
-			tempModelInfoMap.clear();
+			resetFrameBuffers();
 
 			// reload the scene if it was requested
 			if (nextSceneReload != 0 && nextSceneReload <= System.currentTimeMillis()) {
@@ -2084,11 +2765,27 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				uploadScene();
 				nextSceneReload = 0;
 			}
+			else if (sceneReuploadRequested)
+			{
+				frameTimer.begin(Section.SCENE_UPLOAD);
+				modelPusher.clearModelCache();
+				uploadSceneBuffers();
+				frameTimer.end(Section.SCENE_UPLOAD);
+			}
+			else if (sceneUploader.hasDirtyTiles() && client.getGameState() == GameState.LOGGED_IN)
+			{
+				frameTimer.begin(Section.SCENE_UPLOAD);
+				uploadDirtyTiles();
+				frameTimer.end(Section.SCENE_UPLOAD);
+			}
 		}
 
 		// Texture on UI
 		drawUi(overlayColor, canvasHeight, canvasWidth);
 
+		frameTimer.end(Section.DRAW_FRAME);
+		frameTimer.endFrame(gl);
+
 		try {
 			glDrawable.swapBuffers();
 
@@ -2236,9 +2933,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			case LOGIN_SCREEN:
 				// Avoid drawing the last frame's buffer during LOADING after LOGIN_SCREEN
 				targetBufferOffset = 0;
+				tileSlotCount = tileSlotVertexCount = 0;
 				hasLoggedIn = false;
 			default:
 				lightManager.reset();
+				tileMaterialTable.clear();
 		}
 	}
 
@@ -2255,13 +2954,36 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 	private void uploadScene()
 	{
+		frameTimer.begin(Section.SCENE_UPLOAD);
+
+		if (modelHasher.isVerificationEnabled())
+		{
+			log.debug("Model hash collisions detected while batching: {}", modelHasher.getCollisionCount());
+		}
 		modelPusher.clearModelCache();
+
+		generateHDSceneData();
+
+		uploadSceneBuffers();
+
+		frameTimer.end(Section.SCENE_UPLOAD);
+	}
+
+	/**
+	 * Uploads every tile of the scene into the scene buffers, without regenerating any scene data.
+	 */
+	private void uploadSceneBuffers()
+	{
+		sceneReuploadRequested = false;
+		if (bufferRing != null)
+		{
+			// the scene doesn't fit in a region, and the GPU may still be reading from the mapped buffers
+			bufferRing.detach();
+		}
 		vertexBuffer.clear();
 		uvBuffer.clear();
 		normalBuffer.clear();
 
-		generateHDSceneData();
-
 		sceneUploader.upload(client.getScene(), vertexBuffer, uvBuffer, normalBuffer);
 
 		vertexBuffer.flip();
@@ -2272,19 +2994,132 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		FloatBuffer uvBuffer = this.uvBuffer.getBuffer();
 		FloatBuffer normalBuffer = this.normalBuffer.getBuffer();
 
-		updateBuffer(sceneVertexBuffer, GL_ARRAY_BUFFER, vertexBuffer.limit() * Integer.BYTES, vertexBuffer, GL_STATIC_COPY, CL_MEM_READ_ONLY);
-		updateBuffer(sceneUvBuffer, GL_ARRAY_BUFFER, uvBuffer.limit() * Float.BYTES, uvBuffer, GL_STATIC_COPY, CL_MEM_READ_ONLY);
-		updateBuffer(sceneNormalBuffer, GL_ARRAY_BUFFER, normalBuffer.limit() * Float.BYTES, normalBuffer, GL_STATIC_COPY, CL_MEM_READ_ONLY);
+		// leave room for tiles which are uploaded again when their objects change
+		int vertexCapacity = vertexBuffer.limit() / 4 + Math.max(vertexBuffer.limit() / 16, SCENE_BUFFER_MIN_HEADROOM);
+		int uvCapacity = uvBuffer.limit() / 4 + Math.max(uvBuffer.limit() / 16, SCENE_BUFFER_MIN_HEADROOM);
+		uploadSceneBuffer(sceneVertexBuffer, vertexCapacity, vertexBuffer);
+		uploadSceneBuffer(sceneUvBuffer, uvCapacity, uvBuffer);
+		uploadSceneBuffer(sceneNormalBuffer, vertexCapacity, normalBuffer);
 
 		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
 
+		// the buffers may have been larger already
+		sceneUploader.setBufferCapacity(
+			Math.min(sceneVertexBuffer.size, sceneNormalBuffer.size) / 16,
+			sceneUvBuffer.size / 16);
+
+		if (computeMode == ComputeMode.CPU)
+		{
+			cpuComputeManager.uploadScene(vertexBuffer, uvBuffer, normalBuffer,
+				Math.min(sceneVertexBuffer.size, sceneNormalBuffer.size) / 16,
+				sceneUvBuffer.size / 16);
+		}
+
+		updateSceneTileTable();
+
 		vertexBuffer.clear();
 		uvBuffer.clear();
 		normalBuffer.clear();
 	}
 
+	private void uploadSceneBuffer(GLBuffer glBuffer, int capacity, Buffer data)
+	{
+		updateBuffer(glBuffer, GL_ARRAY_BUFFER, capacity * 16, null, GL_STATIC_COPY, CL_MEM_READ_ONLY);
+		gl.glBufferSubData(GL_ARRAY_BUFFER, 0, data.limit() * 4L, data);
+	}
+
+	/**
+	 * Uploads tiles whose objects have changed into free space in the scene buffers, falling back to uploading
+	 * the whole scene if they don't fit.
+	 */
+	private void uploadDirtyTiles()
+	{
+		if (bufferRing != null)
+		{
+			bufferRing.detach();
+		}
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
+
+		boolean uploaded = sceneUploader.uploadDirtyTiles(client.getScene(), vertexBuffer, uvBuffer, normalBuffer,
+			(stagingOffset, vertexOffset, vertexCount, stagingUvOffset, uvOffset, uvCount) ->
+			{
+				writeSceneBuffer(sceneVertexBuffer, vertexBuffer.getBuffer(), stagingOffset, vertexOffset, vertexCount);
+				writeSceneBuffer(sceneNormalBuffer, normalBuffer.getBuffer(), stagingOffset, vertexOffset, vertexCount);
+				writeSceneBuffer(sceneUvBuffer, uvBuffer.getBuffer(), stagingUvOffset, uvOffset, uvCount);
+				if (computeMode == ComputeMode.CPU)
+				{
+					cpuComputeManager.writeScene(vertexBuffer.getBuffer(), uvBuffer.getBuffer(), normalBuffer.getBuffer(),
+						stagingOffset, vertexOffset, vertexCount, stagingUvOffset, uvOffset, uvCount);
+				}
+			});
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		if (!uploaded)
+		{
+			log.debug("Changed tiles don't fit in the scene buffers, uploading the whole scene");
+			uploadSceneBuffers();
+		}
+		else
+		{
+			updateSceneTileTable();
+		}
+
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
+	}
+
+	/**
+	 * Updates the scene tile table from the tiles which were just uploaded, and uploads the descriptors which changed.
+	 */
+	private void updateSceneTileTable()
+	{
+		if (computeMode != ComputeMode.OPENGL)
+		{
+			return;
+		}
+
+		sceneTileTable.update(client.getScene(), client.getTileHeights());
+		if (!sceneTileTable.isDirty())
+		{
+			return;
+		}
+
+		final long offset = sceneTileTable.getDirtyOffset() * (long) Integer.BYTES;
+		// the staging buffers aren't in use after uploading
+		this.vertexBuffer.clear();
+		this.vertexBuffer.ensureCapacity(sceneTileTable.getDirtySize());
+		IntBuffer buffer = this.vertexBuffer.getBuffer();
+		sceneTileTable.putDirty(buffer);
+		buffer.flip();
+
+		updateBuffer(sceneTileTableBuffer, GL_ARRAY_BUFFER, SceneTileTable.SLOT_COUNT * SceneTileTable.DESCRIPTOR_SIZE * Integer.BYTES,
+			null, GL_STATIC_DRAW, CL_MEM_READ_ONLY);
+		gl.glBufferSubData(GL_ARRAY_BUFFER, offset, buffer.limit() * (long) Integer.BYTES, buffer);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+		this.vertexBuffer.clear();
+	}
+
+	private void writeSceneBuffer(GLBuffer glBuffer, Buffer staging, int stagingOffset, int offset, int count)
+	{
+		if (count == 0)
+		{
+			return;
+		}
+
+		staging.limit((stagingOffset + count) * 4);
+		staging.position(stagingOffset * 4);
+		gl.glBindBuffer(GL_ARRAY_BUFFER, glBuffer.glBufferId);
+		gl.glBufferSubData(GL_ARRAY_BUFFER, offset * 16L, count * 16L, staging);
+	}
+
 	void generateHDSceneData()
 	{
+		tileMaterialTable.build(client.getScene());
+
 		environmentManager.loadSceneEnvironments();
 		lightManager.loadSceneLights();
 
@@ -2338,11 +3173,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		{
 			case "groundTextures":
 				configGroundTextures = config.groundTextures();
-				reloadScene();
+				reuploadScene();
 				break;
 			case "groundBlending":
 				configGroundBlending = config.groundBlending();
-				reloadScene();
+				reuploadScene();
 				break;
 			case "shadowsEnabled":
 				configShadowsEnabled = config.shadowsEnabled();
@@ -2366,11 +3201,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				break;
 			case "objectTextures":
 				configObjectTextures = config.objectTextures();
-				reloadScene();
+				reuploadScene();
 				break;
 			case "tzhaarHD":
 				configTzhaarHD = config.tzhaarHD();
-				reloadScene();
+				reuploadScene();
 				break;
 			case KEY_WINTER_THEME:
 				configWinterTheme = config.winterTheme();
@@ -2400,6 +3235,34 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			case "hideBakedEffects":
 				modelPusher.clearModelCache();
 				break;
+			case "verifyModelHashes":
+				// cached entries hold checks from the previous mode, so they can't be compared anymore
+				clientThread.invoke(() ->
+				{
+					modelHasher.setVerificationEnabled(config.verifyModelHashes());
+					modelPusher.clearModelCache();
+				});
+				break;
+			case "persistentBufferStreaming":
+				clientThread.invoke(() -> ThreadUtils.invokeOnMainThread(() ->
+				{
+					shutdownBufferStreaming();
+					initBufferStreaming();
+				}));
+				break;
+			case "computeSizeClasses":
+				clientThread.invoke(() -> ThreadUtils.invokeOnMainThread(this::recreateComputeSizeClasses));
+				break;
+			case "persistentModelCache":
+				if (config.persistentModelCache())
+				{
+					modelColorCache.startUp();
+				}
+				else
+				{
+					modelColorCache.shutDown();
+				}
+				break;
 		}
 	}
 
@@ -2435,6 +3298,14 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		nextSceneReload = System.currentTimeMillis();
 	}
 
+	/**
+	 * Uploads the scene again on the next frame, for changes which don't affect the generated scene data.
+	 */
+	private void reuploadScene()
+	{
+		sceneReuploadRequested = true;
+	}
+
 	/**
 	 * Check is a model is visible and should be drawn.
 	 */
@@ -2506,8 +3377,11 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			return;
 		}
 
+		boolean sceneModel = model.getSceneId() == sceneUploader.sceneId;
+		drawCallbackRecorder.draw(model, sceneModel, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, hash);
+
 		// Model may be in the scene buffer
-		if (model.getSceneId() == sceneUploader.sceneId)
+		if (sceneModel)
 		{
 			model.calculateBoundsCylinder();
 
@@ -2525,7 +3399,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			model.calculateExtreme(orientation);
 			client.checkClickbox(model, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z, hash);
 
-			int faceCount = Math.min(MAX_TRIANGLE, model.getFaceCount());
+			int faceCount = model.getFaceCount();
 			int uvOffset = model.getUvBufferOffset();
 
 			eightIntWrite[0] = model.getBufferOffset() >> 2;
@@ -2572,12 +3446,20 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 			eightIntWrite[6] = y + client.getCameraY2();
 			eightIntWrite[7] = z + client.getCameraZ2();
 
+			frameTimer.begin(Section.MODEL_PUSH);
+
 			modelHasher.setModel(model);
-			final int batchHash = modelHasher.calculateBatchHash();
+			final long batchHash = modelHasher.calculateBatchHash();
+			final long batchCheck = modelHasher.calculateBatchCheck();
 
 			TempModelInfo tempModelInfo = tempModelInfoMap.get(batchHash);
-			if (config.disableModelBatching() || tempModelInfo == null || tempModelInfo.getFaceCount() != model.getFaceCount()) {
-				final int[] lengths = modelPusher.pushModel(renderable, model, vertexBuffer, uvBuffer, normalBuffer, 0, 0, 0, ObjectProperties.NONE, ObjectType.NONE, config.disableModelCaching(), modelHasher.calculateColorCacheHash());
+			if (tempModelInfo != null && tempModelInfo.getHashCheck() != batchCheck) {
+				// a different model with the same hash, which must not be drawn in its place
+				modelHasher.countCollision();
+				tempModelInfo = null;
+			}
+			if (config.disableModelBatching() || tempModelInfo == null) {
+				final int[] lengths = modelPusher.pushModel(renderable, model, vertexBuffer, uvBuffer, normalBuffer, 0, 0, 0, ObjectProperties.NONE, ObjectType.NONE, config.disableModelCaching(), modelHasher.calculateColorCacheHash(), modelHasher.calculateColorCacheCheck());
 				final int faceCount = lengths[0] / 3;
 				final int actualTempUvOffset = lengths[1] > 0 ? tempUvOffset : -1;
 
@@ -2586,7 +3468,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 				tempModelInfo
 						.setTempOffset(tempOffset)
 						.setTempUvOffset(actualTempUvOffset)
-						.setFaceCount(faceCount);
+						.setFaceCount(faceCount)
+						.setHashCheck(batchCheck);
 				tempModelInfoMap.put(batchHash, tempModelInfo);
 
 				eightIntWrite[0] = tempOffset;
@@ -2606,6 +3489,8 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 
 				targetBufferOffset += tempModelInfo.getFaceCount()*3;
 			}
+
+			frameTimer.end(Section.MODEL_PUSH);
 		}
 	}
 
@@ -2623,16 +3508,21 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	 */
 	private GpuIntBuffer bufferForTriangles(int triangles)
 	{
-		if (triangles <= SMALL_TRIANGLE_COUNT)
+		for (ComputeSizeClass sizeClass : computeSizeClasses)
 		{
-			++smallModels;
-			return modelBufferSmall;
-		}
-		else
-		{
-			++largeModels;
-			return modelBuffer;
+			if (triangles <= sizeClass.maxFaces)
+			{
+				++sizeClass.modelCount;
+				sizeClass.faceCount += triangles;
+				return sizeClass.modelBuffer;
+			}
 		}
+
+		// the model's faces are sorted in the scratch buffer at the same offset as in the target buffer
+		xlargeScratchFaces = targetBufferOffset / 3 + triangles;
+		++xlargeModels;
+		xlargeFaces += triangles;
+		return modelBufferXLarge;
 	}
 
 	private int getScaledValue(final double scale, final int value)
@@ -2754,6 +3644,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		GameObject gameObject = gameObjectSpawned.getGameObject();
 		lightManager.addObjectLight(gameObject, gameObjectSpawned.getTile().getRenderLevel(), gameObject.sizeX(), gameObject.sizeY(), gameObject.getOrientation().getAngle());
+		sceneUploader.markDirty(gameObjectSpawned.getTile());
 	}
 
 	@Subscribe
@@ -2763,6 +3654,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		GameObject gameObject = gameObjectChanged.getGameObject();
 		lightManager.removeObjectLight(previous);
 		lightManager.addObjectLight(gameObject, gameObjectChanged.getTile().getRenderLevel(), gameObject.sizeX(), gameObject.sizeY(), gameObject.getOrientation().getAngle());
+		sceneUploader.markDirty(gameObjectChanged.getTile());
 	}
 
 	@Subscribe
@@ -2770,6 +3662,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		GameObject gameObject = gameObjectDespawned.getGameObject();
 		lightManager.removeObjectLight(gameObject);
+		sceneUploader.markDirty(gameObjectDespawned.getTile());
 	}
 
 	@Subscribe
@@ -2777,6 +3670,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		WallObject wallObject = wallObjectSpawned.getWallObject();
 		lightManager.addObjectLight(wallObject, wallObjectSpawned.getTile().getRenderLevel(), 1, 1, wallObject.getOrientationA());
+		sceneUploader.markDirty(wallObjectSpawned.getTile());
 	}
 
 	@Subscribe
@@ -2786,6 +3680,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		WallObject wallObject = wallObjectChanged.getWallObject();
 		lightManager.removeObjectLight(previous);
 		lightManager.addObjectLight(wallObject, wallObjectChanged.getTile().getRenderLevel(), 1, 1, wallObject.getOrientationA());
+		sceneUploader.markDirty(wallObjectChanged.getTile());
 	}
 
 	@Subscribe
@@ -2793,6 +3688,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		WallObject wallObject = wallObjectDespawned.getWallObject();
 		lightManager.removeObjectLight(wallObject);
+		sceneUploader.markDirty(wallObjectDespawned.getTile());
 	}
 
 	@Subscribe
@@ -2800,6 +3696,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		DecorativeObject decorativeObject = decorativeObjectSpawned.getDecorativeObject();
 		lightManager.addObjectLight(decorativeObject, decorativeObjectSpawned.getTile().getRenderLevel());
+		sceneUploader.markDirty(decorativeObjectSpawned.getTile());
 	}
 
 	@Subscribe
@@ -2809,6 +3706,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		DecorativeObject decorativeObject = decorativeObjectChanged.getDecorativeObject();
 		lightManager.removeObjectLight(previous);
 		lightManager.addObjectLight(decorativeObject, decorativeObjectChanged.getTile().getRenderLevel());
+		sceneUploader.markDirty(decorativeObjectChanged.getTile());
 	}
 
 	@Subscribe
@@ -2816,6 +3714,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		DecorativeObject decorativeObject = decorativeObjectDespawned.getDecorativeObject();
 		lightManager.removeObjectLight(decorativeObject);
+		sceneUploader.markDirty(decorativeObjectDespawned.getTile());
 	}
 
 	@Subscribe
@@ -2823,6 +3722,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		GroundObject groundObject = groundObjectSpawned.getGroundObject();
 		lightManager.addObjectLight(groundObject, groundObjectSpawned.getTile().getRenderLevel());
+		sceneUploader.markDirty(groundObjectSpawned.getTile());
 	}
 
 	@Subscribe
@@ -2832,6 +3732,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 		GroundObject groundObject = groundObjectChanged.getGroundObject();
 		lightManager.removeObjectLight(previous);
 		lightManager.addObjectLight(groundObject, groundObjectChanged.getTile().getRenderLevel());
+		sceneUploader.markDirty(groundObjectChanged.getTile());
 	}
 
 	@Subscribe
@@ -2839,6 +3740,7 @@ public class HdPlugin extends Plugin implements DrawCallbacks
 	{
 		GroundObject groundObject = groundObjectDespawned.getGroundObject();
 		lightManager.removeObjectLight(groundObject);
+		sceneUploader.markDirty(groundObjectDespawned.getTile());
 	}
 
 	@Subscribe
@@ -235,7 +235,7 @@ public interface HdPluginConfig extends Config
 	@ConfigItem(
 		keyName = "maxDynamicLights",
 		name = "Dynamic Lights",
-		description = "The maximum number of dynamic lights visible at one time. Reducing this will improve performance.",
+		description = "The maximum number of dynamic lights visible at one time. Reducing this will improve performance. More than 100 requires clustered lighting.",
 		position = 101,
 		section = lightingSettings
 	)
@@ -544,4 +544,76 @@ public interface HdPluginConfig extends Config
 			section = experimentalSettings
 	)
 	default boolean disableModelBatching() { return false; }
+
+	@ConfigItem(
+			keyName = "parallelSceneUpload",
+			name = "Parallel scene upload",
+			description = "Spreads scene loading across multiple CPU cores, which can reduce stutters when loading new areas.",
+			position = 403,
+			section = experimentalSettings
+	)
+	default boolean parallelSceneUpload() { return false; }
+
+	@ConfigItem(
+			keyName = "persistentModelCache",
+			name = "Persistent model cache",
+			description = "Saves model colors to disk, so they don't need to be recalculated after restarting the client.",
+			position = 404,
+			section = experimentalSettings
+	)
+	default boolean persistentModelCache() { return false; }
+
+	@ConfigItem(
+			keyName = "verifyModelHashes",
+			name = "Verify model hashes",
+			description = "Computes a second hash for each animated model, to detect hash collisions which could cause the wrong model to be drawn.",
+			position = 405,
+			section = experimentalSettings
+	)
+	default boolean verifyModelHashes() { return false; }
+
+	@ConfigItem(
+			keyName = "persistentBufferStreaming",
+			name = "Persistent buffer streaming",
+			description = "Writes per-frame model data directly into persistently mapped GPU buffers, when supported by the GPU driver.",
+			position = 406,
+			section = experimentalSettings
+	)
+	default boolean persistentBufferStreaming() { return false; }
+
+	@ConfigItem(
+			keyName = "clusteredLighting",
+			name = "Clustered lighting",
+			description = "Groups dynamic lights by the part of the view they can reach, so each pixel is only lit by nearby lights. Allows for more than 100 dynamic lights.",
+			position = 407,
+			section = experimentalSettings
+	)
+	default boolean clusteredLighting() { return false; }
+
+	@ConfigItem(
+			keyName = "gpuTileCulling",
+			name = "GPU tile culling",
+			description = "Culls ground tiles outside of the view on the GPU, instead of sending every visible tile to the GPU each frame. Reduces CPU usage at high draw distances.",
+			position = 408,
+			section = experimentalSettings
+	)
+	default boolean gpuTileCulling() { return false; }
+
+	@ConfigItem(
+			keyName = "cpuCompute",
+			name = "CPU compute",
+			description = "Transforms and sorts models on the CPU instead of with compute shaders, for GPU drivers with broken compute shader support. Much slower. Takes effect after restarting the plugin.",
+			position = 409,
+			section = experimentalSettings
+	)
+	default boolean cpuCompute() { return false; }
+
+	@ConfigItem(
+			keyName = "computeSizeClasses",
+			name = "Compute size classes",
+			description = "Comma-separated face counts of the largest model sorted by each compute shader. Models are sorted by the smallest one they fit in. The time spent on each is shown in the frame timings overlay of the developer tools.",
+			position = 410,
+			section = experimentalSettings
+	)
+	default String computeSizeClasses() { return "64,256,512,1024,2048,6144"; }
 }
@@ -34,7 +34,9 @@ public enum MaxDynamicLights
 	NONE("None", 0),
 	FEW("Few (25)", 25),
 	SOME("Some (50)", 50),
-	MANY("Many (100)", 100);
+	MANY("Many (100)", 100),
+	LOTS("Lots (250)", 250),
+	TONS("Tons (500)", 500);
 
 	private final String name;
 	private final int value;
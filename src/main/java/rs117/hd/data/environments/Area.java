@@ -853,6 +853,11 @@ public enum Area
 
 	public boolean containsPoint(int pointX, int pointY, int pointZ)
 	{
+		if (!AreaIndex.mayContainPoint(this, pointX, pointY))
+		{
+			return false;
+		}
+
 		for (Rect rect : this.getRects())
 		{
 			if (rect.containsPoint(pointX, pointY, pointZ))
@@ -0,0 +1,75 @@
+package rs117.hd.data.environments;
+
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import rs117.hd.utils.Rect;
+
+/**
+ * A grid over the world with one bucket per map region, each holding the set of areas which have a rect
+ * overlapping it. Checking whether a point is in an area then only has to look at the area's rects if the
+ * area is anywhere near the point. Points outside the grid fall back to checking the rects.
+ */
+public class AreaIndex
+{
+	private static final int BUCKET_SHIFT = 6;
+	private static final int GRID_SIZE = 256;
+	private static final Area[] AREAS = Area.values();
+	private static final int WORDS = (AREAS.length + 63) >>> 6;
+
+	// bitsets of area ordinals, shared between buckets with the same areas
+	private static final long[][] BUCKETS = new long[GRID_SIZE * GRID_SIZE][];
+
+	static
+	{
+		long[] masks = new long[BUCKETS.length * WORDS];
+		for (Area area : AREAS)
+		{
+			int word = area.ordinal() >>> 6;
+			long bit = 1L << area.ordinal();
+			for (Rect rect : area.getRects())
+			{
+				int minX = Math.max(0, rect.getMinX() >> BUCKET_SHIFT);
+				int minY = Math.max(0, rect.getMinY() >> BUCKET_SHIFT);
+				int maxX = Math.min(GRID_SIZE - 1, rect.getMaxX() >> BUCKET_SHIFT);
+				int maxY = Math.min(GRID_SIZE - 1, rect.getMaxY() >> BUCKET_SHIFT);
+				for (int x = minX; x <= maxX; x++)
+				{
+					for (int y = minY; y <= maxY; y++)
+					{
+						masks[(x * GRID_SIZE + y) * WORDS + word] |= bit;
+					}
+				}
+			}
+		}
+
+		// most buckets only overlap the same few large areas
+		Map<LongBuffer, long[]> distinct = new HashMap<>();
+		for (int i = 0; i < BUCKETS.length; i++)
+		{
+			LongBuffer mask = LongBuffer.wrap(masks, i * WORDS, WORDS).slice();
+			BUCKETS[i] = distinct.computeIfAbsent(mask, m ->
+			{
+				long[] copy = new long[WORDS];
+				m.duplicate().get(copy);
+				return copy;
+			});
+		}
+	}
+
+	/**
+	 * @return false if none of the area's rects are near the point, and true if they may contain it
+	 */
+	public static boolean mayContainPoint(Area area, int pointX, int pointY)
+	{
+		int x = pointX >> BUCKET_SHIFT;
+		int y = pointY >> BUCKET_SHIFT;
+		if (x < 0 || y < 0 || x >= GRID_SIZE || y >= GRID_SIZE)
+		{
+			return true;
+		}
+
+		int ordinal = area.ordinal();
+		return (BUCKETS[x * GRID_SIZE + y][ordinal >>> 6] & 1L << ordinal) != 0;
+	}
+}
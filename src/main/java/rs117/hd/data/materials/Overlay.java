@@ -511,10 +511,11 @@ public enum Overlay
 			worldPoint = WorldPoint.fromLocalInstance(client, localPoint);
 		}
 
-		int worldX = worldPoint.getX();
-		int worldY = worldPoint.getY();
-		int worldZ = worldPoint.getPlane();
+		return getOverlay(overlayId, worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+	}
 
+	public static Overlay getOverlay(int overlayId, int worldX, int worldY, int worldZ)
+	{
 		List<Overlay> overlays = GROUND_MATERIAL_MAP.get(overlayId);
 		for (Overlay overlay : overlays)
 		{
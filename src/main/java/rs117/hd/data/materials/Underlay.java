@@ -401,10 +401,11 @@ public enum Underlay
 			worldPoint = WorldPoint.fromLocalInstance(client, localPoint);
 		}
 
-		int worldX = worldPoint.getX();
-		int worldY = worldPoint.getY();
-		int worldZ = worldPoint.getPlane();
+		return getUnderlay(underlayId, worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+	}
 
+	public static Underlay getUnderlay(int underlayId, int worldX, int worldY, int worldZ)
+	{
 		List<Underlay> underlays = GROUND_MATERIAL_MAP.get(underlayId);
 		for (Underlay underlay : underlays)
 		{
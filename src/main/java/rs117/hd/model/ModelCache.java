@@ -1,26 +1,365 @@
 package rs117.hd.model;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-public class ModelCache extends LinkedHashMap<Integer, ModelData> {
-    private final int capacity;
+/**
+ * Caches model colors by their primitive hash, without allocating per entry.
+ * Each entry also stores a check value, such as a secondary hash, which must match on lookup.
+ *
+ * Colors are stored in 128 KiB pages of ints, which are allocated on demand up to a byte budget.
+ * Each page is split into equally sized slots of a power-of-two size class, and an entry occupies one slot
+ * of the smallest class which fits its colors. When a size class runs out of slots, entries are evicted
+ * with the CLOCK algorithm, giving entries which were used since the clock hand last passed a second chance.
+ * If a size class has no pages at all once the budget is used up, a page is taken from the largest class.
+ *
+ * Not thread-safe.
+ */
+public class ModelCache {
+    private static final int MIN_SLOT_SHIFT = 4; // 16 ints, the colors of 4 faces
+    private static final int PAGE_SHIFT = 15;
+    private static final int PAGE_INTS = 1 << PAGE_SHIFT;
+    private static final int PAGE_BYTES = PAGE_INTS * 4;
+    private static final int SIZE_CLASSES = PAGE_SHIFT - MIN_SLOT_SHIFT + 1;
+    private static final int SLOT_BITS = PAGE_SHIFT - MIN_SLOT_SHIFT;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
 
-    public ModelCache(int capacity) {
-        super(capacity, 0.75f, true);
-        this.capacity = capacity;
+    private static final byte FREE = 0;
+    private static final byte OCCUPIED = 1;
+    private static final byte REFERENCED = 2;
+
+    private static final int INITIAL_TABLE_CAPACITY = 1024;
+
+    private final int maxPages;
+    // pages and their slot metadata are kept for reuse when the cache is cleared
+    private final int[][] pages;
+    private final long[][] slotKeys;
+    private final long[][] slotChecks;
+    private final byte[][] slotStates;
+    // the size class each page is assigned to, or -1
+    private final int[] pageClasses;
+    private int allocatedPages;
+    private final int[] unassignedPages;
+    private int unassignedPageCount;
+
+    private final int[][] classPages = new int[SIZE_CLASSES][];
+    private final int[] classPageCounts = new int[SIZE_CLASSES];
+    // the next slot which hasn't been used yet in the last page of each class
+    private final int[] fillSlots = new int[SIZE_CLASSES];
+    private final int[] clockPages = new int[SIZE_CLASSES];
+    private final int[] clockSlots = new int[SIZE_CLASSES];
+
+    // open addressing hash table from keys to slot handles, with linear probing
+    private long[] tableKeys;
+    // slot handle + 1, so 0 marks an empty bucket
+    private int[] tableValues;
+    private int tableMask;
+    private int size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long collisions;
+
+    public ModelCache(int byteBudget) {
+        maxPages = Math.max(1, byteBudget / PAGE_BYTES);
+        pages = new int[maxPages][];
+        slotKeys = new long[maxPages][];
+        slotChecks = new long[maxPages][];
+        slotStates = new byte[maxPages][];
+        pageClasses = new int[maxPages];
+        unassignedPages = new int[maxPages];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            classPages[i] = new int[maxPages];
+        }
+        allocateTable(INITIAL_TABLE_CAPACITY);
+    }
+
+    /**
+     * Looks up the colors of a model, and points the provided {@link ModelData} at them if found.
+     *
+     * @param check compared against the check stored with the entry, to guard against hash collisions
+     * @return true if the colors were found
+     */
+    public boolean get(long key, long check, ModelData out) {
+        int handle = tableGet(key);
+        if (handle == -1) {
+            misses++;
+            return false;
+        }
+
+        int page = handle >>> SLOT_BITS;
+        int slot = handle & SLOT_MASK;
+        if (slotChecks[page][slot] != check) {
+            misses++;
+            collisions++;
+            return false;
+        }
+
+        hits++;
+        slotStates[page][slot] = REFERENCED;
+        out.setColors(pages[page], slot << (pageClasses[page] + MIN_SLOT_SHIFT));
+        return true;
+    }
+
+    /**
+     * Copies the first {@code length} colors into the cache, replacing any existing entry with the same key,
+     * and points the provided {@link ModelData} at the cached copy.
+     *
+     * @return false if the colors couldn't be cached, in which case the {@link ModelData} is left untouched
+     */
+    public boolean put(long key, long check, int[] colors, int length, ModelData out) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass >= SIZE_CLASSES) {
+            return false;
+        }
+
+        int existing = tableGet(key);
+        if (existing != -1) {
+            slotStates[existing >>> SLOT_BITS][existing & SLOT_MASK] = FREE;
+            tableRemove(key);
+        }
+
+        int handle = allocate(sizeClass);
+        if (handle == -1) {
+            return false;
+        }
+
+        int page = handle >>> SLOT_BITS;
+        int slot = handle & SLOT_MASK;
+        int offset = slot << (sizeClass + MIN_SLOT_SHIFT);
+        System.arraycopy(colors, 0, pages[page], offset, length);
+        slotKeys[page][slot] = key;
+        slotChecks[page][slot] = check;
+        slotStates[page][slot] = OCCUPIED;
+        tableInsert(key, handle);
+
+        out.setColors(pages[page], offset);
+        return true;
+    }
+
+    /**
+     * Removes all entries. Pages stay allocated for reuse, and the counters are left as they are.
+     */
+    public void clear() {
+        Arrays.fill(tableValues, 0);
+        size = 0;
+
+        unassignedPageCount = 0;
+        for (int page = 0; page < allocatedPages; page++) {
+            pageClasses[page] = -1;
+            unassignedPages[unassignedPageCount++] = page;
+        }
+        Arrays.fill(classPageCounts, 0);
+        Arrays.fill(fillSlots, 0);
+        Arrays.fill(clockPages, 0);
+        Arrays.fill(clockSlots, 0);
+    }
+
+    public int size() {
+        return size;
     }
 
-    public ModelData get(int key) {
-        return super.get(key);
+    public long getAllocatedBytes() {
+        return (long) allocatedPages * PAGE_BYTES;
     }
 
-    public void put(int key, ModelData value) {
-        super.put(key, value);
+    public long getHits() {
+        return hits;
     }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<Integer, ModelData> eldest) {
-        return this.size() > this.capacity;
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of lookups which found an entry with the same key, but a different check
+     */
+    public long getCollisions() {
+        return collisions;
+    }
+
+    private static int sizeClass(int length) {
+        if (length <= 1 << MIN_SLOT_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SLOT_SHIFT;
+    }
+
+    private static int slotsPerPage(int sizeClass) {
+        return PAGE_INTS >> (sizeClass + MIN_SLOT_SHIFT);
+    }
+
+    /**
+     * @return the handle of a free slot in the size class, or -1 if none could be made available
+     */
+    private int allocate(int sizeClass) {
+        final int slots = slotsPerPage(sizeClass);
+        final int pageCount = classPageCounts[sizeClass];
+
+        // slots which haven't been used since the page was assigned
+        if (pageCount > 0 && fillSlots[sizeClass] < slots) {
+            return classPages[sizeClass][pageCount - 1] << SLOT_BITS | fillSlots[sizeClass]++;
+        }
+
+        int page = -1;
+        if (unassignedPageCount > 0) {
+            page = unassignedPages[--unassignedPageCount];
+        } else if (allocatedPages < maxPages) {
+            page = allocatedPages++;
+            pages[page] = new int[PAGE_INTS];
+            slotKeys[page] = new long[1 << SLOT_BITS];
+            slotChecks[page] = new long[1 << SLOT_BITS];
+            slotStates[page] = new byte[1 << SLOT_BITS];
+        } else if (pageCount > 0) {
+            return sweep(sizeClass, slots);
+        } else {
+            page = stealPage(sizeClass);
+            if (page == -1) {
+                return -1;
+            }
+        }
+
+        Arrays.fill(slotStates[page], FREE);
+        pageClasses[page] = sizeClass;
+        classPages[sizeClass][classPageCounts[sizeClass]++] = page;
+        fillSlots[sizeClass] = 1;
+        return page << SLOT_BITS;
+    }
+
+    private int sweep(int sizeClass, int slots) {
+        final int[] pageList = classPages[sizeClass];
+        final int pageCount = classPageCounts[sizeClass];
+
+        // after one full revolution every slot has lost its second chance, so two are always enough
+        for (int i = 2 * pageCount * slots; i >= 0; i--) {
+            int page = pageList[clockPages[sizeClass]];
+            int slot = clockSlots[sizeClass];
+            if (++clockSlots[sizeClass] == slots) {
+                clockSlots[sizeClass] = 0;
+                if (++clockPages[sizeClass] == pageCount) {
+                    clockPages[sizeClass] = 0;
+                }
+            }
+
+            byte state = slotStates[page][slot];
+            if (state == REFERENCED) {
+                slotStates[page][slot] = OCCUPIED;
+                continue;
+            }
+            if (state == OCCUPIED) {
+                tableRemove(slotKeys[page][slot]);
+                evictions++;
+            }
+            return page << SLOT_BITS | slot;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Evicts every entry in the last page of the size class with the most pages, and unassigns the page.
+     */
+    private int stealPage(int sizeClass) {
+        int victim = -1;
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            if (i != sizeClass && classPageCounts[i] > 0 && (victim == -1 || classPageCounts[i] > classPageCounts[victim])) {
+                victim = i;
+            }
+        }
+        if (victim == -1) {
+            return -1;
+        }
+
+        int page = classPages[victim][--classPageCounts[victim]];
+        int slots = slotsPerPage(victim);
+        for (int slot = 0; slot < slots; slot++) {
+            if (slotStates[page][slot] != FREE) {
+                tableRemove(slotKeys[page][slot]);
+                evictions++;
+            }
+        }
+
+        // the remaining pages of the victim have no unused slots, and its clock hand may point past the end
+        fillSlots[victim] = slots;
+        if (clockPages[victim] >= classPageCounts[victim]) {
+            clockPages[victim] = 0;
+            clockSlots[victim] = 0;
+        }
+        return page;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void allocateTable(int capacity) {
+        tableKeys = new long[capacity];
+        tableValues = new int[capacity];
+        tableMask = capacity - 1;
+    }
+
+    private int tableGet(long key) {
+        for (int i = mix(key) & tableMask; tableValues[i] != 0; i = (i + 1) & tableMask) {
+            if (tableKeys[i] == key) {
+                return tableValues[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private void tableInsert(long key, int handle) {
+        if (size + 1 > (tableMask + 1) >> 1) {
+            long[] oldKeys = tableKeys;
+            int[] oldValues = tableValues;
+            allocateTable(oldKeys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    int j = mix(oldKeys[i]) & tableMask;
+                    while (tableValues[j] != 0) {
+                        j = (j + 1) & tableMask;
+                    }
+                    tableKeys[j] = oldKeys[i];
+                    tableValues[j] = oldValues[i];
+                }
+            }
+        }
+
+        int i = mix(key) & tableMask;
+        while (tableValues[i] != 0) {
+            i = (i + 1) & tableMask;
+        }
+        tableKeys[i] = key;
+        tableValues[i] = handle + 1;
+        size++;
+    }
+
+    private void tableRemove(long key) {
+        int i = mix(key) & tableMask;
+        while (tableKeys[i] != key) {
+            if (tableValues[i] == 0) {
+                return;
+            }
+            i = (i + 1) & tableMask;
+        }
+        if (tableValues[i] == 0) {
+            return;
+        }
+        size--;
+
+        // shift following entries of the same probe sequence back, so lookups don't stop at the gap
+        for (int j = (i + 1) & tableMask; tableValues[j] != 0; j = (j + 1) & tableMask) {
+            int ideal = mix(tableKeys[j]) & tableMask;
+            if (((j - ideal) & tableMask) >= ((j - i) & tableMask)) {
+                tableKeys[i] = tableKeys[j];
+                tableValues[i] = tableValues[j];
+                i = j;
+            }
+        }
+        tableValues[i] = 0;
     }
 }
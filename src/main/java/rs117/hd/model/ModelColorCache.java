@@ -0,0 +1,368 @@
+package rs117.hd.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An on-disk cache of model colors, which lets the color pass in {@link ModelPusher} be skipped
+ * for models that were already seen in a previous session.
+ *
+ * The file is memory-mapped, and consists of a header followed by records which are only ever appended.
+ * Each record is stamped with the last session it was used in, and when the file is loaded on startup,
+ * it is compacted by dropping superseded records and the least recently used ones until it fits the size cap.
+ * Once the cap is reached during a session, new colors are no longer written until the next compaction.
+ */
+@Singleton
+@Slf4j
+public class ModelColorCache {
+    private static final File CACHE_FILE = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "model-colors.cache");
+
+    private static final int MAGIC = 0x31313743; // "117C"
+    // bump whenever the output of the color pass changes, to invalidate existing caches
+    private static final int VERSION = 2;
+
+    private static final int MAX_FILE_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_MAPPING_SIZE = 1024 * 1024;
+
+    // header: magic, version, session, end of the last complete record
+    private static final int HEADER_SIZE = 16;
+    private static final int SESSION_OFFSET = 8;
+    private static final int END_OFFSET = 12;
+
+    // record: key, check, last used session, color count, followed by the colors
+    private static final int RECORD_HEADER_SIZE = 24;
+    private static final int CHECK_OFFSET = 8;
+    private static final int LAST_USED_OFFSET = 16;
+    private static final int COLOR_COUNT_OFFSET = 20;
+
+    private final File cacheFile;
+    private final int maxFileSize;
+    // when compacting, keep the most recently used records up to this size, leaving room to grow
+    private final int compactedSize;
+
+    private ExecutorService loader;
+    private Future<?> loading;
+    // published by the loader thread once the cache is ready to be used
+    private volatile MappedCache cache;
+
+    private static class MappedCache {
+        private final RandomAccessFile file;
+        private final Map<Long, Integer> offsets;
+        private final int session;
+        private MappedByteBuffer buffer;
+        private int end;
+        private boolean full;
+
+        private MappedCache(RandomAccessFile file, Map<Long, Integer> offsets, int session, int end) {
+            this.file = file;
+            this.offsets = offsets;
+            this.session = session;
+            this.end = end;
+        }
+    }
+
+    public ModelColorCache() {
+        this(CACHE_FILE, MAX_FILE_SIZE);
+    }
+
+    ModelColorCache(File cacheFile, int maxFileSize) {
+        this.cacheFile = cacheFile;
+        this.maxFileSize = maxFileSize;
+        compactedSize = maxFileSize / 4 * 3;
+    }
+
+    /**
+     * Starts loading the cache in the background. Lookups miss until loading is done.
+     */
+    public synchronized void startUp() {
+        if (loader != null) {
+            return;
+        }
+
+        loader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("rlhd-model-color-cache")
+            .setDaemon(true)
+            .build());
+        final ExecutorService executor = loader;
+        loading = executor.submit(() -> {
+            try {
+                MappedCache loaded = load();
+                synchronized (this) {
+                    if (loader != executor) {
+                        // shut down while loading
+                        loaded.file.close();
+                        return;
+                    }
+                    cache = loaded;
+                }
+                log.debug("Loaded {} cached model colors", loaded.offsets.size());
+            } catch (IOException e) {
+                log.warn("Unable to load the model color cache", e);
+            }
+        });
+    }
+
+    /**
+     * Waits for the cache to finish loading after {@link #startUp()}.
+     */
+    void awaitLoaded() throws InterruptedException, ExecutionException {
+        Future<?> loading;
+        synchronized (this) {
+            loading = this.loading;
+        }
+        if (loading != null) {
+            loading.get();
+        }
+    }
+
+    public synchronized void shutDown() {
+        if (loader != null) {
+            loader.shutdown();
+            loader = null;
+            loading = null;
+        }
+
+        MappedCache cache = this.cache;
+        this.cache = null;
+        if (cache != null) {
+            try {
+                cache.buffer.force();
+                cache.file.close();
+            } catch (IOException e) {
+                log.warn("Unable to close the model color cache", e);
+            }
+        }
+    }
+
+    /**
+     * @param hash       the color cache hash of the model
+     * @param configBits the config options affecting the output of the color pass
+     */
+    public static long key(long hash, int configBits) {
+        return hash ^ configBits * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Copies the cached colors into the provided array.
+     *
+     * @return the number of colors copied, or -1 if the colors aren't cached or the cache is still loading
+     */
+    public int get(long key, long check, int[] out) {
+        final MappedCache cache = this.cache;
+        if (cache == null) {
+            return -1;
+        }
+
+        Integer offset = cache.offsets.get(key);
+        if (offset == null) {
+            return -1;
+        }
+
+        MappedByteBuffer buffer = cache.buffer;
+        int colorCount = buffer.getInt(offset + COLOR_COUNT_OFFSET);
+        if (buffer.getLong(offset + CHECK_OFFSET) != check || colorCount > out.length) {
+            // hash collision with a different model
+            return -1;
+        }
+
+        if (buffer.getInt(offset + LAST_USED_OFFSET) != cache.session) {
+            buffer.putInt(offset + LAST_USED_OFFSET, cache.session);
+        }
+
+        IntBuffer ints = ((ByteBuffer) buffer.duplicate().position(offset + RECORD_HEADER_SIZE)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        ints.get(out, 0, colorCount);
+        return colorCount;
+    }
+
+    public void put(long key, long check, int[] colors, int length) {
+        final MappedCache cache = this.cache;
+        if (cache == null || cache.full) {
+            return;
+        }
+
+        final int recordSize = RECORD_HEADER_SIZE + length * 4;
+        final int offset = cache.end;
+        if (offset + recordSize > maxFileSize) {
+            log.debug("Model color cache is full, new colors will be cached after the next compaction");
+            cache.full = true;
+            return;
+        }
+
+        try {
+            if (offset + recordSize > cache.buffer.capacity()) {
+                int size = cache.buffer.capacity();
+                while (size < offset + recordSize) {
+                    size *= 2;
+                }
+                cache.buffer = map(cache.file, Math.min(size, maxFileSize));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to grow the model color cache", e);
+            cache.full = true;
+            return;
+        }
+
+        MappedByteBuffer buffer = cache.buffer;
+        buffer.putLong(offset, key);
+        buffer.putLong(offset + CHECK_OFFSET, check);
+        buffer.putInt(offset + LAST_USED_OFFSET, cache.session);
+        buffer.putInt(offset + COLOR_COUNT_OFFSET, length);
+        ((ByteBuffer) buffer.duplicate().position(offset + RECORD_HEADER_SIZE)).order(ByteOrder.nativeOrder()).asIntBuffer().put(colors, 0, length);
+
+        // only move the end once the record is complete, so an interrupted write leaves the file intact
+        cache.end = offset + recordSize;
+        buffer.putInt(END_OFFSET, cache.end);
+        cache.offsets.put(key, offset);
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile file, int size) throws IOException {
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private MappedCache load() throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+
+        int session = 1;
+        if (cacheFile.exists()) {
+            session = compact();
+        }
+
+        if (session == 1) {
+            writeEmpty(cacheFile, session);
+        }
+
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        try {
+            int fileSize = (int) Math.min(file.length(), maxFileSize);
+            MappedByteBuffer buffer = map(file, Math.max(fileSize, Math.min(INITIAL_MAPPING_SIZE, maxFileSize)));
+            buffer.putInt(SESSION_OFFSET, session);
+            int end = buffer.getInt(END_OFFSET);
+
+            Map<Long, Integer> offsets = new HashMap<>();
+            for (int offset = HEADER_SIZE; offset < end; offset += recordSize(buffer, offset)) {
+                offsets.put(buffer.getLong(offset), offset);
+            }
+
+            MappedCache cache = new MappedCache(file, offsets, session, end);
+            cache.buffer = buffer;
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static int recordSize(ByteBuffer buffer, int offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt(offset + COLOR_COUNT_OFFSET) * 4;
+    }
+
+    private static void writeEmpty(File file, int session) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION).putInt(session).putInt(HEADER_SIZE).flip();
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+            channel.truncate(0);
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * Rewrites the cache file without superseded records, keeping only the most recently used records
+     * which fit in {@link #compactedSize}. The old file is read through its channel rather than mapped,
+     * since some platforms don't allow replacing a file which is still mapped.
+     *
+     * @return the session number to use, or 1 if the existing file was invalid
+     */
+    private int compact() throws IOException {
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        int session;
+
+        try (FileChannel in = new RandomAccessFile(cacheFile, "r").getChannel()) {
+            long length = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            if (length < HEADER_SIZE || length > maxFileSize || in.read(header, 0) != HEADER_SIZE) {
+                return 1;
+            }
+
+            int end = header.getInt(END_OFFSET);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || end < HEADER_SIZE || end > length) {
+                log.debug("Discarding outdated model color cache");
+                return 1;
+            }
+            session = header.getInt(SESSION_OFFSET) + 1;
+
+            // later records supersede earlier ones with the same key
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.nativeOrder());
+            Map<Long, int[]> latest = new HashMap<>();
+            for (int offset = HEADER_SIZE; offset < end; ) {
+                recordHeader.clear();
+                if (offset + RECORD_HEADER_SIZE > end || in.read(recordHeader, offset) != RECORD_HEADER_SIZE) {
+                    return 1;
+                }
+                int recordSize = recordSize(recordHeader, 0);
+                if (recordSize < RECORD_HEADER_SIZE || offset + recordSize > end) {
+                    return 1;
+                }
+                latest.put(recordHeader.getLong(0), new int[] { offset, recordSize, recordHeader.getInt(LAST_USED_OFFSET) });
+                offset += recordSize;
+            }
+
+            List<int[]> records = new ArrayList<>(latest.values());
+            records.sort((a, b) -> Integer.compare(b[2], a[2]));
+
+            try (FileChannel out = new RandomAccessFile(tempFile, "rw").getChannel()) {
+                out.truncate(0);
+                int size = HEADER_SIZE;
+                for (int[] record : records) {
+                    if (size + record[1] > compactedSize) {
+                        break;
+                    }
+                    long copied = 0;
+                    while (copied < record[1]) {
+                        out.position(size + copied);
+                        copied += in.transferTo(record[0] + copied, record[1] - copied, out);
+                    }
+                    size += record[1];
+                }
+
+                header.clear();
+                header.putInt(MAGIC).putInt(VERSION).putInt(session).putInt(size).flip();
+                out.write(header, 0);
+            }
+        }
+
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // the file may still be mapped by a previous session, in which case it's used as is
+            log.debug("Unable to replace the model color cache with its compacted version", e);
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        return session;
+    }
+}
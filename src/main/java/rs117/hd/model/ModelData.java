@@ -1,25 +1,20 @@
 package rs117.hd.model;
 
+/**
+ * A view of the colors of a model, which may be stored at an offset within a larger array.
+ */
 class ModelData
 {
     private int[] colors;
-    private int faceCount;
+    private int offset;
 
-    public int getFaceCount() {
-        return faceCount;
-    }
-
-    public ModelData setFaceCount(int faceCount) {
-        this.faceCount = faceCount;
-        return this;
-    }
-
-    public ModelData setColors(int[] colors) {
+    public ModelData setColors(int[] colors, int offset) {
         this.colors = colors;
+        this.offset = offset;
         return this;
     }
 
     public int getColorForFace(int face, int index) {
-        return this.colors[(face * 4) + index];
+        return this.colors[offset + (face * 4) + index];
     }
-}
\ No newline at end of file
+}
@@ -3,53 +3,238 @@ package rs117.hd.model;
 import net.runelite.api.Model;
 
 import javax.inject.Singleton;
-import java.util.Arrays;
 
+/**
+ * Produces 64-bit hashes identifying the geometry and colors of models, for batching and caching.
+ *
+ * Arrays are hashed in a single streaming pass, two 64-bit lanes at a time, using the rounds and final mix
+ * of xxHash64. Each face array is hashed once per model, and the results are combined without allocating.
+ *
+ * In verification mode, a second hash with an independent seed is computed for each model. It can be stored
+ * alongside the primary hash and compared on lookup, to detect primary hash collisions before they cause
+ * wrong geometry or colors to be drawn. Outside of verification mode, the face count serves as a weaker check.
+ */
 @Singleton
 public class ModelHasher {
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final long PRIMARY_SEED = 0;
+    private static final long VERIFICATION_SEED = 0x5DEECE66DL;
+    // mixed in for arrays which are null, to tell them apart from empty arrays
+    private static final long NULL_ARRAY = 0xA0761D6478BD642FL;
+
     private Model model;
-    private int faceColors1Hash;
-    private int faceColors2Hash;
-    private int faceColors3Hash;
-    private int faceTransparenciesHash;
-    private int faceTexturesHash;
-    private int faceTexturesUvHash;
+    private boolean verificationEnabled;
+    private long collisionCount;
+
+    private final FaceHashes primary = new FaceHashes();
+    private final FaceHashes verification = new FaceHashes();
+
+    private static class FaceHashes {
+        private long faceColors1Hash;
+        private long faceColors2Hash;
+        private long faceColors3Hash;
+        private long faceTransparenciesHash;
+        private long faceTexturesHash;
+        private long faceTexturesUvHash;
+
+        private void set(Model model, long seed) {
+            faceColors1Hash = hash(model.getFaceColors1(), seed);
+            faceColors2Hash = hash(model.getFaceColors2(), seed);
+            faceColors3Hash = hash(model.getFaceColors3(), seed);
+            faceTransparenciesHash = hash(model.getFaceTransparencies(), seed);
+            faceTexturesHash = hash(model.getFaceTextures(), seed);
+            faceTexturesUvHash = hash(model.getFaceTextureUVCoordinates(), seed);
+        }
+    }
 
     public void setModel(Model model) {
         this.model = model;
-        this.faceColors1Hash = Arrays.hashCode(model.getFaceColors1());
-        this.faceColors2Hash = Arrays.hashCode(model.getFaceColors2());
-        this.faceColors3Hash = Arrays.hashCode(model.getFaceColors3());
-        this.faceTransparenciesHash = Arrays.hashCode(model.getFaceTransparencies());
-        this.faceTexturesHash = Arrays.hashCode(model.getFaceTextures());
-        this.faceTexturesUvHash = Arrays.hashCode(model.getFaceTextureUVCoordinates());
-    }
-
-    public int calculateColorCacheHash() {
-        return Arrays.hashCode(new int[] {
-                this.faceColors1Hash,
-                this.faceColors2Hash,
-                this.faceColors3Hash,
-                this.faceTransparenciesHash,
-                this.faceTexturesHash,
-                this.faceTexturesUvHash,
-                this.model.getOverrideAmount(),
-                this.model.getOverrideHue(),
-                this.model.getOverrideSaturation(),
-                this.model.getOverrideLuminance()
-        });
-    }
-
-    public int calculateBatchHash() {
-        return Arrays.hashCode(new int[] {
-                Arrays.hashCode(this.model.getVerticesX()),
-                Arrays.hashCode(this.model.getVerticesY()),
-                Arrays.hashCode(this.model.getVerticesZ()),
-                this.faceColors1Hash,
-                this.faceColors2Hash,
-                this.faceColors3Hash,
-                this.faceTexturesHash,
-                this.faceTexturesUvHash,
-        });
-    }
-}
\ No newline at end of file
+        primary.set(model, PRIMARY_SEED);
+        if (verificationEnabled) {
+            verification.set(model, VERIFICATION_SEED);
+        }
+    }
+
+    public void setVerificationEnabled(boolean verificationEnabled) {
+        this.verificationEnabled = verificationEnabled;
+    }
+
+    public boolean isVerificationEnabled() {
+        return verificationEnabled;
+    }
+
+    /**
+     * Should be called when a lookup finds an entry with a matching hash, but a mismatching check.
+     */
+    public void countCollision() {
+        collisionCount++;
+    }
+
+    public long getCollisionCount() {
+        return collisionCount;
+    }
+
+    public long calculateColorCacheHash() {
+        return colorCacheHash(primary, PRIMARY_SEED);
+    }
+
+    /**
+     * @return a value to store and compare alongside {@link #calculateColorCacheHash()}
+     */
+    public long calculateColorCacheCheck() {
+        return verificationEnabled ? colorCacheHash(verification, VERIFICATION_SEED) : model.getFaceCount();
+    }
+
+    public long calculateBatchHash() {
+        return batchHash(primary, PRIMARY_SEED);
+    }
+
+    /**
+     * @return a value to store and compare alongside {@link #calculateBatchHash()}
+     */
+    public long calculateBatchCheck() {
+        return verificationEnabled ? batchHash(verification, VERIFICATION_SEED) : model.getFaceCount();
+    }
+
+    private long colorCacheHash(FaceHashes hashes, long seed) {
+        long h = seed + PRIME_5;
+        h = round(h, hashes.faceColors1Hash);
+        h = round(h, hashes.faceColors2Hash);
+        h = round(h, hashes.faceColors3Hash);
+        h = round(h, hashes.faceTransparenciesHash);
+        h = round(h, hashes.faceTexturesHash);
+        h = round(h, hashes.faceTexturesUvHash);
+        h = round(h, (model.getOverrideAmount() & 0xFFL) |
+            (model.getOverrideHue() & 0xFFL) << 8 |
+            (model.getOverrideSaturation() & 0xFFL) << 16 |
+            (model.getOverrideLuminance() & 0xFFL) << 24 |
+            (long) model.getFaceCount() << 32);
+        return avalanche(h);
+    }
+
+    private long batchHash(FaceHashes hashes, long seed) {
+        long h = seed + PRIME_5;
+        h = round(h, hash(model.getVerticesX(), seed));
+        h = round(h, hash(model.getVerticesY(), seed));
+        h = round(h, hash(model.getVerticesZ(), seed));
+        h = round(h, hashes.faceColors1Hash);
+        h = round(h, hashes.faceColors2Hash);
+        h = round(h, hashes.faceColors3Hash);
+        h = round(h, hashes.faceTexturesHash);
+        h = round(h, hashes.faceTexturesUvHash);
+        h = round(h, model.getFaceCount());
+        return avalanche(h);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME_1;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= PRIME_2;
+        h ^= h >>> 29;
+        h *= PRIME_3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long merge(long acc1, long acc2, int length) {
+        return Long.rotateLeft(acc1, 1) + Long.rotateLeft(acc2, 7) * PRIME_4 + length;
+    }
+
+    static long hash(int[] array, long seed) {
+        if (array == null) {
+            return avalanche(seed ^ NULL_ARRAY);
+        }
+
+        // two independent lanes, so consecutive rounds don't have to wait on each other
+        long acc1 = seed + PRIME_1;
+        long acc2 = seed + PRIME_2;
+        final int end = array.length & ~3;
+        int i = 0;
+        for (; i < end; i += 4) {
+            acc1 = round(acc1, (array[i] & 0xFFFFFFFFL) | (long) array[i + 1] << 32);
+            acc2 = round(acc2, (array[i + 2] & 0xFFFFFFFFL) | (long) array[i + 3] << 32);
+        }
+        for (; i < array.length; i++) {
+            acc1 = round(acc1, array[i] & 0xFFFFFFFFL);
+        }
+        return avalanche(merge(acc1, acc2, array.length));
+    }
+
+    static long hash(float[] array, long seed) {
+        if (array == null) {
+            return avalanche(seed ^ NULL_ARRAY);
+        }
+
+        long acc1 = seed + PRIME_1;
+        long acc2 = seed + PRIME_2;
+        final int end = array.length & ~3;
+        int i = 0;
+        for (; i < end; i += 4) {
+            acc1 = round(acc1, (Float.floatToRawIntBits(array[i]) & 0xFFFFFFFFL) | (long) Float.floatToRawIntBits(array[i + 1]) << 32);
+            acc2 = round(acc2, (Float.floatToRawIntBits(array[i + 2]) & 0xFFFFFFFFL) | (long) Float.floatToRawIntBits(array[i + 3]) << 32);
+        }
+        for (; i < array.length; i++) {
+            acc1 = round(acc1, Float.floatToRawIntBits(array[i]) & 0xFFFFFFFFL);
+        }
+        return avalanche(merge(acc1, acc2, array.length));
+    }
+
+    static long hash(short[] array, long seed) {
+        if (array == null) {
+            return avalanche(seed ^ NULL_ARRAY);
+        }
+
+        long acc1 = seed + PRIME_1;
+        long acc2 = seed + PRIME_2;
+        final int end = array.length & ~7;
+        int i = 0;
+        for (; i < end; i += 8) {
+            acc1 = round(acc1, (array[i] & 0xFFFFL) | (array[i + 1] & 0xFFFFL) << 16 | (array[i + 2] & 0xFFFFL) << 32 | (long) array[i + 3] << 48);
+            acc2 = round(acc2, (array[i + 4] & 0xFFFFL) | (array[i + 5] & 0xFFFFL) << 16 | (array[i + 6] & 0xFFFFL) << 32 | (long) array[i + 7] << 48);
+        }
+        for (; i < array.length; i++) {
+            acc1 = round(acc1, array[i] & 0xFFFFL);
+        }
+        return avalanche(merge(acc1, acc2, array.length));
+    }
+
+    static long hash(byte[] array, long seed) {
+        if (array == null) {
+            return avalanche(seed ^ NULL_ARRAY);
+        }
+
+        long acc1 = seed + PRIME_1;
+        long acc2 = seed + PRIME_2;
+        final int end = array.length & ~15;
+        int i = 0;
+        for (; i < end; i += 16) {
+            acc1 = round(acc1, packBytes(array, i));
+            acc2 = round(acc2, packBytes(array, i + 8));
+        }
+        for (; i < array.length; i++) {
+            acc1 = round(acc1, array[i] & 0xFFL);
+        }
+        return avalanche(merge(acc1, acc2, array.length));
+    }
+
+    private static long packBytes(byte[] array, int i) {
+        return (array[i] & 0xFFL) |
+            (array[i + 1] & 0xFFL) << 8 |
+            (array[i + 2] & 0xFFL) << 16 |
+            (array[i + 3] & 0xFFL) << 24 |
+            (array[i + 4] & 0xFFL) << 32 |
+            (array[i + 5] & 0xFFL) << 40 |
+            (array[i + 6] & 0xFFL) << 48 |
+            (long) array[i + 7] << 56;
+    }
+}
@@ -14,6 +14,7 @@ import rs117.hd.data.materials.UvType;
 import rs117.hd.model.objects.ObjectProperties;
 import rs117.hd.model.objects.ObjectType;
 import rs117.hd.scene.ProceduralGenerator;
+import rs117.hd.scene.TileMaterialTable;
 import rs117.hd.data.BakedModels;
 import rs117.hd.model.objects.TzHaarRecolorType;
 import rs117.hd.utils.HDUtils;
@@ -43,6 +44,12 @@ public class ModelPusher
     @Inject
     private ProceduralGenerator proceduralGenerator;
 
+    @Inject
+    private TileMaterialTable tileMaterialTable;
+
+    @Inject
+    private ModelColorCache modelColorCache;
+
     // subtracts the X lowest lightness levels from the formula.
     // helps keep darker colors appropriately dark
     private static final int ignoreLowLightness = 3;
@@ -59,52 +66,65 @@ public class ModelPusher
 
     // same thing but for the normalBuffer and uvBuffer
     private final static float[] zeroFloats = new float[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-    private final static int[] twoInts = new int[2];
-    private final static int[] fourInts = new int[4];
-    private final static int[] eightInts = new int[8];
-    private final static int[] twelveInts = new int[12];
-    private final static float[] twelveFloats = new float[12];
-    private final static int[] modelColors = new int[HdPlugin.MAX_TRIANGLE * 4];
-    private final static ModelData tempModelData = new ModelData();
-    
-    private final Map<Integer, ModelData> modelCache = new ModelCache(4096);
+
+    // scratch arrays are kept per thread, since scene upload may push models from several worker threads at once
+    private final static ThreadLocal<Scratch> scratchBuffers = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Scratch {
+        private final int[] twoInts = new int[2];
+        private final int[] fourInts = new int[4];
+        private final int[] twelveInts = new int[12];
+        private final float[] twelveFloats = new float[12];
+        // grown for models with more faces than the compute shaders sort in shared memory
+        private int[] modelColors = new int[HdPlugin.MAX_TRIANGLE * 4];
+        private final ModelData tempModelData = new ModelData();
+    }
+
+    private static final int MODEL_CACHE_BYTES = 32 * 1024 * 1024;
+    private final ModelCache modelCache = new ModelCache(MODEL_CACHE_BYTES);
 
     public void clearModelCache() {
+        log.debug("Clearing model cache: {} entries, {} hits, {} misses, {} evictions, {} collisions",
+            modelCache.size(), modelCache.getHits(), modelCache.getMisses(), modelCache.getEvictions(), modelCache.getCollisions());
         modelCache.clear();
     }
 
-    public int[] pushModel(Renderable renderable, Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer, int tileX, int tileY, int tileZ, ObjectProperties objectProperties, ObjectType objectType, boolean noCache, int hash) {
-        final int faceCount = Math.min(model.getFaceCount(), HdPlugin.MAX_TRIANGLE);
+    public int[] pushModel(Renderable renderable, Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer, int tileX, int tileY, int tileZ, ObjectProperties objectProperties, ObjectType objectType, boolean noCache, long hash, long hashCheck) {
+        final int faceCount = model.getFaceCount();
+        final Scratch scratch = scratchBuffers.get();
+        if (scratch.modelColors.length < faceCount * 4) {
+            scratch.modelColors = new int[faceCount * 4];
+        }
 
         // ensure capacity upfront
         vertexBuffer.ensureCapacity(12 * 2 * faceCount);
         normalBuffer.ensureCapacity(12 * 2 * faceCount);
         uvBuffer.ensureCapacity(12 * 2 * faceCount);
 
-        ModelData modelData = getCachedModelData(renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount, noCache, hash);
+        ModelData modelData = getCachedModelData(scratch, renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount, noCache, hash, hashCheck);
 
         int vertexLength = 0;
         int uvLength = 0;
         for (int face = 0; face < faceCount; face++) {
-            vertexBuffer.put(getVertexDataForFace(model, modelData, face));
+            vertexBuffer.put(getVertexDataForFace(scratch, model, modelData, face));
             vertexLength += 3;
 
-            normalBuffer.put(getNormalDataForFace(model, objectProperties, face));
+            normalBuffer.put(getNormalDataForFace(scratch, model, objectProperties, face));
 
-            float[] uvData = getUvDataForFace(model, objectProperties, face);
+            float[] uvData = getUvDataForFace(scratch, model, objectProperties, face);
             if (uvData != null) {
                 uvBuffer.put(uvData);
                 uvLength += 3;
             }
         }
 
-        twoInts[0] = vertexLength;
-        twoInts[1] = uvLength;
+        scratch.twoInts[0] = vertexLength;
+        scratch.twoInts[1] = uvLength;
 
-        return twoInts;
+        return scratch.twoInts;
     }
 
-    private int[] getVertexDataForFace(Model model, ModelData modelData, int face) {
+    private int[] getVertexDataForFace(Scratch scratch, Model model, ModelData modelData, int face) {
         final int[] xVertices = model.getVerticesX();
         final int[] yVertices = model.getVerticesY();
         final int[] zVertices = model.getVerticesZ();
@@ -112,23 +132,23 @@ public class ModelPusher
         final int triB = model.getFaceIndices2()[face];
         final int triC = model.getFaceIndices3()[face];
 
-        twelveInts[0] = xVertices[triA];
-        twelveInts[1] = yVertices[triA];
-        twelveInts[2] = zVertices[triA];
-        twelveInts[3] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 0);
-        twelveInts[4] = xVertices[triB];
-        twelveInts[5] = yVertices[triB];
-        twelveInts[6] = zVertices[triB];
-        twelveInts[7] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 1);
-        twelveInts[8] = xVertices[triC];
-        twelveInts[9] = yVertices[triC];
-        twelveInts[10] = zVertices[triC];
-        twelveInts[11] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 2);
-
-        return twelveInts;
+        scratch.twelveInts[0] = xVertices[triA];
+        scratch.twelveInts[1] = yVertices[triA];
+        scratch.twelveInts[2] = zVertices[triA];
+        scratch.twelveInts[3] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 0);
+        scratch.twelveInts[4] = xVertices[triB];
+        scratch.twelveInts[5] = yVertices[triB];
+        scratch.twelveInts[6] = zVertices[triB];
+        scratch.twelveInts[7] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 1);
+        scratch.twelveInts[8] = xVertices[triC];
+        scratch.twelveInts[9] = yVertices[triC];
+        scratch.twelveInts[10] = zVertices[triC];
+        scratch.twelveInts[11] = modelData.getColorForFace(face, 3) | modelData.getColorForFace(face, 2);
+
+        return scratch.twelveInts;
     }
 
-    private float[] getNormalDataForFace(Model model, ObjectProperties objectProperties, int face) {
+    private float[] getNormalDataForFace(Scratch scratch, Model model, ObjectProperties objectProperties, int face) {
         if (model.getFaceColors3()[face] == -1 || (objectProperties != null && objectProperties.isFlatNormals())) {
             return zeroFloats;
         }
@@ -140,23 +160,23 @@ public class ModelPusher
         final int[] yVertexNormals = model.getVertexNormalsY();
         final int[] zVertexNormals = model.getVertexNormalsZ();
 
-        twelveFloats[0] = xVertexNormals[triA];
-        twelveFloats[1] = yVertexNormals[triA];
-        twelveFloats[2] = zVertexNormals[triA];
-        twelveFloats[3] = 0;
-        twelveFloats[4] = xVertexNormals[triB];
-        twelveFloats[5] = yVertexNormals[triB];
-        twelveFloats[6] = zVertexNormals[triB];
-        twelveFloats[7] = 0;
-        twelveFloats[8] = xVertexNormals[triC];
-        twelveFloats[9] = yVertexNormals[triC];
-        twelveFloats[10] = zVertexNormals[triC];
-        twelveFloats[11] = 0;
-
-        return twelveFloats;
+        scratch.twelveFloats[0] = xVertexNormals[triA];
+        scratch.twelveFloats[1] = yVertexNormals[triA];
+        scratch.twelveFloats[2] = zVertexNormals[triA];
+        scratch.twelveFloats[3] = 0;
+        scratch.twelveFloats[4] = xVertexNormals[triB];
+        scratch.twelveFloats[5] = yVertexNormals[triB];
+        scratch.twelveFloats[6] = zVertexNormals[triB];
+        scratch.twelveFloats[7] = 0;
+        scratch.twelveFloats[8] = xVertexNormals[triC];
+        scratch.twelveFloats[9] = yVertexNormals[triC];
+        scratch.twelveFloats[10] = zVertexNormals[triC];
+        scratch.twelveFloats[11] = 0;
+
+        return scratch.twelveFloats;
     }
 
-    private float[] getUvDataForFace(Model model, ObjectProperties objectProperties, int face) {
+    private float[] getUvDataForFace(Scratch scratch, Model model, ObjectProperties objectProperties, int face) {
         final short[] faceTextures = model.getFaceTextures();
         final float[] uv = model.getFaceTextureUVCoordinates();
 
@@ -170,20 +190,20 @@ public class ModelPusher
             int packedMaterialData = packMaterialData(Material.getIndexFromDiffuseID(material.getDiffuseMapId()), false);
             int idx = face * 6;
 
-            twelveFloats[0] = packedMaterialData;
-            twelveFloats[1] = uv[idx];
-            twelveFloats[2] = uv[idx + 1];
-            twelveFloats[3] = 0;
-            twelveFloats[4] = packedMaterialData;
-            twelveFloats[5] = uv[idx + 2];
-            twelveFloats[6] = uv[idx + 3];
-            twelveFloats[7] = 0;
-            twelveFloats[8] = packedMaterialData;
-            twelveFloats[9] = uv[idx + 4];
-            twelveFloats[10] = uv[idx + 5];
-            twelveFloats[11] = 0;
-
-            return twelveFloats;
+            scratch.twelveFloats[0] = packedMaterialData;
+            scratch.twelveFloats[1] = uv[idx];
+            scratch.twelveFloats[2] = uv[idx + 1];
+            scratch.twelveFloats[3] = 0;
+            scratch.twelveFloats[4] = packedMaterialData;
+            scratch.twelveFloats[5] = uv[idx + 2];
+            scratch.twelveFloats[6] = uv[idx + 3];
+            scratch.twelveFloats[7] = 0;
+            scratch.twelveFloats[8] = packedMaterialData;
+            scratch.twelveFloats[9] = uv[idx + 4];
+            scratch.twelveFloats[10] = uv[idx + 5];
+            scratch.twelveFloats[11] = 0;
+
+            return scratch.twelveFloats;
         } else if (material != null) {
             final int triA = model.getFaceIndices1()[face];
             final int triB = model.getFaceIndices2()[face];
@@ -196,35 +216,35 @@ public class ModelPusher
             int packedMaterialData = packMaterialData(Material.getIndexFromDiffuseID(material.getDiffuseMapId()), false);
 
             if (objectProperties.getUvType() == UvType.GROUND_PLANE) {
-                twelveFloats[0] = packedMaterialData;
-                twelveFloats[1] = (xVertices[triA] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[2] = (zVertices[triA] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[3] = 0;
-                twelveFloats[4] = packedMaterialData;
-                twelveFloats[5] = (xVertices[triB] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[6] = (zVertices[triB] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[7] = 0;
-                twelveFloats[8] = packedMaterialData;
-                twelveFloats[9] = (xVertices[triC] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[10] = (zVertices[triC] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
-                twelveFloats[11] = 0;
-
-                return twelveFloats;
+                scratch.twelveFloats[0] = packedMaterialData;
+                scratch.twelveFloats[1] = (xVertices[triA] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[2] = (zVertices[triA] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[3] = 0;
+                scratch.twelveFloats[4] = packedMaterialData;
+                scratch.twelveFloats[5] = (xVertices[triB] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[6] = (zVertices[triB] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[7] = 0;
+                scratch.twelveFloats[8] = packedMaterialData;
+                scratch.twelveFloats[9] = (xVertices[triC] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[10] = (zVertices[triC] % Perspective.LOCAL_TILE_SIZE) / (float) Perspective.LOCAL_TILE_SIZE;
+                scratch.twelveFloats[11] = 0;
+
+                return scratch.twelveFloats;
             } else {
-                twelveFloats[0] = packedMaterialData;
-                twelveFloats[1] = 0;
-                twelveFloats[2] = 0;
-                twelveFloats[3] = 0;
-                twelveFloats[4] = packedMaterialData;
-                twelveFloats[5] = 1;
-                twelveFloats[6] = 0;
-                twelveFloats[7] = 0;
-                twelveFloats[8] = packedMaterialData;
-                twelveFloats[9] = 0;
-                twelveFloats[10] = 1;
-                twelveFloats[11] = 0;
-
-                return twelveFloats;
+                scratch.twelveFloats[0] = packedMaterialData;
+                scratch.twelveFloats[1] = 0;
+                scratch.twelveFloats[2] = 0;
+                scratch.twelveFloats[3] = 0;
+                scratch.twelveFloats[4] = packedMaterialData;
+                scratch.twelveFloats[5] = 1;
+                scratch.twelveFloats[6] = 0;
+                scratch.twelveFloats[7] = 0;
+                scratch.twelveFloats[8] = packedMaterialData;
+                scratch.twelveFloats[9] = 0;
+                scratch.twelveFloats[10] = 1;
+                scratch.twelveFloats[11] = 0;
+
+                return scratch.twelveFloats;
             }
         } else if (faceTextures != null) {
             return zeroFloats;
@@ -257,49 +277,65 @@ public class ModelPusher
         return materialId << 1 | (isOverlay ? 0b1 : 0b0);
     }
 
-    private ModelData getCachedModelData(Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int faceCount, boolean noCache, int hash) {
+    private ModelData getCachedModelData(Scratch scratch, Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int faceCount, boolean noCache, long hash, long hashCheck) {
+        final ModelData modelData = scratch.tempModelData;
         if (noCache) {
-            tempModelData.setColors(getColorsForModel(renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount));
-            return tempModelData;
+            return modelData.setColors(getColorsForModel(scratch, renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount), 0);
         }
 
+        if (modelCache.get(hash, hashCheck, modelData)) {
+            return modelData;
+        }
 
-        ModelData modelData = modelCache.get(hash);
-        if (modelData == null || modelData.getFaceCount() != model.getFaceCount()) {
-            // get new data if there was no cache or if we detected an exception causing hash collision
-            modelData = new ModelData().setColors(getColorsForModel(renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount)).setFaceCount(model.getFaceCount());
-            modelCache.put(hash, modelData);
+        // get new data if there was no cache or if we detected an exception causing hash collision
+        // the colors may still be cached on disk from a previous session
+        final int colorCount = faceCount * 4;
+        final long persistentKey = ModelColorCache.key(hash, getColorConfigBits());
+        if (modelColorCache.get(persistentKey, hashCheck, scratch.modelColors) != colorCount) {
+            getColorsForModel(scratch, renderable, model, objectProperties, objectType, tileX, tileY, tileZ, faceCount);
+            modelColorCache.put(persistentKey, hashCheck, scratch.modelColors, colorCount);
         }
 
+        if (!modelCache.put(hash, hashCheck, scratch.modelColors, colorCount, modelData)) {
+            modelData.setColors(scratch.modelColors, 0);
+        }
         return modelData;
     }
 
-    private int[] getColorsForModel(Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int faceCount) {
+    // the config options which affect the output of the color pass
+    private int getColorConfigBits() {
+        return (config.hideBakedEffects() ? 1 : 0) |
+            (hdPlugin.configWinterTheme ? 1 << 1 : 0) |
+            (hdPlugin.configTzhaarHD ? 1 << 2 : 0);
+    }
+
+    private int[] getColorsForModel(Scratch scratch, Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int faceCount) {
         for (int face = 0; face < faceCount; face++) {
-            System.arraycopy(getColorsForFace(renderable, model, objectProperties, objectType, tileX, tileY, tileZ, face), 0, modelColors, face * 4, 4);
+            System.arraycopy(getColorsForFace(scratch, renderable, model, objectProperties, objectType, tileX, tileY, tileZ, face), 0, scratch.modelColors, face * 4, 4);
         }
 
-        return Arrays.copyOfRange(modelColors, 0, faceCount * 4);
+        // the colors are only read while the model is being pushed, so they don't need to be copied
+        return scratch.modelColors;
     }
 
-    private int[] removeBakedGroundShading(int face, int triA, int triB, int triC, byte[] faceTransparencies, short[] faceTextures, int[] yVertices) {
+    private int[] removeBakedGroundShading(Scratch scratch, int face, int triA, int triB, int triC, byte[] faceTransparencies, short[] faceTextures, int[] yVertices) {
         if (faceTransparencies != null && (faceTextures == null || faceTextures[face] == -1) && (faceTransparencies[face] & 0xFF) > 100) {
             int aHeight = yVertices[triA];
             int bHeight = yVertices[triB];
             int cHeight = yVertices[triC];
             if (aHeight >= -8 && aHeight == bHeight && aHeight == cHeight) {
-                fourInts[0] = 0;
-                fourInts[1] = 0;
-                fourInts[2] = 0;
-                fourInts[3] = 0xFF << 24;
-                return fourInts;
+                scratch.fourInts[0] = 0;
+                scratch.fourInts[1] = 0;
+                scratch.fourInts[2] = 0;
+                scratch.fourInts[3] = 0xFF << 24;
+                return scratch.fourInts;
             }
         }
 
         return null;
     }
 
-    private int[] getColorsForFace(Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int face) {
+    private int[] getColorsForFace(Scratch scratch, Renderable renderable, Model model, ObjectProperties objectProperties, ObjectType objectType, int tileX, int tileY, int tileZ, int face) {
         int color1 = model.getFaceColors1()[face];
         int color2 = model.getFaceColors2()[face];
         int color3 = model.getFaceColors3()[face];
@@ -325,7 +361,7 @@ public class ModelPusher
             GraphicsObject graphicsObject = renderable instanceof GraphicsObject ? (GraphicsObject) renderable : null;
 
             if ((npc != null && BakedModels.NPCS.contains(npc.getId())) || (graphicsObject != null && BakedModels.OBJECTS.contains(graphicsObject.getId())) || (player != null &&  player.getPlayerComposition().getEquipmentId(KitType.WEAPON) == ItemID.MAGIC_CARPET)) {
-                int[] transparency = removeBakedGroundShading(face, triA, triB, triC, faceTransparencies, faceTextures, yVertices);
+                int[] transparency = removeBakedGroundShading(scratch, face, triA, triB, triC, faceTransparencies, faceTextures, yVertices);
                 if (transparency != null) {
                     return transparency;
                 }
@@ -333,11 +369,11 @@ public class ModelPusher
         }
 
         if (color3 == -2) {
-            fourInts[0] = 0;
-            fourInts[1] = 0;
-            fourInts[2] = 0;
-            fourInts[3] = 0xFF << 24;
-            return fourInts;
+            scratch.fourInts[0] = 0;
+            scratch.fourInts[1] = 0;
+            scratch.fourInts[2] = 0;
+            scratch.fourInts[3] = 0xFF << 24;
+            return scratch.fourInts;
         } else if (color3 == -1) {
             color2 = color3 = color1;
         } else if ((faceTextures == null || faceTextures[face] == -1) && overrideAmount > 0) {
@@ -420,12 +456,10 @@ public class ModelPusher
                     int overlayId = client.getScene().getOverlayIds()[tileZ][tileX][tileY];
                     int underlayId = client.getScene().getUnderlayIds()[tileZ][tileX][tileY];
                     if (overlayId != 0) {
-                        Overlay overlay = Overlay.getOverlay(overlayId, tile, client);
-                        overlay = proceduralGenerator.getSeasonalOverlay(overlay);
+                        Overlay overlay = tileMaterialTable.getSeasonalOverlay(overlayId, tile);
                         tileColorHSL = proceduralGenerator.recolorOverlay(overlay, tileColorHSL);
                     } else {
-                        Underlay underlay = Underlay.getUnderlay(underlayId, tile, client);
-                        underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+                        Underlay underlay = tileMaterialTable.getSeasonalUnderlay(underlayId, tile);
                         tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
                     }
 
@@ -447,8 +481,7 @@ public class ModelPusher
                         tileColorHSL = HDUtils.colorIntToHSL(tile.getSceneTileModel().getTriangleColorA()[faceColorIndex]);
 
                         int underlayId = client.getScene().getUnderlayIds()[tileZ][tileX][tileY];
-                        Underlay underlay = Underlay.getUnderlay(underlayId, tile, client);
-                        underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+                        Underlay underlay = tileMaterialTable.getSeasonalUnderlay(underlayId, tile);
                         tileColorHSL = proceduralGenerator.recolorUnderlay(underlay, tileColorHSL);
 
                         color1H = color2H = color3H = tileColorHSL[0];
@@ -483,12 +516,12 @@ public class ModelPusher
         color2 = (color2H << 3 | color2S) << 7 | color2L;
         color3 = (color3H << 3 | color3S) << 7 | color3L;
 
-        fourInts[0] = color1;
-        fourInts[1] = color2;
-        fourInts[2] = color3;
-        fourInts[3] = packedAlphaPriority;
+        scratch.fourInts[0] = color1;
+        scratch.fourInts[1] = color2;
+        scratch.fourInts[2] = color3;
+        scratch.fourInts[3] = packedAlphaPriority;
 
-        return fourInts;
+        return scratch.fourInts;
     }
 
     private static int interpolateHSL(int hsl, byte hue2, byte sat2, byte lum2, byte lerp) {
@@ -4,6 +4,7 @@ public class TempModelInfo {
     private int tempOffset;
     private int tempUvOffset;
     private int faceCount;
+    private long hashCheck;
 
     public int getTempOffset() {
         return tempOffset;
@@ -31,4 +32,13 @@ public class TempModelInfo {
         this.faceCount = faceCount;
         return this;
     }
+
+    public long getHashCheck() {
+        return hashCheck;
+    }
+
+    public TempModelInfo setHashCheck(long hashCheck) {
+        this.hashCheck = hashCheck;
+        return this;
+    }
 }
@@ -4,4 +4,5 @@ public enum ComputeMode
 {
     OPENGL,
     OPENCL,
+    CPU,
 }
\ No newline at end of file
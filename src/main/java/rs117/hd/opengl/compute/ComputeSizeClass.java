@@ -0,0 +1,99 @@
+package rs117.hd.opengl.compute;
+
+import java.util.TreeSet;
+import lombok.extern.slf4j.Slf4j;
+import rs117.hd.HdPlugin;
+import rs117.hd.utils.buffer.GLBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.PersistentBufferRing;
+
+/**
+ * A range of model sizes sorted by a compute program of its own, compiled for the largest model in the range.
+ * A work group has a thread per face up to the maximum number of threads, beyond which each thread handles several
+ * faces, so models in a class close to their size leave fewer threads and less shared memory idle.
+ */
+@Slf4j
+public class ComputeSizeClass
+{
+	// the minimum GL_MAX_COMPUTE_WORK_GROUP_INVOCATIONS an OpenGL 4.3 driver has to support
+	public static final int MAX_THREAD_COUNT = 1024;
+
+	public final int maxFaces;
+	public final int facesPerThread;
+	public final int threadCount;
+
+	public final GpuIntBuffer modelBuffer = new GpuIntBuffer();
+	public final GLBuffer glModelBuffer = new GLBuffer();
+	public PersistentBufferRing.Stream modelStream;
+
+	public int glProgram = -1;
+	public int uniBlock;
+
+	/**
+	 * number of models and faces in the model buffer
+	 */
+	public int modelCount;
+	public int faceCount;
+
+	public ComputeSizeClass(int maxFaces)
+	{
+		this.maxFaces = maxFaces;
+		facesPerThread = facesPerThread(maxFaces, MAX_THREAD_COUNT);
+		threadCount = ceilDiv(maxFaces, facesPerThread);
+	}
+
+	public String getName()
+	{
+		return "<= " + maxFaces;
+	}
+
+	/**
+	 * @return the defines comp.glsl is compiled with for this class
+	 */
+	public String getDefines()
+	{
+		return String.format("#define MAX_FACES %d\n#define THREAD_COUNT %d\n#define FACES_PER_THREAD %d\n",
+			maxFaces, threadCount, facesPerThread);
+	}
+
+	/**
+	 * @return the number of faces each thread handles, for models of up to maxFaces in work groups of up to maxThreads
+	 */
+	public static int facesPerThread(int maxFaces, int maxThreads)
+	{
+		return ceilDiv(maxFaces, Math.min(maxFaces, maxThreads));
+	}
+
+	public static int ceilDiv(int x, int y)
+	{
+		return (x + y - 1) / y;
+	}
+
+	/**
+	 * Parses a comma-separated list of the largest model in each size class. Sizes are sorted and limited to
+	 * {@link HdPlugin#MAX_TRIANGLE}, which the last class always covers, since larger models are sorted separately.
+	 */
+	public static int[] parseSizes(String sizes)
+	{
+		TreeSet<Integer> set = new TreeSet<>();
+		for (String size : sizes.split(","))
+		{
+			size = size.trim();
+			if (size.isEmpty())
+			{
+				continue;
+			}
+
+			try
+			{
+				set.add(Math.max(1, Math.min(HdPlugin.MAX_TRIANGLE, Integer.parseInt(size))));
+			}
+			catch (NumberFormatException ex)
+			{
+				log.warn("Ignoring invalid compute size class: {}", size);
+			}
+		}
+		set.add(HdPlugin.MAX_TRIANGLE);
+		return set.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
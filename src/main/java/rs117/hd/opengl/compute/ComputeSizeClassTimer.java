@@ -0,0 +1,277 @@
+package rs117.hd.opengl.compute;
+
+import com.jogamp.opengl.GL4;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import javax.inject.Singleton;
+
+/**
+ * Records how long the GPU takes to sort the models of each compute size class, and how much of the work groups
+ * of each class the models fill, to tune the boundaries of the size classes against real scenes.
+ *
+ * The passes are dispatched back to back within the compute section of the frame timer, which can only time one
+ * section at a time, so each pass is timed between {@code GL_TIMESTAMP} queries instead. Like the frame timer,
+ * the queries are kept in a ring spanning several frames, and their results are only read once available.
+ * Results are averaged over every frame since the passes or the timer were last reset.
+ */
+@Singleton
+public class ComputeSizeClassTimer
+{
+	// the number of frames queries may lag behind before frames are skipped
+	private static final int QUERY_FRAMES = 4;
+
+	public static class PassStats
+	{
+		public String name;
+		public int capacity;
+		public double gpuMs;
+		public double models;
+		public double faces;
+
+		/**
+		 * @return the share of the faces the work groups have room for which were used, or NaN if unbounded
+		 */
+		public double getFill()
+		{
+			return capacity == 0 ? Double.NaN : faces / (models * capacity);
+		}
+	}
+
+	private String[] names = new String[0];
+	private int[] capacities = new int[0];
+
+	// per frame in the ring, a timestamp before the first pass followed by one after each pass
+	private int[] queries;
+	private final boolean[] pending = new boolean[QUERY_FRAMES];
+	private int[][] pendingModels = new int[QUERY_FRAMES][0];
+	private int[][] pendingFaces = new int[QUERY_FRAMES][0];
+	private int activeSlot = -1;
+	private long frame;
+	private long[] timestamps = new long[1];
+	private final long[] timestamp = new long[1];
+	private final int[] queryAvailable = new int[1];
+
+	private long frames;
+	private long[] totalNanos = new long[0];
+	private long[] totalModels = new long[0];
+	private long[] totalFaces = new long[0];
+
+	/**
+	 * Sets the passes to record, discarding the results of the previous ones.
+	 *
+	 * @param capacities the faces a work group of each pass has room for, or 0 if unbounded
+	 */
+	public synchronized void setPasses(String[] names, int[] capacities)
+	{
+		this.names = names;
+		this.capacities = capacities;
+		pendingModels = new int[QUERY_FRAMES][names.length];
+		pendingFaces = new int[QUERY_FRAMES][names.length];
+		timestamps = new long[names.length + 1];
+		Arrays.fill(pending, false);
+		activeSlot = -1;
+		reset();
+	}
+
+	public synchronized void reset()
+	{
+		frames = 0;
+		totalNanos = new long[names.length];
+		totalModels = new long[names.length];
+		totalFaces = new long[names.length];
+	}
+
+	/**
+	 * Takes the timestamp before the first pass, unless the results of the frame in the ring aren't available yet.
+	 */
+	public void beginFrame(GL4 gl)
+	{
+		int stride = names.length + 1;
+		if (queries != null && queries.length != QUERY_FRAMES * stride)
+		{
+			destroy(gl);
+		}
+
+		if (queries == null)
+		{
+			queries = new int[QUERY_FRAMES * stride];
+			gl.glGenQueries(queries.length, queries, 0);
+		}
+
+		int slot = (int) (frame % QUERY_FRAMES);
+		if (pending[slot] && !collect(gl, slot))
+		{
+			// the GPU is too far behind, so skip this frame instead of waiting for the previous result
+			return;
+		}
+
+		gl.glQueryCounter(queries[slot * stride], gl.GL_TIMESTAMP);
+		activeSlot = slot;
+	}
+
+	/**
+	 * Takes the timestamp after a pass. Every pass has to be ended each frame, even if it dispatched nothing.
+	 */
+	public void endPass(GL4 gl, int pass, int models, int faces)
+	{
+		if (activeSlot == -1)
+		{
+			return;
+		}
+
+		gl.glQueryCounter(queries[activeSlot * (names.length + 1) + pass + 1], gl.GL_TIMESTAMP);
+		pendingModels[activeSlot][pass] = models;
+		pendingFaces[activeSlot][pass] = faces;
+	}
+
+	public void endFrame(GL4 gl)
+	{
+		if (activeSlot != -1)
+		{
+			pending[activeSlot] = true;
+			activeSlot = -1;
+		}
+		frame++;
+
+		for (int slot = 0; slot < QUERY_FRAMES; slot++)
+		{
+			if (pending[slot])
+			{
+				collect(gl, slot);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the queries and discards every result recorded so far.
+	 */
+	public void destroy(GL4 gl)
+	{
+		if (queries == null)
+		{
+			return;
+		}
+
+		gl.glDeleteQueries(queries.length, queries, 0);
+		queries = null;
+		Arrays.fill(pending, false);
+		activeSlot = -1;
+		reset();
+	}
+
+	/**
+	 * @return true if the results were available, in which case the queries can be reused
+	 */
+	private boolean collect(GL4 gl, int slot)
+	{
+		int first = slot * (names.length + 1);
+		int last = first + names.length;
+
+		// timestamps are written in order, so the others are available once the last one is
+		gl.glGetQueryObjectuiv(queries[last], gl.GL_QUERY_RESULT_AVAILABLE, queryAvailable, 0);
+		if (queryAvailable[0] == 0)
+		{
+			return false;
+		}
+
+		for (int i = 0; i <= names.length; i++)
+		{
+			gl.glGetQueryObjectui64v(queries[first + i], gl.GL_QUERY_RESULT, timestamp, 0);
+			timestamps[i] = timestamp[0];
+		}
+
+		synchronized (this)
+		{
+			for (int pass = 0; pass < names.length; pass++)
+			{
+				record(pass, timestamps[pass + 1] - timestamps[pass], pendingModels[slot][pass], pendingFaces[slot][pass]);
+			}
+			recordFrame();
+		}
+		pending[slot] = false;
+		return true;
+	}
+
+	synchronized void record(int pass, long nanos, int models, int faces)
+	{
+		totalNanos[pass] += nanos;
+		totalModels[pass] += models;
+		totalFaces[pass] += faces;
+	}
+
+	synchronized void recordFrame()
+	{
+		frames++;
+	}
+
+	/**
+	 * @return the average per frame of each pass, or null if no frames have been recorded
+	 */
+	public synchronized PassStats[] getStats()
+	{
+		if (frames == 0)
+		{
+			return null;
+		}
+
+		PassStats[] stats = new PassStats[names.length];
+		for (int pass = 0; pass < names.length; pass++)
+		{
+			PassStats s = stats[pass] = new PassStats();
+			s.name = names[pass];
+			s.capacity = capacities[pass];
+			s.gpuMs = totalNanos[pass] / 1e6 / frames;
+			s.models = (double) totalModels[pass] / frames;
+			s.faces = (double) totalFaces[pass] / frames;
+		}
+		return stats;
+	}
+
+	/**
+	 * Writes the averages of each pass to a CSV file, with one row per pass.
+	 */
+	public void writeCsv(File file) throws IOException
+	{
+		PassStats[] stats = getStats();
+		try (PrintWriter out = new PrintWriter(file, "UTF-8"))
+		{
+			out.println("size class,faces per work group,GPU ms per frame,models per frame,faces per frame,fill,GPU us per model");
+			if (stats != null)
+			{
+				for (PassStats s : stats)
+				{
+					out.print(s.name);
+					out.print(',');
+					if (s.capacity != 0)
+					{
+						out.print(s.capacity);
+					}
+					out.print(',');
+					out.print(s.gpuMs);
+					out.print(',');
+					out.print(s.models);
+					out.print(',');
+					out.print(s.faces);
+					out.print(',');
+					if (s.capacity != 0 && s.models > 0)
+					{
+						out.print(s.getFill());
+					}
+					out.print(',');
+					if (s.models > 0)
+					{
+						out.print(s.gpuMs * 1000 / s.models);
+					}
+					out.println();
+				}
+			}
+
+			if (out.checkError())
+			{
+				throw new IOException("Failed to write compute size class timings to " + file);
+			}
+		}
+	}
+}
@@ -0,0 +1,760 @@
+package rs117.hd.opengl.compute;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import javax.inject.Singleton;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Perspective;
+import rs117.hd.utils.buffer.GpuFloatBuffer;
+import rs117.hd.utils.buffer.GpuIntBuffer;
+
+/**
+ * Runs the unordered pass and the sorted passes of each size class on the CPU, for drivers with broken compute shaders,
+ * and as a reference implementation of comp_unordered.glsl, comp.glsl, comp_xlarge.glsl and
+ * priority_render.glsl which can be run without a GPU. It reads the same model info buffers as the compute shaders, and writes the same output vertex,
+ * uv and normal streams, with the models of each pass split across a fork-join pool.
+ *
+ * Faces are placed exactly where the shaders place them, apart from rare differences in floating point rounding
+ * when calculating face distances and visibility.
+ */
+@Singleton
+@Slf4j
+public class CpuComputeManager
+{
+	// the most faces of a model the unordered pass handles, matching the work group size of the shader
+	public static final int UNORDERED_MAX_FACES = 6;
+	// the most faces of a model sorted in shared memory, where face ids and distances are packed into 16 bits each
+	public static final int LARGE_MAX_FACES = 6144;
+
+	// the number of ints of model info per model
+	public static final int MODEL_INFO_SIZE = 8;
+
+	private static final float UNIT = (float) (Math.PI / 1024);
+	// a task sorts models one at a time once it has no more than this many faces to sort
+	private static final int FACES_PER_TASK = 4096;
+
+	private final int[] sine;
+	private final int[] cosine;
+
+	private ForkJoinPool pool;
+
+	private int cameraYaw;
+	private int cameraPitch;
+	private int centerX;
+	private int centerY;
+	private int zoom;
+	private int cameraX;
+	private int cameraY;
+	private int cameraZ;
+
+	// the view rotation, as calculated by the distance and toScreen functions of the shaders
+	private int distanceYawSin;
+	private int distanceYawCos;
+	private int distancePitchSin;
+	private int distancePitchCos;
+	private float yawSin;
+	private float yawCos;
+	private float pitchSin;
+	private float pitchCos;
+
+	// the scene buffers, kept in sync with the scene buffers on the GPU
+	private IntBuffer sceneVertices = IntBuffer.allocate(0);
+	private FloatBuffer sceneUvs = FloatBuffer.allocate(0);
+	private FloatBuffer sceneNormals = FloatBuffer.allocate(0);
+
+	// the temporary buffers of the current frame
+	private IntBuffer tempVertices;
+	private FloatBuffer tempUvs;
+	private FloatBuffer tempNormals;
+
+	@Getter
+	private IntBuffer outVertices = GpuIntBuffer.allocateDirect(0);
+	@Getter
+	private FloatBuffer outUvs = GpuFloatBuffer.allocateDirect(0);
+	@Getter
+	private FloatBuffer outNormals = GpuFloatBuffer.allocateDirect(0);
+
+	private final ThreadLocal<SortState> sortState = ThreadLocal.withInitial(SortState::new);
+
+	// the passes and their tasks are reused every frame, and only recreated when the number of passes changes
+	private Pass[] passes = new Pass[0];
+	private ComputeTask task;
+
+	public CpuComputeManager()
+	{
+		this(Perspective.SINE, Perspective.COSINE);
+	}
+
+	/**
+	 * @param sine   the sine of each of the 2048 orientations, scaled by 65536
+	 * @param cosine the cosine of each of the 2048 orientations, scaled by 65536
+	 */
+	public CpuComputeManager(int[] sine, int[] cosine)
+	{
+		this.sine = sine;
+		this.cosine = cosine;
+	}
+
+	public void startUp()
+	{
+		if (pool == null)
+		{
+			pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), p ->
+			{
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				thread.setName("rlhd-cpu-compute-" + thread.getPoolIndex());
+				return thread;
+			}, null, false);
+		}
+	}
+
+	public void shutDown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+		sceneVertices = IntBuffer.allocate(0);
+		sceneUvs = FloatBuffer.allocate(0);
+		sceneNormals = FloatBuffer.allocate(0);
+		outVertices = GpuIntBuffer.allocateDirect(0);
+		outUvs = GpuFloatBuffer.allocateDirect(0);
+		outNormals = GpuFloatBuffer.allocateDirect(0);
+	}
+
+	/**
+	 * Sets the same view as the uniforms of the compute shaders.
+	 */
+	public void setView(int cameraYaw, int cameraPitch, int centerX, int centerY, int zoom, int cameraX, int cameraY, int cameraZ)
+	{
+		this.cameraYaw = cameraYaw;
+		this.cameraPitch = cameraPitch;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.zoom = zoom;
+		this.cameraX = cameraX;
+		this.cameraY = cameraY;
+		this.cameraZ = cameraZ;
+
+		yawSin = (float) Math.sin(cameraYaw * UNIT);
+		yawCos = (float) Math.cos(cameraYaw * UNIT);
+		pitchSin = (float) Math.sin(cameraPitch * UNIT);
+		pitchCos = (float) Math.cos(cameraPitch * UNIT);
+		distanceYawSin = (int) (65536.0f * yawSin);
+		distanceYawCos = (int) (65536.0f * yawCos);
+		distancePitchSin = (int) (65536.0f * pitchSin);
+		distancePitchCos = (int) (65536.0f * pitchCos);
+	}
+
+	/**
+	 * Replaces the scene buffers with the staged scene, leaving room for tiles which are uploaded again later.
+	 *
+	 * @param vertexCapacity the number of vertices and normals the scene buffers on the GPU can hold
+	 * @param uvCapacity     the number of uvs the scene uv buffer on the GPU can hold
+	 */
+	public void uploadScene(IntBuffer vertices, FloatBuffer uvs, FloatBuffer normals, int vertexCapacity, int uvCapacity)
+	{
+		sceneVertices = IntBuffer.allocate(vertexCapacity * 4);
+		sceneUvs = FloatBuffer.allocate(uvCapacity * 4);
+		sceneNormals = FloatBuffer.allocate(vertexCapacity * 4);
+		sceneVertices.put(vertices.duplicate()).clear();
+		sceneUvs.put(uvs.duplicate()).clear();
+		sceneNormals.put(normals.duplicate()).clear();
+	}
+
+	/**
+	 * Copies a tile's geometry from the staging buffers into the scene buffers, like the scene buffers on the GPU.
+	 * Offsets and counts are in vertices.
+	 */
+	public void writeScene(IntBuffer vertices, FloatBuffer uvs, FloatBuffer normals,
+		int stagingOffset, int vertexOffset, int vertexCount, int stagingUvOffset, int uvOffset, int uvCount)
+	{
+		for (int i = 0; i < vertexCount * 4; i++)
+		{
+			sceneVertices.put(vertexOffset * 4 + i, vertices.get(stagingOffset * 4 + i));
+			sceneNormals.put(vertexOffset * 4 + i, normals.get(stagingOffset * 4 + i));
+		}
+		for (int i = 0; i < uvCount * 4; i++)
+		{
+			sceneUvs.put(uvOffset * 4 + i, uvs.get(stagingUvOffset * 4 + i));
+		}
+	}
+
+	/**
+	 * Runs the passes over the model info the compute shaders would be dispatched with, writing the output
+	 * streams, which can then be uploaded in place of the output of the compute shaders.
+	 *
+	 * @param sortedModels the model info of each size class, followed by the extra large models
+	 * @param sortedCounts the number of models in each of the sorted model buffers
+	 * @param outputSize the number of vertices written by all models, which is the size of the output streams
+	 */
+	public void compute(
+		IntBuffer unorderedModels, int unorderedCount,
+		IntBuffer[] sortedModels, int[] sortedCounts,
+		IntBuffer tempVertices, FloatBuffer tempUvs, FloatBuffer tempNormals,
+		int outputSize)
+	{
+		this.tempVertices = tempVertices;
+		this.tempUvs = tempUvs;
+		this.tempNormals = tempNormals;
+
+		if (outVertices.capacity() < outputSize * 4)
+		{
+			int capacity = Math.max(outputSize * 4, outVertices.capacity() * 2);
+			outVertices = GpuIntBuffer.allocateDirect(capacity);
+			outUvs = GpuFloatBuffer.allocateDirect(capacity);
+			outNormals = GpuFloatBuffer.allocateDirect(capacity);
+		}
+
+		if (passes.length != sortedModels.length + 1)
+		{
+			passes = new Pass[sortedModels.length + 1];
+			for (int i = 0; i < passes.length; i++)
+			{
+				passes[i] = new Pass(i > 0);
+			}
+			task = new ComputeTask(passes);
+		}
+
+		passes[0].set(unorderedModels, unorderedCount);
+		for (int i = 0; i < sortedModels.length; i++)
+		{
+			passes[i + 1].set(sortedModels[i], sortedCounts[i]);
+		}
+
+		task.reinitialize();
+		if (pool == null)
+		{
+			task.invoke();
+		}
+		else
+		{
+			pool.invoke(task);
+		}
+
+		outVertices.position(0).limit(outputSize * 4);
+		outUvs.position(0).limit(outputSize * 4);
+		outNormals.position(0).limit(outputSize * 4);
+
+		this.tempVertices = null;
+		this.tempUvs = null;
+		this.tempNormals = null;
+		for (Pass pass : passes)
+		{
+			pass.set(null, 0);
+		}
+	}
+
+	private static class Pass
+	{
+		final boolean sorted;
+		IntBuffer models;
+		int count;
+
+		Pass(boolean sorted)
+		{
+			this.sorted = sorted;
+		}
+
+		void set(IntBuffer models, int count)
+		{
+			this.models = models;
+			this.count = count;
+		}
+
+		/**
+		 * @return the number of faces the models in the range have to sort or copy
+		 */
+		long faces(int start, int end)
+		{
+			long faces = 0;
+			for (int model = start; model < end; model++)
+			{
+				int size = models.get(model * MODEL_INFO_SIZE + 2);
+				faces += sorted ? size : Math.min(size, UNORDERED_MAX_FACES);
+			}
+			return faces;
+		}
+	}
+
+	private class ComputeTask extends RecursiveAction
+	{
+		private final ModelsTask[] tasks;
+
+		ComputeTask(Pass... passes)
+		{
+			tasks = new ModelsTask[passes.length];
+			for (int i = 0; i < passes.length; i++)
+			{
+				tasks[i] = new ModelsTask(passes[i], 0, 0);
+			}
+		}
+
+		@Override
+		protected void compute()
+		{
+			// each pass is handled by a task spanning all of its models, which splits itself from there
+			for (ModelsTask task : tasks)
+			{
+				task.reinitialize();
+				task.end = task.pass.count;
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Handles a range of the models of a pass, splitting it in half while it has too many faces for one task.
+	 */
+	private class ModelsTask extends RecursiveAction
+	{
+		private final Pass pass;
+		private final int start;
+		private int end;
+
+		ModelsTask(Pass pass, int start, int end)
+		{
+			this.pass = pass;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start > 1 && pass.faces(start, end) > FACES_PER_TASK)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new ModelsTask(pass, start, middle), new ModelsTask(pass, middle, end));
+				return;
+			}
+
+			for (int model = start; model < end; model++)
+			{
+				if (pass.sorted)
+				{
+					computeSorted(pass.models, model);
+				}
+				else
+				{
+					computeUnordered(pass.models, model);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as comp_unordered.glsl, for a single model.
+	 */
+	private void computeUnordered(IntBuffer models, int model)
+	{
+		final int info = model * MODEL_INFO_SIZE;
+		final int offset = models.get(info);
+		final int uvOffset = models.get(info + 1);
+		final int size = models.get(info + 2);
+		final int outOffset = models.get(info + 3);
+		final int flags = models.get(info + 4);
+		final int x = models.get(info + 5);
+		final int y = models.get(info + 6);
+		final int z = models.get(info + 7);
+
+		final IntBuffer vertices = flags < 0 ? sceneVertices : tempVertices;
+		final FloatBuffer uvs = flags < 0 ? sceneUvs : tempUvs;
+		final FloatBuffer normals = flags < 0 ? sceneNormals : tempNormals;
+
+		final int vertexCount = Math.min(size, UNORDERED_MAX_FACES) * 3;
+		for (int v = 0; v < vertexCount; v++)
+		{
+			int src = (offset + v) * 4;
+			int dst = (outOffset + v) * 4;
+			outVertices.put(dst, vertices.get(src) + x);
+			outVertices.put(dst + 1, vertices.get(src + 1) + y);
+			outVertices.put(dst + 2, vertices.get(src + 2) + z);
+			outVertices.put(dst + 3, vertices.get(src + 3));
+
+			int uvSrc = (uvOffset + v) * 4;
+			for (int c = 0; c < 4; c++)
+			{
+				outUvs.put(dst + c, uvOffset < 0 ? 0 : uvs.get(uvSrc + c));
+				outNormals.put(dst + c, normals.get(src + c));
+			}
+		}
+	}
+
+	/**
+	 * The per-thread state of sorting a model, like the shared memory of a work group.
+	 */
+	private static class SortState
+	{
+		int[] rotated;
+		int[] priorities;
+		int[] distances;
+		int[] adjustedPriorities;
+		int[] positions;
+		long[] keys;
+		final int[] totalNum = new int[12];
+		final int[] totalDistance = new int[12];
+		final int[] totalMappedNum = new int[18];
+		final int[] priorityOffsets = new int[18];
+		final float[] normal = new float[4];
+
+		SortState()
+		{
+			allocate(LARGE_MAX_FACES);
+		}
+
+		/**
+		 * Grows the arrays to fit an extra large model.
+		 */
+		void ensureCapacity(int faces)
+		{
+			if (priorities.length < faces)
+			{
+				allocate(faces);
+			}
+		}
+
+		private void allocate(int faces)
+		{
+			rotated = new int[faces * 12];
+			priorities = new int[faces];
+			distances = new int[faces];
+			adjustedPriorities = new int[faces];
+			positions = new int[faces];
+			keys = new long[faces];
+		}
+	}
+
+	/**
+	 * Same as comp.glsl and comp_xlarge.glsl, with the functions of priority_render.glsl, for a single model.
+	 */
+	private void computeSorted(IntBuffer models, int model)
+	{
+		final int info = model * MODEL_INFO_SIZE;
+		final int offset = models.get(info);
+		final int uvOffset = models.get(info + 1);
+		final int faceCount = models.get(info + 2);
+		final int outOffset = models.get(info + 3);
+		final int flags = models.get(info + 4);
+		final int x = models.get(info + 5);
+		final int y = models.get(info + 6);
+		final int z = models.get(info + 7);
+
+		final IntBuffer vertices = flags < 0 ? sceneVertices : tempVertices;
+		final FloatBuffer uvs = flags < 0 ? sceneUvs : tempUvs;
+		final FloatBuffer normals = flags < 0 ? sceneNormals : tempNormals;
+
+		final int radius = (flags & 0x7fffffff) >> 12;
+		final int orientation = flags & 0x7ff;
+
+		final SortState s = sortState.get();
+		s.ensureCapacity(faceCount);
+		Arrays.fill(s.totalNum, 0);
+		Arrays.fill(s.totalDistance, 0);
+		Arrays.fill(s.totalMappedNum, 0);
+		int min10 = 1600;
+
+		// get_face: rotate the face for the model's orientation, and calculate its distance
+		final int[] rotated = s.rotated;
+		for (int face = 0; face < faceCount; face++)
+		{
+			for (int v = 0; v < 3; v++)
+			{
+				int src = (offset + face * 3 + v) * 4;
+				rotate(vertices.get(src), vertices.get(src + 1), vertices.get(src + 2), vertices.get(src + 3),
+					orientation, rotated, (face * 3 + v) * 4);
+			}
+			int i = face * 12;
+			// all vertices on the face have the same priority
+			s.priorities[face] = (rotated[i + 3] >> 16) & 0xff;
+			s.distances[face] = radius == 0 ? 0 : faceDistance(rotated, i) + radius;
+		}
+
+		// add_face_prio_distance: faces which aren't culled are counted into the priority distance averages
+		for (int face = 0; face < faceCount; face++)
+		{
+			int priority = s.priorities[face];
+			if (priority < s.totalNum.length && isFaceVisible(rotated, face * 12, x, y, z))
+			{
+				s.totalNum[priority]++;
+				s.totalDistance[priority] += s.distances[face];
+				if (priority == 10)
+				{
+					min10 = Math.min(min10, s.distances[face]);
+				}
+			}
+		}
+
+		// map_face_priority
+		int avg1 = 0;
+		int avg2 = 0;
+		int avg3 = 0;
+		if (s.totalNum[1] > 0 || s.totalNum[2] > 0)
+		{
+			avg1 = (s.totalDistance[1] + s.totalDistance[2]) / (s.totalNum[1] + s.totalNum[2]);
+		}
+		if (s.totalNum[3] > 0 || s.totalNum[4] > 0)
+		{
+			avg2 = (s.totalDistance[3] + s.totalDistance[4]) / (s.totalNum[3] + s.totalNum[4]);
+		}
+		if (s.totalNum[6] > 0 || s.totalNum[8] > 0)
+		{
+			avg3 = (s.totalDistance[6] + s.totalDistance[8]) / (s.totalNum[6] + s.totalNum[8]);
+		}
+
+		boolean distancesFit = true;
+		for (int face = 0; face < faceCount; face++)
+		{
+			int distance = s.distances[face];
+			int adjusted = priorityMap(s.priorities[face], distance, min10, avg1, avg2, avg3);
+			s.adjustedPriorities[face] = adjusted;
+			s.totalMappedNum[adjusted]++;
+			distancesFit &= distance >= 0 && distance <= 0xffff;
+		}
+
+		// insert_dfs and sort_and_insert: faces are ordered by adjusted priority, then from furthest to closest,
+		// and then by face id
+		if (distancesFit)
+		{
+			// the order matches a stable sort, as long as the distances fit in the 16 bits they're packed into
+			final long[] keys = s.keys;
+			for (int face = 0; face < faceCount; face++)
+			{
+				keys[face] = (long) s.adjustedPriorities[face] << 48 | (long) (0xffff - s.distances[face]) << 32 | face;
+			}
+			Arrays.sort(keys, 0, faceCount);
+			for (int i = 0; i < faceCount; i++)
+			{
+				s.positions[(int) keys[i]] = i;
+			}
+		}
+		else
+		{
+			// otherwise count the faces ahead of each face the same way as the shader, including the packing,
+			// which only the programs sorting in shared memory do
+			final boolean packed = faceCount <= LARGE_MAX_FACES;
+			int total = 0;
+			for (int priority = 0; priority < s.totalMappedNum.length; priority++)
+			{
+				s.priorityOffsets[priority] = total;
+				total += s.totalMappedNum[priority];
+			}
+			for (int face = 0; face < faceCount; face++)
+			{
+				int distance = s.distances[face];
+				int adjusted = s.adjustedPriorities[face];
+				int position = s.priorityOffsets[adjusted];
+				for (int other = 0; other < faceCount; other++)
+				{
+					if (s.adjustedPriorities[other] != adjusted)
+					{
+						continue;
+					}
+					int theirId = other;
+					int theirDistance = s.distances[other];
+					if (packed)
+					{
+						int packedFace = other << 16 | theirDistance;
+						theirId = packedFace >> 16;
+						theirDistance = packedFace & 0xffff;
+					}
+					if (theirDistance > distance || (theirDistance == distance && theirId < face))
+					{
+						++position;
+					}
+				}
+				s.positions[face] = position;
+			}
+		}
+
+		final float[] normal = s.normal;
+		for (int face = 0; face < faceCount; face++)
+		{
+			int dstFace = outOffset + s.positions[face] * 3;
+			for (int v = 0; v < 3; v++)
+			{
+				int r = (face * 3 + v) * 4;
+				int src = (offset + face * 3 + v) * 4;
+				int dst = (dstFace + v) * 4;
+
+				// position vertices in the scene
+				outVertices.put(dst, rotated[r] + x);
+				outVertices.put(dst + 1, rotated[r + 1] + y);
+				outVertices.put(dst + 2, rotated[r + 2] + z);
+				outVertices.put(dst + 3, rotated[r + 3]);
+
+				int uvSrc = (uvOffset + face * 3 + v) * 4;
+				for (int c = 0; c < 4; c++)
+				{
+					outUvs.put(dst + c, uvOffset < 0 ? 0 : uvs.get(uvSrc + c));
+				}
+
+				rotateNormal(normals.get(src), normals.get(src + 1), normals.get(src + 2), normals.get(src + 3), orientation, normal);
+				for (int c = 0; c < 4; c++)
+				{
+					outNormals.put(dst + c, normal[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rotates a vertex by an orientation in JAU, like rotate in common.glsl.
+	 */
+	private void rotate(int x, int y, int z, int w, int orientation, int[] out, int i)
+	{
+		int s = sine[orientation];
+		int c = cosine[orientation];
+		out[i] = z * s + x * c >> 16;
+		out[i + 1] = y;
+		out[i + 2] = z * c - x * s >> 16;
+		out[i + 3] = w;
+	}
+
+	/**
+	 * Normalizes and rotates a normal, like sort_and_insert does using rotate2 in common.glsl.
+	 */
+	private void rotateNormal(float x, float y, float z, float w, int orientation, float[] out)
+	{
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		int ix = (int) (x / length * 1000);
+		int iz = (int) (z / length * 1000);
+		int s = sine[orientation];
+		int c = cosine[orientation];
+		out[0] = (iz * s + ix * c >> 16) / 1000f;
+		out[1] = (int) (y / length * 1000) / 1000f;
+		out[2] = (iz * c - ix * s >> 16) / 1000f;
+		out[3] = (int) (w * 1000) / 1000f;
+	}
+
+	/**
+	 * Calculates the distance to a face, like face_distance in common.glsl.
+	 */
+	private int faceDistance(int[] rotated, int i)
+	{
+		int total = 0;
+		for (int v = i; v < i + 12; v += 4)
+		{
+			int j = rotated[v + 2] * distanceYawCos - rotated[v] * distanceYawSin >> 16;
+			total += rotated[v + 1] * distancePitchSin + j * distancePitchCos >> 16;
+		}
+		return total / 3;
+	}
+
+	/**
+	 * Tests whether the face isn't facing away from the camera, like face_visible in common.glsl.
+	 */
+	private boolean isFaceVisible(int[] rotated, int i, int x, int y, int z)
+	{
+		float aX = screenX(rotated, i, x, y, z);
+		float aY = screenY(rotated, i, x, y, z);
+		float bX = screenX(rotated, i + 4, x, y, z);
+		float bY = screenY(rotated, i + 4, x, y, z);
+		float cX = screenX(rotated, i + 8, x, y, z);
+		float cY = screenY(rotated, i + 8, x, y, z);
+		return (aX - bX) * (cY - bY) - (cX - bX) * (aY - bY) > 0;
+	}
+
+	/**
+	 * Calculates the screen x of a vertex moved to its position in the scene, like toScreen in to_screen.glsl.
+	 */
+	private float screenX(int[] rotated, int i, int x, int y, int z)
+	{
+		int vx = rotated[i] + x - cameraX;
+		int vy = rotated[i + 1] + y - cameraY;
+		int vz = rotated[i + 2] + z - cameraZ;
+
+		float rotatedX = vz * yawSin + vx * yawCos;
+		float rotatedZ = vz * yawCos - vx * yawSin;
+		float depth = vy * pitchSin + rotatedZ * pitchCos;
+		return rotatedX * zoom / depth + centerX;
+	}
+
+	private float screenY(int[] rotated, int i, int x, int y, int z)
+	{
+		int vx = rotated[i] + x - cameraX;
+		int vy = rotated[i + 1] + y - cameraY;
+		int vz = rotated[i + 2] + z - cameraZ;
+
+		float rotatedZ = vz * yawCos - vx * yawSin;
+		float rotatedY = vy * pitchCos - rotatedZ * pitchSin;
+		float depth = vy * pitchSin + rotatedZ * pitchCos;
+		return rotatedY * zoom / depth + centerY;
+	}
+
+	/**
+	 * Calculates the adjusted priority of a face, like priority_map in priority_render.glsl, placing faces with
+	 * priorities 10 and 11 into the right slots among the others.
+	 */
+	static int priorityMap(int p, int distance, int min10, int avg1, int avg2, int avg3)
+	{
+		// (10, 11)  0  1  2  (10, 11)  3  4  (10, 11)  5  6  7  8  9  (10, 11)
+		//   0   1   2  3  4    5   6   7  8    9  10  11 12 13 14 15   16  17
+		switch (p)
+		{
+			case 0:
+				return 2;
+			case 1:
+				return 3;
+			case 2:
+				return 4;
+			case 3:
+				return 7;
+			case 4:
+				return 8;
+			case 5:
+				return 11;
+			case 6:
+				return 12;
+			case 7:
+				return 13;
+			case 8:
+				return 14;
+			case 9:
+				return 15;
+			case 10:
+				if (distance > avg1)
+				{
+					return 0;
+				}
+				else if (distance > avg2)
+				{
+					return 5;
+				}
+				else if (distance > avg3)
+				{
+					return 9;
+				}
+				else
+				{
+					return 16;
+				}
+			case 11:
+				if (distance > avg1 && min10 > avg1)
+				{
+					return 1;
+				}
+				else if (distance > avg2 && (min10 > avg1 || min10 > avg2))
+				{
+					return 6;
+				}
+				else if (distance > avg3 && (min10 > avg1 || min10 > avg2 || min10 > avg3))
+				{
+					return 10;
+				}
+				else
+				{
+					return 17;
+				}
+			default:
+				// this can't happen unless an invalid priority is sent. just assume 0.
+				return 0;
+		}
+	}
+}
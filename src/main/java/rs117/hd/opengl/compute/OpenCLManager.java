@@ -54,7 +54,6 @@ import org.jocl.cl_kernel;
 import org.jocl.cl_mem;
 import org.jocl.cl_platform_id;
 import org.jocl.cl_program;
-import rs117.hd.HdPlugin;
 import rs117.hd.opengl.shader.Template;
 import rs117.hd.utils.buffer.GLBuffer;
 
@@ -66,10 +65,9 @@ public class OpenCLManager
 
 	private static final String KERNEL_NAME_UNORDERED = "computeUnordered";
 	private static final String KERNEL_NAME_LARGE = "computeLarge";
+	private static final String KERNEL_NAME_XLARGE = "computeXLarge";
 
 	private static final int MIN_WORK_GROUP_SIZE = 256;
-	private static final int SMALL_SIZE = HdPlugin.SMALL_TRIANGLE_COUNT;
-	private static final int LARGE_SIZE = HdPlugin.MAX_TRIANGLE;
 	//  struct shared_data {
 	//      int totalNum[12];
 	//      int totalDistance[12];
@@ -79,9 +77,8 @@ public class OpenCLManager
 	//  };
 	private static final int SHARED_SIZE = 12 + 12 + 18 + 1; // in ints
 
-	// The number of faces each worker processes in the two kernels
-	private int largeFaceCount;
-	private int smallFaceCount;
+	// The largest power of 2 work group size the device supports
+	private int groupSize;
 
 	private cl_platform_id platform;
 	private cl_device_id device;
@@ -89,14 +86,17 @@ public class OpenCLManager
 	private cl_command_queue commandQueue;
 
 	private cl_program programUnordered;
-	private cl_program programSmall;
-	private cl_program programLarge;
+	private cl_program programXLarge;
+	private cl_program[] sizeClassPrograms = new cl_program[0];
 
 	private cl_kernel kernelUnordered;
-	private cl_kernel kernelSmall;
-	private cl_kernel kernelLarge;
+	private cl_kernel kernelXLarge;
+	private cl_kernel[] sizeClassKernels = new cl_kernel[0];
+	// the number of faces each worker processes, and the number of workers per model, in each size class kernel
+	private int[] sizeClassFaceCounts = new int[0];
+	private int[] sizeClassWorkers = new int[0];
 
-	public void init(GL4 gl)
+	public void init(GL4 gl, ComputeSizeClass[] sizeClasses)
 	{
 		CL.setExceptionsEnabled(true);
 
@@ -117,6 +117,7 @@ public class OpenCLManager
 		ensureMinWorkGroupSize();
 		initQueue();
 		compilePrograms();
+		compileSizeClasses(sizeClasses);
 	}
 
 	public void cleanup()
@@ -127,16 +128,10 @@ public class OpenCLManager
 			programUnordered = null;
 		}
 
-		if (programSmall != null)
+		if (programXLarge != null)
 		{
-			CL.clReleaseProgram(programSmall);
-			programSmall = null;
-		}
-
-		if (programLarge != null)
-		{
-			CL.clReleaseProgram(programLarge);
-			programLarge = null;
+			CL.clReleaseProgram(programXLarge);
+			programXLarge = null;
 		}
 
 		if (kernelUnordered != null)
@@ -145,17 +140,13 @@ public class OpenCLManager
 			kernelUnordered = null;
 		}
 
-		if (kernelSmall != null)
+		if (kernelXLarge != null)
 		{
-			CL.clReleaseKernel(kernelSmall);
-			kernelSmall = null;
+			CL.clReleaseKernel(kernelXLarge);
+			kernelXLarge = null;
 		}
 
-		if (kernelLarge != null)
-		{
-			CL.clReleaseKernel(kernelLarge);
-			kernelLarge = null;
-		}
+		releaseSizeClasses();
 
 		if (commandQueue != null)
 		{
@@ -351,11 +342,7 @@ public class OpenCLManager
 		}
 
 		// Largest power of 2 less than or equal to maxWorkGroupSize
-		int groupSize = 0x80000000 >>> Integer.numberOfLeadingZeros((int) maxWorkGroupSize[0]);
-		largeFaceCount = LARGE_SIZE / (Math.min(groupSize, LARGE_SIZE));
-		smallFaceCount = SMALL_SIZE / (Math.min(groupSize, SMALL_SIZE));
-
-		log.debug("Face counts: small: {}, large: {}", smallFaceCount, largeFaceCount);
+		groupSize = 0x80000000 >>> Integer.numberOfLeadingZeros((int) maxWorkGroupSize[0]);
 	}
 
 	private void initQueue()
@@ -398,36 +385,78 @@ public class OpenCLManager
 
 	private void compilePrograms()
 	{
-		Template templateSmall = new Template()
-			.addInclude(OpenCLManager.class)
-			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + smallFaceCount) : null);
-		Template templateLarge = new Template()
-			.addInclude(OpenCLManager.class)
-			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + largeFaceCount) : null);
-
 		String unordered = new Template()
 			.addInclude(OpenCLManager.class)
 			.load("comp_unordered.cl");
-		String small = templateSmall.load("comp.cl");
-		String large = templateLarge.load("comp.cl");
+		String xlarge = new Template()
+			.addInclude(OpenCLManager.class)
+			.load("comp_xlarge.cl");
 
 		programUnordered = compileProgram(unordered);
-		programSmall = compileProgram(small);
-		programLarge = compileProgram(large);
+		programXLarge = compileProgram(xlarge);
 
 		kernelUnordered = getKernel(programUnordered, KERNEL_NAME_UNORDERED);
-		kernelSmall = getKernel(programSmall, KERNEL_NAME_LARGE);
-		kernelLarge = getKernel(programLarge, KERNEL_NAME_LARGE);
+		kernelXLarge = getKernel(programXLarge, KERNEL_NAME_XLARGE);
+	}
+
+	/**
+	 * Compiles a kernel for each size class, replacing the kernels of the previous size classes.
+	 */
+	public void compileSizeClasses(ComputeSizeClass[] sizeClasses)
+	{
+		releaseSizeClasses();
+
+		sizeClassPrograms = new cl_program[sizeClasses.length];
+		sizeClassKernels = new cl_kernel[sizeClasses.length];
+		sizeClassFaceCounts = new int[sizeClasses.length];
+		sizeClassWorkers = new int[sizeClasses.length];
+		for (int i = 0; i < sizeClasses.length; i++)
+		{
+			int maxFaces = sizeClasses[i].maxFaces;
+			int faceCount = ComputeSizeClass.facesPerThread(maxFaces, groupSize);
+			sizeClassFaceCounts[i] = faceCount;
+			sizeClassWorkers[i] = ComputeSizeClass.ceilDiv(maxFaces, faceCount);
+
+			String source = new Template()
+				.addInclude(OpenCLManager.class)
+				.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + faceCount) : null)
+				.load("comp.cl");
+			sizeClassPrograms[i] = compileProgram(source);
+			sizeClassKernels[i] = getKernel(sizeClassPrograms[i], KERNEL_NAME_LARGE);
+		}
+
+		log.debug("Face counts: {}", Arrays.toString(sizeClassFaceCounts));
+	}
+
+	private void releaseSizeClasses()
+	{
+		for (cl_kernel kernel : sizeClassKernels)
+		{
+			if (kernel != null)
+			{
+				CL.clReleaseKernel(kernel);
+			}
+		}
+		sizeClassKernels = new cl_kernel[0];
+
+		for (cl_program program : sizeClassPrograms)
+		{
+			if (program != null)
+			{
+				CL.clReleaseProgram(program);
+			}
+		}
+		sizeClassPrograms = new cl_program[0];
 	}
 
-	public void compute(int unorderedModels, int smallModels, int largeModels,
+	public void compute(int unorderedModels, ComputeSizeClass[] sizeClasses, int xlargeModels,
 		GLBuffer sceneVertexBuffer,
 		GLBuffer sceneUvBuffer,
 		GLBuffer vertexBuffer,
 		GLBuffer uvBuffer,
 		GLBuffer unorderedBuffer,
-		GLBuffer smallBuffer,
-		GLBuffer largeBuffer,
+		GLBuffer xlargeBuffer,
+		GLBuffer xlargeScratchBuffer,
 		GLBuffer outVertexBuffer,
 		GLBuffer outUvBuffer,
 		GLBuffer uniformBuffer,
@@ -436,21 +465,25 @@ public class OpenCLManager
 	    GLBuffer tempNormalBuffer
 	)
 	{
-		cl_mem[] glBuffersAll = {
-			sceneVertexBuffer.cl_mem,
-			sceneUvBuffer.cl_mem,
-			unorderedBuffer.cl_mem,
-			smallBuffer.cl_mem,
-			largeBuffer.cl_mem,
-			vertexBuffer.cl_mem,
-			uvBuffer.cl_mem,
-			outVertexBuffer.cl_mem,
-			outUvBuffer.cl_mem,
-			uniformBuffer.cl_mem,
-			normalOutBuffer.cl_mem,
-			normalBuffer.cl_mem,
-			tempNormalBuffer.cl_mem,
-		};
+		cl_mem[] glBuffersAll = new cl_mem[sizeClasses.length + 13];
+		int numGlBuffers = 0;
+		glBuffersAll[numGlBuffers++] = sceneVertexBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = sceneUvBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = unorderedBuffer.cl_mem;
+		for (ComputeSizeClass sizeClass : sizeClasses)
+		{
+			glBuffersAll[numGlBuffers++] = sizeClass.glModelBuffer.cl_mem;
+		}
+		glBuffersAll[numGlBuffers++] = xlargeBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = xlargeScratchBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = vertexBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = uvBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = outVertexBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = outUvBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = uniformBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = normalOutBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = normalBuffer.cl_mem;
+		glBuffersAll[numGlBuffers++] = tempNormalBuffer.cl_mem;
 		cl_mem[] glBuffers = Arrays.stream(glBuffersAll)
 			.filter(Objects::nonNull)
 			.toArray(cl_mem[]::new);
@@ -458,11 +491,12 @@ public class OpenCLManager
 		cl_event acquireGLBuffers = new cl_event();
 		clEnqueueAcquireGLObjects(commandQueue, glBuffers.length, glBuffers, 0, null, acquireGLBuffers);
 
-		cl_event[] computeEvents = {
-			new cl_event(),
-			new cl_event(),
-			new cl_event()
-		};
+		// one for the unordered and extra large kernels each, and one for each size class
+		cl_event[] computeEvents = new cl_event[sizeClasses.length + 2];
+		for (int i = 0; i < computeEvents.length; i++)
+		{
+			computeEvents[i] = new cl_event();
+		}
 		int numComputeEvents = 0;
 
 		if (unorderedModels > 0)
@@ -483,42 +517,51 @@ public class OpenCLManager
 				new long[]{unorderedModels * 6L}, new long[]{6}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
 		}
 
-		if (smallModels > 0)
+		for (int i = 0; i < sizeClasses.length; i++)
 		{
-			clSetKernelArg(kernelSmall, 0, (SHARED_SIZE + SMALL_SIZE) * Integer.BYTES, null);
-			clSetKernelArg(kernelSmall, 1, Sizeof.cl_mem, smallBuffer.ptr());
-			clSetKernelArg(kernelSmall, 2, Sizeof.cl_mem, sceneVertexBuffer.ptr());
-			clSetKernelArg(kernelSmall, 3, Sizeof.cl_mem, vertexBuffer.ptr());
-			clSetKernelArg(kernelSmall, 4, Sizeof.cl_mem, sceneUvBuffer.ptr());
-			clSetKernelArg(kernelSmall, 5, Sizeof.cl_mem, uvBuffer.ptr());
-			clSetKernelArg(kernelSmall, 6, Sizeof.cl_mem, outVertexBuffer.ptr());
-			clSetKernelArg(kernelSmall, 7, Sizeof.cl_mem, outUvBuffer.ptr());
-			clSetKernelArg(kernelSmall, 8, Sizeof.cl_mem, normalOutBuffer.ptr());
-			clSetKernelArg(kernelSmall, 9, Sizeof.cl_mem, normalBuffer.ptr());
-			clSetKernelArg(kernelSmall, 10, Sizeof.cl_mem, tempNormalBuffer.ptr());
-			clSetKernelArg(kernelSmall, 11, Sizeof.cl_mem, uniformBuffer.ptr());
-
-			clEnqueueNDRangeKernel(commandQueue, kernelSmall, 1, null,
-				new long[]{smallModels * (SMALL_SIZE / smallFaceCount)}, new long[]{SMALL_SIZE / smallFaceCount}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
+			ComputeSizeClass sizeClass = sizeClasses[i];
+			if (sizeClass.modelCount == 0)
+			{
+				continue;
+			}
+
+			cl_kernel kernel = sizeClassKernels[i];
+			clSetKernelArg(kernel, 0, (SHARED_SIZE + sizeClass.maxFaces) * Integer.BYTES, null);
+			clSetKernelArg(kernel, 1, Sizeof.cl_mem, sizeClass.glModelBuffer.ptr());
+			clSetKernelArg(kernel, 2, Sizeof.cl_mem, sceneVertexBuffer.ptr());
+			clSetKernelArg(kernel, 3, Sizeof.cl_mem, vertexBuffer.ptr());
+			clSetKernelArg(kernel, 4, Sizeof.cl_mem, sceneUvBuffer.ptr());
+			clSetKernelArg(kernel, 5, Sizeof.cl_mem, uvBuffer.ptr());
+			clSetKernelArg(kernel, 6, Sizeof.cl_mem, outVertexBuffer.ptr());
+			clSetKernelArg(kernel, 7, Sizeof.cl_mem, outUvBuffer.ptr());
+			clSetKernelArg(kernel, 8, Sizeof.cl_mem, normalOutBuffer.ptr());
+			clSetKernelArg(kernel, 9, Sizeof.cl_mem, normalBuffer.ptr());
+			clSetKernelArg(kernel, 10, Sizeof.cl_mem, tempNormalBuffer.ptr());
+			clSetKernelArg(kernel, 11, Sizeof.cl_mem, uniformBuffer.ptr());
+
+			clEnqueueNDRangeKernel(commandQueue, kernel, 1, null,
+				new long[]{(long) sizeClass.modelCount * sizeClassWorkers[i]}, new long[]{sizeClassWorkers[i]}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
 		}
 
-		if (largeModels > 0)
+		if (xlargeModels > 0)
 		{
-			clSetKernelArg(kernelLarge, 0, (SHARED_SIZE + LARGE_SIZE) * Integer.BYTES, null);
-			clSetKernelArg(kernelLarge, 1, Sizeof.cl_mem, largeBuffer.ptr());
-			clSetKernelArg(kernelLarge, 2, Sizeof.cl_mem, sceneVertexBuffer.ptr());
-			clSetKernelArg(kernelLarge, 3, Sizeof.cl_mem, vertexBuffer.ptr());
-			clSetKernelArg(kernelLarge, 4, Sizeof.cl_mem, sceneUvBuffer.ptr());
-			clSetKernelArg(kernelLarge, 5, Sizeof.cl_mem, uvBuffer.ptr());
-			clSetKernelArg(kernelLarge, 6, Sizeof.cl_mem, outVertexBuffer.ptr());
-			clSetKernelArg(kernelLarge, 7, Sizeof.cl_mem, outUvBuffer.ptr());
-			clSetKernelArg(kernelLarge, 8, Sizeof.cl_mem, normalOutBuffer.ptr());
-			clSetKernelArg(kernelLarge, 9, Sizeof.cl_mem, normalBuffer.ptr());
-			clSetKernelArg(kernelLarge, 10, Sizeof.cl_mem, tempNormalBuffer.ptr());
-			clSetKernelArg(kernelLarge, 11, Sizeof.cl_mem, uniformBuffer.ptr());
-
-			clEnqueueNDRangeKernel(commandQueue, kernelLarge, 1, null,
-				new long[]{(long) largeModels * (LARGE_SIZE / largeFaceCount)}, new long[]{LARGE_SIZE / largeFaceCount}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
+			// the sort arrays are in the scratch buffer, so only the priority totals are in local memory
+			clSetKernelArg(kernelXLarge, 0, SHARED_SIZE * Integer.BYTES, null);
+			clSetKernelArg(kernelXLarge, 1, Sizeof.cl_mem, xlargeBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 2, Sizeof.cl_mem, sceneVertexBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 3, Sizeof.cl_mem, vertexBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 4, Sizeof.cl_mem, sceneUvBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 5, Sizeof.cl_mem, uvBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 6, Sizeof.cl_mem, outVertexBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 7, Sizeof.cl_mem, outUvBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 8, Sizeof.cl_mem, normalOutBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 9, Sizeof.cl_mem, normalBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 10, Sizeof.cl_mem, tempNormalBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 11, Sizeof.cl_mem, uniformBuffer.ptr());
+			clSetKernelArg(kernelXLarge, 12, Sizeof.cl_mem, xlargeScratchBuffer.ptr());
+
+			clEnqueueNDRangeKernel(commandQueue, kernelXLarge, 1, null,
+				new long[]{(long) xlargeModels * groupSize}, new long[]{groupSize}, 1, new cl_event[]{acquireGLBuffers}, computeEvents[numComputeEvents++]);
 		}
 
 		if (numComputeEvents == 0)
@@ -0,0 +1,191 @@
+package rs117.hd.opengl.shader;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.jogamp.opengl.GL4;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import rs117.hd.utils.GLUtil;
+
+/**
+ * An on-disk cache of linked shader program binaries, so programs don't need to be compiled from source on every
+ * startup. Programs are keyed by a hash of their fully expanded sources, which includes every define, along with
+ * the GL vendor, renderer and version, since binaries are only valid for the driver which created them.
+ * A binary which is rejected by the driver is deleted, and the program is compiled from source instead.
+ */
+@Singleton
+@Slf4j
+public class ProgramCache
+{
+	private static final File CACHE_DIR = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "shader-cache");
+
+	private static final int MAGIC = 0x31313750; // "117P"
+	// header: magic, binary format
+	private static final int HEADER_SIZE = 8;
+	// older binaries are deleted once there are more than this many, since each change to a shader leaves one behind
+	private static final int MAX_CACHED_PROGRAMS = 32;
+
+	private String driver;
+	private boolean supported;
+
+	private boolean isSupported(GL4 gl)
+	{
+		if (driver == null)
+		{
+			driver = gl.glGetString(gl.GL_VENDOR) + '\n' + gl.glGetString(gl.GL_RENDERER) + '\n' + gl.glGetString(gl.GL_VERSION);
+			supported = GLUtil.glGetInteger(gl, gl.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+			if (!supported)
+			{
+				log.debug("Program binaries are not supported by the driver");
+			}
+		}
+		return supported;
+	}
+
+	/**
+	 * @param types   the type of each shader in the program
+	 * @param sources the fully expanded source of each shader in the program
+	 * @return the key of the program, or null if program binaries aren't supported
+	 */
+	String key(GL4 gl, int[] types, String[] sources)
+	{
+		if (!isSupported(gl))
+		{
+			return null;
+		}
+
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(driver, StandardCharsets.UTF_8);
+		for (int i = 0; i < sources.length; i++)
+		{
+			hasher.putInt(types[i]);
+			hasher.putInt(sources[i].length());
+			hasher.putString(sources[i], StandardCharsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * @return a linked program loaded from the cached binary, or 0 if there is none or the driver rejected it
+	 */
+	int load(GL4 gl, String key)
+	{
+		File file = new File(CACHE_DIR, key + ".bin");
+		if (!file.exists())
+		{
+			return 0;
+		}
+
+		ByteBuffer binary;
+		int format;
+		try
+		{
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			if (bytes.length <= HEADER_SIZE || buffer.getInt() != MAGIC)
+			{
+				delete(file);
+				return 0;
+			}
+			format = buffer.getInt();
+			binary = ByteBuffer.allocateDirect(bytes.length - HEADER_SIZE);
+			binary.put(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE).flip();
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to read cached program binary", ex);
+			return 0;
+		}
+
+		int program = gl.glCreateProgram();
+		gl.glProgramBinary(program, format, binary, binary.remaining());
+		// clear any error raised by an unsupported format, which is handled the same as a rejected binary
+		gl.glGetError();
+		if (GLUtil.glGetProgram(gl, program, gl.GL_LINK_STATUS) != gl.GL_TRUE)
+		{
+			log.debug("Cached program binary was rejected, compiling from source instead");
+			gl.glDeleteProgram(program);
+			delete(file);
+			return 0;
+		}
+
+		// mark the binary as recently used, so it's kept when pruning
+		file.setLastModified(System.currentTimeMillis());
+		return program;
+	}
+
+	/**
+	 * Saves the binary of a program which was linked with {@link GL4#GL_PROGRAM_BINARY_RETRIEVABLE_HINT} set.
+	 */
+	void save(GL4 gl, int program, String key)
+	{
+		int length = GLUtil.glGetProgram(gl, program, gl.GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0)
+		{
+			return;
+		}
+
+		ByteBuffer binary = ByteBuffer.allocateDirect(length);
+		IntBuffer format = IntBuffer.allocate(1);
+		IntBuffer written = IntBuffer.allocate(1);
+		gl.glGetProgramBinary(program, length, written, format, binary);
+		binary.limit(written.get(0));
+
+		byte[] bytes = new byte[HEADER_SIZE + binary.remaining()];
+		ByteBuffer.wrap(bytes).putInt(MAGIC).putInt(format.get(0)).put(binary);
+
+		try
+		{
+			if (!CACHE_DIR.exists() && !CACHE_DIR.mkdirs())
+			{
+				throw new IOException("Unable to create directory " + CACHE_DIR);
+			}
+
+			// write to a temporary file first, so an interrupted write never leaves a partial binary behind
+			File tempFile = new File(CACHE_DIR, key + ".tmp");
+			Files.write(tempFile.toPath(), bytes);
+			Files.move(tempFile.toPath(), new File(CACHE_DIR, key + ".bin").toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to write program binary to the cache", ex);
+			return;
+		}
+
+		prune();
+	}
+
+	private static void prune()
+	{
+		File[] files = CACHE_DIR.listFiles((dir, name) -> name.endsWith(".bin"));
+		if (files == null || files.length <= MAX_CACHED_PROGRAMS)
+		{
+			return;
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+		for (int i = MAX_CACHED_PROGRAMS; i < files.length; i++)
+		{
+			delete(files[i]);
+		}
+	}
+
+	private static void delete(File file)
+	{
+		if (!file.delete())
+		{
+			log.debug("Unable to delete {}", file);
+		}
+	}
+}
@@ -29,6 +29,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.jogamp.opengl.GL4;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import rs117.hd.utils.GLUtil;
@@ -57,6 +58,32 @@ public class Shader
 
 	public int compile(GL4 gl, Template template) throws ShaderException
 	{
+		return compile(gl, template, null);
+	}
+
+	/**
+	 * @param programCache the cache to load the program from and save it to, or null to always compile from source
+	 */
+	public int compile(GL4 gl, Template template, @Nullable ProgramCache programCache) throws ShaderException
+	{
+		int[] types = new int[units.size()];
+		String[] sources = new String[units.size()];
+		for (int j = 0; j < sources.length; j++)
+		{
+			types[j] = units.get(j).type;
+			sources[j] = template.load(units.get(j).filename);
+		}
+
+		String key = programCache == null ? null : programCache.key(gl, types, sources);
+		if (key != null)
+		{
+			int program = programCache.load(gl, key);
+			if (program != 0)
+			{
+				return program;
+			}
+		}
+
 		int program = gl.glCreateProgram();
 		int[] shaders = new int[units.size()];
 		int i = 0;
@@ -65,15 +92,13 @@ public class Shader
 		{
 			while (i < shaders.length)
 			{
-				Unit unit = units.get(i);
-				int shader = gl.glCreateShader(unit.type);
+				int shader = gl.glCreateShader(types[i]);
 				if (shader == 0)
 				{
-					throw new ShaderException("Unable to create shader of type " + unit.type);
+					throw new ShaderException("Unable to create shader of type " + types[i]);
 				}
 
-				String source = template.load(unit.filename);
-				gl.glShaderSource(shader, 1, new String[]{source}, null);
+				gl.glShaderSource(shader, 1, new String[]{sources[i]}, null);
 				gl.glCompileShader(shader);
 
 				if (GLUtil.glGetShader(gl, shader, gl.GL_COMPILE_STATUS) != gl.GL_TRUE)
@@ -86,6 +111,10 @@ public class Shader
 				shaders[i++] = shader;
 			}
 
+			if (key != null)
+			{
+				gl.glProgramParameteri(program, gl.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, gl.GL_TRUE);
+			}
 			gl.glLinkProgram(program);
 
 			if (GLUtil.glGetProgram(gl, program, gl.GL_LINK_STATUS) == gl.GL_FALSE)
@@ -111,6 +140,11 @@ public class Shader
 			}
 		}
 
+		if (key != null)
+		{
+			programCache.save(gl, program, key);
+		}
+
 		return program;
 	}
 }
@@ -30,14 +30,22 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class Template
 {
+	// classpath resources can't change while running, so they're only ever read once
+	private static final Map<String, String> RESOURCE_CACHE = new ConcurrentHashMap<>();
+
 	private final List<Function<String, String>> resourceLoaders = new ArrayList<>();
+	// includes are expanded once per template, since most programs share them
+	private final Map<String, String> loaded = new HashMap<>();
 
 	public String process(String str)
 	{
@@ -61,16 +69,25 @@ public class Template
 
 	public String load(String filename)
 	{
+		String processed = loaded.get(filename);
+		if (processed != null)
+		{
+			return processed;
+		}
+
+		processed = "";
 		for (Function<String, String> loader : resourceLoaders)
 		{
 			String value = loader.apply(filename);
 			if (value != null)
 			{
-				return process(value);
+				processed = process(value);
+				break;
 			}
 		}
 
-		return "";
+		loaded.put(filename, processed);
+		return processed;
 	}
 
 	public Template add(Function<String, String> fn)
@@ -83,11 +100,20 @@ public class Template
 	{
 		return add(f ->
 		{
+			String key = clazz.getName() + ':' + f;
+			String cached = RESOURCE_CACHE.get(key);
+			if (cached != null)
+			{
+				return cached;
+			}
+
 			try (InputStream is = clazz.getResourceAsStream(f))
 			{
 				if (is != null)
 				{
-					return inputStreamToString(is);
+					String value = inputStreamToString(is);
+					RESOURCE_CACHE.put(key, value);
+					return value;
 				}
 			}
 			catch (IOException ex)
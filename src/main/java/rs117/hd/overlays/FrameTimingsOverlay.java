@@ -0,0 +1,75 @@
+package rs117.hd.overlays;
+
+import com.google.inject.Inject;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import net.runelite.client.ui.overlay.OverlayPanel;
+import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LineComponent;
+import net.runelite.client.ui.overlay.components.TitleComponent;
+import rs117.hd.opengl.compute.ComputeSizeClassTimer;
+import rs117.hd.utils.FrameTimer;
+
+public class FrameTimingsOverlay extends OverlayPanel
+{
+	private static final double[] PERCENTILES = { 50, 95, 99 };
+
+	private final FrameTimer frameTimer;
+	private final ComputeSizeClassTimer computeSizeClassTimer;
+
+	@Inject
+	public FrameTimingsOverlay(FrameTimer frameTimer, ComputeSizeClassTimer computeSizeClassTimer)
+	{
+		this.frameTimer = frameTimer;
+		this.computeSizeClassTimer = computeSizeClassTimer;
+		setPosition(OverlayPosition.TOP_LEFT);
+		panelComponent.setPreferredSize(new Dimension(215, 0));
+	}
+
+	@Override
+	public Dimension render(Graphics2D g)
+	{
+		panelComponent.getChildren().add(TitleComponent.builder()
+			.text("Frame timings (ms)")
+			.build());
+		panelComponent.getChildren().add(LineComponent.builder()
+			.left("Section")
+			.right("p50 / p95 / p99")
+			.build());
+
+		for (FrameTimer.Section section : FrameTimer.Section.values())
+		{
+			double[] percentiles = frameTimer.getPercentiles(section, PERCENTILES);
+			panelComponent.getChildren().add(LineComponent.builder()
+				.left(section.getName() + (section.isGpu() ? " (GPU)" : ""))
+				.right(percentiles == null ? "-" :
+					String.format("%.2f / %.2f / %.2f", percentiles[0], percentiles[1], percentiles[2]))
+				.build());
+		}
+
+		// only recorded while sorting with compute shaders
+		ComputeSizeClassTimer.PassStats[] sizeClasses = computeSizeClassTimer.getStats();
+		if (sizeClasses != null)
+		{
+			panelComponent.getChildren().add(TitleComponent.builder()
+				.text("Compute size classes (GPU)")
+				.build());
+			panelComponent.getChildren().add(LineComponent.builder()
+				.left("Faces")
+				.right("ms / models / fill")
+				.build());
+
+			for (ComputeSizeClassTimer.PassStats sizeClass : sizeClasses)
+			{
+				double fill = sizeClass.getFill();
+				panelComponent.getChildren().add(LineComponent.builder()
+					.left(sizeClass.name)
+					.right(String.format("%.2f / %.0f / %s", sizeClass.gpuMs, sizeClass.models,
+						Double.isNaN(fill) ? "-" : String.format("%.0f%%", fill * 100)))
+					.build());
+			}
+		}
+
+		return super.render(g);
+	}
+}
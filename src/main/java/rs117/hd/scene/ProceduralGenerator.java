@@ -28,8 +28,6 @@ import com.google.common.primitives.Floats;
 import com.google.common.primitives.Ints;
 import com.jogamp.opengl.math.VectorUtil;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
@@ -61,49 +59,37 @@ public class ProceduralGenerator
 	@Inject
 	private HdPlugin hdPlugin;
 
+	@Inject
+	private TileMaterialTable tileMaterialTable;
+
 	private final int VERTICES_PER_FACE = 3;
 
-	// terrain data
-	Map<Integer, Integer> vertexTerrainColor;
-	Map<Integer, Material> vertexTerrainTexture;
-	Map<Integer, float[]> vertexTerrainNormals;
-	// used for overriding potentially low quality vertex colors
-	HashMap<Integer, Boolean> highPriorityColor;
+	// per-vertex terrain and water data, reused between scene loads
+	final TerrainVertexStore vertexStore = new TerrainVertexStore();
 
 	// water-related data
 	boolean[][][] tileIsWater;
-	Map<Integer, Boolean> vertexIsWater;
-	Map<Integer, Boolean> vertexIsLand;
-	Map<Integer, Boolean> vertexIsOverlay;
-	Map<Integer, Boolean> vertexIsUnderlay;
 	boolean[][][] skipTile;
-	Map<Integer, Integer> vertexUnderwaterDepth;
 	int[][][] underwaterDepthLevels;
 	int[] depthLevelSlope = new int[]{150, 300, 470, 610, 700, 750, 820, 920, 1080, 1300, 1350, 1380};
 
 	/**
 	 * Iterates through all Tiles in a given Scene, producing color and
 	 * material data for each vertex of each Tile. Then adds the resulting
-	 * data to appropriate HashMaps.
+	 * data to the vertex store.
 	 *
 	 * @param scene
 	 */
 	public void generateTerrainData(Scene scene)
 	{
-		vertexTerrainColor = new HashMap<>();
-		// used for overriding potentially undesirable vertex colors
+		// IS_UNDERLAY is set for faces without an overlay, and IS_OVERLAY for faces with an overlay.
+		// the combination can be used to determine the vertices between underlays and overlays for custom blending.
+		// HIGH_PRIORITY_COLOR is used for overriding potentially undesirable vertex colors,
 		// for example, colors that aren't supposed to be visible
-		highPriorityColor = new HashMap<>();
-		vertexTerrainTexture = new HashMap<>();
-		// for faces without an overlay is set to true
-		vertexIsUnderlay = new HashMap<>();
-		// for faces with an overlay is set to true
-		// the result of these maps can be used to determine the vertices
-		// between underlays and overlays for custom blending
-		vertexIsOverlay = new HashMap<>();
+		vertexStore.clearFlags(TerrainVertexStore.TERRAIN_FLAGS);
 		Tile[][][] tiles = scene.getTiles();
 
-		// first loop - assign land colors and textures to hashmap
+		// first loop - assign land colors and textures to the vertex store
 		for (int z = 0; z < Constants.MAX_Z; ++z)
 		{
 			for (int x = 0; x < Constants.SCENE_SIZE; ++x)
@@ -125,7 +111,7 @@ public class ProceduralGenerator
 
 	/**
 	 * Produces color and material data for the vertices of the provided Tile.
-	 * Then adds the resulting data to appropriate HashMaps.
+	 * Then adds the resulting data to the vertex store.
 	 *
 	 * @param tile
 	 */
@@ -145,7 +131,9 @@ public class ProceduralGenerator
 			return;
 		}
 
-		int[] vertexHashes = new int[faceCount * VERTICES_PER_FACE];
+		long[] vertexHashes = new long[faceCount * VERTICES_PER_FACE];
+		// vertices which are skipped, such as water, are left unassigned
+		boolean[] vertexAssigned = new boolean[faceCount * VERTICES_PER_FACE];
 		int[] vertexColors = new int[faceCount * VERTICES_PER_FACE];
 		int[] vertexOverlays = new int[faceCount * VERTICES_PER_FACE];
 		int[] vertexUnderlays = new int[faceCount * VERTICES_PER_FACE];
@@ -172,7 +160,12 @@ public class ProceduralGenerator
 			int nwColor = tile.getSceneTilePaint().getNwColor();
 			int neColor = tile.getSceneTilePaint().getNeColor();
 
-			vertexHashes = tileVertexKeys(tile);
+			long[] vertexKeys = tileVertexKeys(tile);
+			for (int vertex = 0; vertex < vertexKeys.length; vertex++)
+			{
+				vertexHashes[vertex] = vertexKeys[vertex];
+				vertexAssigned[vertex] = true;
+			}
 
 			if (x >= Constants.SCENE_SIZE - 2 && y >= Constants.SCENE_SIZE - 2)
 			{
@@ -218,7 +211,7 @@ public class ProceduralGenerator
 			{
 				int[] faceColors = new int[]{faceColorsA[face], faceColorsB[face], faceColorsC[face]};
 
-				int[] vertexKeys = faceVertexKeys(tile, face);
+				long[] vertexKeys = faceVertexKeys(tile, face);
 
 				for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
 				{
@@ -229,6 +222,7 @@ public class ProceduralGenerator
 					}
 
 					vertexHashes[face * VERTICES_PER_FACE + vertex] = vertexKeys[vertex];
+					vertexAssigned[face * VERTICES_PER_FACE + vertex] = true;
 
 					int color = faceColors[vertex];
 					vertexColors[face * VERTICES_PER_FACE + vertex] = color;
@@ -249,7 +243,7 @@ public class ProceduralGenerator
 
 		for (int vertex = 0; vertex < vertexHashes.length; vertex++)
 		{
-			if (vertexHashes[vertex] == 0)
+			if (!vertexAssigned[vertex])
 			{
 				continue;
 			}
@@ -278,7 +272,8 @@ public class ProceduralGenerator
 			int darkenBase = 0;
 			int darkenAdd = 0;
 
-			float[] vNormals = vertexTerrainNormals.getOrDefault(vertexHashes[vertex], new float[]{0.0f, 0.0f, 0.0f});
+			float[] vNormals = new float[]{0.0f, 0.0f, 0.0f};
+			vertexStore.getNormals(vertexHashes[vertex], vNormals);
 
 			float dot = VectorUtil.dotVec3(VectorUtil.normalizeVec3(vNormals), inverseLightDirection);
 			int lighten = (int) (Math.max((colorHSL[2] - lightenAdd), 0) * lightenMultiplier) + lightenBase;
@@ -291,8 +286,7 @@ public class ProceduralGenerator
 			Material material = Material.DIRT_1;
 			if (vertexOverlays[vertex] != 0)
 			{
-				Overlay overlay = Overlay.getOverlay(vertexOverlays[vertex], tile, client);
-				overlay = getSeasonalOverlay(overlay);
+				Overlay overlay = tileMaterialTable.getSeasonalOverlay(vertexOverlays[vertex], tile);
 				GroundMaterial groundMaterial = overlay.getGroundMaterial();
 				material = groundMaterial.getRandomMaterial(z, worldX, worldY);
 				isOverlay = !overlay.isBlendedAsUnderlay();
@@ -300,8 +294,7 @@ public class ProceduralGenerator
 			}
 			else if (vertexUnderlays[vertex] != 0)
 			{
-				Underlay underlay = Underlay.getUnderlay(vertexUnderlays[vertex], tile, client);
-				underlay = getSeasonalUnderlay(underlay);
+				Underlay underlay = tileMaterialTable.getSeasonalUnderlay(vertexUnderlays[vertex], tile);
 				GroundMaterial groundMaterial = underlay.getGroundMaterial();
 				material = groundMaterial.getRandomMaterial(z, worldX, worldY);
 				isOverlay = underlay.isBlendedAsOverlay();
@@ -316,27 +309,28 @@ public class ProceduralGenerator
 			// this is used to determine how to blend between vertex colors
 			if (isOverlay)
 			{
-				vertexIsOverlay.put(vertexHashes[vertex], true);
+				vertexStore.setFlags(vertexHashes[vertex], TerrainVertexStore.IS_OVERLAY);
 			}
 			else
 			{
-				vertexIsUnderlay.put(vertexHashes[vertex], true);
+				vertexStore.setFlags(vertexHashes[vertex], TerrainVertexStore.IS_UNDERLAY);
 			}
 
-			// add color and texture to hashmap
-			if ((!lowPriorityColor || !highPriorityColor.containsKey(vertexHashes[vertex])) && !vertexDefaultColor[vertex])
+			// add color and texture to the vertex store
+			boolean highPriority = vertexStore.hasFlags(vertexHashes[vertex], TerrainVertexStore.HIGH_PRIORITY_COLOR);
+			if ((!lowPriorityColor || !highPriority) && !vertexDefaultColor[vertex])
 			{
-				if (vertexOverlays[vertex] != 0 || !vertexTerrainColor.containsKey(vertexHashes[vertex]) || !highPriorityColor.containsKey(vertexHashes[vertex]))
+				if (vertexOverlays[vertex] != 0 || !vertexStore.hasFlags(vertexHashes[vertex], TerrainVertexStore.HAS_COLOR) || !highPriority)
 				{
-					vertexTerrainColor.put(vertexHashes[vertex], vertexColors[vertex]);
+					vertexStore.setColor(vertexHashes[vertex], vertexColors[vertex]);
 				}
-				if (vertexOverlays[vertex] != 0 || !vertexTerrainTexture.containsKey(vertexHashes[vertex]) || !highPriorityColor.containsKey(vertexHashes[vertex]))
+				if (vertexOverlays[vertex] != 0 || !vertexStore.hasFlags(vertexHashes[vertex], TerrainVertexStore.HAS_MATERIAL) || !highPriority)
 				{
-					vertexTerrainTexture.put(vertexHashes[vertex], material);
+					vertexStore.setMaterial(vertexHashes[vertex], material);
 				}
 				if (!lowPriorityColor)
 				{
-					highPriorityColor.put(vertexHashes[vertex], true);
+					vertexStore.setFlags(vertexHashes[vertex], TerrainVertexStore.HIGH_PRIORITY_COLOR);
 				}
 			}
 		}
@@ -345,7 +339,8 @@ public class ProceduralGenerator
 	/**
 	 * Generates underwater terrain data by iterating through all Tiles in a given
 	 * Scene, increasing the depth of each tile based on its distance from the shore.
-	 * Then stores the resulting data in a HashMap.
+	 * Then stores the resulting data in the vertex store.
+	 * This is the first step of generating scene data, so the vertex store is cleared here.
 	 *
 	 * @param scene
 	 */
@@ -353,17 +348,15 @@ public class ProceduralGenerator
 	{
 		// true if a tile contains at least 1 face which qualifies as water
 		tileIsWater = new boolean[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
-		// true if a vertex is part of a face which qualifies as water; non-existent if not
-		vertexIsWater = new HashMap<>();
-		// true if a vertex is part of a face which qualifies as land; non-existent if not
-		// tiles along the shoreline will be true for both vertexIsWater and vertexIsLand
-		vertexIsLand = new HashMap<>();
+		// IS_WATER is set if a vertex is part of a face which qualifies as water,
+		// and IS_LAND if a vertex is part of a face which qualifies as land.
+		// tiles along the shoreline will have both flags set
+		vertexStore.clear();
 		// if true, the tile will be skipped when the scene is drawn
 		// this is due to certain edge cases with water on the same X/Y on different planes
 		skipTile = new boolean[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
 		// the height adjustment for each vertex, to be applied to the vertex'
-		// real height to create the underwater terrain
-		vertexUnderwaterDepth = new HashMap<>();
+		// real height to create the underwater terrain, is stored in the vertex store
 		// the basic 'levels' of underwater terrain, used to sink terrain based on its distance
 		// from the shore, then used to produce the world-space height offset
 		// 0 = land
@@ -407,15 +400,15 @@ public class ProceduralGenerator
 					}
 					if (tile.getSceneTilePaint() != null)
 					{
-						int[] vertexKeys = tileVertexKeys(tile);
+						long[] vertexKeys = tileVertexKeys(tile);
 
 						if (tileWaterType(tile, tile.getSceneTilePaint()) == WaterType.NONE)
 						{
-							for (int vertexKey : vertexKeys)
+							for (long vertexKey : vertexKeys)
 							{
 								if (tile.getSceneTilePaint().getNeColor() != 12345678)
 								{
-									vertexIsLand.put(vertexKey, true);
+									vertexStore.setFlags(vertexKey, TerrainVertexStore.IS_LAND);
 								}
 							}
 
@@ -455,9 +448,9 @@ public class ProceduralGenerator
 
 							tileIsWater[z][x][y] = true;
 
-							for (int vertexKey : vertexKeys)
+							for (long vertexKey : vertexKeys)
 							{
-								vertexIsWater.put(vertexKey, true);
+								vertexStore.setFlags(vertexKey, TerrainVertexStore.IS_WATER);
 							}
 						}
 					}
@@ -511,7 +504,7 @@ public class ProceduralGenerator
 						for (int face = 0; face < faceCount; face++)
 						{
 							int[][] vertices = faceVertices(tile, face);
-							int[] vertexKeys = faceVertexKeys(tile, face);
+							long[] vertexKeys = faceVertexKeys(tile, face);
 
 							if (faceWaterType(tile, face, sceneTileModel) == WaterType.NONE)
 							{
@@ -519,7 +512,7 @@ public class ProceduralGenerator
 								{
 									if (sceneTileModel.getTriangleColorA()[face] != 12345678)
 									{
-										vertexIsLand.put(vertexKeys[vertex], true);
+										vertexStore.setFlags(vertexKeys[vertex], TerrainVertexStore.IS_LAND);
 									}
 
 									if (vertices[vertex][0] % Perspective.LOCAL_TILE_SIZE == 0 && vertices[vertex][1] % Perspective.LOCAL_TILE_SIZE == 0)
@@ -537,7 +530,7 @@ public class ProceduralGenerator
 
 								for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
 								{
-									vertexIsWater.put(vertexKeys[vertex], true);
+									vertexStore.setFlags(vertexKeys[vertex], TerrainVertexStore.IS_WATER);
 								}
 							}
 						}
@@ -632,7 +625,7 @@ public class ProceduralGenerator
 			}
 		}
 
-		// Store the height offsets in a hashmap and calculate interpolated
+		// Store the height offsets in the vertex store and calculate interpolated
 		// height offsets for non-corner vertices.
 		for (int z = 0; z < Constants.MAX_Z; ++z)
 		{
@@ -651,17 +644,17 @@ public class ProceduralGenerator
 					}
 					if (tile.getSceneTilePaint() != null)
 					{
-						int[] vertexKeys = tileVertexKeys(tile);
+						long[] vertexKeys = tileVertexKeys(tile);
 
-						int swVertexKey = vertexKeys[0];
-						int seVertexKey = vertexKeys[1];
-						int nwVertexKey = vertexKeys[2];
-						int neVertexKey = vertexKeys[3];
+						long swVertexKey = vertexKeys[0];
+						long seVertexKey = vertexKeys[1];
+						long nwVertexKey = vertexKeys[2];
+						long neVertexKey = vertexKeys[3];
 
-						vertexUnderwaterDepth.put(swVertexKey, underwaterDepths[z][x][y]);
-						vertexUnderwaterDepth.put(seVertexKey, underwaterDepths[z][x + 1][y]);
-						vertexUnderwaterDepth.put(nwVertexKey, underwaterDepths[z][x][y + 1]);
-						vertexUnderwaterDepth.put(neVertexKey, underwaterDepths[z][x + 1][y + 1]);
+						vertexStore.setUnderwaterDepth(swVertexKey, underwaterDepths[z][x][y]);
+						vertexStore.setUnderwaterDepth(seVertexKey, underwaterDepths[z][x + 1][y]);
+						vertexStore.setUnderwaterDepth(nwVertexKey, underwaterDepths[z][x][y + 1]);
+						vertexStore.setUnderwaterDepth(neVertexKey, underwaterDepths[z][x + 1][y + 1]);
 					}
 					else if (tile.getSceneTileModel() != null)
 					{
@@ -672,7 +665,7 @@ public class ProceduralGenerator
 						for (int face = 0; face < faceCount; face++)
 						{
 							int[][] vertices = faceVertices(tile, face);
-							int[] vertexKeys = faceVertexKeys(tile, face);
+							long[] vertexKeys = faceVertexKeys(tile, face);
 
 							for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
 							{
@@ -684,7 +677,7 @@ public class ProceduralGenerator
 									int vX = vertices[vertex][0] / Perspective.LOCAL_TILE_SIZE;
 									int vY = vertices[vertex][1] / Perspective.LOCAL_TILE_SIZE;
 
-									vertexUnderwaterDepth.put(vertexKeys[vertex], underwaterDepths[z][vX][vY]);
+									vertexStore.setUnderwaterDepth(vertexKeys[vertex], underwaterDepths[z][vX][vY]);
 								}
 								else
 								{
@@ -700,9 +693,9 @@ public class ProceduralGenerator
 									float southHeightOffset = HDUtils.lerp(underwaterDepths[z][x][y], underwaterDepths[z][x+1][y], lerpX);
 									int heightOffset = (int) HDUtils.lerp(southHeightOffset, northHeightOffset, lerpY);
 
-									if (!vertexIsLand.containsKey(vertexKeys[vertex]))
+									if (!vertexStore.hasFlags(vertexKeys[vertex], TerrainVertexStore.IS_LAND))
 									{
-										vertexUnderwaterDepth.put(vertexKeys[vertex], heightOffset);
+										vertexStore.setUnderwaterDepth(vertexKeys[vertex], heightOffset);
 									}
 								}
 							}
@@ -715,13 +708,13 @@ public class ProceduralGenerator
 
 	/**
 	 * Iterates through all Tiles in a given Scene, calculating vertex normals
-	 * for each one, then stores resulting normal data in a HashMap.
+	 * for each one, then stores resulting normal data in the vertex store.
 	 *
 	 * @param scene
 	 */
 	public void calculateTerrainNormals(Scene scene)
 	{
-		vertexTerrainNormals = new HashMap<>();
+		vertexStore.clearFlags(TerrainVertexStore.HAS_NORMALS);
 		Tile[][][] tiles = scene.getTiles();
 
 		for (int tileZ = 0; tileZ < tiles.length; tileZ++)
@@ -748,7 +741,7 @@ public class ProceduralGenerator
 
 	/**
 	 * Calculates vertex normals for a given Tile,
-	 * then stores resulting normal data in a HashMap.
+	 * then stores resulting normal data in the vertex store.
 	 *
 	 * @param tile
 	 * @param isBridge
@@ -757,14 +750,14 @@ public class ProceduralGenerator
 	{
 		// Make array of tile's tris with vertices
 		int[][][] faceVertices; // Array of tile's tri vertices
-		int[][] faceVertexKeys;
+		long[][] faceVertexKeys;
 
 		if (tile.getSceneTileModel() != null)
 		{
 			// Tile model
 			SceneTileModel tileModel = tile.getSceneTileModel();
 			faceVertices = new int[tileModel.getFaceX().length][VERTICES_PER_FACE][3];
-			faceVertexKeys = new int[tileModel.getFaceX().length][VERTICES_PER_FACE];
+			faceVertexKeys = new long[tileModel.getFaceX().length][VERTICES_PER_FACE];
 
 			for (int face = 0; face < tileModel.getFaceX().length; face++)
 			{
@@ -774,7 +767,7 @@ public class ProceduralGenerator
 				faceVertices[face][2] = new int[]{vertices[1][0], vertices[1][1], vertices[1][2]};
 				faceVertices[face][1] = new int[]{vertices[2][0], vertices[2][1], vertices[2][2]};
 
-				int[] vertexKeys = faceVertexKeys(tile, face);
+				long[] vertexKeys = faceVertexKeys(tile, face);
 				faceVertexKeys[face][0] = vertexKeys[0];
 				faceVertexKeys[face][2] = vertexKeys[1];
 				faceVertexKeys[face][1] = vertexKeys[2];
@@ -783,14 +776,14 @@ public class ProceduralGenerator
 		else
 		{
 			faceVertices = new int[2][VERTICES_PER_FACE][3];
-			faceVertexKeys = new int[VERTICES_PER_FACE][3];
+			faceVertexKeys = new long[2][VERTICES_PER_FACE];
 			int[][] vertices = tileVertices(tile);
 			faceVertices[0] = new int[][]{vertices[3], vertices[1], vertices[2]};
 			faceVertices[1] = new int[][]{vertices[0], vertices[2], vertices[1]};
 
-			int[] vertexKeys = tileVertexKeys(tile);
-			faceVertexKeys[0] = new int[]{vertexKeys[3], vertexKeys[1], vertexKeys[2]};
-			faceVertexKeys[1] = new int[]{vertexKeys[0], vertexKeys[2], vertexKeys[1]};
+			long[] vertexKeys = tileVertexKeys(tile);
+			faceVertexKeys[0] = new long[]{vertexKeys[3], vertexKeys[1], vertexKeys[2]};
+			faceVertexKeys[1] = new long[]{vertexKeys[0], vertexKeys[2], vertexKeys[1]};
 		}
 
 		// Loop through tris to calculate and accumulate normals
@@ -800,9 +793,9 @@ public class ProceduralGenerator
 			int[] vertexHeights = new int[]{faceVertices[face][0][2], faceVertices[face][1][2], faceVertices[face][2][2]};
 			if (!isBridge)
 			{
-				vertexHeights[0] += vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][0], 0);
-				vertexHeights[1] += vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][1], 0);
-				vertexHeights[2] += vertexUnderwaterDepth.getOrDefault(faceVertexKeys[face][2], 0);
+				vertexHeights[0] += vertexStore.getUnderwaterDepth(faceVertexKeys[face][0], 0);
+				vertexHeights[1] += vertexStore.getUnderwaterDepth(faceVertexKeys[face][1], 0);
+				vertexHeights[2] += vertexStore.getUnderwaterDepth(faceVertexKeys[face][2], 0);
 			}
 
 			float[] vertexNormals = HDUtils.calculateSurfaceNormals(
@@ -816,9 +809,9 @@ public class ProceduralGenerator
 
 			for (int vertex = 0; vertex < VERTICES_PER_FACE; vertex++)
 			{
-				int vertexKey = faceVertexKeys[face][vertex];
-				// accumulate normals to hashmap
-				vertexTerrainNormals.merge(vertexKey, vertexNormals, (a, b) -> HDUtils.vectorAdd(b, a));
+				long vertexKey = faceVertexKeys[face][vertex];
+				// accumulate normals in the vertex store
+				vertexStore.addNormals(vertexKey, vertexNormals);
 			}
 		}
 	}
@@ -845,11 +838,11 @@ public class ProceduralGenerator
 		{
 			if (client.getScene().getOverlayIds()[tileZ][tileX][tileY] != 0)
 			{
-				waterType = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client).getWaterType();
+				waterType = tileMaterialTable.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile).getWaterType();
 			}
 			else
 			{
-				waterType = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client).getWaterType();
+				waterType = tileMaterialTable.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile).getWaterType();
 			}
 		}
 
@@ -881,11 +874,11 @@ public class ProceduralGenerator
 		{
 			if (isOverlayFace(tile, face))
 			{
-				waterType = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client).getWaterType();
+				waterType = tileMaterialTable.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile).getWaterType();
 			}
 			else
 			{
-				waterType = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client).getWaterType();
+				waterType = tileMaterialTable.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile).getWaterType();
 			}
 		}
 
@@ -1046,35 +1039,54 @@ public class ProceduralGenerator
 	}
 
 	/**
-	 * Gets the vertex keys of a Tile Paint tile for use in retrieving data from hashmaps.
+	 * Gets the vertex keys of a Tile Paint tile for use in retrieving data from the vertex store.
 	 *
 	 * @param tile
 	 * @return Vertex keys in following order: SW, SE, NW, NE
 	 */
-	int[] tileVertexKeys(Tile tile)
+	long[] tileVertexKeys(Tile tile)
 	{
-		int[][] tileVertices = tileVertices(tile);
-		int[] vertexHashes = new int[tileVertices.length];
+		int x = tile.getSceneLocation().getX();
+		int y = tile.getSceneLocation().getY();
+		int z = tile.getRenderLevel();
+		int[][][] tileHeights = client.getTileHeights();
 
-		for (int vertex = 0; vertex < tileVertices.length; ++vertex)
-		{
-			vertexHashes[vertex] = HDUtils.vertexHash(tileVertices[vertex]);
-		}
+		int localX = x * Perspective.LOCAL_TILE_SIZE;
+		int localY = y * Perspective.LOCAL_TILE_SIZE;
 
-		return vertexHashes;
+		return new long[]{
+			HDUtils.vertexKey(localX, localY, tileHeights[z][x][y]),
+			HDUtils.vertexKey(localX + Perspective.LOCAL_TILE_SIZE, localY, tileHeights[z][x + 1][y]),
+			HDUtils.vertexKey(localX, localY + Perspective.LOCAL_TILE_SIZE, tileHeights[z][x][y + 1]),
+			HDUtils.vertexKey(localX + Perspective.LOCAL_TILE_SIZE, localY + Perspective.LOCAL_TILE_SIZE, tileHeights[z][x + 1][y + 1])
+		};
 	}
 
-	int[] faceVertexKeys(Tile tile, int face)
+	/**
+	 * Gets the vertex keys of a face of a Tile Model tile for use in retrieving data from the vertex store.
+	 *
+	 * @param tile
+	 * @param face the index of the face
+	 * @return Vertex keys in the same order as {@link #faceVertices(Tile, int)}
+	 */
+	long[] faceVertexKeys(Tile tile, int face)
 	{
-		int[][] faceVertices = faceVertices(tile, face);
-		int[] vertexHashes = new int[faceVertices.length];
+		SceneTileModel sceneTileModel = tile.getSceneTileModel();
 
-		for (int vertex = 0; vertex < faceVertices.length; ++vertex)
-		{
-			vertexHashes[vertex] = HDUtils.vertexHash(faceVertices[vertex]);
-		}
+		final int[] vertexX = sceneTileModel.getVertexX();
+		final int[] vertexY = sceneTileModel.getVertexY();
+		final int[] vertexZ = sceneTileModel.getVertexZ();
 
-		return vertexHashes;
+		final int a = sceneTileModel.getFaceX()[face];
+		final int b = sceneTileModel.getFaceY()[face];
+		final int c = sceneTileModel.getFaceZ()[face];
+
+		// vertex Z is the scene Y coordinate, and vertex Y is the height
+		return new long[]{
+			HDUtils.vertexKey(vertexX[a], vertexZ[a], vertexY[a]),
+			HDUtils.vertexKey(vertexX[b], vertexZ[b], vertexY[b]),
+			HDUtils.vertexKey(vertexX[c], vertexZ[c], vertexY[c])
+		};
 	}
 
 	public int[] recolorOverlay(Overlay overlay, int[] colorHSL)
@@ -1126,14 +1138,14 @@ public class ProceduralGenerator
 
 		if (client.getScene().getOverlayIds()[z][x][y] != 0)
 		{
-			if (!Overlay.getOverlay(client.getScene().getOverlayIds()[z][x][y], tile, client).isBlended())
+			if (!tileMaterialTable.getOverlay(client.getScene().getOverlayIds()[z][x][y], tile).isBlended())
 			{
 				return true;
 			}
 		}
 		else if (client.getScene().getUnderlayIds()[z][x][y] != 0)
 		{
-			if (!Underlay.getUnderlay(client.getScene().getUnderlayIds()[z][x][y], tile, client).isBlended())
+			if (!tileMaterialTable.getUnderlay(client.getScene().getUnderlayIds()[z][x][y], tile).isBlended())
 			{
 				return true;
 			}
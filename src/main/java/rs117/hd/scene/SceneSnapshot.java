@@ -0,0 +1,850 @@
+package rs117.hd.scene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.DecorativeObject;
+import net.runelite.api.GameObject;
+import net.runelite.api.GroundObject;
+import net.runelite.api.Model;
+import net.runelite.api.Renderable;
+import net.runelite.api.Scene;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import net.runelite.api.Tile;
+import net.runelite.api.WallObject;
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Everything the scene load reads from the client's scene, for loading the same scene again without a client.
+ * This covers the tile heights, overlay and underlay IDs, tile paints and tile models, and the objects on each tile
+ * along with their models, as well as the base coordinates and instance template chunks.
+ *
+ * A snapshot is written as a gzipped stream. Models and game objects can be shared between tiles, so they're
+ * written once and referred to by their index, which keeps them shared when the snapshot is read back.
+ * Renderables which aren't models, such as animated objects, are only recorded as being present.
+ */
+public class SceneSnapshot
+{
+	static final int MAGIC = 0x31313753; // "117S"
+	static final int VERSION = 1;
+
+	public static final int NO_RENDERABLE = -1;
+	// a renderable which isn't a model, and so isn't part of the scene buffers
+	public static final int OTHER_RENDERABLE = -2;
+
+	private static final int CHUNKS_PER_SIDE = Constants.SCENE_SIZE / 8;
+
+	public int baseX;
+	public int baseY;
+	public int plane;
+	public boolean instanced;
+	public final int[][][] instanceTemplateChunks = new int[Constants.MAX_Z][CHUNKS_PER_SIDE][CHUNKS_PER_SIDE];
+	public final int[][][] tileHeights = new int[Constants.MAX_Z][Constants.SCENE_SIZE + 1][Constants.SCENE_SIZE + 1];
+	public final byte[][][] overlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final byte[][][] underlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final SnapshotTile[][][] tiles = new SnapshotTile[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	public final List<SnapshotObject> gameObjects = new ArrayList<>();
+	public final List<SnapshotModel> models = new ArrayList<>();
+
+	public static class SnapshotTile
+	{
+		public int x;
+		public int y;
+		public int plane;
+		public int renderLevel;
+		public int worldX;
+		public int worldY;
+		public int worldPlane;
+
+		public SnapshotPaint paint;
+		public SnapshotTileModel tileModel;
+		public SnapshotObject wallObject;
+		public SnapshotObject groundObject;
+		public SnapshotObject decorativeObject;
+		// indices into the snapshot's game objects, or -1 for empty slots
+		public int[] gameObjects;
+		public SnapshotTile bridge;
+	}
+
+	public static class SnapshotPaint
+	{
+		public int swColor;
+		public int seColor;
+		public int nwColor;
+		public int neColor;
+		public int texture;
+		public boolean flat;
+	}
+
+	public static class SnapshotTileModel
+	{
+		public int shape;
+		public int rotation;
+		public boolean flat;
+		public int[] faceX;
+		public int[] faceY;
+		public int[] faceZ;
+		public int[] vertexX;
+		public int[] vertexY;
+		public int[] vertexZ;
+		public int[] triangleColorA;
+		public int[] triangleColorB;
+		public int[] triangleColorC;
+		public int[] triangleTextureId;
+	}
+
+	/**
+	 * A wall, ground, decorative or game object. Renderables are indices into the snapshot's models,
+	 * or {@link #NO_RENDERABLE} or {@link #OTHER_RENDERABLE}. Fields which don't apply to the type of object are left 0.
+	 */
+	public static class SnapshotObject
+	{
+		public int id;
+		public int x;
+		public int y;
+		public int plane;
+		public int renderable1 = NO_RENDERABLE;
+		public int renderable2 = NO_RENDERABLE;
+
+		// walls
+		public int orientationA;
+		public int orientationB;
+		public int config;
+
+		// game objects
+		public int orientation;
+		public int sizeX;
+		public int sizeY;
+	}
+
+	/**
+	 * Everything the scene uploader reads from a model. Arrays are null where the model's were.
+	 */
+	public static class SnapshotModel
+	{
+		public int faceCount;
+		public int verticesCount;
+		public int radius;
+		public int bottomY;
+		public int modelHeight;
+		public int xyzMag;
+		public byte overrideAmount;
+		public byte overrideHue;
+		public byte overrideSaturation;
+		public byte overrideLuminance;
+
+		public int[] verticesX;
+		public int[] verticesY;
+		public int[] verticesZ;
+		public int[] vertexNormalsX;
+		public int[] vertexNormalsY;
+		public int[] vertexNormalsZ;
+		public int[] faceIndices1;
+		public int[] faceIndices2;
+		public int[] faceIndices3;
+		public int[] faceColors1;
+		public int[] faceColors2;
+		public int[] faceColors3;
+		public short[] faceTextures;
+		public float[] faceTextureUVCoordinates;
+		public byte[] faceTransparencies;
+		public byte[] faceRenderPriorities;
+	}
+
+	/**
+	 * Takes a snapshot of the client's current scene. Must be called from the client thread.
+	 */
+	public static SceneSnapshot capture(Client client)
+	{
+		return new Capture().capture(client);
+	}
+
+	private static class Capture
+	{
+		private final SceneSnapshot snapshot = new SceneSnapshot();
+		private final Map<Model, Integer> modelIndices = new IdentityHashMap<>();
+		private final Map<GameObject, Integer> gameObjectIndices = new IdentityHashMap<>();
+
+		SceneSnapshot capture(Client client)
+		{
+			Scene scene = client.getScene();
+			snapshot.baseX = client.getBaseX();
+			snapshot.baseY = client.getBaseY();
+			snapshot.plane = client.getPlane();
+			snapshot.instanced = client.isInInstancedRegion();
+			if (snapshot.instanced)
+			{
+				copy(client.getInstanceTemplateChunks(), snapshot.instanceTemplateChunks);
+			}
+			copy(client.getTileHeights(), snapshot.tileHeights);
+
+			byte[][][] overlayIds = scene.getOverlayIds();
+			byte[][][] underlayIds = scene.getUnderlayIds();
+			Tile[][][] tiles = scene.getTiles();
+			for (int z = 0; z < Constants.MAX_Z; z++)
+			{
+				for (int x = 0; x < Constants.SCENE_SIZE; x++)
+				{
+					System.arraycopy(overlayIds[z][x], 0, snapshot.overlayIds[z][x], 0, Constants.SCENE_SIZE);
+					System.arraycopy(underlayIds[z][x], 0, snapshot.underlayIds[z][x], 0, Constants.SCENE_SIZE);
+					for (int y = 0; y < Constants.SCENE_SIZE; y++)
+					{
+						Tile tile = tiles[z][x][y];
+						snapshot.tiles[z][x][y] = tile == null ? null : captureTile(tile, x, y);
+					}
+				}
+			}
+			return snapshot;
+		}
+
+		private SnapshotTile captureTile(Tile tile, int x, int y)
+		{
+			SnapshotTile t = new SnapshotTile();
+			t.x = x;
+			t.y = y;
+			t.plane = tile.getPlane();
+			t.renderLevel = tile.getRenderLevel();
+			WorldPoint worldLocation = tile.getWorldLocation();
+			t.worldX = worldLocation.getX();
+			t.worldY = worldLocation.getY();
+			t.worldPlane = worldLocation.getPlane();
+
+			SceneTilePaint paint = tile.getSceneTilePaint();
+			if (paint != null)
+			{
+				t.paint = new SnapshotPaint();
+				t.paint.swColor = paint.getSwColor();
+				t.paint.seColor = paint.getSeColor();
+				t.paint.nwColor = paint.getNwColor();
+				t.paint.neColor = paint.getNeColor();
+				t.paint.texture = paint.getTexture();
+				t.paint.flat = paint.isFlat();
+			}
+
+			SceneTileModel model = tile.getSceneTileModel();
+			if (model != null)
+			{
+				t.tileModel = new SnapshotTileModel();
+				t.tileModel.shape = model.getShape();
+				t.tileModel.rotation = model.getRotation();
+				t.tileModel.flat = model.isFlat();
+				t.tileModel.faceX = model.getFaceX();
+				t.tileModel.faceY = model.getFaceY();
+				t.tileModel.faceZ = model.getFaceZ();
+				t.tileModel.vertexX = model.getVertexX();
+				t.tileModel.vertexY = model.getVertexY();
+				t.tileModel.vertexZ = model.getVertexZ();
+				t.tileModel.triangleColorA = model.getTriangleColorA();
+				t.tileModel.triangleColorB = model.getTriangleColorB();
+				t.tileModel.triangleColorC = model.getTriangleColorC();
+				t.tileModel.triangleTextureId = model.getTriangleTextureId();
+			}
+
+			WallObject wallObject = tile.getWallObject();
+			if (wallObject != null)
+			{
+				t.wallObject = new SnapshotObject();
+				captureObject(t.wallObject, wallObject.getId(), wallObject.getX(), wallObject.getY(), wallObject.getPlane(),
+					wallObject.getRenderable1(), wallObject.getRenderable2());
+				t.wallObject.orientationA = wallObject.getOrientationA();
+				t.wallObject.orientationB = wallObject.getOrientationB();
+				t.wallObject.config = wallObject.getConfig();
+			}
+
+			GroundObject groundObject = tile.getGroundObject();
+			if (groundObject != null)
+			{
+				t.groundObject = new SnapshotObject();
+				captureObject(t.groundObject, groundObject.getId(), groundObject.getX(), groundObject.getY(), groundObject.getPlane(),
+					groundObject.getRenderable(), null);
+			}
+
+			DecorativeObject decorativeObject = tile.getDecorativeObject();
+			if (decorativeObject != null)
+			{
+				t.decorativeObject = new SnapshotObject();
+				captureObject(t.decorativeObject, decorativeObject.getId(), decorativeObject.getX(), decorativeObject.getY(),
+					decorativeObject.getPlane(), decorativeObject.getRenderable(), decorativeObject.getRenderable2());
+			}
+
+			GameObject[] gameObjects = tile.getGameObjects();
+			if (gameObjects != null)
+			{
+				t.gameObjects = new int[gameObjects.length];
+				for (int i = 0; i < gameObjects.length; i++)
+				{
+					t.gameObjects[i] = gameObjects[i] == null ? -1 : captureGameObject(gameObjects[i]);
+				}
+			}
+
+			Tile bridge = tile.getBridge();
+			if (bridge != null)
+			{
+				t.bridge = captureTile(bridge, x, y);
+			}
+			return t;
+		}
+
+		private int captureGameObject(GameObject gameObject)
+		{
+			Integer index = gameObjectIndices.get(gameObject);
+			if (index != null)
+			{
+				return index;
+			}
+
+			SnapshotObject o = new SnapshotObject();
+			captureObject(o, gameObject.getId(), gameObject.getX(), gameObject.getY(), gameObject.getPlane(), gameObject.getRenderable(), null);
+			o.orientation = gameObject.getOrientation().getAngle();
+			o.sizeX = gameObject.sizeX();
+			o.sizeY = gameObject.sizeY();
+
+			index = snapshot.gameObjects.size();
+			snapshot.gameObjects.add(o);
+			gameObjectIndices.put(gameObject, index);
+			return index;
+		}
+
+		private void captureObject(SnapshotObject o, int id, int x, int y, int plane, Renderable renderable1, Renderable renderable2)
+		{
+			o.id = id;
+			o.x = x;
+			o.y = y;
+			o.plane = plane;
+			o.renderable1 = captureRenderable(renderable1);
+			o.renderable2 = captureRenderable(renderable2);
+		}
+
+		private int captureRenderable(Renderable renderable)
+		{
+			if (renderable == null)
+			{
+				return NO_RENDERABLE;
+			}
+			if (!(renderable instanceof Model))
+			{
+				return OTHER_RENDERABLE;
+			}
+
+			Model model = (Model) renderable;
+			Integer index = modelIndices.get(model);
+			if (index != null)
+			{
+				return index;
+			}
+
+			SnapshotModel m = new SnapshotModel();
+			m.faceCount = model.getFaceCount();
+			m.verticesCount = model.getVerticesCount();
+			m.radius = model.getRadius();
+			m.bottomY = model.getBottomY();
+			m.modelHeight = model.getModelHeight();
+			m.xyzMag = model.getXYZMag();
+			m.overrideAmount = model.getOverrideAmount();
+			m.overrideHue = model.getOverrideHue();
+			m.overrideSaturation = model.getOverrideSaturation();
+			m.overrideLuminance = model.getOverrideLuminance();
+			m.verticesX = model.getVerticesX();
+			m.verticesY = model.getVerticesY();
+			m.verticesZ = model.getVerticesZ();
+			m.vertexNormalsX = model.getVertexNormalsX();
+			m.vertexNormalsY = model.getVertexNormalsY();
+			m.vertexNormalsZ = model.getVertexNormalsZ();
+			m.faceIndices1 = model.getFaceIndices1();
+			m.faceIndices2 = model.getFaceIndices2();
+			m.faceIndices3 = model.getFaceIndices3();
+			m.faceColors1 = model.getFaceColors1();
+			m.faceColors2 = model.getFaceColors2();
+			m.faceColors3 = model.getFaceColors3();
+			m.faceTextures = model.getFaceTextures();
+			m.faceTextureUVCoordinates = model.getFaceTextureUVCoordinates();
+			m.faceTransparencies = model.getFaceTransparencies();
+			m.faceRenderPriorities = model.getFaceRenderPriorities();
+
+			index = snapshot.models.size();
+			snapshot.models.add(m);
+			modelIndices.put(model, index);
+			return index;
+		}
+
+		private static void copy(int[][][] src, int[][][] dst)
+		{
+			for (int z = 0; z < dst.length; z++)
+			{
+				for (int x = 0; x < dst[z].length; x++)
+				{
+					System.arraycopy(src[z][x], 0, dst[z][x], 0, dst[z][x].length);
+				}
+			}
+		}
+	}
+
+	public void write(File file) throws IOException
+	{
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Unable to create directory " + dir);
+		}
+		try (OutputStream out = new FileOutputStream(file))
+		{
+			write(out);
+		}
+	}
+
+	public void write(OutputStream outputStream) throws IOException
+	{
+		GZIPOutputStream gzip = new GZIPOutputStream(outputStream);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(baseX);
+		out.writeInt(baseY);
+		out.writeInt(plane);
+		out.writeBoolean(instanced);
+
+		out.writeInt(models.size());
+		for (SnapshotModel model : models)
+		{
+			writeModel(out, model);
+		}
+		out.writeInt(gameObjects.size());
+		for (SnapshotObject gameObject : gameObjects)
+		{
+			writeObject(out, gameObject);
+		}
+
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x < CHUNKS_PER_SIDE; x++)
+			{
+				for (int y = 0; y < CHUNKS_PER_SIDE; y++)
+				{
+					out.writeInt(instanceTemplateChunks[z][x][y]);
+				}
+			}
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					out.writeInt(tileHeights[z][x][y]);
+				}
+			}
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				out.write(overlayIds[z][x]);
+				out.write(underlayIds[z][x]);
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					writeTile(out, tiles[z][x][y]);
+				}
+			}
+		}
+		out.flush();
+		gzip.finish();
+	}
+
+	public static SceneSnapshot read(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return read(in);
+		}
+	}
+
+	public static SceneSnapshot read(InputStream inputStream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+		if (in.readInt() != MAGIC)
+		{
+			throw new IOException("Not a scene snapshot");
+		}
+		int version = in.readInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported scene snapshot version " + version);
+		}
+
+		SceneSnapshot snapshot = new SceneSnapshot();
+		snapshot.baseX = in.readInt();
+		snapshot.baseY = in.readInt();
+		snapshot.plane = in.readInt();
+		snapshot.instanced = in.readBoolean();
+
+		int count = in.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			snapshot.models.add(readModel(in));
+		}
+		count = in.readInt();
+		for (int i = 0; i < count; i++)
+		{
+			snapshot.gameObjects.add(readObject(in, snapshot));
+		}
+
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x < CHUNKS_PER_SIDE; x++)
+			{
+				for (int y = 0; y < CHUNKS_PER_SIDE; y++)
+				{
+					snapshot.instanceTemplateChunks[z][x][y] = in.readInt();
+				}
+			}
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					snapshot.tileHeights[z][x][y] = in.readInt();
+				}
+			}
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				in.readFully(snapshot.overlayIds[z][x]);
+				in.readFully(snapshot.underlayIds[z][x]);
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					snapshot.tiles[z][x][y] = readTile(in, snapshot);
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	private static void writeTile(DataOutputStream out, SnapshotTile tile) throws IOException
+	{
+		out.writeBoolean(tile != null);
+		if (tile == null)
+		{
+			return;
+		}
+
+		out.writeByte(tile.x);
+		out.writeByte(tile.y);
+		out.writeByte(tile.plane);
+		out.writeByte(tile.renderLevel);
+		out.writeInt(tile.worldX);
+		out.writeInt(tile.worldY);
+		out.writeByte(tile.worldPlane);
+
+		out.writeBoolean(tile.paint != null);
+		if (tile.paint != null)
+		{
+			out.writeInt(tile.paint.swColor);
+			out.writeInt(tile.paint.seColor);
+			out.writeInt(tile.paint.nwColor);
+			out.writeInt(tile.paint.neColor);
+			out.writeInt(tile.paint.texture);
+			out.writeBoolean(tile.paint.flat);
+		}
+
+		SnapshotTileModel model = tile.tileModel;
+		out.writeBoolean(model != null);
+		if (model != null)
+		{
+			out.writeInt(model.shape);
+			out.writeInt(model.rotation);
+			out.writeBoolean(model.flat);
+			writeInts(out, model.faceX);
+			writeInts(out, model.faceY);
+			writeInts(out, model.faceZ);
+			writeInts(out, model.vertexX);
+			writeInts(out, model.vertexY);
+			writeInts(out, model.vertexZ);
+			writeInts(out, model.triangleColorA);
+			writeInts(out, model.triangleColorB);
+			writeInts(out, model.triangleColorC);
+			writeInts(out, model.triangleTextureId);
+		}
+
+		writeOptionalObject(out, tile.wallObject);
+		writeOptionalObject(out, tile.groundObject);
+		writeOptionalObject(out, tile.decorativeObject);
+		writeInts(out, tile.gameObjects);
+		writeTile(out, tile.bridge);
+	}
+
+	private static SnapshotTile readTile(DataInputStream in, SceneSnapshot snapshot) throws IOException
+	{
+		if (!in.readBoolean())
+		{
+			return null;
+		}
+
+		SnapshotTile tile = new SnapshotTile();
+		tile.x = in.readUnsignedByte();
+		tile.y = in.readUnsignedByte();
+		tile.plane = in.readUnsignedByte();
+		tile.renderLevel = in.readUnsignedByte();
+		tile.worldX = in.readInt();
+		tile.worldY = in.readInt();
+		tile.worldPlane = in.readUnsignedByte();
+
+		if (in.readBoolean())
+		{
+			tile.paint = new SnapshotPaint();
+			tile.paint.swColor = in.readInt();
+			tile.paint.seColor = in.readInt();
+			tile.paint.nwColor = in.readInt();
+			tile.paint.neColor = in.readInt();
+			tile.paint.texture = in.readInt();
+			tile.paint.flat = in.readBoolean();
+		}
+
+		if (in.readBoolean())
+		{
+			SnapshotTileModel model = tile.tileModel = new SnapshotTileModel();
+			model.shape = in.readInt();
+			model.rotation = in.readInt();
+			model.flat = in.readBoolean();
+			model.faceX = readInts(in);
+			model.faceY = readInts(in);
+			model.faceZ = readInts(in);
+			model.vertexX = readInts(in);
+			model.vertexY = readInts(in);
+			model.vertexZ = readInts(in);
+			model.triangleColorA = readInts(in);
+			model.triangleColorB = readInts(in);
+			model.triangleColorC = readInts(in);
+			model.triangleTextureId = readInts(in);
+		}
+
+		tile.wallObject = readOptionalObject(in, snapshot);
+		tile.groundObject = readOptionalObject(in, snapshot);
+		tile.decorativeObject = readOptionalObject(in, snapshot);
+		tile.gameObjects = readInts(in);
+		if (tile.gameObjects != null)
+		{
+			for (int index : tile.gameObjects)
+			{
+				if (index < -1 || index >= snapshot.gameObjects.size())
+				{
+					throw new IOException("Reference to an unknown game object " + index);
+				}
+			}
+		}
+		tile.bridge = readTile(in, snapshot);
+		return tile;
+	}
+
+	private static void writeOptionalObject(DataOutputStream out, SnapshotObject object) throws IOException
+	{
+		out.writeBoolean(object != null);
+		if (object != null)
+		{
+			writeObject(out, object);
+		}
+	}
+
+	private static SnapshotObject readOptionalObject(DataInputStream in, SceneSnapshot snapshot) throws IOException
+	{
+		return in.readBoolean() ? readObject(in, snapshot) : null;
+	}
+
+	private static void writeObject(DataOutputStream out, SnapshotObject object) throws IOException
+	{
+		out.writeInt(object.id);
+		out.writeInt(object.x);
+		out.writeInt(object.y);
+		out.writeByte(object.plane);
+		out.writeInt(object.renderable1);
+		out.writeInt(object.renderable2);
+		out.writeInt(object.orientationA);
+		out.writeInt(object.orientationB);
+		out.writeInt(object.config);
+		out.writeInt(object.orientation);
+		out.writeInt(object.sizeX);
+		out.writeInt(object.sizeY);
+	}
+
+	private static SnapshotObject readObject(DataInputStream in, SceneSnapshot snapshot) throws IOException
+	{
+		SnapshotObject object = new SnapshotObject();
+		object.id = in.readInt();
+		object.x = in.readInt();
+		object.y = in.readInt();
+		object.plane = in.readUnsignedByte();
+		object.renderable1 = readRenderable(in, snapshot);
+		object.renderable2 = readRenderable(in, snapshot);
+		object.orientationA = in.readInt();
+		object.orientationB = in.readInt();
+		object.config = in.readInt();
+		object.orientation = in.readInt();
+		object.sizeX = in.readInt();
+		object.sizeY = in.readInt();
+		return object;
+	}
+
+	private static int readRenderable(DataInputStream in, SceneSnapshot snapshot) throws IOException
+	{
+		int renderable = in.readInt();
+		if (renderable < OTHER_RENDERABLE || renderable >= snapshot.models.size())
+		{
+			throw new IOException("Reference to an unknown model " + renderable);
+		}
+		return renderable;
+	}
+
+	private static void writeModel(DataOutputStream out, SnapshotModel model) throws IOException
+	{
+		out.writeInt(model.faceCount);
+		out.writeInt(model.verticesCount);
+		out.writeInt(model.radius);
+		out.writeInt(model.bottomY);
+		out.writeInt(model.modelHeight);
+		out.writeInt(model.xyzMag);
+		out.writeByte(model.overrideAmount);
+		out.writeByte(model.overrideHue);
+		out.writeByte(model.overrideSaturation);
+		out.writeByte(model.overrideLuminance);
+		writeInts(out, model.verticesX);
+		writeInts(out, model.verticesY);
+		writeInts(out, model.verticesZ);
+		writeInts(out, model.vertexNormalsX);
+		writeInts(out, model.vertexNormalsY);
+		writeInts(out, model.vertexNormalsZ);
+		writeInts(out, model.faceIndices1);
+		writeInts(out, model.faceIndices2);
+		writeInts(out, model.faceIndices3);
+		writeInts(out, model.faceColors1);
+		writeInts(out, model.faceColors2);
+		writeInts(out, model.faceColors3);
+
+		out.writeInt(model.faceTextures == null ? -1 : model.faceTextures.length);
+		if (model.faceTextures != null)
+		{
+			for (short texture : model.faceTextures)
+			{
+				out.writeShort(texture);
+			}
+		}
+
+		float[] uvs = model.faceTextureUVCoordinates;
+		out.writeInt(uvs == null ? -1 : uvs.length);
+		if (uvs != null)
+		{
+			for (float uv : uvs)
+			{
+				out.writeFloat(uv);
+			}
+		}
+
+		writeBytes(out, model.faceTransparencies);
+		writeBytes(out, model.faceRenderPriorities);
+	}
+
+	private static SnapshotModel readModel(DataInputStream in) throws IOException
+	{
+		SnapshotModel model = new SnapshotModel();
+		model.faceCount = in.readInt();
+		model.verticesCount = in.readInt();
+		model.radius = in.readInt();
+		model.bottomY = in.readInt();
+		model.modelHeight = in.readInt();
+		model.xyzMag = in.readInt();
+		model.overrideAmount = in.readByte();
+		model.overrideHue = in.readByte();
+		model.overrideSaturation = in.readByte();
+		model.overrideLuminance = in.readByte();
+		model.verticesX = readInts(in);
+		model.verticesY = readInts(in);
+		model.verticesZ = readInts(in);
+		model.vertexNormalsX = readInts(in);
+		model.vertexNormalsY = readInts(in);
+		model.vertexNormalsZ = readInts(in);
+		model.faceIndices1 = readInts(in);
+		model.faceIndices2 = readInts(in);
+		model.faceIndices3 = readInts(in);
+		model.faceColors1 = readInts(in);
+		model.faceColors2 = readInts(in);
+		model.faceColors3 = readInts(in);
+
+		int length = in.readInt();
+		if (length >= 0)
+		{
+			model.faceTextures = new short[length];
+			for (int i = 0; i < length; i++)
+			{
+				model.faceTextures[i] = in.readShort();
+			}
+		}
+
+		length = in.readInt();
+		if (length >= 0)
+		{
+			model.faceTextureUVCoordinates = new float[length];
+			for (int i = 0; i < length; i++)
+			{
+				model.faceTextureUVCoordinates[i] = in.readFloat();
+			}
+		}
+
+		model.faceTransparencies = readBytes(in);
+		model.faceRenderPriorities = readBytes(in);
+		return model;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] array) throws IOException
+	{
+		out.writeInt(array == null ? -1 : array.length);
+		if (array != null)
+		{
+			for (int value : array)
+			{
+				out.writeInt(value);
+			}
+		}
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		int[] array = new int[length];
+		for (int i = 0; i < length; i++)
+		{
+			array[i] = in.readInt();
+		}
+		return array;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] array) throws IOException
+	{
+		out.writeInt(array == null ? -1 : array.length);
+		if (array != null)
+		{
+			out.write(array);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		byte[] array = new byte[length];
+		in.readFully(array);
+		return array;
+	}
+}
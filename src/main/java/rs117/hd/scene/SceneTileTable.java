@@ -0,0 +1,242 @@
+package rs117.hd.scene;
+
+import java.nio.IntBuffer;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+import net.runelite.api.Scene;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import net.runelite.api.Tile;
+
+/**
+ * A table describing where each tile paint and tile model of the scene lives in the scene buffers, along with
+ * its bounds. The table is kept on the GPU between frames, so a visible tile can be drawn from just its slot in
+ * the table, instead of the 8 ints of model info it would otherwise take per frame.
+ *
+ * Each tile has four slots, for its paint, the paint of the bridge above it, its tile model, and the tile model
+ * of the bridge above it. Each slot holds a descriptor of {@link #DESCRIPTOR_SIZE} ints: the vertex offset, uv offset,
+ * face count, flags, local x and z, and the minimum and maximum height of the tile. The offsets and face count
+ * are those of the surface geometry, which is followed by the same amount of underwater geometry if flagged.
+ */
+public class SceneTileTable
+{
+	public static final int DESCRIPTOR_SIZE = 8;
+	public static final int FLAG_UNDERWATER_TERRAIN = 1;
+
+	private static final int SLOTS_PER_TILE = 4;
+	private static final int SLOT_PAINT = 0;
+	private static final int SLOT_MODEL = 2;
+	public static final int SLOT_COUNT = Constants.MAX_Z * Constants.SCENE_SIZE * Constants.SCENE_SIZE * SLOTS_PER_TILE;
+
+	// the deepest procedurally generated underwater terrain can sink below the surface, see ProceduralGenerator
+	private static final int UNDERWATER_DEPTH = 1380;
+
+	private final int[] descriptors = new int[SLOT_COUNT * DESCRIPTOR_SIZE];
+
+	// the range of slots which have changed since the table was last uploaded
+	private int dirtyStart = SLOT_COUNT;
+	private int dirtyEnd = 0;
+
+	public SceneTileTable()
+	{
+		clear();
+	}
+
+	public void clear()
+	{
+		for (int slot = 0; slot < SLOT_COUNT; slot++)
+		{
+			descriptors[slot * DESCRIPTOR_SIZE] = -1;
+		}
+		dirtyStart = 0;
+		dirtyEnd = SLOT_COUNT;
+	}
+
+	/**
+	 * Updates the descriptors of every tile from the buffer offsets assigned to the tiles during upload. Only the
+	 * slots which actually change are marked dirty, so this is cheap to call after uploading a few changed tiles.
+	 */
+	public void update(Scene scene, int[][][] tileHeights)
+	{
+		final Tile[][][] tiles = scene.getTiles();
+		for (int z = 0; z < Constants.MAX_Z; ++z)
+		{
+			for (int x = 0; x < Constants.SCENE_SIZE; ++x)
+			{
+				for (int y = 0; y < Constants.SCENE_SIZE; ++y)
+				{
+					final int base = tileSlot(z, x, y);
+					final Tile tile = tiles[z][x][y];
+					final Tile bridge = tile == null ? null : tile.getBridge();
+
+					int minHeight = Integer.MAX_VALUE;
+					int maxHeight = Integer.MIN_VALUE;
+					for (int plane = 0; plane < Constants.MAX_Z; ++plane)
+					{
+						for (int i = 0; i < 4; ++i)
+						{
+							int height = tileHeights[plane][x + (i & 1)][y + (i >> 1)];
+							minHeight = Math.min(minHeight, height);
+							maxHeight = Math.max(maxHeight, height);
+						}
+					}
+
+					setPaint(base + SLOT_PAINT, tile == null ? null : tile.getSceneTilePaint(), x, y, minHeight, maxHeight);
+					setPaint(base + SLOT_PAINT + 1, bridge == null ? null : bridge.getSceneTilePaint(), x, y, minHeight, maxHeight);
+					setModel(base + SLOT_MODEL, tile == null ? null : tile.getSceneTileModel(), x, y, minHeight, maxHeight);
+					setModel(base + SLOT_MODEL + 1, bridge == null ? null : bridge.getSceneTileModel(), x, y, minHeight, maxHeight);
+				}
+			}
+		}
+	}
+
+	private void setPaint(int slot, SceneTilePaint paint, int tileX, int tileY, int minHeight, int maxHeight)
+	{
+		if (paint == null || paint.getBufferLen() <= 0)
+		{
+			set(slot, -1, -1, 0, 0, 0, 0, 0, 0);
+			return;
+		}
+		setPacked(slot, paint.getBufferOffset(), paint.getUvBufferOffset(), paint.getBufferLen(), tileX, tileY, minHeight, maxHeight);
+	}
+
+	private void setModel(int slot, SceneTileModel model, int tileX, int tileY, int minHeight, int maxHeight)
+	{
+		if (model == null || model.getBufferLen() <= 0)
+		{
+			set(slot, -1, -1, 0, 0, 0, 0, 0, 0);
+			return;
+		}
+		setPacked(slot, model.getBufferOffset(), model.getUvBufferOffset(), model.getBufferLen(), tileX, tileY, minHeight, maxHeight);
+	}
+
+	private void setPacked(int slot, int bufferOffset, int uvBufferOffset, int packedBufferLength, int tileX, int tileY, int minHeight, int maxHeight)
+	{
+		// the buffer length has a flag for procedurally generated underwater terrain packed into the lowest bit,
+		// in which case the second half of the geometry is the underwater terrain
+		boolean underwaterTerrain = (packedBufferLength & 1) == 1;
+		int bufferLength = packedBufferLength >> 1;
+		if (underwaterTerrain)
+		{
+			bufferLength /= 2;
+			maxHeight += UNDERWATER_DEPTH;
+		}
+
+		set(slot, bufferOffset, uvBufferOffset, bufferLength / 3, underwaterTerrain ? FLAG_UNDERWATER_TERRAIN : 0,
+			tileX * Perspective.LOCAL_TILE_SIZE, tileY * Perspective.LOCAL_TILE_SIZE, minHeight, maxHeight);
+	}
+
+	private void set(int slot, int bufferOffset, int uvBufferOffset, int faceCount, int flags, int localX, int localZ, int minHeight, int maxHeight)
+	{
+		int i = slot * DESCRIPTOR_SIZE;
+		if (descriptors[i] == bufferOffset &&
+			descriptors[i + 1] == uvBufferOffset &&
+			descriptors[i + 2] == faceCount &&
+			descriptors[i + 3] == flags &&
+			descriptors[i + 4] == localX &&
+			descriptors[i + 5] == localZ &&
+			descriptors[i + 6] == minHeight &&
+			descriptors[i + 7] == maxHeight)
+		{
+			return;
+		}
+
+		descriptors[i] = bufferOffset;
+		descriptors[i + 1] = uvBufferOffset;
+		descriptors[i + 2] = faceCount;
+		descriptors[i + 3] = flags;
+		descriptors[i + 4] = localX;
+		descriptors[i + 5] = localZ;
+		descriptors[i + 6] = minHeight;
+		descriptors[i + 7] = maxHeight;
+		dirtyStart = Math.min(dirtyStart, slot);
+		dirtyEnd = Math.max(dirtyEnd, slot + 1);
+	}
+
+	/**
+	 * @return the slot of the tile paint drawn at the given tile, or -1 if it isn't in the table
+	 */
+	public int findPaint(int tileZ, int tileX, int tileY, SceneTilePaint paint)
+	{
+		return find(tileZ, tileX, tileY, SLOT_PAINT, paint.getBufferOffset());
+	}
+
+	/**
+	 * @return the slot of the tile model drawn at the given tile, or -1 if it isn't in the table
+	 */
+	public int findModel(int tileZ, int tileX, int tileY, SceneTileModel model)
+	{
+		return find(tileZ, tileX, tileY, SLOT_MODEL, model.getBufferOffset());
+	}
+
+	private int find(int tileZ, int tileX, int tileY, int kind, int bufferOffset)
+	{
+		if (tileX < 0 || tileY < 0 || tileX >= Constants.SCENE_SIZE || tileY >= Constants.SCENE_SIZE)
+		{
+			return -1;
+		}
+
+		// the plane the client draws a tile on doesn't always match the plane it's stored on, because of bridges,
+		// so fall back to checking the other planes, matching on the buffer offset which is unique to each tile
+		for (int i = 0; i < Constants.MAX_Z; ++i)
+		{
+			int z = (tileZ + i) % Constants.MAX_Z;
+			int slot = tileSlot(z, tileX, tileY) + kind;
+			if (descriptors[slot * DESCRIPTOR_SIZE] == bufferOffset)
+			{
+				return slot;
+			}
+			if (descriptors[(slot + 1) * DESCRIPTOR_SIZE] == bufferOffset)
+			{
+				return slot + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of vertices drawn for the slot, including any underwater terrain
+	 */
+	public int getVertexCount(int slot)
+	{
+		int i = slot * DESCRIPTOR_SIZE;
+		int vertexCount = descriptors[i + 2] * 3;
+		return (descriptors[i + 3] & FLAG_UNDERWATER_TERRAIN) != 0 ? vertexCount * 2 : vertexCount;
+	}
+
+	public boolean isDirty()
+	{
+		return dirtyStart < dirtyEnd;
+	}
+
+	/**
+	 * @return the index of the first int which has changed since the table was last uploaded
+	 */
+	public int getDirtyOffset()
+	{
+		return dirtyStart * DESCRIPTOR_SIZE;
+	}
+
+	/**
+	 * @return the number of ints which have changed since the table was last uploaded
+	 */
+	public int getDirtySize()
+	{
+		return Math.max(0, dirtyEnd - dirtyStart) * DESCRIPTOR_SIZE;
+	}
+
+	/**
+	 * Puts the descriptors which have changed since the last upload into the buffer, and marks them clean.
+	 */
+	public void putDirty(IntBuffer buffer)
+	{
+		buffer.put(descriptors, dirtyStart * DESCRIPTOR_SIZE, (dirtyEnd - dirtyStart) * DESCRIPTOR_SIZE);
+		dirtyStart = SLOT_COUNT;
+		dirtyEnd = 0;
+	}
+
+	private static int tileSlot(int z, int x, int y)
+	{
+		return ((z * Constants.SCENE_SIZE + x) * Constants.SCENE_SIZE + y) * SLOTS_PER_TILE;
+	}
+}
@@ -26,7 +26,16 @@
 package rs117.hd.scene;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
@@ -45,6 +54,7 @@ import net.runelite.api.SceneTilePaint;
 import net.runelite.api.Tile;
 import net.runelite.api.WallObject;
 import rs117.hd.HdPlugin;
+import rs117.hd.HdPluginConfig;
 import rs117.hd.data.WaterType;
 import rs117.hd.data.materials.GroundMaterial;
 import rs117.hd.model.objects.ObjectProperties;
@@ -56,6 +66,7 @@ import rs117.hd.model.objects.ObjectType;
 import rs117.hd.utils.HDUtils;
 import rs117.hd.utils.buffer.GpuFloatBuffer;
 import rs117.hd.utils.buffer.GpuIntBuffer;
+import rs117.hd.utils.buffer.SpanAllocator;
 
 @Singleton
 @Slf4j
@@ -74,17 +85,233 @@ class SceneUploader
 	@Inject
 	private ModelPusher modelPusher;
 
+	@Inject
+	private TileMaterialTable tileMaterialTable;
+
+	@Inject
+	private HdPluginConfig config;
+
+	// size in tiles of the square blocks the scene is split into for parallel uploading
+	private static final int UPLOAD_CHUNK_SIZE = 8;
+	private static final int UPLOAD_CHUNKS_PER_SIDE = (Constants.SCENE_SIZE + UPLOAD_CHUNK_SIZE - 1) / UPLOAD_CHUNK_SIZE;
+	private static final int TILE_COUNT = Constants.MAX_Z * Constants.SCENE_SIZE * Constants.SCENE_SIZE;
+	private static final Model[] NO_MODELS = new Model[0];
+
 	public int sceneId = new Random().nextInt();
-	private int offset;
-	private int uvoffset;
+
+	private final SceneChunk wholeScene = new SceneChunk(0, 0, 0);
+	private final List<SceneChunk> sceneChunks = new ArrayList<>();
+	private final Object modelClaimLock = new Object();
+	private final ThreadLocal<ChunkBuffers> workerBuffers = ThreadLocal.withInitial(ChunkBuffers::new);
+	private ExecutorService uploadExecutor;
+	private Scene uploadingScene;
+
+	// where the geometry of each tile, including its bridge, is in the scene buffers, in vertices
+	private final int[] tileVertexOffsets = new int[TILE_COUNT];
+	private final int[] tileVertexCounts = new int[TILE_COUNT];
+	private final int[] tileUvOffsets = new int[TILE_COUNT];
+	private final int[] tileUvCounts = new int[TILE_COUNT];
+	// the models whose geometry is in each tile's span
+	private final Model[][] tileModels = new Model[TILE_COUNT][];
+	private final BitSet dirtyTiles = new BitSet(TILE_COUNT);
+	private final SpanAllocator vertexAllocator = new SpanAllocator();
+	private final SpanAllocator uvAllocator = new SpanAllocator();
+	private final SceneChunk dirtyTileChunk = new SceneChunk(0, 0, 0);
+	// staging offset, scene buffer offset and count of vertices and uvs for each uploaded dirty tile
+	private int[] tileUpdates = new int[6 * 64];
+	private int sceneVertexCount;
+	private int sceneUvCount;
+
+	/**
+	 * Copies a tile's geometry from the staging buffers into the scene buffers. Offsets and counts are in vertices,
+	 * and the normals share their offsets with the vertices.
+	 */
+	public interface SceneBufferWriter
+	{
+		void write(int stagingOffset, int vertexOffset, int vertexCount, int stagingUvOffset, int uvOffset, int uvCount);
+	}
 
 	public void upload(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
 	{
 		Stopwatch stopwatch = Stopwatch.createStarted();
 
+		// changes made before now are part of the upload
+		dirtyTiles.clear();
+
+		if (!config.parallelSceneUpload() || !uploadParallel(scene, vertexBuffer, uvBuffer, normalBuffer))
+		{
+			uploadSerial(scene, vertexBuffer, uvBuffer, normalBuffer);
+		}
+
+		stopwatch.stop();
+		log.debug("Scene upload time: {}", stopwatch);
+	}
+
+	/**
+	 * Should be called once the scene buffers have been allocated after uploading the whole scene.
+	 * The space past the end of the uploaded scene is used for tiles which are uploaded again.
+	 *
+	 * @param vertexCapacity the number of vertices and normals the scene buffers can hold
+	 * @param uvCapacity     the number of uvs the scene buffer can hold
+	 */
+	public void setBufferCapacity(int vertexCapacity, int uvCapacity)
+	{
+		vertexAllocator.reset(sceneVertexCount, vertexCapacity);
+		uvAllocator.reset(sceneUvCount, uvCapacity);
+	}
+
+	/**
+	 * Marks a tile whose objects have changed, so it gets uploaded again by {@link #uploadDirtyTiles}.
+	 * Until then, models which haven't been uploaded are drawn as temporary models.
+	 */
+	public void markDirty(Tile tile)
+	{
+		final Point location = tile.getSceneLocation();
+		final int x = location.getX();
+		final int y = location.getY();
+		if (x < 0 || y < 0 || x >= Constants.SCENE_SIZE || y >= Constants.SCENE_SIZE)
+		{
+			return;
+		}
+
+		// tiles underneath bridges are uploaded along with the bridge
+		final Tile[][][] tiles = client.getScene().getTiles();
+		for (int z = 0; z < Constants.MAX_Z; ++z)
+		{
+			Tile sceneTile = tiles[z][x][y];
+			if (sceneTile != null && (sceneTile == tile || sceneTile.getBridge() == tile))
+			{
+				dirtyTiles.set(tileIndex(z, x, y));
+			}
+		}
+	}
+
+	public boolean hasDirtyTiles()
+	{
+		return !dirtyTiles.isEmpty();
+	}
+
+	/**
+	 * Uploads the tiles which have been marked as dirty into free spans of the scene buffers, after freeing the
+	 * spans they used before. The geometry is staged in the provided buffers, and then passed to the writer
+	 * tile by tile.
+	 *
+	 * @return false if the tiles didn't fit in the scene buffers, in which case the whole scene must be uploaded
+	 */
+	public boolean uploadDirtyTiles(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer, SceneBufferWriter writer)
+	{
+		if (dirtyTiles.isEmpty())
+		{
+			return true;
+		}
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		final int dirtyCount = dirtyTiles.cardinality();
+
+		for (int i = dirtyTiles.nextSetBit(0); i >= 0; i = dirtyTiles.nextSetBit(i + 1))
+		{
+			// models which are still on the tile are claimed again, and any others are drawn as temporary models
+			for (Model model : tileModels[i])
+			{
+				model.setSceneId(~sceneId);
+			}
+			vertexAllocator.free(tileVertexOffsets[i], tileVertexCounts[i]);
+			uvAllocator.free(tileUvOffsets[i], tileUvCounts[i]);
+			tileVertexCounts[i] = tileUvCounts[i] = 0;
+			tileModels[i] = NO_MODELS;
+		}
+
+		if (tileUpdates.length < dirtyCount * 6)
+		{
+			tileUpdates = new int[dirtyCount * 6];
+		}
+
+		final Tile[][][] tiles = scene.getTiles();
+		int updateCount = 0;
+		for (int i = dirtyTiles.nextSetBit(0); i >= 0; i = dirtyTiles.nextSetBit(i + 1))
+		{
+			final int z = i / (Constants.SCENE_SIZE * Constants.SCENE_SIZE);
+			final int x = i / Constants.SCENE_SIZE % Constants.SCENE_SIZE;
+			final int y = i % Constants.SCENE_SIZE;
+
+			final int stagingOffset = vertexBuffer.getBuffer().position() / 4;
+			final int stagingUvOffset = uvBuffer.getBuffer().position() / 4;
+			dirtyTileChunk.reset();
+			uploadTile(tiles[z][x][y], i, dirtyTileChunk, vertexBuffer, uvBuffer, normalBuffer);
+
+			final int vertexOffset = vertexAllocator.allocate(tileVertexCounts[i]);
+			final int uvOffset = uvAllocator.allocate(tileUvCounts[i]);
+			if (vertexOffset == -1 || uvOffset == -1)
+			{
+				dirtyTiles.clear();
+				return false;
+			}
+
+			dirtyTileChunk.rebase(vertexOffset, uvOffset);
+			tileVertexOffsets[i] = vertexOffset;
+			tileUvOffsets[i] = uvOffset;
+
+			int[] update = tileUpdates;
+			int j = updateCount++ * 6;
+			update[j] = stagingOffset;
+			update[j + 1] = vertexOffset;
+			update[j + 2] = tileVertexCounts[i];
+			update[j + 3] = stagingUvOffset;
+			update[j + 4] = uvOffset;
+			update[j + 5] = tileUvCounts[i];
+		}
+		dirtyTiles.clear();
+
+		for (int j = 0; j < updateCount * 6; j += 6)
+		{
+			writer.write(tileUpdates[j], tileUpdates[j + 1], tileUpdates[j + 2], tileUpdates[j + 3], tileUpdates[j + 4], tileUpdates[j + 5]);
+		}
+
+		stopwatch.stop();
+		log.debug("Uploaded {} changed tiles in {}", dirtyCount, stopwatch);
+		return true;
+	}
+
+	private static int tileIndex(int z, int x, int y)
+	{
+		return (z * Constants.SCENE_SIZE + x) * Constants.SCENE_SIZE + y;
+	}
+
+	/**
+	 * Uploads a tile, recording its span relative to the chunk, and the models it pushed.
+	 */
+	private void uploadTile(Tile tile, int tileIndex, SceneChunk chunk, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
+	{
+		final int vertexOffset = chunk.offset;
+		final int uvOffset = chunk.uvoffset;
+		final int modelCount = chunk.models.size();
+
+		if (tile != null)
+		{
+			upload(tile, chunk, vertexBuffer, uvBuffer, normalBuffer);
+		}
+
+		tileVertexOffsets[tileIndex] = vertexOffset;
+		tileVertexCounts[tileIndex] = chunk.offset - vertexOffset;
+		tileUvOffsets[tileIndex] = uvOffset;
+		tileUvCounts[tileIndex] = chunk.uvoffset - uvOffset;
+		tileModels[tileIndex] = chunk.models.size() == modelCount ? NO_MODELS :
+			chunk.models.subList(modelCount, chunk.models.size()).toArray(NO_MODELS);
+	}
+
+	public void shutDown()
+	{
+		if (uploadExecutor != null)
+		{
+			uploadExecutor.shutdownNow();
+			uploadExecutor = null;
+		}
+	}
+
+	private void uploadSerial(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
+	{
 		++sceneId;
-		offset = 0;
-		uvoffset = 0;
+		wholeScene.reset();
 		vertexBuffer.clear();
 		uvBuffer.clear();
 		normalBuffer.clear();
@@ -95,24 +322,106 @@ class SceneUploader
 			{
 				for (int y = 0; y < Constants.SCENE_SIZE; ++y)
 				{
-					Tile tile = scene.getTiles()[z][x][y];
-					if (tile != null)
+					uploadTile(scene.getTiles()[z][x][y], tileIndex(z, x, y), wholeScene, vertexBuffer, uvBuffer, normalBuffer);
+				}
+			}
+		}
+
+		sceneVertexCount = wholeScene.offset;
+		sceneUvCount = wholeScene.uvoffset;
+	}
+
+	/**
+	 * Uploads the scene in blocks of tiles spread across worker threads, each writing into its own buffers.
+	 * Once all blocks are done, a prefix sum over the block lengths gives each block its final position,
+	 * and the blocks are copied into the scene buffers in order.
+	 *
+	 * @return false if the upload failed, in which case the scene should be uploaded serially instead
+	 */
+	private boolean uploadParallel(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
+	{
+		if (uploadExecutor == null)
+		{
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			uploadExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("rlhd-scene-upload-%d")
+				.setDaemon(true)
+				.build());
+		}
+
+		if (sceneChunks.isEmpty())
+		{
+			for (int z = 0; z < Constants.MAX_Z; ++z)
+			{
+				for (int chunkX = 0; chunkX < UPLOAD_CHUNKS_PER_SIDE; ++chunkX)
+				{
+					for (int chunkY = 0; chunkY < UPLOAD_CHUNKS_PER_SIDE; ++chunkY)
 					{
-						upload(tile, vertexBuffer, uvBuffer, normalBuffer);
+						sceneChunks.add(new SceneChunk(z, chunkX * UPLOAD_CHUNK_SIZE, chunkY * UPLOAD_CHUNK_SIZE));
 					}
 				}
 			}
 		}
 
-		stopwatch.stop();
-		log.debug("Scene upload time: {}", stopwatch);
+		++sceneId;
+		uploadingScene = scene;
+		try
+		{
+			for (Future<Void> future : uploadExecutor.invokeAll(sceneChunks))
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted during parallel scene upload, falling back to serial upload");
+			return false;
+		}
+		catch (ExecutionException ex)
+		{
+			log.error("Parallel scene upload failed, falling back to serial upload", ex.getCause());
+			return false;
+		}
+		finally
+		{
+			uploadingScene = null;
+		}
+
+		vertexBuffer.clear();
+		uvBuffer.clear();
+		normalBuffer.clear();
+
+		int offset = 0;
+		int uvoffset = 0;
+		for (SceneChunk chunk : sceneChunks)
+		{
+			chunk.rebase(offset, uvoffset);
+			chunk.rebaseTiles(offset, uvoffset);
+			offset += chunk.offset;
+			uvoffset += chunk.uvoffset;
+
+			ChunkBuffers buffers = chunk.buffers;
+			vertexBuffer.put(buffers.vertexBuffer.getBuffer(), chunk.vertexStart, chunk.vertexEnd);
+			uvBuffer.put(buffers.uvBuffer.getBuffer(), chunk.uvStart, chunk.uvEnd);
+			normalBuffer.put(buffers.normalBuffer.getBuffer(), chunk.normalStart, chunk.normalEnd);
+		}
+
+		sceneVertexCount = offset;
+		sceneUvCount = uvoffset;
+		return true;
 	}
 
-	private void uploadModel(Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer, int tileZ, int tileX, int tileY, ObjectProperties objectProperties, ObjectType objectType)
+	private void uploadModel(Model model, SceneChunk chunk, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer, int tileZ, int tileX, int tileY, ObjectProperties objectProperties, ObjectType objectType)
 	{
-		if (model.getSceneId() == sceneId)
+		// models can be shared between tiles, which may be uploaded by different threads
+		synchronized (modelClaimLock)
 		{
-			return; // model has already been uploaded
+			if (model.getSceneId() == sceneId)
+			{
+				return; // model has already been uploaded
+			}
+			model.setSceneId(sceneId);
 		}
 
 		byte skipObject = 0b00;
@@ -125,29 +434,29 @@ class SceneUploader
 
 		// pack a bit into bufferoffset that we can use later to hide
 		// some low-importance objects based on Level of Detail setting
-		model.setBufferOffset(offset << 2 | skipObject);
+		model.setBufferOffset(chunk.offset << 2 | skipObject);
 		if (model.getFaceTextures() != null || (objectProperties != null && objectProperties.getMaterial() != Material.NONE))
 		{
-			model.setUvBufferOffset(uvoffset);
+			model.setUvBufferOffset(chunk.uvoffset);
 		}
 		else
 		{
 			model.setUvBufferOffset(-1);
 		}
-		model.setSceneId(sceneId);
+		chunk.models.add(model);
 
-		final int[] lengths = modelPusher.pushModel(null, model, vertexBuffer, uvBuffer, normalBuffer, tileX, tileY, tileZ, objectProperties, objectType, true, 0);
+		final int[] lengths = modelPusher.pushModel(null, model, vertexBuffer, uvBuffer, normalBuffer, tileX, tileY, tileZ, objectProperties, objectType, true, 0, 0);
 
-		offset += lengths[0];
-		uvoffset += lengths[1];
+		chunk.offset += lengths[0];
+		chunk.uvoffset += lengths[1];
 	}
 
-	private void upload(Tile tile, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
+	private void upload(Tile tile, SceneChunk chunk, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuFloatBuffer normalBuffer)
 	{
 		Tile bridge = tile.getBridge();
 		if (bridge != null)
 		{
-			upload(bridge, vertexBuffer, uvBuffer, normalBuffer);
+			upload(bridge, chunk, vertexBuffer, uvBuffer, normalBuffer);
 		}
 
 		final Point tilePoint = tile.getSceneLocation();
@@ -171,11 +480,12 @@ class SceneUploader
 			// which tiles have procedurally generated underwater terrain.
 			// shift the bufferLength to make space for the boolean:
 			int packedBufferLength = bufferLength << 1 | underwaterTerrain;
-			sceneTilePaint.setBufferOffset(offset);
-			sceneTilePaint.setUvBufferOffset(uvBufferLength > 0 ? uvoffset : -1);
+			sceneTilePaint.setBufferOffset(chunk.offset);
+			sceneTilePaint.setUvBufferOffset(uvBufferLength > 0 ? chunk.uvoffset : -1);
 			sceneTilePaint.setBufferLen(packedBufferLength);
-			offset += bufferLength;
-			uvoffset += uvBufferLength;
+			chunk.tilePaints.add(sceneTilePaint);
+			chunk.offset += bufferLength;
+			chunk.uvoffset += uvBufferLength;
 		}
 
 		SceneTileModel sceneTileModel = tile.getSceneTileModel();
@@ -193,11 +503,12 @@ class SceneUploader
 			// pack a boolean into the buffer length of tiles so we can tell
 			// which tiles have procedurally-generated underwater terrain
 			int packedBufferLength = bufferLength << 1 | underwaterTerrain;
-			sceneTileModel.setBufferOffset(offset);
-			sceneTileModel.setUvBufferOffset(uvBufferLength > 0 ? uvoffset : -1);
+			sceneTileModel.setBufferOffset(chunk.offset);
+			sceneTileModel.setUvBufferOffset(uvBufferLength > 0 ? chunk.uvoffset : -1);
 			sceneTileModel.setBufferLen(packedBufferLength);
-			offset += bufferLength;
-			uvoffset += uvBufferLength;
+			chunk.tileModels.add(sceneTileModel);
+			chunk.offset += bufferLength;
+			chunk.uvoffset += uvBufferLength;
 		}
 
 		ObjectProperties objectProperties;
@@ -211,14 +522,14 @@ class SceneUploader
 			if (renderable1 instanceof Model)
 			{
 				Model model = (Model) renderable1;
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.WALL_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.WALL_OBJECT);
 			}
 
 			Renderable renderable2 = wallObject.getRenderable2();
 			if (renderable2 instanceof Model)
 			{
 				Model model = (Model) renderable2;
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.WALL_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.WALL_OBJECT);
 			}
 		}
 
@@ -231,7 +542,7 @@ class SceneUploader
 			if (renderable instanceof Model)
 			{
 				Model model = (Model) renderable;
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.GROUND_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.GROUND_OBJECT);
 			}
 		}
 
@@ -244,14 +555,14 @@ class SceneUploader
 			if (renderable instanceof Model)
 			{
 				Model model = (Model) renderable;
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.DECORATIVE_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.DECORATIVE_OBJECT);
 			}
 
 			Renderable renderable2 = decorativeObject.getRenderable2();
 			if (renderable2 instanceof Model)
 			{
 				Model model = (Model) renderable2;
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.DECORATIVE_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.DECORATIVE_OBJECT);
 			}
 		}
 
@@ -269,7 +580,7 @@ class SceneUploader
 			if (renderable instanceof Model)
 			{
 				Model model = (Model) gameObject.getRenderable();
-				uploadModel(model, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.GAME_OBJECT);
+				uploadModel(model, chunk, vertexBuffer, uvBuffer, normalBuffer, tileZ, tileX, tileY, objectProperties, ObjectType.GAME_OBJECT);
 			}
 		}
 	}
@@ -331,11 +642,11 @@ class SceneUploader
 		int localNeVertexX = localX + Perspective.LOCAL_TILE_SIZE;
 		int localNeVertexY = localY + Perspective.LOCAL_TILE_SIZE;
 
-		int[] vertexKeys = proceduralGenerator.tileVertexKeys(tile);
-		int swVertexKey = vertexKeys[0];
-		int seVertexKey = vertexKeys[1];
-		int nwVertexKey = vertexKeys[2];
-		int neVertexKey = vertexKeys[3];
+		long[] vertexKeys = proceduralGenerator.tileVertexKeys(tile);
+		long swVertexKey = vertexKeys[0];
+		long seVertexKey = vertexKeys[1];
+		long nwVertexKey = vertexKeys[2];
+		long neVertexKey = vertexKeys[3];
 
 		if (!ignoreTile)
 		{
@@ -366,38 +677,38 @@ class SceneUploader
 
 				swColor = seColor = nwColor = neColor = 127;
 
-				if (proceduralGenerator.vertexIsWater.containsKey(swVertexKey) && proceduralGenerator.vertexIsLand.containsKey(swVertexKey))
+				if (proceduralGenerator.vertexStore.hasFlags(swVertexKey, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					swColor = 0;
 				}
-				if (proceduralGenerator.vertexIsWater.containsKey(seVertexKey) && proceduralGenerator.vertexIsLand.containsKey(seVertexKey))
+				if (proceduralGenerator.vertexStore.hasFlags(seVertexKey, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					seColor = 0;
 				}
-				if (proceduralGenerator.vertexIsWater.containsKey(nwVertexKey) && proceduralGenerator.vertexIsLand.containsKey(nwVertexKey))
+				if (proceduralGenerator.vertexStore.hasFlags(nwVertexKey, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					nwColor = 0;
 				}
-				if (proceduralGenerator.vertexIsWater.containsKey(neVertexKey) && proceduralGenerator.vertexIsLand.containsKey(neVertexKey))
+				if (proceduralGenerator.vertexStore.hasFlags(neVertexKey, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					neColor = 0;
 				}
 			}
 			else if (hdPlugin.configGroundBlending && !proceduralGenerator.useDefaultColor(tile) && sceneTilePaint.getTexture() == -1)
 			{
-				// get the vertices' colors and textures from hashmaps
+				// get the vertices' colors and textures from the vertex store
 
-				swColor = proceduralGenerator.vertexTerrainColor.getOrDefault(swVertexKey, swColor);
-				seColor = proceduralGenerator.vertexTerrainColor.getOrDefault(seVertexKey, seColor);
-				neColor = proceduralGenerator.vertexTerrainColor.getOrDefault(neVertexKey, neColor);
-				nwColor = proceduralGenerator.vertexTerrainColor.getOrDefault(nwVertexKey, nwColor);
+				swColor = proceduralGenerator.vertexStore.getColor(swVertexKey, swColor);
+				seColor = proceduralGenerator.vertexStore.getColor(seVertexKey, seColor);
+				neColor = proceduralGenerator.vertexStore.getColor(neVertexKey, neColor);
+				nwColor = proceduralGenerator.vertexStore.getColor(nwVertexKey, nwColor);
 
 				if (hdPlugin.configGroundTextures)
 				{
-					swMaterial = proceduralGenerator.vertexTerrainTexture.getOrDefault(swVertexKey, swMaterial);
-					seMaterial = proceduralGenerator.vertexTerrainTexture.getOrDefault(seVertexKey, seMaterial);
-					neMaterial = proceduralGenerator.vertexTerrainTexture.getOrDefault(neVertexKey, neMaterial);
-					nwMaterial = proceduralGenerator.vertexTerrainTexture.getOrDefault(nwVertexKey, nwMaterial);
+					swMaterial = proceduralGenerator.vertexStore.getMaterial(swVertexKey, swMaterial);
+					seMaterial = proceduralGenerator.vertexStore.getMaterial(seVertexKey, seMaterial);
+					neMaterial = proceduralGenerator.vertexStore.getMaterial(neVertexKey, neMaterial);
+					nwMaterial = proceduralGenerator.vertexStore.getMaterial(nwVertexKey, nwMaterial);
 				}
 			}
 			else if (hdPlugin.configGroundTextures && !shouldSkipTile(baseX + tileX, baseY + tileY))
@@ -406,8 +717,7 @@ class SceneUploader
 
 				if (client.getScene().getOverlayIds()[tileZ][tileX][tileY] != 0)
 				{
-					Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client);
-					overlay = proceduralGenerator.getSeasonalOverlay(overlay);
+					Overlay overlay = tileMaterialTable.getSeasonalOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile);
 					groundMaterial = overlay.getGroundMaterial();
 
 					swColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(swColor)));
@@ -417,8 +727,7 @@ class SceneUploader
 				}
 				else
 				{
-					Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client);
-					underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+					Underlay underlay = tileMaterialTable.getSeasonalUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile);
 					groundMaterial = underlay.getGroundMaterial();
 
 					swColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(swColor)));
@@ -436,8 +745,7 @@ class SceneUploader
 			{
 				if (client.getScene().getOverlayIds()[tileZ][tileX][tileY] != 0)
 				{
-					Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client);
-					overlay = proceduralGenerator.getSeasonalOverlay(overlay);
+					Overlay overlay = tileMaterialTable.getSeasonalOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile);
 
 					swColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(swColor)));
 					seColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(seColor)));
@@ -446,8 +754,7 @@ class SceneUploader
 				}
 				else
 				{
-					Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client);
-					underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+					Underlay underlay = tileMaterialTable.getSeasonalUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile);
 
 					swColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(swColor)));
 					seColor = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(seColor)));
@@ -456,19 +763,19 @@ class SceneUploader
 				}
 			}
 
-			if (proceduralGenerator.vertexIsOverlay.containsKey(neVertexKey) && proceduralGenerator.vertexIsUnderlay.containsKey(neVertexKey))
+			if (proceduralGenerator.vertexStore.hasFlags(neVertexKey, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				neVertexIsOverlay = true;
 			}
-			if (proceduralGenerator.vertexIsOverlay.containsKey(nwVertexKey) && proceduralGenerator.vertexIsUnderlay.containsKey(nwVertexKey))
+			if (proceduralGenerator.vertexStore.hasFlags(nwVertexKey, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				nwVertexIsOverlay = true;
 			}
-			if (proceduralGenerator.vertexIsOverlay.containsKey(seVertexKey) && proceduralGenerator.vertexIsUnderlay.containsKey(seVertexKey))
+			if (proceduralGenerator.vertexStore.hasFlags(seVertexKey, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				seVertexIsOverlay = true;
 			}
-			if (proceduralGenerator.vertexIsOverlay.containsKey(swVertexKey) && proceduralGenerator.vertexIsUnderlay.containsKey(swVertexKey))
+			if (proceduralGenerator.vertexStore.hasFlags(swVertexKey, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				swVertexIsOverlay = true;
 			}
@@ -478,14 +785,14 @@ class SceneUploader
 			float[] neNormals = new float[]{0,-1,0};
 			float[] nwNormals = new float[]{0,-1,0};
 
-			// retrieve normals from hashmap
+			// retrieve normals from the vertex store
 
 			if (waterType == WaterType.NONE)
 			{
-				swNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(swVertexKey, swNormals);
-				seNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(seVertexKey, seNormals);
-				neNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(neVertexKey, neNormals);
-				nwNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(nwVertexKey, nwNormals);
+				proceduralGenerator.vertexStore.getNormals(swVertexKey, swNormals);
+				proceduralGenerator.vertexStore.getNormals(seVertexKey, seNormals);
+				proceduralGenerator.vertexStore.getNormals(neVertexKey, neNormals);
+				proceduralGenerator.vertexStore.getNormals(nwVertexKey, nwNormals);
 			}
 
 			int swTerrainData = packTerrainData(0, WaterType.NONE, tileZ);
@@ -564,11 +871,11 @@ class SceneUploader
 		int localNeVertexX = offsetX + Perspective.LOCAL_TILE_SIZE;
 		int localNeVertexY = offsetY + Perspective.LOCAL_TILE_SIZE;
 
-		int[] vertexKeys = proceduralGenerator.tileVertexKeys(tile);
-		int swVertexKey = vertexKeys[0];
-		int seVertexKey = vertexKeys[1];
-		int nwVertexKey = vertexKeys[2];
-		int neVertexKey = vertexKeys[3];
+		long[] vertexKeys = proceduralGenerator.tileVertexKeys(tile);
+		long swVertexKey = vertexKeys[0];
+		long seVertexKey = vertexKeys[1];
+		long nwVertexKey = vertexKeys[2];
+		long neVertexKey = vertexKeys[3];
 
 		if (proceduralGenerator.tileIsWater[tileZ][tileX][tileY])
 		{
@@ -581,15 +888,19 @@ class SceneUploader
 			int neColor = 6676;
 			int nwColor = 6676;
 
-			int swDepth = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(swVertexKey, 0);
-			int seDepth = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(seVertexKey, 0);
-			int nwDepth = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(nwVertexKey, 0);
-			int neDepth = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(neVertexKey, 0);
+			int swDepth = proceduralGenerator.vertexStore.getUnderwaterDepth(swVertexKey, 0);
+			int seDepth = proceduralGenerator.vertexStore.getUnderwaterDepth(seVertexKey, 0);
+			int nwDepth = proceduralGenerator.vertexStore.getUnderwaterDepth(nwVertexKey, 0);
+			int neDepth = proceduralGenerator.vertexStore.getUnderwaterDepth(neVertexKey, 0);
 
-			float[] swNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(swVertexKey, new float[]{0,-1,0});
-			float[] seNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(seVertexKey, new float[]{0,-1,0});
-			float[] nwNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(nwVertexKey, new float[]{0,-1,0});
-			float[] neNormals = proceduralGenerator.vertexTerrainNormals.getOrDefault(neVertexKey, new float[]{0,-1,0});
+			float[] swNormals = new float[]{0,-1,0};
+			proceduralGenerator.vertexStore.getNormals(swVertexKey, swNormals);
+			float[] seNormals = new float[]{0,-1,0};
+			proceduralGenerator.vertexStore.getNormals(seVertexKey, seNormals);
+			float[] nwNormals = new float[]{0,-1,0};
+			proceduralGenerator.vertexStore.getNormals(nwVertexKey, nwNormals);
+			float[] neNormals = new float[]{0,-1,0};
+			proceduralGenerator.vertexStore.getNormals(neVertexKey, neNormals);
 
 			Material swMaterial = Material.NONE;
 			Material seMaterial = Material.NONE;
@@ -709,10 +1020,10 @@ class SceneUploader
 
 			int[][] localVertices = proceduralGenerator.faceLocalVertices(tile, face);
 
-			int[] vertexKeys = proceduralGenerator.faceVertexKeys(tile, face);
-			int vertexKeyA = vertexKeys[0];
-			int vertexKeyB = vertexKeys[1];
-			int vertexKeyC = vertexKeys[2];
+			long[] vertexKeys = proceduralGenerator.faceVertexKeys(tile, face);
+			long vertexKeyA = vertexKeys[0];
+			long vertexKeyB = vertexKeys[1];
+			long vertexKeyC = vertexKeys[2];
 
 			boolean vertexAIsOverlay = false;
 			boolean vertexBIsOverlay = false;
@@ -745,32 +1056,32 @@ class SceneUploader
 
 				colorA = colorB = colorC = 127;
 
-				if (proceduralGenerator.vertexIsWater.containsKey(vertexKeyA) && proceduralGenerator.vertexIsLand.containsKey(vertexKeyA))
+				if (proceduralGenerator.vertexStore.hasFlags(vertexKeyA, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					colorA = 0;
 				}
-				if (proceduralGenerator.vertexIsWater.containsKey(vertexKeyB) && proceduralGenerator.vertexIsLand.containsKey(vertexKeyB))
+				if (proceduralGenerator.vertexStore.hasFlags(vertexKeyB, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					colorB = 0;
 				}
-				if (proceduralGenerator.vertexIsWater.containsKey(vertexKeyC) && proceduralGenerator.vertexIsLand.containsKey(vertexKeyC))
+				if (proceduralGenerator.vertexStore.hasFlags(vertexKeyC, TerrainVertexStore.IS_WATER | TerrainVertexStore.IS_LAND))
 				{
 					colorC = 0;
 				}
 			}
 			else if (hdPlugin.configGroundBlending && !(proceduralGenerator.isOverlayFace(tile, face) && proceduralGenerator.useDefaultColor(tile)) && materialA == Material.NONE)
 			{
-				// get the vertices' colors and textures from hashmaps
+				// get the vertices' colors and textures from the vertex store
 
-				colorA = proceduralGenerator.vertexTerrainColor.getOrDefault(vertexKeyA, colorA);
-				colorB = proceduralGenerator.vertexTerrainColor.getOrDefault(vertexKeyB, colorB);
-				colorC = proceduralGenerator.vertexTerrainColor.getOrDefault(vertexKeyC, colorC);
+				colorA = proceduralGenerator.vertexStore.getColor(vertexKeyA, colorA);
+				colorB = proceduralGenerator.vertexStore.getColor(vertexKeyB, colorB);
+				colorC = proceduralGenerator.vertexStore.getColor(vertexKeyC, colorC);
 
 				if (hdPlugin.configGroundTextures)
 				{
-					materialA = proceduralGenerator.vertexTerrainTexture.getOrDefault(vertexKeyA, materialA);
-					materialB = proceduralGenerator.vertexTerrainTexture.getOrDefault(vertexKeyB, materialB);
-					materialC = proceduralGenerator.vertexTerrainTexture.getOrDefault(vertexKeyC, materialC);
+					materialA = proceduralGenerator.vertexStore.getMaterial(vertexKeyA, materialA);
+					materialB = proceduralGenerator.vertexStore.getMaterial(vertexKeyB, materialB);
+					materialC = proceduralGenerator.vertexStore.getMaterial(vertexKeyC, materialC);
 				}
 			}
 			else if (hdPlugin.configGroundTextures)
@@ -781,8 +1092,7 @@ class SceneUploader
 
 				if (proceduralGenerator.isOverlayFace(tile, face))
 				{
-					Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client);
-					overlay = proceduralGenerator.getSeasonalOverlay(overlay);
+					Overlay overlay = tileMaterialTable.getSeasonalOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile);
 					groundMaterial = overlay.getGroundMaterial();
 
 					colorA = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(colorA)));
@@ -791,8 +1101,7 @@ class SceneUploader
 				}
 				else
 				{
-					Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client);
-					underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+					Underlay underlay = tileMaterialTable.getSeasonalUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile);
 					groundMaterial = underlay.getGroundMaterial();
 
 					colorA = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(colorA)));
@@ -808,8 +1117,7 @@ class SceneUploader
 			{
 				if (proceduralGenerator.isOverlayFace(tile, face))
 				{
-					Overlay overlay = Overlay.getOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile, client);
-					overlay = proceduralGenerator.getSeasonalOverlay(overlay);
+					Overlay overlay = tileMaterialTable.getSeasonalOverlay(client.getScene().getOverlayIds()[tileZ][tileX][tileY], tile);
 
 					colorA = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(colorA)));
 					colorB = HDUtils.colorHSLToInt(proceduralGenerator.recolorOverlay(overlay, HDUtils.colorIntToHSL(colorB)));
@@ -817,8 +1125,7 @@ class SceneUploader
 				}
 				else
 				{
-					Underlay underlay = Underlay.getUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile, client);
-					underlay = proceduralGenerator.getSeasonalUnderlay(underlay);
+					Underlay underlay = tileMaterialTable.getSeasonalUnderlay(client.getScene().getUnderlayIds()[tileZ][tileX][tileY], tile);
 
 					colorA = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(colorA)));
 					colorB = HDUtils.colorHSLToInt(proceduralGenerator.recolorUnderlay(underlay, HDUtils.colorIntToHSL(colorB)));
@@ -826,15 +1133,15 @@ class SceneUploader
 				}
 			}
 
-			if (proceduralGenerator.vertexIsOverlay.containsKey(vertexKeyA) && proceduralGenerator.vertexIsUnderlay.containsKey(vertexKeyA))
+			if (proceduralGenerator.vertexStore.hasFlags(vertexKeyA, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				vertexAIsOverlay = true;
 			}
-			if (proceduralGenerator.vertexIsOverlay.containsKey(vertexKeyB) && proceduralGenerator.vertexIsUnderlay.containsKey(vertexKeyB))
+			if (proceduralGenerator.vertexStore.hasFlags(vertexKeyB, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				vertexBIsOverlay = true;
 			}
-			if (proceduralGenerator.vertexIsOverlay.containsKey(vertexKeyC) && proceduralGenerator.vertexIsUnderlay.containsKey(vertexKeyC))
+			if (proceduralGenerator.vertexStore.hasFlags(vertexKeyC, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_UNDERLAY))
 			{
 				vertexCIsOverlay = true;
 			}
@@ -843,12 +1150,12 @@ class SceneUploader
 			float[] normalsB = new float[]{0,-1,0};
 			float[] normalsC = new float[]{0,-1,0};
 
-			// retrieve normals from hashmap
+			// retrieve normals from the vertex store
 			if (waterType == WaterType.NONE)
 			{
-				normalsA = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyA, normalsA);
-				normalsB = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyB, normalsB);
-				normalsC = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyC, normalsC);
+				proceduralGenerator.vertexStore.getNormals(vertexKeyA, normalsA);
+				proceduralGenerator.vertexStore.getNormals(vertexKeyB, normalsB);
+				proceduralGenerator.vertexStore.getNormals(vertexKeyC, normalsC);
 			}
 
 			int aTerrainData = packTerrainData(0, WaterType.NONE, tileZ);
@@ -930,14 +1237,14 @@ class SceneUploader
 				Material materialB = Material.NONE;
 				Material materialC = Material.NONE;
 
-				int[] vertexKeys = proceduralGenerator.faceVertexKeys(tile, face);
-				int vertexKeyA = vertexKeys[0];
-				int vertexKeyB = vertexKeys[1];
-				int vertexKeyC = vertexKeys[2];
+				long[] vertexKeys = proceduralGenerator.faceVertexKeys(tile, face);
+				long vertexKeyA = vertexKeys[0];
+				long vertexKeyB = vertexKeys[1];
+				long vertexKeyC = vertexKeys[2];
 
-				int depthA = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(vertexKeyA, 0);
-				int depthB = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(vertexKeyB, 0);
-				int depthC = proceduralGenerator.vertexUnderwaterDepth.getOrDefault(vertexKeyC, 0);
+				int depthA = proceduralGenerator.vertexStore.getUnderwaterDepth(vertexKeyA, 0);
+				int depthB = proceduralGenerator.vertexStore.getUnderwaterDepth(vertexKeyB, 0);
+				int depthC = proceduralGenerator.vertexStore.getUnderwaterDepth(vertexKeyC, 0);
 
 				if (hdPlugin.configGroundTextures)
 				{
@@ -956,9 +1263,12 @@ class SceneUploader
 					materialC = groundMaterial.getRandomMaterial(tileZ, tileVertexX, tileVertexY);
 				}
 
-				float[] normalsA = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyA, new float[]{0,-1,0});
-				float[] normalsB = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyB, new float[]{0,-1,0});
-				float[] normalsC = proceduralGenerator.vertexTerrainNormals.getOrDefault(vertexKeyC, new float[]{0,-1,0});
+				float[] normalsA = new float[]{0,-1,0};
+				proceduralGenerator.vertexStore.getNormals(vertexKeyA, normalsA);
+				float[] normalsB = new float[]{0,-1,0};
+				proceduralGenerator.vertexStore.getNormals(vertexKeyB, normalsB);
+				float[] normalsC = new float[]{0,-1,0};
+				proceduralGenerator.vertexStore.getNormals(vertexKeyC, normalsC);
 
 				if (normalsA == null)
 				{
@@ -1022,4 +1332,138 @@ class SceneUploader
 		}
 		return false;
 	}
+
+	/**
+	 * Per-thread buffers which scene chunks are uploaded into before being copied into the scene buffers.
+	 * These are kept between scene loads to avoid reallocating them.
+	 */
+	private static class ChunkBuffers
+	{
+		private final GpuIntBuffer vertexBuffer = new GpuIntBuffer();
+		private final GpuFloatBuffer uvBuffer = new GpuFloatBuffer();
+		private final GpuFloatBuffer normalBuffer = new GpuFloatBuffer();
+		private int sceneId;
+	}
+
+	/**
+	 * A block of tiles on a single plane. Buffer offsets assigned while uploading a chunk are relative to
+	 * the start of the chunk, and are rebased once the position of the chunk in the scene buffers is known.
+	 */
+	private class SceneChunk implements Callable<Void>
+	{
+		private final int plane;
+		private final int startX;
+		private final int startY;
+
+		private final List<SceneTilePaint> tilePaints = new ArrayList<>();
+		private final List<SceneTileModel> tileModels = new ArrayList<>();
+		private final List<Model> models = new ArrayList<>();
+
+		private ChunkBuffers buffers;
+		private int offset;
+		private int uvoffset;
+		private int vertexStart;
+		private int vertexEnd;
+		private int uvStart;
+		private int uvEnd;
+		private int normalStart;
+		private int normalEnd;
+
+		SceneChunk(int plane, int startX, int startY)
+		{
+			this.plane = plane;
+			this.startX = startX;
+			this.startY = startY;
+		}
+
+		void reset()
+		{
+			tilePaints.clear();
+			tileModels.clear();
+			models.clear();
+			offset = 0;
+			uvoffset = 0;
+		}
+
+		@Override
+		public Void call()
+		{
+			reset();
+
+			buffers = workerBuffers.get();
+			if (buffers.sceneId != sceneId)
+			{
+				buffers.sceneId = sceneId;
+				buffers.vertexBuffer.clear();
+				buffers.uvBuffer.clear();
+				buffers.normalBuffer.clear();
+			}
+
+			vertexStart = buffers.vertexBuffer.getBuffer().position();
+			uvStart = buffers.uvBuffer.getBuffer().position();
+			normalStart = buffers.normalBuffer.getBuffer().position();
+
+			final Tile[][][] tiles = uploadingScene.getTiles();
+			final int endX = Math.min(startX + UPLOAD_CHUNK_SIZE, Constants.SCENE_SIZE);
+			final int endY = Math.min(startY + UPLOAD_CHUNK_SIZE, Constants.SCENE_SIZE);
+			for (int x = startX; x < endX; ++x)
+			{
+				for (int y = startY; y < endY; ++y)
+				{
+					uploadTile(tiles[plane][x][y], tileIndex(plane, x, y), this, buffers.vertexBuffer, buffers.uvBuffer, buffers.normalBuffer);
+				}
+			}
+
+			vertexEnd = buffers.vertexBuffer.getBuffer().position();
+			uvEnd = buffers.uvBuffer.getBuffer().position();
+			normalEnd = buffers.normalBuffer.getBuffer().position();
+			return null;
+		}
+
+		void rebase(int vertexBase, int uvBase)
+		{
+			for (SceneTilePaint paint : tilePaints)
+			{
+				paint.setBufferOffset(paint.getBufferOffset() + vertexBase);
+				if (paint.getUvBufferOffset() != -1)
+				{
+					paint.setUvBufferOffset(paint.getUvBufferOffset() + uvBase);
+				}
+			}
+
+			for (SceneTileModel tileModel : tileModels)
+			{
+				tileModel.setBufferOffset(tileModel.getBufferOffset() + vertexBase);
+				if (tileModel.getUvBufferOffset() != -1)
+				{
+					tileModel.setUvBufferOffset(tileModel.getUvBufferOffset() + uvBase);
+				}
+			}
+
+			for (Model model : models)
+			{
+				// the lowest two bits hold the skip flags
+				model.setBufferOffset(model.getBufferOffset() + (vertexBase << 2));
+				if (model.getUvBufferOffset() != -1)
+				{
+					model.setUvBufferOffset(model.getUvBufferOffset() + uvBase);
+				}
+			}
+		}
+
+		void rebaseTiles(int vertexBase, int uvBase)
+		{
+			final int endX = Math.min(startX + UPLOAD_CHUNK_SIZE, Constants.SCENE_SIZE);
+			final int endY = Math.min(startY + UPLOAD_CHUNK_SIZE, Constants.SCENE_SIZE);
+			for (int x = startX; x < endX; ++x)
+			{
+				for (int y = startY; y < endY; ++y)
+				{
+					int tileIndex = tileIndex(plane, x, y);
+					tileVertexOffsets[tileIndex] += vertexBase;
+					tileUvOffsets[tileIndex] += uvBase;
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,259 @@
+package rs117.hd.scene;
+
+import java.util.Arrays;
+import rs117.hd.data.materials.Material;
+
+/**
+ * Holds the per-vertex terrain data produced by the {@link ProceduralGenerator}, keyed by packed vertex keys
+ * from {@link rs117.hd.utils.HDUtils#vertexKey(int, int, int)}.
+ * Data is kept in parallel primitive columns indexed by a slot, which is found through an open-addressing
+ * hash table. The arrays are reused between scene loads, so clearing the store does not allocate.
+ */
+public class TerrainVertexStore
+{
+	public static final int IS_WATER = 1;
+	public static final int IS_LAND = 1 << 1;
+	public static final int IS_OVERLAY = 1 << 2;
+	public static final int IS_UNDERLAY = 1 << 3;
+	// used for overriding potentially low quality vertex colors
+	public static final int HIGH_PRIORITY_COLOR = 1 << 4;
+	public static final int HAS_COLOR = 1 << 5;
+	public static final int HAS_MATERIAL = 1 << 6;
+	public static final int HAS_NORMALS = 1 << 7;
+	public static final int HAS_UNDERWATER_DEPTH = 1 << 8;
+
+	public static final int TERRAIN_FLAGS = IS_OVERLAY | IS_UNDERLAY | HIGH_PRIORITY_COLOR | HAS_COLOR | HAS_MATERIAL;
+
+	private static final int INITIAL_CAPACITY = 1 << 17;
+	private static final Material[] MATERIALS = Material.values();
+
+	private int capacity;
+	private int mask;
+	private int size;
+	// a slot is occupied only if its generation matches the current one, which makes clearing O(1)
+	private int generation = 1;
+
+	private long[] keys;
+	private int[] generations;
+	private int[] flags;
+	private int[] colors;
+	private short[] materials;
+	private float[] normals;
+	private int[] underwaterDepths;
+
+	public TerrainVertexStore()
+	{
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity)
+	{
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		keys = new long[capacity];
+		generations = new int[capacity];
+		flags = new int[capacity];
+		colors = new int[capacity];
+		materials = new short[capacity];
+		normals = new float[capacity * 3];
+		underwaterDepths = new int[capacity];
+	}
+
+	/**
+	 * Removes all vertices from the store, keeping the allocated arrays for reuse.
+	 */
+	public void clear()
+	{
+		size = 0;
+		if (++generation == 0)
+		{
+			// the generation counter wrapped around, so stale slots could appear occupied
+			Arrays.fill(generations, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Clears the given flags for every vertex. Data guarded by a HAS_ flag is considered removed once its flag is cleared.
+	 */
+	public void clearFlags(int flagMask)
+	{
+		final int keep = ~flagMask;
+		for (int i = 0; i < capacity; i++)
+		{
+			flags[i] &= keep;
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private static int mix(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return the slot of the vertex, or -1 if the vertex is not in the store
+	 */
+	public int find(long key)
+	{
+		int slot = mix(key) & mask;
+		while (generations[slot] == generation)
+		{
+			if (keys[slot] == key)
+			{
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int findOrInsert(long key)
+	{
+		int slot = mix(key) & mask;
+		while (generations[slot] == generation)
+		{
+			if (keys[slot] == key)
+			{
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size + 1 > capacity >> 1)
+		{
+			grow();
+			return findOrInsert(key);
+		}
+
+		generations[slot] = generation;
+		keys[slot] = key;
+		flags[slot] = 0;
+		size++;
+		return slot;
+	}
+
+	private void grow()
+	{
+		final int oldCapacity = capacity;
+		final long[] oldKeys = keys;
+		final int[] oldGenerations = generations;
+		final int[] oldFlags = flags;
+		final int[] oldColors = colors;
+		final short[] oldMaterials = materials;
+		final float[] oldNormals = normals;
+		final int[] oldUnderwaterDepths = underwaterDepths;
+		final int oldGeneration = generation;
+
+		allocate(oldCapacity << 1);
+		generation = 1;
+		size = 0;
+
+		for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++)
+		{
+			if (oldGenerations[oldSlot] != oldGeneration)
+			{
+				continue;
+			}
+
+			int slot = findOrInsert(oldKeys[oldSlot]);
+			flags[slot] = oldFlags[oldSlot];
+			colors[slot] = oldColors[oldSlot];
+			materials[slot] = oldMaterials[oldSlot];
+			underwaterDepths[slot] = oldUnderwaterDepths[oldSlot];
+			System.arraycopy(oldNormals, oldSlot * 3, normals, slot * 3, 3);
+		}
+	}
+
+	public boolean hasFlags(long key, int flagMask)
+	{
+		int slot = find(key);
+		return slot != -1 && (flags[slot] & flagMask) == flagMask;
+	}
+
+	public void setFlags(long key, int flagMask)
+	{
+		flags[findOrInsert(key)] |= flagMask;
+	}
+
+	public int getColor(long key, int defaultColor)
+	{
+		int slot = find(key);
+		return slot != -1 && (flags[slot] & HAS_COLOR) != 0 ? colors[slot] : defaultColor;
+	}
+
+	public void setColor(long key, int color)
+	{
+		int slot = findOrInsert(key);
+		colors[slot] = color;
+		flags[slot] |= HAS_COLOR;
+	}
+
+	public Material getMaterial(long key, Material defaultMaterial)
+	{
+		int slot = find(key);
+		return slot != -1 && (flags[slot] & HAS_MATERIAL) != 0 ? MATERIALS[materials[slot]] : defaultMaterial;
+	}
+
+	public void setMaterial(long key, Material material)
+	{
+		int slot = findOrInsert(key);
+		materials[slot] = (short) material.ordinal();
+		flags[slot] |= HAS_MATERIAL;
+	}
+
+	/**
+	 * Copies the accumulated normal of the vertex into the provided array, if the vertex has one.
+	 *
+	 * @return true if the array was written to
+	 */
+	public boolean getNormals(long key, float[] out)
+	{
+		int slot = find(key);
+		if (slot == -1 || (flags[slot] & HAS_NORMALS) == 0)
+		{
+			return false;
+		}
+		out[0] = normals[slot * 3];
+		out[1] = normals[slot * 3 + 1];
+		out[2] = normals[slot * 3 + 2];
+		return true;
+	}
+
+	public void addNormals(long key, float[] vertexNormals)
+	{
+		int slot = findOrInsert(key);
+		int i = slot * 3;
+		if ((flags[slot] & HAS_NORMALS) == 0)
+		{
+			normals[i] = vertexNormals[0];
+			normals[i + 1] = vertexNormals[1];
+			normals[i + 2] = vertexNormals[2];
+			flags[slot] |= HAS_NORMALS;
+		}
+		else
+		{
+			normals[i] += vertexNormals[0];
+			normals[i + 1] += vertexNormals[1];
+			normals[i + 2] += vertexNormals[2];
+		}
+	}
+
+	public int getUnderwaterDepth(long key, int defaultDepth)
+	{
+		int slot = find(key);
+		return slot != -1 && (flags[slot] & HAS_UNDERWATER_DEPTH) != 0 ? underwaterDepths[slot] : defaultDepth;
+	}
+
+	public void setUnderwaterDepth(long key, int depth)
+	{
+		int slot = findOrInsert(key);
+		underwaterDepths[slot] = depth;
+		flags[slot] |= HAS_UNDERWATER_DEPTH;
+	}
+}
@@ -0,0 +1,311 @@
+package rs117.hd.scene;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import rs117.hd.HdPlugin;
+
+/**
+ * An on-disk cache of the decoded HD textures, with their full mip chains, so they can be uploaded straight from
+ * a memory-mapped file instead of being decoded from PNGs and having their mipmaps generated on every startup.
+ *
+ * The file consists of a header, the IDs of the cached textures, and one layer per texture, each holding every
+ * mip level in RGBA order from largest to smallest. The cache is keyed by a checksum of the PNGs it was built from,
+ * so it's rebuilt whenever any of them change.
+ */
+@Slf4j
+public class TextureCache
+{
+	public static final File CACHE_FILE = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "hd-textures.cache");
+
+	public static final int TEXTURE_SIZE = 128;
+	public static final int MIP_LEVELS = 8;
+	public static final int LAYER_SIZE = levelOffset(MIP_LEVELS);
+
+	private static final int MAGIC = 0x31313754; // "117T"
+	// bump whenever the decoding or mipmap generation changes, to invalidate existing caches
+	private static final int VERSION = 1;
+	// header: magic, version, checksum, texture count
+	private static final int HEADER_SIZE = 20;
+
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	static
+	{
+		for (int i = 0; i < 256; i++)
+		{
+			float c = i / 255f;
+			SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+		}
+	}
+
+	public static int levelSize(int level)
+	{
+		int size = TEXTURE_SIZE >> level;
+		return size * size * 4;
+	}
+
+	/**
+	 * @return the offset of the mip level within a layer
+	 */
+	public static int levelOffset(int level)
+	{
+		int offset = 0;
+		for (int i = 0; i < level; i++)
+		{
+			offset += levelSize(i);
+		}
+		return offset;
+	}
+
+	/**
+	 * Reads the PNG of each HD texture from the plugin's resources.
+	 *
+	 * @return the PNG of each texture ID, or null where there isn't one
+	 */
+	public static byte[][] readResources(int textureCount) throws IOException
+	{
+		byte[][] pngs = new byte[textureCount][];
+		for (int textureId = 0; textureId < textureCount; textureId++)
+		{
+			try (InputStream in = HdPlugin.class.getResourceAsStream("textures/" + textureId + ".png"))
+			{
+				if (in != null)
+				{
+					pngs[textureId] = ByteStreams.toByteArray(in);
+				}
+			}
+		}
+		return pngs;
+	}
+
+	public static long checksum(byte[][] pngs)
+	{
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putInt(VERSION);
+		for (int textureId = 0; textureId < pngs.length; textureId++)
+		{
+			if (pngs[textureId] != null)
+			{
+				hasher.putInt(textureId);
+				hasher.putInt(pngs[textureId].length);
+				hasher.putBytes(pngs[textureId]);
+			}
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Decodes the PNG into a layer with a full mip chain. Safe to call from any thread.
+	 */
+	public static ByteBuffer decode(byte[] png) throws IOException
+	{
+		BufferedImage image;
+		synchronized (ImageIO.class)
+		{
+			image = ImageIO.read(new ByteArrayInputStream(png));
+		}
+		if (image == null)
+		{
+			throw new IOException("Unsupported image format");
+		}
+		if (image.getWidth() != TEXTURE_SIZE || image.getHeight() != TEXTURE_SIZE)
+		{
+			throw new IOException("Expected a size of " + TEXTURE_SIZE + "x" + TEXTURE_SIZE +
+				", but got " + image.getWidth() + "x" + image.getHeight());
+		}
+
+		ByteBuffer layer = ByteBuffer.allocateDirect(LAYER_SIZE).order(ByteOrder.nativeOrder());
+		switch (image.getType())
+		{
+			case BufferedImage.TYPE_4BYTE_ABGR:
+			{
+				byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+				// abgr -> rgba
+				for (int i = 0; i < pixels.length; i += 4)
+				{
+					layer.put(pixels[i + 3]).put(pixels[i + 2]).put(pixels[i + 1]).put(pixels[i]);
+				}
+				break;
+			}
+			case BufferedImage.TYPE_3BYTE_BGR:
+			{
+				byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+				// bgr -> rgba
+				for (int i = 0; i < pixels.length; i += 3)
+				{
+					layer.put(pixels[i + 2]).put(pixels[i + 1]).put(pixels[i]).put((byte) -1);
+				}
+				break;
+			}
+			default:
+				for (int argb : image.getRGB(0, 0, TEXTURE_SIZE, TEXTURE_SIZE, null, 0, TEXTURE_SIZE))
+				{
+					layer.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >>> 24));
+				}
+				break;
+		}
+
+		generateMips(layer);
+		layer.clear();
+		return layer;
+	}
+
+	/**
+	 * Fills in every mip level of the layer below the first by averaging 2x2 blocks of the level above it.
+	 * Colors are averaged in linear space, since the texture array is stored as sRGB.
+	 */
+	public static void generateMips(ByteBuffer layer)
+	{
+		for (int level = 1; level < MIP_LEVELS; level++)
+		{
+			int srcSize = TEXTURE_SIZE >> (level - 1);
+			int dstSize = TEXTURE_SIZE >> level;
+			int src = levelOffset(level - 1);
+			int dst = levelOffset(level);
+			for (int y = 0; y < dstSize; y++)
+			{
+				for (int x = 0; x < dstSize; x++)
+				{
+					int topLeft = src + ((y * 2) * srcSize + x * 2) * 4;
+					int bottomLeft = topLeft + srcSize * 4;
+					int out = dst + (y * dstSize + x) * 4;
+					for (int c = 0; c < 3; c++)
+					{
+						float linear = (
+							SRGB_TO_LINEAR[layer.get(topLeft + c) & 0xff] +
+							SRGB_TO_LINEAR[layer.get(topLeft + 4 + c) & 0xff] +
+							SRGB_TO_LINEAR[layer.get(bottomLeft + c) & 0xff] +
+							SRGB_TO_LINEAR[layer.get(bottomLeft + 4 + c) & 0xff]) / 4;
+						layer.put(out + c, (byte) linearToSrgb(linear));
+					}
+					int alpha =
+						(layer.get(topLeft + 3) & 0xff) +
+						(layer.get(topLeft + 7) & 0xff) +
+						(layer.get(bottomLeft + 3) & 0xff) +
+						(layer.get(bottomLeft + 7) & 0xff);
+					layer.put(out + 3, (byte) ((alpha + 2) / 4));
+				}
+			}
+		}
+	}
+
+	private static int linearToSrgb(float c)
+	{
+		float srgb = c <= 0.0031308f ? c * 12.92f : 1.055f * (float) Math.pow(c, 1 / 2.4f) - 0.055f;
+		return Math.max(0, Math.min(255, Math.round(srgb * 255)));
+	}
+
+	/**
+	 * Memory-maps the cache file, if it exists and was built from PNGs with the given checksum.
+	 * The header is read through the channel and validated before mapping, since a stale cache is replaced right
+	 * after, and some platforms don't allow replacing a file which is still mapped.
+	 *
+	 * @return a read-only view of each cached texture's layer by texture ID, or null if the cache is missing or stale
+	 */
+	public static Map<Integer, ByteBuffer> load(File file, long checksum)
+	{
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			if (channel.size() < HEADER_SIZE ||
+				channel.read(header, 0) != HEADER_SIZE ||
+				header.getInt(0) != MAGIC ||
+				header.getInt(4) != VERSION ||
+				header.getLong(8) != checksum)
+			{
+				return null;
+			}
+
+			int textureCount = header.getInt(16);
+			long layersOffset = HEADER_SIZE + textureCount * 4L;
+			if (textureCount < 0 || channel.size() != layersOffset + (long) textureCount * LAYER_SIZE)
+			{
+				log.debug("Texture cache is truncated");
+				return null;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			Map<Integer, ByteBuffer> layers = new HashMap<>();
+			for (int i = 0; i < textureCount; i++)
+			{
+				int layerOffset = (int) layersOffset + i * LAYER_SIZE;
+				ByteBuffer layer = buffer.duplicate();
+				layer.position(layerOffset).limit(layerOffset + LAYER_SIZE);
+				layers.put(buffer.getInt(HEADER_SIZE + i * 4), layer.slice());
+			}
+			return layers;
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to load the texture cache", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the layers to a temporary file first, which then replaces the cache, so readers never see a partial cache.
+	 *
+	 * @param layers the layer of each texture by texture ID
+	 */
+	public static void write(File file, long checksum, Map<Integer, ByteBuffer> layers) throws IOException
+	{
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Unable to create directory " + dir);
+		}
+
+		File tempFile = new File(dir, file.getName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + layers.size() * 4);
+			header.putInt(MAGIC).putInt(VERSION).putLong(checksum).putInt(layers.size());
+			for (int textureId : layers.keySet())
+			{
+				header.putInt(textureId);
+			}
+			header.flip();
+			while (header.hasRemaining())
+			{
+				channel.write(header);
+			}
+
+			for (ByteBuffer layer : layers.values())
+			{
+				ByteBuffer data = layer.duplicate();
+				data.clear();
+				while (data.hasRemaining())
+				{
+					channel.write(data);
+				}
+			}
+		}
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
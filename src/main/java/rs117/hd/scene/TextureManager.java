@@ -24,19 +24,22 @@
  */
 package rs117.hd.scene;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jogamp.opengl.GL4;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import javax.imageio.ImageIO;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Singleton;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Texture;
 import net.runelite.api.TextureProvider;
-import rs117.hd.HdPlugin;
 import rs117.hd.utils.GLUtil;
 
 @Singleton
@@ -47,6 +50,25 @@ public class TextureManager
 	private static final float PERC_128 = 1f / 128f;
 
 	private static final int TEXTURE_SIZE = 128;
+	private static final int HD_TEXTURE_COUNT = 300; // Based on image ids from filenames
+	private static final int DECODE_THREADS = 4;
+	// Limits how many decoded textures can be waiting for upload at once
+	private static final int DECODE_QUEUE_SIZE = 32;
+	private static final byte PLACEHOLDER_COLOR = (byte) 0x80;
+
+	@RequiredArgsConstructor
+	private static class DecodedTexture
+	{
+		final int textureId;
+		// every mip level of the texture, or null if it should fall back to the texture from the game
+		final ByteBuffer layer;
+	}
+
+	private ExecutorService decodeExecutor;
+	private BlockingQueue<DecodedTexture> decodedHDTextures;
+	private int hdTextureArrayId = -1;
+	private int pendingHDTextures;
+	private int uploadedHDTextures;
 
 	public int initTextureArray(TextureProvider textureProvider, GL4 gl)
 	{
@@ -89,107 +111,241 @@ public class TextureManager
 			return -1;
 		}
 
-		Texture[] textures = textureProvider.getTextures();
-
-		int textureCount = 300; // Based on image ids from filenames
+		cancelHDTextureLoading();
 
 		int textureArrayId = GLUtil.glGenTexture(gl);
+		gl.glActiveTexture(gl.GL_TEXTURE2);
 		gl.glBindTexture(gl.GL_TEXTURE_2D_ARRAY, textureArrayId);
-		gl.glTexStorage3D(gl.GL_TEXTURE_2D_ARRAY, 8, gl.GL_SRGB8_ALPHA8, TEXTURE_SIZE, TEXTURE_SIZE, textureCount);
+		gl.glTexStorage3D(gl.GL_TEXTURE_2D_ARRAY, TextureCache.MIP_LEVELS, gl.GL_SRGB8_ALPHA8,
+			TEXTURE_SIZE, TEXTURE_SIZE, HD_TEXTURE_COUNT);
 
 		gl.glTexParameteri(gl.GL_TEXTURE_2D_ARRAY, gl.GL_TEXTURE_WRAP_S, gl.GL_REPEAT);
 		gl.glTexParameteri(gl.GL_TEXTURE_2D_ARRAY, gl.GL_TEXTURE_WRAP_T, gl.GL_REPEAT);
 
-
-		double save = textureProvider.getBrightness();
-		textureProvider.setBrightness(1.0d);
-
-		int cnt = 0;
-		for (int textureId = 0; textureId < textureCount; textureId++)
+		// Fill every layer with a placeholder, so the scene can be drawn while the real textures are loaded
+		ByteBuffer placeholder = ByteBuffer.allocateDirect(TextureCache.levelSize(0));
+		for (int i = 0; i < TEXTURE_SIZE * TEXTURE_SIZE; i++)
 		{
-			if (loadHDTexture(textureId, textureProvider, gl, textures))
+			placeholder.put(PLACEHOLDER_COLOR).put(PLACEHOLDER_COLOR).put(PLACEHOLDER_COLOR).put((byte) -1);
+		}
+		placeholder.flip();
+		for (int textureId = 0; textureId < HD_TEXTURE_COUNT; textureId++)
+		{
+			for (int level = 0; level < TextureCache.MIP_LEVELS; level++)
 			{
-				cnt++;
+				int size = TEXTURE_SIZE >> level;
+				gl.glTexSubImage3D(gl.GL_TEXTURE_2D_ARRAY, level, 0, 0, textureId, size, size,
+					1, gl.GL_RGBA, gl.GL_UNSIGNED_BYTE, placeholder);
 			}
 		}
+		gl.glActiveTexture(gl.GL_TEXTURE0);
 
-		textureProvider.setBrightness(save);
+		if (decodeExecutor == null)
+		{
+			int threads = Math.max(1, Math.min(DECODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+			decodeExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("rlhd-texture-decode-%d")
+				.setDaemon(true)
+				.build());
+		}
 
-		log.debug("Uploaded HD textures {}", cnt);
+		// Each load gets its own queue, so layers decoded for a texture array which has since been freed are never uploaded
+		BlockingQueue<DecodedTexture> queue = new ArrayBlockingQueue<>(DECODE_QUEUE_SIZE);
+		final ExecutorService executor = decodeExecutor;
+		executor.execute(() ->
+		{
+			try
+			{
+				loadHDTextures(executor, queue);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+		});
 
-		gl.glActiveTexture(gl.GL_TEXTURE2);
-		gl.glBindTexture(gl.GL_TEXTURE_2D_ARRAY, textureArrayId);
-		gl.glGenerateMipmap(gl.GL_TEXTURE_2D_ARRAY);
-		gl.glActiveTexture(gl.GL_TEXTURE0);
+		decodedHDTextures = queue;
+		pendingHDTextures = HD_TEXTURE_COUNT;
+		uploadedHDTextures = 0;
+		hdTextureArrayId = textureArrayId;
 
 		return textureArrayId;
 	}
 
-	boolean loadHDTexture(int textureId, TextureProvider textureProvider, GL4 gl, Texture[] textures)
+	/**
+	 * Queues up a layer for every HD texture, straight from the texture cache if it's up to date. Otherwise,
+	 * the PNGs are decoded across the executor's threads, and the cache is rebuilt once they're all done.
+	 */
+	private static void loadHDTextures(ExecutorService executor, BlockingQueue<DecodedTexture> queue) throws InterruptedException
 	{
+		byte[][] pngs;
+		try
+		{
+			pngs = TextureCache.readResources(HD_TEXTURE_COUNT);
+		}
+		catch (IOException ex)
+		{
+			log.warn("Unable to read HD textures", ex);
+			pngs = new byte[HD_TEXTURE_COUNT][];
+		}
+
+		long checksum = TextureCache.checksum(pngs);
+		Map<Integer, ByteBuffer> cachedLayers = TextureCache.load(TextureCache.CACHE_FILE, checksum);
+		if (cachedLayers != null)
+		{
+			log.debug("Loading {} HD textures from the texture cache", cachedLayers.size());
+			for (int textureId = 0; textureId < HD_TEXTURE_COUNT; textureId++)
+			{
+				queue.put(new DecodedTexture(textureId, cachedLayers.get(textureId)));
+			}
+			return;
+		}
 
-		int width = 0;
-		int height = 0;
-		//Create the PNGDecoder object and decode the texture to a buffer
-		try (InputStream in = HdPlugin.class.getResourceAsStream("textures/" + textureId + ".png"))
+		Map<Integer, ByteBuffer> decodedLayers = new ConcurrentHashMap<>();
+		AtomicInteger remaining = new AtomicInteger(HD_TEXTURE_COUNT);
+		for (int textureId = 0; textureId < HD_TEXTURE_COUNT; textureId++)
 		{
-			if (in != null)
+			final int id = textureId;
+			final byte[] png = pngs[textureId];
+			Runnable decode = () ->
 			{
-				BufferedImage image;
-				synchronized (ImageIO.class)
+				ByteBuffer layer = null;
+				if (png != null)
 				{
-					image = ImageIO.read(in);
+					try
+					{
+						layer = TextureCache.decode(png);
+						decodedLayers.put(id, layer);
+					}
+					catch (IOException ex)
+					{
+						log.warn("Failed to load HD texture {}", id, ex);
+					}
 				}
 
-				width = image.getWidth();
-				height = image.getHeight();
-				boolean hasAlphaChannel = image.getAlphaRaster() != null;
-				int bytesPerPixel = hasAlphaChannel ? 4 : 3;
-				byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-				assert width * height * bytesPerPixel == pixels.length;
-
-				assert width == TEXTURE_SIZE && height == TEXTURE_SIZE;
+				try
+				{
+					queue.put(new DecodedTexture(id, layer));
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
 
-//				ByteBuffer pixelData = BufferUtils.createByteBuffer(width * height * bytesPerPixel);
-				ByteBuffer pixelData = ByteBuffer.allocateDirect(width * height * bytesPerPixel).order(ByteOrder.nativeOrder());
-				if (hasAlphaChannel)
+				if (remaining.decrementAndGet() == 0)
 				{
-					// argb -> bgra
-					for (int i = 0; i < pixels.length; i += 4)
+					try
 					{
-						byte a = pixels[i];
-						byte r = pixels[i + 1];
-						byte g = pixels[i + 2];
-						byte b = pixels[i + 3];
-						pixelData.put(b).put(g).put(r).put(a);
+						TextureCache.write(TextureCache.CACHE_FILE, checksum, decodedLayers);
 					}
-				}
-				else
-				{
-					assert (width * 3) % 4 == 0 : "OpenGL expects each line of the image to start at a memory address divisible by 4";
-					for (int i = 0; i < pixels.length; i += 3)
+					catch (IOException ex)
 					{
-						byte r = pixels[i];
-						byte g = pixels[i + 1];
-						byte b = pixels[i + 2];
-						pixelData.put(b).put(g).put(r);
+						log.warn("Unable to write the texture cache", ex);
 					}
 				}
+			};
+
+			if (png == null)
+			{
+				decode.run();
+			}
+			else
+			{
+				executor.execute(decode);
+			}
+		}
+	}
+
+	/**
+	 * Uploads the HD textures which have been loaded since the last call.
+	 * Should be called once per frame on the GL thread.
+	 */
+	public void uploadDecodedHDTextures(TextureProvider textureProvider, GL4 gl)
+	{
+		if (pendingHDTextures == 0 || decodedHDTextures.isEmpty())
+		{
+			return;
+		}
 
-				pixelData.flip();
-				int rgbMode = hasAlphaChannel ? gl.GL_RGBA : gl.GL_RGB;
-				gl.glTexSubImage3D(gl.GL_TEXTURE_2D_ARRAY, 0, 0, 0, textureId, width, height,
-					1, rgbMode, gl.GL_UNSIGNED_BYTE, pixelData);
+		gl.glActiveTexture(gl.GL_TEXTURE2);
+		gl.glBindTexture(gl.GL_TEXTURE_2D_ARRAY, hdTextureArrayId);
 
-				return true;
+		double save = textureProvider.getBrightness();
+		textureProvider.setBrightness(1.0d);
+
+		DecodedTexture texture;
+		while (pendingHDTextures > 0 && (texture = decodedHDTextures.poll()) != null)
+		{
+			pendingHDTextures--;
+			ByteBuffer layer = texture.layer;
+			if (layer == null)
+			{
+				layer = loadVanillaTexture(texture.textureId, textureProvider);
+			}
+			if (layer != null)
+			{
+				uploadLayer(gl, texture.textureId, layer);
+				uploadedHDTextures++;
 			}
 		}
-		catch (IOException e)
+
+		textureProvider.setBrightness(save);
+		gl.glActiveTexture(gl.GL_TEXTURE0);
+
+		if (pendingHDTextures == 0)
 		{
-			e.printStackTrace();
-			return false;
+			log.debug("Uploaded HD textures {}", uploadedHDTextures);
+			decodedHDTextures = null;
+		}
+	}
+
+	private static void uploadLayer(GL4 gl, int textureId, ByteBuffer layer)
+	{
+		for (int level = 0; level < TextureCache.MIP_LEVELS; level++)
+		{
+			int size = TEXTURE_SIZE >> level;
+			int offset = TextureCache.levelOffset(level);
+			ByteBuffer pixels = layer.duplicate();
+			pixels.position(offset).limit(offset + TextureCache.levelSize(level));
+			gl.glTexSubImage3D(gl.GL_TEXTURE_2D_ARRAY, level, 0, 0, textureId, size, size,
+				1, gl.GL_RGBA, gl.GL_UNSIGNED_BYTE, pixels);
+		}
+	}
+
+	/**
+	 * Stops loading HD textures for the current texture array, if any are still being loaded.
+	 */
+	private void cancelHDTextureLoading()
+	{
+		if (decodeExecutor != null && pendingHDTextures > 0)
+		{
+			decodeExecutor.shutdownNow();
+			decodeExecutor = null;
 		}
+		decodedHDTextures = null;
+		pendingHDTextures = 0;
+		hdTextureArrayId = -1;
+	}
 
+	public void shutDown()
+	{
+		cancelHDTextureLoading();
+		if (decodeExecutor != null)
+		{
+			decodeExecutor.shutdownNow();
+			decodeExecutor = null;
+		}
+	}
+
+	/**
+	 * Falls back to the texture from the game for textures without an HD replacement.
+	 *
+	 * @return a layer with a full mip chain, or null if the game has no such texture
+	 */
+	private static ByteBuffer loadVanillaTexture(int textureId, TextureProvider textureProvider)
+	{
+		Texture[] textures = textureProvider.getTextures();
 		if (textureId < textures.length)
 		{
 			Texture texture = textures[textureId];
@@ -199,7 +355,7 @@ public class TextureManager
 				if (srcPixels == null)
 				{
 					log.warn("No pixels for texture {}!", textureId);
-					return false;
+					return null;
 				}
 
 
@@ -211,15 +367,15 @@ public class TextureManager
 				}
 
 				byte[] pixels = convertPixels(srcPixels, TEXTURE_SIZE, TEXTURE_SIZE, TEXTURE_SIZE, TEXTURE_SIZE);
-				ByteBuffer pixelBuffer = ByteBuffer.wrap(pixels);
-				gl.glTexSubImage3D(gl.GL_TEXTURE_2D_ARRAY, 0, 0, 0, textureId, TEXTURE_SIZE, TEXTURE_SIZE,
-					1, gl.GL_RGBA, gl.GL_UNSIGNED_BYTE, pixelBuffer);
-
-				return true;
+				ByteBuffer layer = ByteBuffer.allocateDirect(TextureCache.LAYER_SIZE);
+				layer.put(pixels);
+				TextureCache.generateMips(layer);
+				layer.clear();
+				return layer;
 			}
 		}
 
-		return false;
+		return null;
 	}
 
 	public void setAnisotropicFilteringLevel(int textureArrayId, int level, GL4 gl, boolean trilinearFiltering)
@@ -261,6 +417,10 @@ public class TextureManager
 
 	public void freeTextureArray(GL4 gl, int textureArrayId)
 	{
+		if (textureArrayId == hdTextureArrayId)
+		{
+			cancelHDTextureLoading();
+		}
 		GLUtil.glDeleteTexture(gl, textureArrayId);
 	}
 
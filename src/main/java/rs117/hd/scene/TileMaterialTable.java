@@ -0,0 +1,179 @@
+package rs117.hd.scene;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.Point;
+import net.runelite.api.Scene;
+import net.runelite.api.Tile;
+import net.runelite.api.coords.WorldPoint;
+import rs117.hd.data.materials.Overlay;
+import rs117.hd.data.materials.Underlay;
+
+/**
+ * The overlay and underlay of every tile in the scene, resolved once per scene load, since resolving them
+ * involves converting instance coordinates and checking the areas of every overlay or underlay with the ID.
+ *
+ * Tiles are looked up by identity, so tiles which aren't part of the scene the table was built for, and
+ * IDs other than the tile's own, are resolved as before.
+ */
+@Slf4j
+@Singleton
+public class TileMaterialTable
+{
+	private static final int PLANE_SIZE = Constants.SCENE_SIZE * Constants.SCENE_SIZE;
+	// each tile position on each plane has a slot for the tile itself, and one for its bridge
+	private static final int SLOT_COUNT = Constants.MAX_Z * PLANE_SIZE * 2;
+
+	@Inject
+	private Client client;
+
+	@Inject
+	private ProceduralGenerator proceduralGenerator;
+
+	private final Tile[] tiles = new Tile[SLOT_COUNT];
+	private final int[] overlayIds = new int[SLOT_COUNT];
+	private final int[] underlayIds = new int[SLOT_COUNT];
+	private final Overlay[] overlays = new Overlay[SLOT_COUNT];
+	private final Overlay[] seasonalOverlays = new Overlay[SLOT_COUNT];
+	private final Underlay[] underlays = new Underlay[SLOT_COUNT];
+	private final Underlay[] seasonalUnderlays = new Underlay[SLOT_COUNT];
+	private final int[] worldX = new int[SLOT_COUNT];
+	private final int[] worldY = new int[SLOT_COUNT];
+	private final int[] worldZ = new int[SLOT_COUNT];
+
+	/**
+	 * Resolves the overlay and underlay of every tile in the scene, one plane per thread.
+	 */
+	public void build(Scene scene)
+	{
+		long startTime = System.currentTimeMillis();
+
+		final Tile[][][] sceneTiles = scene.getTiles();
+		final byte[][][] sceneOverlayIds = scene.getOverlayIds();
+		final byte[][][] sceneUnderlayIds = scene.getUnderlayIds();
+		final boolean instanced = client.isInInstancedRegion();
+
+		IntStream.range(0, Constants.MAX_Z).parallel().forEach(z ->
+		{
+			for (int x = 0; x < Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y < Constants.SCENE_SIZE; y++)
+				{
+					int slot = (z * Constants.SCENE_SIZE + x) * Constants.SCENE_SIZE + y;
+					Tile tile = sceneTiles[z][x][y];
+					resolve(slot, tile, sceneOverlayIds, sceneUnderlayIds, instanced);
+					resolve(slot + Constants.MAX_Z * PLANE_SIZE, tile == null ? null : tile.getBridge(),
+						sceneOverlayIds, sceneUnderlayIds, instanced);
+				}
+			}
+		});
+
+		log.debug("resolving tile materials took {}ms", System.currentTimeMillis() - startTime);
+	}
+
+	public void clear()
+	{
+		Arrays.fill(tiles, null);
+	}
+
+	private void resolve(int slot, Tile tile, byte[][][] sceneOverlayIds, byte[][][] sceneUnderlayIds, boolean instanced)
+	{
+		tiles[slot] = tile;
+		if (tile == null)
+		{
+			return;
+		}
+
+		WorldPoint worldPoint = instanced ?
+			WorldPoint.fromLocalInstance(client, tile.getLocalLocation()) :
+			tile.getWorldLocation();
+		int wx = worldX[slot] = worldPoint.getX();
+		int wy = worldY[slot] = worldPoint.getY();
+		int wz = worldZ[slot] = worldPoint.getPlane();
+
+		int z = tile.getRenderLevel();
+		int x = tile.getSceneLocation().getX();
+		int y = tile.getSceneLocation().getY();
+		int overlayId = overlayIds[slot] = sceneOverlayIds[z][x][y];
+		int underlayId = underlayIds[slot] = sceneUnderlayIds[z][x][y];
+
+		overlays[slot] = Overlay.getOverlay(overlayId, wx, wy, wz);
+		seasonalOverlays[slot] = proceduralGenerator.getSeasonalOverlay(overlays[slot]);
+		underlays[slot] = Underlay.getUnderlay(underlayId, wx, wy, wz);
+		seasonalUnderlays[slot] = proceduralGenerator.getSeasonalUnderlay(underlays[slot]);
+	}
+
+	private int slotOf(Tile tile)
+	{
+		Point location = tile.getSceneLocation();
+		int x = location.getX();
+		int y = location.getY();
+		if (x < 0 || y < 0 || x >= Constants.SCENE_SIZE || y >= Constants.SCENE_SIZE)
+		{
+			return -1;
+		}
+
+		// the tile's own plane may not match the plane it's stored on, so check them all
+		for (int slot = x * Constants.SCENE_SIZE + y; slot < SLOT_COUNT; slot += PLANE_SIZE)
+		{
+			if (tiles[slot] == tile)
+			{
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	public Overlay getOverlay(int overlayId, Tile tile)
+	{
+		int slot = slotOf(tile);
+		if (slot == -1)
+		{
+			return Overlay.getOverlay(overlayId, tile, client);
+		}
+		if (overlayIds[slot] == overlayId)
+		{
+			return overlays[slot];
+		}
+		return Overlay.getOverlay(overlayId, worldX[slot], worldY[slot], worldZ[slot]);
+	}
+
+	public Overlay getSeasonalOverlay(int overlayId, Tile tile)
+	{
+		int slot = slotOf(tile);
+		if (slot != -1 && overlayIds[slot] == overlayId)
+		{
+			return seasonalOverlays[slot];
+		}
+		return proceduralGenerator.getSeasonalOverlay(getOverlay(overlayId, tile));
+	}
+
+	public Underlay getUnderlay(int underlayId, Tile tile)
+	{
+		int slot = slotOf(tile);
+		if (slot == -1)
+		{
+			return Underlay.getUnderlay(underlayId, tile, client);
+		}
+		if (underlayIds[slot] == underlayId)
+		{
+			return underlays[slot];
+		}
+		return Underlay.getUnderlay(underlayId, worldX[slot], worldY[slot], worldZ[slot]);
+	}
+
+	public Underlay getSeasonalUnderlay(int underlayId, Tile tile)
+	{
+		int slot = slotOf(tile);
+		if (slot != -1 && underlayIds[slot] == underlayId)
+		{
+			return seasonalUnderlays[slot];
+		}
+		return proceduralGenerator.getSeasonalUnderlay(getUnderlay(underlayId, tile));
+	}
+}
@@ -0,0 +1,407 @@
+package rs117.hd.scene.lighting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A compact binary form of the light configuration, generated from lights.json at build time. World lights are
+ * indexed by map region, and NPC, object and projectile lights by ID, so nothing needs to be parsed up front.
+ * Lights are only decoded once they're looked up, and world lights are decoded anew for each scene they're in.
+ *
+ * The layout is a header, followed by the byte offset of each light record, the regions and the world lights in
+ * each, three tables of ID and light index pairs sorted by ID, and finally the light records themselves.
+ */
+public class LightBundle
+{
+	public static final String FILENAME = "lights.bin";
+	public static final LightBundle EMPTY = new LightBundle(ByteBuffer.wrap(write(new Light[0])));
+
+	private static final int MAGIC = 0x524c4c42; // RLLB
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 9 * Integer.BYTES;
+	private static final int NULL = Integer.MIN_VALUE;
+	private static final Alignment[] ALIGNMENTS = Alignment.values();
+	private static final LightType[] TYPES = LightType.values();
+
+	private final ByteBuffer buffer;
+	private final int lightCount;
+	private final int regionCount;
+	private final int regionsOffset;
+	private final int regionLightsOffset;
+	private final IdTable npcTable;
+	private final IdTable objectTable;
+	private final IdTable projectileTable;
+	private final Light[] decodedLights;
+
+	/**
+	 * An ID and the index of one of its lights per entry, sorted by ID, so all lights of an ID are adjacent.
+	 */
+	private class IdTable
+	{
+		final int offset;
+		final int count;
+
+		IdTable(int offset, int count)
+		{
+			this.offset = offset;
+			this.count = count;
+		}
+
+		int id(int entry)
+		{
+			return buffer.getInt(offset + entry * 2 * Integer.BYTES);
+		}
+
+		int lightIndex(int entry)
+		{
+			return buffer.getInt(offset + entry * 2 * Integer.BYTES + Integer.BYTES);
+		}
+
+		int firstEntry(int id)
+		{
+			int low = 0;
+			int high = count;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (id(middle) < id)
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		List<Light> get(int id)
+		{
+			int entry = firstEntry(id);
+			if (entry == count || id(entry) != id)
+			{
+				return Collections.emptyList();
+			}
+
+			List<Light> lights = new ArrayList<>(1);
+			for (; entry < count && id(entry) == id; entry++)
+			{
+				lights.add(getLight(lightIndex(entry)));
+			}
+			return lights;
+		}
+
+		boolean contains(int id)
+		{
+			int entry = firstEntry(id);
+			return entry < count && id(entry) == id;
+		}
+	}
+
+	/**
+	 * @param buffer the bundle, which may be memory-mapped, and is only ever read from
+	 */
+	public LightBundle(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC)
+		{
+			throw new IllegalArgumentException("Not a light bundle");
+		}
+		if (buffer.getInt(Integer.BYTES) != VERSION)
+		{
+			throw new IllegalArgumentException("Unsupported light bundle version: " + buffer.getInt(Integer.BYTES));
+		}
+
+		lightCount = buffer.getInt(2 * Integer.BYTES);
+		regionCount = buffer.getInt(3 * Integer.BYTES);
+		int regionLightCount = buffer.getInt(4 * Integer.BYTES);
+		int npcCount = buffer.getInt(5 * Integer.BYTES);
+		int objectCount = buffer.getInt(6 * Integer.BYTES);
+		int projectileCount = buffer.getInt(7 * Integer.BYTES);
+
+		int offset = HEADER_SIZE + lightCount * Integer.BYTES;
+		regionsOffset = offset;
+		offset += regionCount * 3 * Integer.BYTES;
+		regionLightsOffset = offset;
+		offset += regionLightCount * Integer.BYTES;
+		npcTable = new IdTable(offset, npcCount);
+		offset += npcCount * 2 * Integer.BYTES;
+		objectTable = new IdTable(offset, objectCount);
+		offset += objectCount * 2 * Integer.BYTES;
+		projectileTable = new IdTable(offset, projectileCount);
+
+		decodedLights = new Light[lightCount];
+	}
+
+	public int getLightCount()
+	{
+		return lightCount;
+	}
+
+	public List<Light> getNpcLights(int npcId)
+	{
+		return npcTable.get(npcId);
+	}
+
+	public List<Light> getObjectLights(int objectId)
+	{
+		return objectTable.get(objectId);
+	}
+
+	public boolean hasObjectLights(int objectId)
+	{
+		return objectTable.contains(objectId);
+	}
+
+	public List<Light> getProjectileLights(int projectileId)
+	{
+		return projectileTable.get(projectileId);
+	}
+
+	/**
+	 * Decodes new scene lights for the world lights within the bounds, only looking at the regions overlapping them.
+	 */
+	public List<SceneLight> getWorldLights(int minX, int minY, int maxX, int maxY)
+	{
+		List<SceneLight> lights = new ArrayList<>();
+		for (int region = 0; region < regionCount; region++)
+		{
+			int regionOffset = regionsOffset + region * 3 * Integer.BYTES;
+			int regionId = buffer.getInt(regionOffset);
+			int regionX = regionId >> 8;
+			int regionY = regionId & 0xff;
+			if (regionX < minX >> 6 || regionX > maxX >> 6 || regionY < minY >> 6 || regionY > maxY >> 6)
+			{
+				continue;
+			}
+
+			int start = buffer.getInt(regionOffset + Integer.BYTES);
+			int count = buffer.getInt(regionOffset + 2 * Integer.BYTES);
+			for (int i = start; i < start + count; i++)
+			{
+				Light light = readLight(buffer.getInt(regionLightsOffset + i * Integer.BYTES));
+				if (light.worldX >= minX && light.worldX <= maxX && light.worldY >= minY && light.worldY <= maxY)
+				{
+					lights.add(new SceneLight(light));
+				}
+			}
+		}
+		return lights;
+	}
+
+	private synchronized Light getLight(int index)
+	{
+		Light light = decodedLights[index];
+		if (light == null)
+		{
+			light = decodedLights[index] = readLight(index);
+		}
+		return light;
+	}
+
+	private Light readLight(int index)
+	{
+		ByteBuffer record = buffer.duplicate();
+		record.position(buffer.getInt(HEADER_SIZE + index * Integer.BYTES));
+
+		String description = null;
+		int descriptionLength = record.getShort();
+		if (descriptionLength >= 0)
+		{
+			byte[] bytes = new byte[descriptionLength];
+			record.get(bytes);
+			description = new String(bytes, StandardCharsets.UTF_8);
+		}
+		Integer worldX = readNullableInt(record);
+		Integer worldY = readNullableInt(record);
+		Integer plane = readNullableInt(record);
+		Integer height = readNullableInt(record);
+		int alignment = record.get();
+		int radius = record.getInt();
+		float strength = record.getFloat();
+		float[] color = new float[4];
+		for (int i = 0; i < color.length; i++)
+		{
+			color[i] = record.getFloat();
+		}
+		int type = record.get();
+		float duration = record.getFloat();
+		float range = record.getFloat();
+		Integer fadeInDuration = readNullableInt(record);
+
+		return new Light(description, worldX, worldY, plane, height, alignment == -1 ? null : ALIGNMENTS[alignment],
+			radius, strength, color, type == -1 ? null : TYPES[type], duration, range, fadeInDuration, null, null, null);
+	}
+
+	private static Integer readNullableInt(ByteBuffer buffer)
+	{
+		int value = buffer.getInt();
+		return value == NULL ? null : value;
+	}
+
+	/**
+	 * Encodes lights as loaded from lights.json, with colors in gamma space in the range [0, 255].
+	 */
+	public static byte[] write(Light[] lights)
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			write(lights, out);
+			return out.toByteArray();
+		}
+		catch (IOException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+	}
+
+	public static void write(Light[] lights, OutputStream outputStream) throws IOException
+	{
+		TreeMap<Integer, List<Integer>> regions = new TreeMap<>();
+		TreeMap<Integer, List<Integer>> npcLights = new TreeMap<>();
+		TreeMap<Integer, List<Integer>> objectLights = new TreeMap<>();
+		TreeMap<Integer, List<Integer>> projectileLights = new TreeMap<>();
+		int regionLightCount = 0;
+		for (int i = 0; i < lights.length; i++)
+		{
+			Light light = lights[i];
+			if (light.worldX != null && light.worldY != null)
+			{
+				int regionId = (light.worldX >> 6) << 8 | light.worldY >> 6;
+				regions.computeIfAbsent(regionId, k -> new ArrayList<>()).add(i);
+				regionLightCount++;
+			}
+			addIds(npcLights, light.npcIds, i);
+			addIds(objectLights, light.objectIds, i);
+			addIds(projectileLights, light.projectileIds, i);
+		}
+
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(recordBytes);
+		int[] recordOffsets = new int[lights.length];
+		for (int i = 0; i < lights.length; i++)
+		{
+			recordOffsets[i] = records.size();
+			writeLight(records, lights[i]);
+		}
+
+		DataOutputStream out = new DataOutputStream(outputStream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(lights.length);
+		out.writeInt(regions.size());
+		out.writeInt(regionLightCount);
+		out.writeInt(countEntries(npcLights));
+		out.writeInt(countEntries(objectLights));
+		out.writeInt(countEntries(projectileLights));
+		out.writeInt(0); // reserved
+
+		int recordsOffset = HEADER_SIZE
+			+ lights.length * Integer.BYTES
+			+ regions.size() * 3 * Integer.BYTES
+			+ regionLightCount * Integer.BYTES
+			+ (countEntries(npcLights) + countEntries(objectLights) + countEntries(projectileLights)) * 2 * Integer.BYTES;
+		for (int recordOffset : recordOffsets)
+		{
+			out.writeInt(recordsOffset + recordOffset);
+		}
+
+		int start = 0;
+		for (Map.Entry<Integer, List<Integer>> region : regions.entrySet())
+		{
+			out.writeInt(region.getKey());
+			out.writeInt(start);
+			out.writeInt(region.getValue().size());
+			start += region.getValue().size();
+		}
+		for (List<Integer> regionLights : regions.values())
+		{
+			for (int index : regionLights)
+			{
+				out.writeInt(index);
+			}
+		}
+
+		writeIdTable(out, npcLights);
+		writeIdTable(out, objectLights);
+		writeIdTable(out, projectileLights);
+
+		recordBytes.writeTo(out);
+		out.flush();
+	}
+
+	private static void addIds(TreeMap<Integer, List<Integer>> table, Set<Integer> ids, int lightIndex)
+	{
+		if (ids != null)
+		{
+			for (int id : ids)
+			{
+				table.computeIfAbsent(id, k -> new ArrayList<>()).add(lightIndex);
+			}
+		}
+	}
+
+	private static int countEntries(TreeMap<Integer, List<Integer>> table)
+	{
+		return table.values().stream().mapToInt(List::size).sum();
+	}
+
+	private static void writeIdTable(DataOutputStream out, TreeMap<Integer, List<Integer>> table) throws IOException
+	{
+		for (Map.Entry<Integer, List<Integer>> entry : table.entrySet())
+		{
+			for (int lightIndex : entry.getValue())
+			{
+				out.writeInt(entry.getKey());
+				out.writeInt(lightIndex);
+			}
+		}
+	}
+
+	private static void writeLight(DataOutputStream out, Light light) throws IOException
+	{
+		if (light.description == null)
+		{
+			out.writeShort(-1);
+		}
+		else
+		{
+			byte[] bytes = light.description.getBytes(StandardCharsets.UTF_8);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+		}
+		writeNullableInt(out, light.worldX);
+		writeNullableInt(out, light.worldY);
+		writeNullableInt(out, light.plane);
+		writeNullableInt(out, light.height);
+		out.writeByte(light.alignment == null ? -1 : light.alignment.ordinal());
+		out.writeInt(light.radius);
+		out.writeFloat(light.strength);
+		for (float c : LightConfig.toLinearRGBA(light.color))
+		{
+			out.writeFloat(c);
+		}
+		out.writeByte(light.type == null ? -1 : light.type.ordinal());
+		out.writeFloat(light.duration);
+		out.writeFloat(light.range);
+		writeNullableInt(out, light.fadeInDuration);
+	}
+
+	private static void writeNullableInt(DataOutputStream out, Integer value) throws IOException
+	{
+		out.writeInt(value == null ? NULL : value);
+	}
+}
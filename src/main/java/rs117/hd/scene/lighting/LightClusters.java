@@ -0,0 +1,314 @@
+package rs117.hd.scene.lighting;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+import net.runelite.api.Perspective;
+
+/**
+ * Splits the camera's view into a grid of clusters, with tiles across the screen and slices of depth, and
+ * bins each light into the clusters its sphere overlaps. Fragments then only need to look at the lights in
+ * their own cluster, instead of every light in the scene.
+ *
+ * The clusters are laid out the same way as in utils/light_clusters.glsl, using the same projection as
+ * {@link Perspective#localToCanvas}. Depth slices grow logarithmically, so clusters stay roughly cube-shaped.
+ */
+public class LightClusters
+{
+	public static final int CLUSTERS_X = 16;
+	public static final int CLUSTERS_Y = 8;
+	public static final int CLUSTERS_Z = 24;
+	public static final int CLUSTER_COUNT = CLUSTERS_X * CLUSTERS_Y * CLUSTERS_Z;
+	public static final int MAX_LIGHTS = 1024;
+	// the offset and light count of each cluster, followed by the light indices of every cluster
+	public static final int MAX_LIGHT_INDICES = 1 << 18;
+	public static final int INDEX_BUFFER_SIZE = CLUSTER_COUNT * 2 + MAX_LIGHT_INDICES;
+	// texels of light data per light
+	public static final int LIGHT_TEXELS = 2;
+
+	public static final int NEAR_PLANE = 50;
+
+	private float cameraX;
+	private float cameraY;
+	private float cameraZ;
+	@Getter
+	private float yawSin;
+	@Getter
+	private float yawCos;
+	@Getter
+	private float pitchSin;
+	@Getter
+	private float pitchCos;
+	@Getter
+	private float scale;
+	@Getter
+	private float centerX;
+	@Getter
+	private float centerY;
+	@Getter
+	private float tileWidth;
+	@Getter
+	private float tileHeight;
+	@Getter
+	private float depthScale;
+
+	private final int[] clusterOffsets = new int[CLUSTER_COUNT];
+	private final int[] clusterCounts = new int[CLUSTER_COUNT];
+	private final int[] lightIndices = new int[MAX_LIGHT_INDICES];
+	// the first and last tile and slice of each light's clusters, or -1 if it isn't in any
+	private final int[] lightBounds = new int[MAX_LIGHTS * 6];
+	private final float[] viewPosition = new float[3];
+	private final SceneLight[] lights = new SceneLight[MAX_LIGHTS];
+	private int lightCount;
+	private int indexCount;
+
+	/**
+	 * @param cameraX     the camera's local X coordinate
+	 * @param cameraY     the camera's local Y coordinate
+	 * @param cameraZ     the camera's height
+	 * @param yaw         the camera's yaw, as an index into {@link Perspective#SINE}
+	 * @param pitch       the camera's pitch, as an index into {@link Perspective#SINE}
+	 * @param farDistance the distance from the camera at which the last depth slice begins
+	 */
+	public void setView(int cameraX, int cameraY, int cameraZ, int yaw, int pitch, int scale,
+		int centerX, int centerY, int viewportWidth, int viewportHeight, int farDistance)
+	{
+		this.cameraX = cameraX;
+		this.cameraY = cameraY;
+		this.cameraZ = cameraZ;
+		yawSin = Perspective.SINE[yaw] / 65536f;
+		yawCos = Perspective.COSINE[yaw] / 65536f;
+		pitchSin = Perspective.SINE[pitch] / 65536f;
+		pitchCos = Perspective.COSINE[pitch] / 65536f;
+		this.scale = scale;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		tileWidth = (float) Math.max(1, viewportWidth) / CLUSTERS_X;
+		tileHeight = (float) Math.max(1, viewportHeight) / CLUSTERS_Y;
+		depthScale = (CLUSTERS_Z - 1) / (float) Math.log(Math.max(farDistance, NEAR_PLANE * 2) / (float) NEAR_PLANE);
+	}
+
+	/**
+	 * Bins the lights into the clusters of the current view, using each light's current position and size.
+	 * Lights beyond {@link #MAX_LIGHTS} are left out, as are light indices beyond {@link #MAX_LIGHT_INDICES}.
+	 */
+	public void bin(List<SceneLight> sceneLights)
+	{
+		Arrays.fill(lights, lightCount, MAX_LIGHTS, null);
+		lightCount = Math.min(sceneLights.size(), MAX_LIGHTS);
+		Arrays.fill(clusterCounts, 0);
+
+		// count the lights in each cluster first, so every cluster's indices can be stored contiguously
+		for (int i = 0; i < lightCount; i++)
+		{
+			lights[i] = sceneLights.get(i);
+			int o = i * 6;
+			computeBounds(lights[i], o);
+			if (lightBounds[o] == -1)
+			{
+				continue;
+			}
+			for (int z = lightBounds[o + 4]; z <= lightBounds[o + 5]; z++)
+			{
+				for (int y = lightBounds[o + 2]; y <= lightBounds[o + 3]; y++)
+				{
+					for (int x = lightBounds[o]; x <= lightBounds[o + 1]; x++)
+					{
+						clusterCounts[clusterIndex(x, y, z)]++;
+					}
+				}
+			}
+		}
+
+		indexCount = 0;
+		for (int cluster = 0; cluster < CLUSTER_COUNT; cluster++)
+		{
+			int count = Math.min(clusterCounts[cluster], MAX_LIGHT_INDICES - indexCount);
+			clusterOffsets[cluster] = indexCount;
+			clusterCounts[cluster] = 0;
+			indexCount += count;
+		}
+
+		// lights are added in order, so clusters which run out of space keep the nearest lights
+		for (int i = 0; i < lightCount; i++)
+		{
+			int o = i * 6;
+			if (lightBounds[o] == -1)
+			{
+				continue;
+			}
+			for (int z = lightBounds[o + 4]; z <= lightBounds[o + 5]; z++)
+			{
+				for (int y = lightBounds[o + 2]; y <= lightBounds[o + 3]; y++)
+				{
+					for (int x = lightBounds[o]; x <= lightBounds[o + 1]; x++)
+					{
+						int cluster = clusterIndex(x, y, z);
+						int end = cluster + 1 < CLUSTER_COUNT ? clusterOffsets[cluster + 1] : indexCount;
+						int index = clusterOffsets[cluster] + clusterCounts[cluster];
+						if (index < end)
+						{
+							lightIndices[index] = i;
+							clusterCounts[cluster]++;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void computeBounds(SceneLight light, int o)
+	{
+		toView(light.x, light.y, light.z);
+		float viewX = viewPosition[0];
+		float viewY = viewPosition[1];
+		float depth = viewPosition[2];
+		// a little extra to make up for differences in precision on the GPU
+		float radius = light.currentSize + 1;
+
+		if (light.currentSize <= 0 || depth + radius < NEAR_PLANE)
+		{
+			lightBounds[o] = -1;
+			return;
+		}
+
+		lightBounds[o + 4] = depthSlice(depth - radius);
+		lightBounds[o + 5] = depthSlice(depth + radius);
+
+		float nearDepth = depth - radius;
+		if (nearDepth <= NEAR_PLANE)
+		{
+			// the light surrounds the camera, so it can reach any part of the screen
+			lightBounds[o] = 0;
+			lightBounds[o + 1] = CLUSTERS_X - 1;
+			lightBounds[o + 2] = 0;
+			lightBounds[o + 3] = CLUSTERS_Y - 1;
+			return;
+		}
+
+		// the projection of the box around the sphere is bounded by the projections of its corners
+		float farDepth = depth + radius;
+		float minX = Math.min((viewX - radius) / nearDepth, (viewX - radius) / farDepth);
+		float maxX = Math.max((viewX + radius) / nearDepth, (viewX + radius) / farDepth);
+		float minY = Math.min((viewY - radius) / nearDepth, (viewY - radius) / farDepth);
+		float maxY = Math.max((viewY + radius) / nearDepth, (viewY + radius) / farDepth);
+		lightBounds[o] = tileX(centerX + minX * scale);
+		lightBounds[o + 1] = tileX(centerX + maxX * scale);
+		lightBounds[o + 2] = tileY(centerY + minY * scale);
+		lightBounds[o + 3] = tileY(centerY + maxY * scale);
+	}
+
+	/**
+	 * Transforms a point in local coordinates into view space, with X to the right, Y down and Z forward.
+	 */
+	private void toView(float x, float y, float z)
+	{
+		x -= cameraX;
+		y -= cameraY;
+		z -= cameraZ;
+		float rotatedY = y * yawCos - x * yawSin;
+		viewPosition[0] = x * yawCos + y * yawSin;
+		viewPosition[1] = z * pitchCos - rotatedY * pitchSin;
+		viewPosition[2] = rotatedY * pitchCos + z * pitchSin;
+	}
+
+	private int depthSlice(float depth)
+	{
+		if (depth <= NEAR_PLANE)
+		{
+			return 0;
+		}
+		return clamp((int) Math.floor(Math.log(depth / NEAR_PLANE) * depthScale), CLUSTERS_Z);
+	}
+
+	private int tileX(float screenX)
+	{
+		return clamp((int) Math.floor(screenX / tileWidth), CLUSTERS_X);
+	}
+
+	private int tileY(float screenY)
+	{
+		return clamp((int) Math.floor(screenY / tileHeight), CLUSTERS_Y);
+	}
+
+	private static int clamp(int value, int count)
+	{
+		return Math.max(0, Math.min(count - 1, value));
+	}
+
+	private static int clusterIndex(int x, int y, int z)
+	{
+		return (z * CLUSTERS_Y + y) * CLUSTERS_X + x;
+	}
+
+	/**
+	 * @return the index of the cluster containing the point in local coordinates, or -1 if the point is closer
+	 * than the near plane, where no fragments are drawn
+	 */
+	public int getCluster(float x, float y, float z)
+	{
+		toView(x, y, z);
+		float depth = viewPosition[2];
+		if (depth < NEAR_PLANE)
+		{
+			return -1;
+		}
+		return clusterIndex(
+			tileX(centerX + viewPosition[0] * scale / depth),
+			tileY(centerY + viewPosition[1] * scale / depth),
+			depthSlice(depth));
+	}
+
+	public int getLightCount(int cluster)
+	{
+		return clusterCounts[cluster];
+	}
+
+	/**
+	 * @return the light at the given position in the cluster's list of lights
+	 */
+	public SceneLight getLight(int cluster, int i)
+	{
+		return lights[lightIndices[clusterOffsets[cluster] + i]];
+	}
+
+	public int getBinnedLightCount()
+	{
+		return lightCount;
+	}
+
+	public int getIndexCount()
+	{
+		return indexCount;
+	}
+
+	/**
+	 * Writes the offset and light count of each cluster, followed by the light indices of every cluster.
+	 * Offsets are relative to the start of the buffer.
+	 */
+	public void writeIndices(IntBuffer buffer)
+	{
+		for (int cluster = 0; cluster < CLUSTER_COUNT; cluster++)
+		{
+			buffer.put(CLUSTER_COUNT * 2 + clusterOffsets[cluster]);
+			buffer.put(clusterCounts[cluster]);
+		}
+		buffer.put(lightIndices, 0, indexCount);
+	}
+
+	/**
+	 * Writes two texels for each light, with its position in shader order and its size, followed by its
+	 * color and strength.
+	 */
+	public void writeLights(FloatBuffer buffer)
+	{
+		for (int i = 0; i < lightCount; i++)
+		{
+			SceneLight light = lights[i];
+			buffer.put(light.x).put(light.z).put(light.y).put(light.currentSize);
+			buffer.put(light.currentColor[0]).put(light.currentColor[1]).put(light.currentColor[2]).put(light.currentStrength);
+		}
+	}
+}
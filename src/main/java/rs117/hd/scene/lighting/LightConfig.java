@@ -1,6 +1,7 @@
 package rs117.hd.scene.lighting;
 
 import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.io.File;
@@ -9,8 +10,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import lombok.extern.slf4j.Slf4j;
 import rs117.hd.utils.HDUtils;
@@ -68,14 +73,7 @@ public class LightConfig
 
 			for (Light l : lights)
 			{
-				// Map values from [0, 255] in gamma color space to [0, 1] in linear color space
-				// Also ensure that each color always has 4 components with sensible defaults
-				float[] linearRGBA = { 0, 0, 0, 1 };
-				for (int i = 0; i < Math.min(l.color.length, linearRGBA.length); i++)
-				{
-					linearRGBA[i] = HDUtils.gammaToLinear(l.color[i] /= 255f);
-				}
-				l.color = linearRGBA;
+				l.color = toLinearRGBA(l.color);
 
 				if (l.worldX != null && l.worldY != null)
 				{
@@ -94,6 +92,98 @@ public class LightConfig
 		}
 	}
 
+	/**
+	 * Loads the light bundle generated from lights.json at build time, memory-mapping it when possible.
+	 * Falls back to parsing lights.json when the bundle hasn't been generated, such as when running from an IDE.
+	 */
+	public static LightBundle loadBundle()
+	{
+		URL url = LightConfig.class.getResource(LightBundle.FILENAME);
+		if (url == null)
+		{
+			log.debug("Missing {}, parsing light configuration instead", LightBundle.FILENAME);
+			InputStream is = LightConfig.class.getResourceAsStream("lights.json");
+			if (is == null)
+			{
+				throw new RuntimeException("Missing resource: " + Paths.get(
+					LightConfig.class.getPackage().getName().replace(".", "/"), "lights.json"));
+			}
+			return loadBundle(is);
+		}
+
+		try
+		{
+			ByteBuffer buffer;
+			if (url.getProtocol().equals("file"))
+			{
+				try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ))
+				{
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+			}
+			else
+			{
+				// resources inside of a jar can't be mapped, so copy it off the heap instead
+				try (InputStream is = url.openStream())
+				{
+					byte[] bytes = ByteStreams.toByteArray(is);
+					buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+				}
+			}
+
+			LightBundle bundle = new LightBundle(buffer);
+			log.info("Loaded {} lights", bundle.getLightCount());
+			return bundle;
+		}
+		catch (Exception ex)
+		{
+			log.error("Failed to load light bundle", ex);
+			return LightBundle.EMPTY;
+		}
+	}
+
+	public static LightBundle loadBundle(File jsonFile)
+	{
+		try
+		{
+			return loadBundle(new FileInputStream(jsonFile));
+		}
+		catch (IOException ex)
+		{
+			log.error("Lights config file not found: " + jsonFile.toPath() + ". Falling back to default config...", ex);
+			return loadBundle();
+		}
+	}
+
+	public static LightBundle loadBundle(InputStream jsonInputStream)
+	{
+		try
+		{
+			LightBundle bundle = new LightBundle(ByteBuffer.wrap(LightBundle.write(loadRawLights(jsonInputStream))));
+			log.info("Loaded {} lights", bundle.getLightCount());
+			return bundle;
+		}
+		catch (Exception ex)
+		{
+			log.error("Failed to parse light configuration", ex);
+			return LightBundle.EMPTY;
+		}
+	}
+
+	/**
+	 * Maps a color from [0, 255] in gamma color space to [0, 1] in linear color space,
+	 * ensuring that it always has 4 components with sensible defaults.
+	 */
+	public static float[] toLinearRGBA(float[] color)
+	{
+		float[] linearRGBA = { 0, 0, 0, 1 };
+		for (int i = 0; i < Math.min(color.length, linearRGBA.length); i++)
+		{
+			linearRGBA[i] = HDUtils.gammaToLinear(color[i] / 255f);
+		}
+		return linearRGBA;
+	}
+
 	public static Light[] loadRawLights(InputStream is)
 	{
 		Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
@@ -35,7 +35,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Iterator;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -91,18 +90,19 @@ public class LightManager
 	@Inject
 	private PluginManager pluginManager;
 
-	private static final ArrayList<SceneLight> WORLD_LIGHTS = new ArrayList<>();
-	private static final ListMultimap<Integer, Light> NPC_LIGHTS = ArrayListMultimap.create();
-	private static final ListMultimap<Integer, Light> OBJECT_LIGHTS = ArrayListMultimap.create();
-	private static final ListMultimap<Integer, Light> PROJECTILE_LIGHTS = ArrayListMultimap.create();
+	private LightBundle lightBundle = LightBundle.EMPTY;
 
 	private FileWatcher fileWatcher;
 	@Getter
 	ArrayList<SceneLight> sceneLights = new ArrayList<>();
+	private final ArrayList<SceneLight> dynamicLights = new ArrayList<>();
+	private final LightSpatialHash lightHash = new LightSpatialHash();
+	// scene lights by the index of their NPC, and by the tile object hash of their object
+	private final ListMultimap<Integer, SceneLight> npcLights = ArrayListMultimap.create();
+	private final ListMultimap<Integer, SceneLight> objectLights = ArrayListMultimap.create();
 	@Getter
 	ArrayList<Projectile> sceneProjectiles = new ArrayList<>();
 
-	long lastFrameTime = -1;
 	boolean hotswapScheduled = false;
 
 	int sceneMinX = 0;
@@ -112,6 +112,16 @@ public class LightManager
 
 	public int visibleLightsCount = 0;
 
+	private static final int NEAR_PLANE = 50;
+	private int viewCameraX;
+	private int viewCameraY;
+	private int viewCameraZ;
+	private float viewYawSin;
+	private float viewYawCos;
+	private float viewPitchSin;
+	private float viewPitchCos;
+	private final float[][] viewPlanes = new float[4][];
+
 	private EntityHiderConfig entityHiderConfig;
 
 	public void startUp()
@@ -152,22 +162,17 @@ public class LightManager
 
 	public void clearLightConfiguration()
 	{
-		WORLD_LIGHTS.clear();
-		NPC_LIGHTS.clear();
-		OBJECT_LIGHTS.clear();
-		PROJECTILE_LIGHTS.clear();
+		lightBundle = LightBundle.EMPTY;
 	}
 
 	public void reloadLightConfiguration()
 	{
-		clearLightConfiguration();
-		LightConfig.load(WORLD_LIGHTS, NPC_LIGHTS, OBJECT_LIGHTS, PROJECTILE_LIGHTS);
+		lightBundle = LightConfig.loadBundle();
 	}
 
 	public void reloadLightConfiguration(File jsonFile)
 	{
-		clearLightConfiguration();
-		LightConfig.load(jsonFile, WORLD_LIGHTS, NPC_LIGHTS, OBJECT_LIGHTS, PROJECTILE_LIGHTS);
+		lightBundle = LightConfig.loadBundle(jsonFile);
 	}
 
 	public void update()
@@ -193,25 +198,19 @@ public class LightManager
 			loadSceneLights();
 		}
 
-		int camX = hdPlugin.camTarget[0];
-		int camY = hdPlugin.camTarget[1];
-		int camZ = hdPlugin.camTarget[2];
-
-		Iterator<SceneLight> lightIterator = sceneLights.iterator();
+		// only lights following NPCs and projectiles move, the rest stay where they were added
+		Iterator<SceneLight> lightIterator = dynamicLights.iterator();
 
 		while (lightIterator.hasNext())
 		{
 			SceneLight light = lightIterator.next();
 
-			long frameTime = System.currentTimeMillis() - lastFrameTime;
-
-			light.distance = Integer.MAX_VALUE;
-
 			if (light.projectile != null)
 			{
 				if (light.projectile.getRemainingCycles() <= 0)
 				{
 					lightIterator.remove();
+					removeFromScene(light);
 					sceneProjectiles.remove(light.projectile);
 					continue;
 				}
@@ -229,6 +228,7 @@ public class LightManager
 				if (light.npc != client.getCachedNPCs()[light.npc.getIndex()])
 				{
 					lightIterator.remove();
+					removeFromScene(light);
 					continue;
 				}
 
@@ -286,105 +286,113 @@ public class LightManager
 				}
 			}
 
-			if (light.type == LightType.FLICKER)
-			{
-				long repeatMs = 60000;
-				int offset = light.randomOffset;
-				float t = ((System.currentTimeMillis() + offset) % repeatMs) / (float) repeatMs * FloatUtil.TWO_PI;
-
-				float flicker = (
-					pow(cos(11 * t), 2) +
-						pow(cos(17 * t), 4) +
-						pow(cos(23 * t), 6) +
-						pow(cos(31 * t), 2) +
-						pow(cos(71 * t), 2) / 3 +
-						pow(cos(151 * t), 2) / 7
-				) / 4.335f;
-
-				float maxFlicker = 1f + (light.range / 100f);
-				float minFlicker = 1f - (light.range / 100f);
-
-				flicker = minFlicker + (maxFlicker - minFlicker) * flicker;
-
-				light.currentStrength = light.strength * flicker;
-				light.currentSize = (int) (light.radius * flicker * 1.5f);
-			}
-			else if (light.type == LightType.PULSE)
-			{
-				float duration = light.duration / 1000f;
-				float range = light.range / 100f;
-				float fullRange = range * 2f;
-				float change = (frameTime / 1000f) / duration;
-//				change = change % 1.0f;
+			updateFloor(light);
+			lightHash.move(light);
+		}
+	}
 
-				light.currentAnimation += change % 1.0f;
-				// lock animation to 0-1
-				light.currentAnimation = light.currentAnimation % 1.0f;
+	/**
+	 * Determines whether the light is above or below a floor, which hides it from other planes.
+	 */
+	private void updateFloor(SceneLight light)
+	{
+		int tileX = (int) Math.floor(light.x / 128f);
+		int tileY = (int) Math.floor(light.y / 128f);
+		int tileZ = light.plane;
 
-				float output;
+		light.belowFloor = false;
+		light.aboveFloor = false;
 
-				if (light.currentAnimation > 0.5f)
-				{
-					// light is shrinking
-					output = 1f - (light.currentAnimation - 0.5f) * 2;
-				}
-				else
-				{
-					// light is expanding
-					output = light.currentAnimation * 2f;
-				}
-
-				float multiplier = (1.0f - range) + output * fullRange;
+		if (tileX < Perspective.SCENE_SIZE && tileY < Perspective.SCENE_SIZE && tileX >= 0 && tileY >= 0)
+		{
+			Tile aboveTile = tileZ < 3 ? client.getScene().getTiles()[tileZ + 1][tileX][tileY] : null;
 
-				light.currentSize = (int) (light.radius * multiplier);
-				light.currentStrength = light.strength * multiplier;
-			}
-			else
+			if (aboveTile != null && (aboveTile.getSceneTilePaint() != null || aboveTile.getSceneTileModel() != null))
 			{
-				light.currentStrength = light.strength;
-				light.currentSize = light.radius;
-				light.currentColor = light.color;
+				light.belowFloor = true;
 			}
-			// Apply fade-in
-			if (light.fadeInDuration > 0)
-			{
-				light.currentStrength *= Math.min((float) light.currentFadeIn / (float) light.fadeInDuration, 1.0f);
 
-				light.currentFadeIn += frameTime;
+			Tile lightTile = client.getScene().getTiles()[tileZ][tileX][tileY];
+
+			if (lightTile != null && (lightTile.getSceneTilePaint() != null || lightTile.getSceneTileModel() != null))
+			{
+				light.aboveFloor = true;
 			}
+		}
+	}
 
-			// Calculate the distance between the player and the light to determine which
-			// lights to display based on the 'max dynamic lights' config option
-			light.distance = (int) Math.sqrt(Math.pow(camX - light.x, 2) + Math.pow(camY - light.y, 2) + Math.pow(camZ - light.z, 2));
+	private void animate(SceneLight light, long currentTime)
+	{
+		// lights are only animated while they're visible, so they catch up on the time in between
+		long frameTime = light.lastAnimationTime == 0 ? 0 : currentTime - light.lastAnimationTime;
+		light.lastAnimationTime = currentTime;
 
-			int tileX = (int) Math.floor(light.x / 128f);
-			int tileY = (int) Math.floor(light.y / 128f);
-			int tileZ = light.plane;
+		if (light.type == LightType.FLICKER)
+		{
+			long repeatMs = 60000;
+			int offset = light.randomOffset;
+			float t = ((currentTime + offset) % repeatMs) / (float) repeatMs * FloatUtil.TWO_PI;
+
+			float flicker = (
+				pow(cos(11 * t), 2) +
+					pow(cos(17 * t), 4) +
+					pow(cos(23 * t), 6) +
+					pow(cos(31 * t), 2) +
+					pow(cos(71 * t), 2) / 3 +
+					pow(cos(151 * t), 2) / 7
+			) / 4.335f;
+
+			float maxFlicker = 1f + (light.range / 100f);
+			float minFlicker = 1f - (light.range / 100f);
+
+			flicker = minFlicker + (maxFlicker - minFlicker) * flicker;
+
+			light.currentStrength = light.strength * flicker;
+			light.currentSize = (int) (light.radius * flicker * 1.5f);
+		}
+		else if (light.type == LightType.PULSE)
+		{
+			float duration = light.duration / 1000f;
+			float range = light.range / 100f;
+			float fullRange = range * 2f;
+			float change = (frameTime / 1000f) / duration;
+//				change = change % 1.0f;
 
-			light.belowFloor = false;
-			light.aboveFloor = false;
+			light.currentAnimation += change % 1.0f;
+			// lock animation to 0-1
+			light.currentAnimation = light.currentAnimation % 1.0f;
 
-			if (tileX < Perspective.SCENE_SIZE && tileY < Perspective.SCENE_SIZE && tileX >= 0 && tileY >= 0)
-			{
-				Tile aboveTile = tileZ < 3 ? client.getScene().getTiles()[tileZ + 1][tileX][tileY] : null;
+			float output;
 
-				if (aboveTile != null && (aboveTile.getSceneTilePaint() != null || aboveTile.getSceneTileModel() != null))
-				{
-					light.belowFloor = true;
-				}
+			if (light.currentAnimation > 0.5f)
+			{
+				// light is shrinking
+				output = 1f - (light.currentAnimation - 0.5f) * 2;
+			}
+			else
+			{
+				// light is expanding
+				output = light.currentAnimation * 2f;
+			}
 
-				Tile lightTile = client.getScene().getTiles()[tileZ][tileX][tileY];
+			float multiplier = (1.0f - range) + output * fullRange;
 
-				if (lightTile != null && (lightTile.getSceneTilePaint() != null || lightTile.getSceneTileModel() != null))
-				{
-					light.aboveFloor = true;
-				}
-			}
+			light.currentSize = (int) (light.radius * multiplier);
+			light.currentStrength = light.strength * multiplier;
 		}
+		else
+		{
+			light.currentStrength = light.strength;
+			light.currentSize = light.radius;
+			light.currentColor = light.color;
+		}
+		// Apply fade-in
+		if (light.fadeInDuration > 0)
+		{
+			light.currentStrength *= Math.min((float) light.currentFadeIn / (float) light.fadeInDuration, 1.0f);
 
-		sceneLights.sort(Comparator.comparingInt(light -> light.distance));
-
-		lastFrameTime = System.currentTimeMillis();
+			light.currentFadeIn += frameTime;
+		}
 	}
 
 	public boolean npcLightVisible(NPC npc)
@@ -429,6 +437,58 @@ public class LightManager
 	{
 		sceneLights = new ArrayList<>();
 		sceneProjectiles = new ArrayList<>();
+		dynamicLights.clear();
+		lightHash.clear();
+		npcLights.clear();
+		objectLights.clear();
+	}
+
+	private void addToScene(SceneLight light)
+	{
+		light.sceneIndex = sceneLights.size();
+		sceneLights.add(light);
+		if (light.npc != null)
+		{
+			npcLights.put(light.npc.getIndex(), light);
+		}
+		if (light.object != null)
+		{
+			objectLights.put(tileObjectHash(light.object), light);
+		}
+		if (light.npc != null || light.projectile != null)
+		{
+			dynamicLights.add(light);
+		}
+		else
+		{
+			updateFloor(light);
+		}
+		lightHash.add(light);
+	}
+
+	/**
+	 * Removes the light from the scene, but not from the list of dynamic lights.
+	 */
+	private void removeFromScene(SceneLight light)
+	{
+		// the order of scene lights doesn't matter, so fill the gap with the last light
+		SceneLight last = sceneLights.remove(sceneLights.size() - 1);
+		if (last != light)
+		{
+			sceneLights.set(light.sceneIndex, last);
+			last.sceneIndex = light.sceneIndex;
+		}
+		light.sceneIndex = -1;
+
+		if (light.npc != null)
+		{
+			npcLights.remove(light.npc.getIndex(), light);
+		}
+		if (light.object != null)
+		{
+			objectLights.remove(tileObjectHash(light.object), light);
+		}
+		lightHash.remove(light);
 	}
 
 	public void loadSceneLights()
@@ -446,13 +506,10 @@ public class LightManager
 		sceneMaxX = sceneMinX + Constants.SCENE_SIZE - 2;
 		sceneMaxY = sceneMinY + Constants.SCENE_SIZE - 2;
 
-		for (SceneLight light : WORLD_LIGHTS)
+		for (SceneLight light : lightBundle.getWorldLights(sceneMinX, sceneMinY, sceneMaxX, sceneMaxY))
 		{
-			if (light.worldX >= sceneMinX && light.worldX <= sceneMaxX && light.worldY >= sceneMinY && light.worldY <= sceneMaxY)
-			{
-				sceneLights.add(light);
-				calculateScenePosition(light);
-			}
+			calculateScenePosition(light);
+			addToScene(light);
 		}
 		Tile[][][] tiles = client.getScene().getTiles();
 		for (int i = 0; i < tiles.length; i++)
@@ -546,41 +603,99 @@ public class LightManager
 	public ArrayList<SceneLight> getVisibleLights(int maxDistance, int maxLights)
 	{
 		ArrayList<SceneLight> visibleLights = new ArrayList<>();
-		int lightsCount = 0;
+		updateViewFrustum();
 
-		for (SceneLight light : sceneLights)
-		{
-			if (lightsCount >= maxLights || light.distance > maxDistance * Perspective.LOCAL_TILE_SIZE)
-			{
-				break;
-			}
-			if (!light.visible)
-			{
-				continue;
-			}
-			// Hide certain lights on planes lower than the player to prevent light 'leaking' through the floor
-			if (light.plane < client.getPlane() && light.belowFloor)
+		final int plane = client.getPlane();
+		lightHash.findNearest(hdPlugin.camTarget[0], hdPlugin.camTarget[1], hdPlugin.camTarget[2],
+			maxDistance * Perspective.LOCAL_TILE_SIZE, maxLights, light ->
 			{
-				continue;
-			}
-			// Hide any light that is above the current plane and is above a solid floor
-			if (light.plane > client.getPlane() && light.aboveFloor)
-			{
-				continue;
-			}
+				if (!light.visible)
+				{
+					return false;
+				}
+				// Hide certain lights on planes lower than the player to prevent light 'leaking' through the floor
+				if (light.plane < plane && light.belowFloor)
+				{
+					return false;
+				}
+				// Hide any light that is above the current plane and is above a solid floor
+				if (light.plane > plane && light.aboveFloor)
+				{
+					return false;
+				}
+				return isInView(light);
+			}, visibleLights);
 
-			visibleLights.add(light);
-			lightsCount++;
+		long currentTime = System.currentTimeMillis();
+		for (SceneLight light : visibleLights)
+		{
+			animate(light, currentTime);
 		}
-		visibleLightsCount = lightsCount;
+		visibleLightsCount = visibleLights.size();
 
 		return visibleLights;
 	}
 
+	private void updateViewFrustum()
+	{
+		viewCameraX = client.getCameraX();
+		viewCameraY = client.getCameraY();
+		viewCameraZ = client.getCameraZ();
+		viewYawSin = Perspective.SINE[client.getCameraYaw()] / 65536f;
+		viewYawCos = Perspective.COSINE[client.getCameraYaw()] / 65536f;
+		viewPitchSin = Perspective.SINE[client.getCameraPitch()] / 65536f;
+		viewPitchCos = Perspective.COSINE[client.getCameraPitch()] / 65536f;
+
+		// the sides of the viewport, as planes through the camera with normals in view space
+		float scale = client.getScale();
+		float left = client.getCenterX();
+		float right = client.getViewportWidth() - left;
+		float top = client.getCenterY();
+		float bottom = client.getViewportHeight() - top;
+		viewPlanes[0] = normalizedPlane(scale, -right);
+		viewPlanes[1] = normalizedPlane(-scale, -left);
+		viewPlanes[2] = normalizedPlane(scale, -bottom);
+		viewPlanes[3] = normalizedPlane(-scale, -top);
+	}
+
+	private static float[] normalizedPlane(float lateral, float depth)
+	{
+		float length = (float) Math.sqrt(lateral * lateral + depth * depth);
+		return new float[] { lateral / length, depth / length };
+	}
+
+	/**
+	 * Checks whether any part of the light's largest possible sphere is in the camera's view, using the same
+	 * projection as {@link Perspective#localToCanvas}.
+	 */
+	private boolean isInView(SceneLight light)
+	{
+		// flickering lights grow the most, by half on top of their range
+		float radius = light.radius * 1.5f * (1 + Math.abs(light.range) / 100f);
+
+		float x = light.x - viewCameraX;
+		float y = light.y - viewCameraY;
+		float z = light.z - viewCameraZ;
+		float viewX = x * viewYawCos + y * viewYawSin;
+		float rotatedY = y * viewYawCos - x * viewYawSin;
+		float viewY = z * viewPitchCos - rotatedY * viewPitchSin;
+		float depth = rotatedY * viewPitchCos + z * viewPitchSin;
+
+		if (depth + radius < NEAR_PLANE)
+		{
+			return false;
+		}
+
+		return viewPlanes[0][0] * viewX + viewPlanes[0][1] * depth <= radius &&
+			viewPlanes[1][0] * viewX + viewPlanes[1][1] * depth <= radius &&
+			viewPlanes[2][0] * viewY + viewPlanes[2][1] * depth <= radius &&
+			viewPlanes[3][0] * viewY + viewPlanes[3][1] * depth <= radius;
+	}
+
 
 	public void addProjectileLight(Projectile projectile)
 	{
-		for (Light l : PROJECTILE_LIGHTS.get(projectile.getId()))
+		for (Light l : lightBundle.getProjectileLights(projectile.getId()))
 		{
 			// prevent duplicate lights being spawned for the same projectile
 			if (sceneProjectiles.contains(projectile))
@@ -597,16 +712,16 @@ public class LightManager
 			light.z = (int) projectile.getZ();
 
 			sceneProjectiles.add(projectile);
-			sceneLights.add(light);
+			addToScene(light);
 		}
 	}
 
 	public void addNpcLights(NPC npc)
 	{
-		for (Light l : NPC_LIGHTS.get(npc.getId()))
+		for (Light l : lightBundle.getNpcLights(npc.getId()))
 		{
 			// prevent duplicate lights being spawned for the same NPC
-			if (sceneLights.stream().anyMatch(x -> x.npc == npc))
+			if (hasNpcLight(npc))
 			{
 				continue;
 			}
@@ -617,18 +732,42 @@ public class LightManager
 			light.npc = npc;
 			light.visible = false;
 
-			sceneLights.add(light);
+			addToScene(light);
+		}
+	}
+
+	private boolean hasNpcLight(NPC npc)
+	{
+		for (SceneLight light : npcLights.get(npc.getIndex()))
+		{
+			if (light.npc == npc)
+			{
+				return true;
+			}
 		}
+		return false;
 	}
 
 	public void removeNpcLight(NpcDespawned npcDespawned)
 	{
-		sceneLights.removeIf(light -> light.npc == npcDespawned.getNpc());
+		removeNpcLights(npcDespawned.getNpc());
 	}
 
 	public void removeNpcLight(NpcChanged npcChanged)
 	{
-		sceneLights.removeIf(light -> light.npc == npcChanged.getNpc());
+		removeNpcLights(npcChanged.getNpc());
+	}
+
+	private void removeNpcLights(NPC npc)
+	{
+		for (SceneLight light : new ArrayList<>(npcLights.get(npc.getIndex())))
+		{
+			if (light.npc == npc)
+			{
+				dynamicLights.remove(light);
+				removeFromScene(light);
+			}
+		}
 	}
 
 	public void addObjectLight(TileObject tileObject, int plane)
@@ -638,7 +777,7 @@ public class LightManager
 
 	public void addObjectLight(TileObject tileObject, int plane, int sizeX, int sizeY, int orientation)
 	{
-		for (Light l : OBJECT_LIGHTS.get(tileObject.getId()))
+		for (Light l : lightBundle.getObjectLights(tileObject.getId()))
 		{
 			// prevent objects at plane -1 and under from having lights
 			if (tileObject.getPlane() <= -1) {
@@ -646,7 +785,7 @@ public class LightManager
 			}
 
 			// prevent duplicate lights being spawned for the same object
-			if (sceneLights.stream().anyMatch(light -> light.object != null && tileObjectHash(light.object) == tileObjectHash(tileObject)))
+			if (objectLights.containsKey(tileObjectHash(tileObject)))
 			{
 				continue;
 			}
@@ -718,21 +857,25 @@ public class LightManager
 			light.z = (int) tileHeight - light.height - 1;
 			light.object = tileObject;
 
-			sceneLights.add(light);
+			addToScene(light);
 		}
 	}
 
 	public void removeObjectLight(TileObject tileObject)
 	{
-		for (Light l : OBJECT_LIGHTS.get(tileObject.getId()))
+		if (!lightBundle.hasObjectLights(tileObject.getId()))
 		{
-			LocalPoint localLocation = tileObject.getLocalLocation();
-			int plane = tileObject.getWorldLocation().getPlane();
+			return;
+		}
 
-			sceneLights.removeIf(light ->
-				light.x == localLocation.getX() &&
-					light.y == localLocation.getY() &&
-					light.plane == plane);
+		WorldPoint worldLocation = tileObject.getWorldLocation();
+		for (SceneLight light : new ArrayList<>(objectLights.get(tileObjectHash(tileObject))))
+		{
+			// other objects may share the same hash
+			if (light.object.getId() == tileObject.getId() && light.object.getWorldLocation().equals(worldLocation))
+			{
+				removeFromScene(light);
+			}
 		}
 	}
 
@@ -0,0 +1,167 @@
+package rs117.hd.scene.lighting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+
+/**
+ * Buckets scene lights into cells of 8x8 tiles by their position, so the lights nearest to a point can be found
+ * by only looking at the cells around it. Lights outside of the scene go into the cells along its edges, which
+ * extend infinitely outwards.
+ */
+class LightSpatialHash
+{
+	static final int CELL_SHIFT = 10;
+	static final int CELLS_PER_SIDE = (Constants.SCENE_SIZE * Perspective.LOCAL_TILE_SIZE >> CELL_SHIFT) + 1;
+
+	private final List<SceneLight>[] cells;
+	// squared distance from the query point in the upper half, and cell index in the lower
+	private final long[] cellOrder = new long[CELLS_PER_SIDE * CELLS_PER_SIDE];
+	private final PriorityQueue<SceneLight> farthestFirst = new PriorityQueue<>(
+		Comparator.comparingInt((SceneLight light) -> light.distance).reversed());
+
+	@SuppressWarnings("unchecked")
+	LightSpatialHash()
+	{
+		cells = new List[CELLS_PER_SIDE * CELLS_PER_SIDE];
+		for (int i = 0; i < cells.length; i++)
+		{
+			cells[i] = new ArrayList<>();
+		}
+	}
+
+	void clear()
+	{
+		for (List<SceneLight> cell : cells)
+		{
+			cell.clear();
+		}
+	}
+
+	void add(SceneLight light)
+	{
+		light.cell = cellOf(light.x, light.y);
+		cells[light.cell].add(light);
+	}
+
+	void remove(SceneLight light)
+	{
+		if (light.cell != -1)
+		{
+			cells[light.cell].remove(light);
+			light.cell = -1;
+		}
+	}
+
+	/**
+	 * Should be called after changing the position of a light which has been added.
+	 */
+	void move(SceneLight light)
+	{
+		int cell = cellOf(light.x, light.y);
+		if (cell != light.cell)
+		{
+			remove(light);
+			light.cell = cell;
+			cells[cell].add(light);
+		}
+	}
+
+	private static int cellOf(int x, int y)
+	{
+		int cellX = Math.max(0, Math.min(CELLS_PER_SIDE - 1, x >> CELL_SHIFT));
+		int cellY = Math.max(0, Math.min(CELLS_PER_SIDE - 1, y >> CELL_SHIFT));
+		return cellX * CELLS_PER_SIDE + cellY;
+	}
+
+	/**
+	 * Finds up to {@code maxLights} of the lights nearest to the point, within {@code maxDistance}, that pass the
+	 * filter. Cells are visited from nearest to farthest, stopping once no light in the remaining cells could be
+	 * nearer than the ones already found. The distance of every light looked at is updated.
+	 *
+	 * @param result the list to add the lights to, sorted by distance
+	 */
+	void findNearest(int x, int y, int z, int maxDistance, int maxLights, Predicate<SceneLight> filter, List<SceneLight> result)
+	{
+		if (maxLights <= 0)
+		{
+			return;
+		}
+
+		final long maxDistanceSquared = (long) maxDistance * maxDistance;
+		int cellCount = 0;
+		for (int cellX = 0; cellX < CELLS_PER_SIDE; cellX++)
+		{
+			long dx = axisDistance(x, cellX);
+			for (int cellY = 0; cellY < CELLS_PER_SIDE; cellY++)
+			{
+				long dy = axisDistance(y, cellY);
+				long distanceSquared = dx * dx + dy * dy;
+				int cell = cellX * CELLS_PER_SIDE + cellY;
+				if (distanceSquared <= maxDistanceSquared && !cells[cell].isEmpty())
+				{
+					cellOrder[cellCount++] = distanceSquared << 32 | cell;
+				}
+			}
+		}
+		Arrays.sort(cellOrder, 0, cellCount);
+
+		for (int i = 0; i < cellCount; i++)
+		{
+			if (farthestFirst.size() == maxLights)
+			{
+				long farthest = farthestFirst.peek().distance;
+				if (cellOrder[i] >>> 32 > farthest * farthest)
+				{
+					break;
+				}
+			}
+
+			for (SceneLight light : cells[(int) cellOrder[i]])
+			{
+				long dx = light.x - x;
+				long dy = light.y - y;
+				long dz = light.z - z;
+				light.distance = (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
+				if (light.distance > maxDistance ||
+					farthestFirst.size() == maxLights && light.distance >= farthestFirst.peek().distance ||
+					!filter.test(light))
+				{
+					continue;
+				}
+
+				if (farthestFirst.size() == maxLights)
+				{
+					farthestFirst.poll();
+				}
+				farthestFirst.add(light);
+			}
+		}
+
+		int start = result.size();
+		result.addAll(farthestFirst);
+		farthestFirst.clear();
+		result.subList(start, result.size()).sort(Comparator.comparingInt(light -> light.distance));
+	}
+
+	/**
+	 * @return the distance from the coordinate to the nearest point of the cell along one axis
+	 */
+	private static long axisDistance(int coordinate, int cell)
+	{
+		if (cell > 0 && coordinate < cell << CELL_SHIFT)
+		{
+			return (cell << CELL_SHIFT) - (long) coordinate;
+		}
+		if (cell < CELLS_PER_SIDE - 1 && coordinate >= cell + 1 << CELL_SHIFT)
+		{
+			return (long) coordinate - ((cell + 1 << CELL_SHIFT) - 1);
+		}
+		return 0;
+	}
+}
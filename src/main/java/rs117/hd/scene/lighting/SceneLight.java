@@ -28,6 +28,11 @@ public class SceneLight extends Light
 	public int distance = 0;
 	public boolean belowFloor = false;
 	public boolean aboveFloor = false;
+	// the cell of the spatial hash the light is in, or -1 if it hasn't been added
+	int cell = -1;
+	// the light's index in the list of scene lights, or -1 if it hasn't been added
+	int sceneIndex = -1;
+	long lastAnimationTime = 0;
 
 	public Projectile projectile = null;
 	public NPC npc = null;
@@ -2,20 +2,30 @@ package rs117.hd.utils;
 
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.client.RuneLite;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.Keybind;
 import net.runelite.client.input.KeyListener;
 import net.runelite.client.input.KeyManager;
 import net.runelite.client.ui.overlay.OverlayManager;
 import rs117.hd.HdPlugin;
 import rs117.hd.HdPluginConfig;
+import rs117.hd.opengl.compute.ComputeSizeClassTimer;
 import rs117.hd.opengl.shader.Template;
+import rs117.hd.overlays.FrameTimingsOverlay;
 import rs117.hd.overlays.TileInfoOverlay;
+import rs117.hd.scene.SceneSnapshot;
 
 @Slf4j
 public class DeveloperTools implements KeyListener
@@ -24,6 +34,20 @@ public class DeveloperTools implements KeyListener
 
 	// This could be part of the config if we had developer mode config sections
 	private static final Keybind KEY_TOGGLE_TILE_INFO = new Keybind(KeyEvent.VK_F3, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_TOGGLE_FRAME_TIMINGS = new Keybind(KeyEvent.VK_F4, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_DUMP_FRAME_TIMINGS = new Keybind(KeyEvent.VK_F5, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_TOGGLE_DRAW_CALLBACK_RECORDING = new Keybind(KeyEvent.VK_F6, InputEvent.CTRL_DOWN_MASK);
+	private static final Keybind KEY_TAKE_SCENE_SNAPSHOT = new Keybind(KeyEvent.VK_F7, InputEvent.CTRL_DOWN_MASK);
+
+	private static final File FRAME_TIMINGS_DIR = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "frame-timings");
+	private static final File CAPTURES_DIR = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "captures");
+	private static final File SCENE_SNAPSHOTS_DIR = new File(new File(RuneLite.RUNELITE_DIR, "117hd"), "scene-snapshots");
+
+	@Inject
+	private Client client;
+
+	@Inject
+	private ClientThread clientThread;
 
 	@Inject
 	private HdPluginConfig config;
@@ -40,9 +64,22 @@ public class DeveloperTools implements KeyListener
 	@Inject
 	private TileInfoOverlay tileInfoOverlay;
 
+	@Inject
+	private FrameTimingsOverlay frameTimingsOverlay;
+
+	@Inject
+	private FrameTimer frameTimer;
+
+	@Inject
+	private ComputeSizeClassTimer computeSizeClassTimer;
+
+	@Inject
+	private DrawCallbackRecorder drawCallbackRecorder;
+
 	private Path shaderPath;
 	private FileWatcher shaderSourceWatcher;
 	private boolean tileInfoOverlayEnabled = false;
+	private boolean frameTimingsOverlayEnabled = false;
 
 	public void activate() {
 		keyManager.registerKeyListener(this);
@@ -50,6 +87,11 @@ public class DeveloperTools implements KeyListener
 		{
 			overlayManager.add(tileInfoOverlay);
 		}
+		if (frameTimingsOverlayEnabled)
+		{
+			frameTimer.setEnabled(true);
+			overlayManager.add(frameTimingsOverlay);
+		}
 
 		shaderPath = Env.getPath(ENV_SHADER_PATH);
 		if (shaderPath != null)
@@ -83,6 +125,8 @@ public class DeveloperTools implements KeyListener
 
 		keyManager.unregisterKeyListener(this);
 		overlayManager.remove(tileInfoOverlay);
+		overlayManager.remove(frameTimingsOverlay);
+		frameTimer.setEnabled(false);
 	}
 
 	public String shaderResolver(String path) {
@@ -114,6 +158,89 @@ public class DeveloperTools implements KeyListener
 				overlayManager.remove(tileInfoOverlay);
 			}
 		}
+		else if (KEY_TOGGLE_FRAME_TIMINGS.matches(event))
+		{
+			event.consume();
+			frameTimingsOverlayEnabled = !frameTimingsOverlayEnabled;
+			frameTimer.setEnabled(frameTimingsOverlayEnabled);
+			if (frameTimingsOverlayEnabled)
+			{
+				overlayManager.add(frameTimingsOverlay);
+			}
+			else
+			{
+				overlayManager.remove(frameTimingsOverlay);
+			}
+		}
+		else if (KEY_DUMP_FRAME_TIMINGS.matches(event))
+		{
+			event.consume();
+			dumpFrameTimings();
+		}
+		else if (KEY_TOGGLE_DRAW_CALLBACK_RECORDING.matches(event))
+		{
+			event.consume();
+			if (drawCallbackRecorder.isRecording())
+			{
+				drawCallbackRecorder.stop();
+			}
+			else
+			{
+				drawCallbackRecorder.start(new File(CAPTURES_DIR, new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".rlhdcap"));
+			}
+		}
+		else if (KEY_TAKE_SCENE_SNAPSHOT.matches(event))
+		{
+			event.consume();
+			clientThread.invoke(this::takeSceneSnapshot);
+		}
+	}
+
+	private void takeSceneSnapshot()
+	{
+		if (client.getGameState() != GameState.LOGGED_IN)
+		{
+			log.info("Scene snapshots can only be taken while logged in");
+			return;
+		}
+
+		File file = new File(SCENE_SNAPSHOTS_DIR, new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".rlhdscene");
+		try
+		{
+			SceneSnapshot.capture(client).write(file);
+			log.info("Scene snapshot written to {}", file);
+		}
+		catch (IOException ex)
+		{
+			log.error("Failed to write scene snapshot", ex);
+		}
+	}
+
+	private void dumpFrameTimings()
+	{
+		if (!frameTimer.isEnabled())
+		{
+			log.info("Frame timings are only recorded while the frame timings overlay is enabled");
+			return;
+		}
+
+		String date = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+		File file = new File(FRAME_TIMINGS_DIR, date + ".csv");
+		File sizeClassFile = new File(FRAME_TIMINGS_DIR, date + "_compute-size-classes.csv");
+		try
+		{
+			if (!FRAME_TIMINGS_DIR.exists() && !FRAME_TIMINGS_DIR.mkdirs())
+			{
+				throw new IOException("Unable to create directory " + FRAME_TIMINGS_DIR);
+			}
+			frameTimer.writeCsv(file);
+			computeSizeClassTimer.writeCsv(sizeClassFile);
+			log.info("Frame timings written to {} and {}", file, sizeClassFile);
+		}
+		catch (IOException ex)
+		{
+			log.error("Failed to write frame timings", ex);
+		}
 	}
 
 	@Override
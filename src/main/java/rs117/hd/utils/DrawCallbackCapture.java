@@ -0,0 +1,341 @@
+package rs117.hd.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The draw callbacks of a number of frames, as recorded by {@link DrawCallbackRecorder}, for replaying them
+ * without a client.
+ *
+ * A capture is a gzipped stream of records, each starting with a tag byte. Models are written once, the first
+ * time they're drawn, and referred to by their index afterwards. Scene models are written without geometry,
+ * since it lives in the scene buffers, which aren't part of the capture.
+ */
+public class DrawCallbackCapture
+{
+	static final int MAGIC = 0x31313743; // "117C"
+	static final int VERSION = 1;
+
+	static final int TAG_END = 0;
+	static final int TAG_DRAW_SCENE = 1;
+	static final int TAG_DRAW_SCENE_PAINT = 2;
+	static final int TAG_DRAW_SCENE_MODEL = 3;
+	static final int TAG_MODEL = 4;
+	static final int TAG_DRAW = 5;
+	static final int TAG_POST_DRAW_SCENE = 6;
+
+	static final int MODEL_FLAG_SCENE = 1;
+
+	public final List<CapturedModel> models = new ArrayList<>();
+	public final List<Frame> frames = new ArrayList<>();
+
+	/**
+	 * The camera passed to drawScene, along with the client state the draw callbacks read during the frame.
+	 */
+	public static class Frame
+	{
+		public int cameraX;
+		public int cameraY;
+		public int cameraZ;
+		public int cameraPitch;
+		public int cameraYaw;
+		public int plane;
+
+		public int cameraX2;
+		public int cameraY2;
+		public int cameraZ2;
+		public int zoom3d;
+		public int clipMidX2;
+		public int clipNegativeMidX;
+		public int clipNegativeMidY;
+		public int clipMidY2;
+
+		public final List<Call> calls = new ArrayList<>();
+	}
+
+	/**
+	 * A call to drawScenePaint, drawSceneModel or draw. Fields which don't apply to the type of call are left 0.
+	 */
+	public static class Call
+	{
+		public static final int SCENE_PAINT = TAG_DRAW_SCENE_PAINT;
+		public static final int SCENE_TILE_MODEL = TAG_DRAW_SCENE_MODEL;
+		public static final int MODEL = TAG_DRAW;
+
+		public int type;
+		public int orientation;
+		public int pitchSin;
+		public int pitchCos;
+		public int yawSin;
+		public int yawCos;
+		public int x;
+		public int y;
+		public int z;
+
+		// tile paints and tile models
+		public int tileZ;
+		public int tileX;
+		public int tileY;
+		public int zoom;
+		public int centerX;
+		public int centerY;
+		public int bufferOffset;
+		public int uvBufferOffset;
+		public int bufferLength;
+
+		// models
+		public int model;
+		public long hash;
+	}
+
+	/**
+	 * Everything the draw callbacks read from a model. Arrays are null where the model's were.
+	 */
+	public static class CapturedModel
+	{
+		public boolean sceneModel;
+		public int faceCount;
+		public int verticesCount;
+		public int bufferOffset;
+		public int uvBufferOffset;
+		public int radius;
+		public int xyzMag;
+		public int bottomY;
+		public int modelHeight;
+		public byte overrideAmount;
+		public byte overrideHue;
+		public byte overrideSaturation;
+		public byte overrideLuminance;
+
+		public int[] verticesX;
+		public int[] verticesY;
+		public int[] verticesZ;
+		public int[] vertexNormalsX;
+		public int[] vertexNormalsY;
+		public int[] vertexNormalsZ;
+		public int[] faceIndices1;
+		public int[] faceIndices2;
+		public int[] faceIndices3;
+		public int[] faceColors1;
+		public int[] faceColors2;
+		public int[] faceColors3;
+		public short[] faceTextures;
+		public float[] faceTextureUVCoordinates;
+		public byte[] faceTransparencies;
+		public byte[] faceRenderPriorities;
+	}
+
+	public static DrawCallbackCapture read(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return read(in);
+		}
+	}
+
+	public static DrawCallbackCapture read(InputStream inputStream) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+		if (in.readInt() != MAGIC)
+		{
+			throw new IOException("Not a draw callback capture");
+		}
+		int version = in.readInt();
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported draw callback capture version " + version);
+		}
+
+		DrawCallbackCapture capture = new DrawCallbackCapture();
+		Frame frame = null;
+		int tag;
+		while ((tag = in.readUnsignedByte()) != TAG_END)
+		{
+			switch (tag)
+			{
+				case TAG_DRAW_SCENE:
+					frame = new Frame();
+					frame.cameraX = in.readInt();
+					frame.cameraY = in.readInt();
+					frame.cameraZ = in.readInt();
+					frame.cameraPitch = in.readInt();
+					frame.cameraYaw = in.readInt();
+					frame.plane = in.readInt();
+					frame.cameraX2 = in.readInt();
+					frame.cameraY2 = in.readInt();
+					frame.cameraZ2 = in.readInt();
+					frame.zoom3d = in.readInt();
+					frame.clipMidX2 = in.readInt();
+					frame.clipNegativeMidX = in.readInt();
+					frame.clipNegativeMidY = in.readInt();
+					frame.clipMidY2 = in.readInt();
+					break;
+				case TAG_DRAW_SCENE_PAINT:
+				case TAG_DRAW_SCENE_MODEL:
+				{
+					Call call = readCall(in, tag);
+					call.tileZ = in.readInt();
+					call.tileX = in.readInt();
+					call.tileY = in.readInt();
+					call.zoom = in.readInt();
+					call.centerX = in.readInt();
+					call.centerY = in.readInt();
+					call.bufferOffset = in.readInt();
+					call.uvBufferOffset = in.readInt();
+					call.bufferLength = in.readInt();
+					addCall(frame, call);
+					break;
+				}
+				case TAG_MODEL:
+				{
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					capture.models.add(readModel(new DataInputStream(new ByteArrayInputStream(bytes))));
+					break;
+				}
+				case TAG_DRAW:
+				{
+					Call call = readCall(in, tag);
+					call.model = in.readInt();
+					call.hash = in.readLong();
+					if (call.model < 0 || call.model >= capture.models.size())
+					{
+						throw new IOException("Draw of an unknown model " + call.model);
+					}
+					addCall(frame, call);
+					break;
+				}
+				case TAG_POST_DRAW_SCENE:
+					if (frame == null)
+					{
+						throw new IOException("postDrawScene outside of a frame");
+					}
+					capture.frames.add(frame);
+					frame = null;
+					break;
+				default:
+					throw new IOException("Unknown record " + tag);
+			}
+		}
+		return capture;
+	}
+
+	private static Call readCall(DataInputStream in, int type) throws IOException
+	{
+		Call call = new Call();
+		call.type = type;
+		call.orientation = in.readInt();
+		call.pitchSin = in.readInt();
+		call.pitchCos = in.readInt();
+		call.yawSin = in.readInt();
+		call.yawCos = in.readInt();
+		call.x = in.readInt();
+		call.y = in.readInt();
+		call.z = in.readInt();
+		return call;
+	}
+
+	private static void addCall(Frame frame, Call call) throws IOException
+	{
+		if (frame == null)
+		{
+			throw new IOException("Draw callback outside of a frame");
+		}
+		frame.calls.add(call);
+	}
+
+	private static CapturedModel readModel(DataInputStream in) throws IOException
+	{
+		CapturedModel model = new CapturedModel();
+		int flags = in.readUnsignedByte();
+		model.sceneModel = (flags & MODEL_FLAG_SCENE) != 0;
+		model.faceCount = in.readInt();
+		model.verticesCount = in.readInt();
+		model.bufferOffset = in.readInt();
+		model.uvBufferOffset = in.readInt();
+		model.radius = in.readInt();
+		model.xyzMag = in.readInt();
+		model.bottomY = in.readInt();
+		model.modelHeight = in.readInt();
+		if (model.sceneModel)
+		{
+			return model;
+		}
+
+		model.overrideAmount = in.readByte();
+		model.overrideHue = in.readByte();
+		model.overrideSaturation = in.readByte();
+		model.overrideLuminance = in.readByte();
+		model.verticesX = readInts(in);
+		model.verticesY = readInts(in);
+		model.verticesZ = readInts(in);
+		model.vertexNormalsX = readInts(in);
+		model.vertexNormalsY = readInts(in);
+		model.vertexNormalsZ = readInts(in);
+		model.faceIndices1 = readInts(in);
+		model.faceIndices2 = readInts(in);
+		model.faceIndices3 = readInts(in);
+		model.faceColors1 = readInts(in);
+		model.faceColors2 = readInts(in);
+		model.faceColors3 = readInts(in);
+
+		int length = in.readInt();
+		if (length >= 0)
+		{
+			model.faceTextures = new short[length];
+			for (int i = 0; i < length; i++)
+			{
+				model.faceTextures[i] = in.readShort();
+			}
+		}
+
+		length = in.readInt();
+		if (length >= 0)
+		{
+			model.faceTextureUVCoordinates = new float[length];
+			for (int i = 0; i < length; i++)
+			{
+				model.faceTextureUVCoordinates[i] = in.readFloat();
+			}
+		}
+
+		model.faceTransparencies = readBytes(in);
+		model.faceRenderPriorities = readBytes(in);
+		return model;
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		int[] array = new int[length];
+		for (int i = 0; i < length; i++)
+		{
+			array[i] = in.readInt();
+		}
+		return array;
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		byte[] array = new byte[length];
+		in.readFully(array);
+		return array;
+	}
+}
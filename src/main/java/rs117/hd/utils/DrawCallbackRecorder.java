@@ -0,0 +1,403 @@
+package rs117.hd.utils;
+
+import com.google.common.hash.Hashing;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.Model;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+
+import static rs117.hd.utils.DrawCallbackCapture.*;
+
+/**
+ * Records the draw callbacks the plugin receives into a capture file, which can be read back with
+ * {@link DrawCallbackCapture} to replay heavy frames without a client.
+ *
+ * Recording is started and stopped from any thread, and takes effect at the start of the next frame, so a
+ * capture only ever contains whole frames. Each distinct model is only written once per capture.
+ */
+@Slf4j
+@Singleton
+public class DrawCallbackRecorder
+{
+	// stops recording once this many frames have been captured, to keep captures from growing without bound
+	private static final int MAX_FRAMES = 3000;
+
+	private volatile File pendingFile;
+	private volatile boolean pendingStop;
+
+	private File file;
+	private DataOutputStream out;
+	private boolean inFrame;
+	private int frameCount;
+
+	// the index of each model written so far, by a hash of its serialized form
+	private final Map<Long, Integer> modelIndices = new HashMap<>();
+	private final ByteArrayOutputStream modelBytes = new ByteArrayOutputStream();
+	private final DataOutputStream modelOut = new DataOutputStream(modelBytes);
+
+	/**
+	 * Starts recording into the file from the next frame, replacing any recording in progress.
+	 */
+	public void start(File file)
+	{
+		pendingFile = file;
+	}
+
+	/**
+	 * Stops recording after the current frame, or cancels a recording which hasn't started yet.
+	 */
+	public void stop()
+	{
+		pendingFile = null;
+		pendingStop = true;
+	}
+
+	/**
+	 * Finishes any recording in progress right away. Must be called from the thread the draw callbacks are called on.
+	 */
+	public void shutDown()
+	{
+		pendingFile = null;
+		pendingStop = false;
+		close();
+	}
+
+	public boolean isRecording()
+	{
+		return out != null || pendingFile != null;
+	}
+
+	public void drawScene(Client client, int cameraX, int cameraY, int cameraZ, int cameraPitch, int cameraYaw, int plane)
+	{
+		if (pendingStop)
+		{
+			pendingStop = false;
+			close();
+		}
+		File nextFile = pendingFile;
+		if (nextFile != null)
+		{
+			pendingFile = null;
+			close();
+			open(nextFile);
+		}
+		if (out == null)
+		{
+			return;
+		}
+
+		try
+		{
+			out.writeByte(TAG_DRAW_SCENE);
+			out.writeInt(cameraX);
+			out.writeInt(cameraY);
+			out.writeInt(cameraZ);
+			out.writeInt(cameraPitch);
+			out.writeInt(cameraYaw);
+			out.writeInt(plane);
+			out.writeInt(client.getCameraX2());
+			out.writeInt(client.getCameraY2());
+			out.writeInt(client.getCameraZ2());
+			out.writeInt(client.get3dZoom());
+			out.writeInt(client.getRasterizer3D_clipMidX2());
+			out.writeInt(client.getRasterizer3D_clipNegativeMidX());
+			out.writeInt(client.getRasterizer3D_clipNegativeMidY());
+			out.writeInt(client.getRasterizer3D_clipMidY2());
+			inFrame = true;
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	public void drawScenePaint(int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z,
+		SceneTilePaint paint, int tileZ, int tileX, int tileY, int zoom, int centerX, int centerY)
+	{
+		if (!inFrame)
+		{
+			return;
+		}
+
+		try
+		{
+			writeCall(TAG_DRAW_SCENE_PAINT, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z);
+			writeTile(tileZ, tileX, tileY, zoom, centerX, centerY, paint.getBufferOffset(), paint.getUvBufferOffset(), paint.getBufferLen());
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	public void drawSceneModel(int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z,
+		SceneTileModel model, int tileZ, int tileX, int tileY, int zoom, int centerX, int centerY)
+	{
+		if (!inFrame)
+		{
+			return;
+		}
+
+		try
+		{
+			writeCall(TAG_DRAW_SCENE_MODEL, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z);
+			writeTile(tileZ, tileX, tileY, zoom, centerX, centerY, model.getBufferOffset(), model.getUvBufferOffset(), model.getBufferLen());
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	/**
+	 * Records a draw of a model, after it has been resolved from the renderable being drawn.
+	 *
+	 * @param sceneModel whether the model's geometry is in the scene buffers
+	 */
+	public void draw(Model model, boolean sceneModel, int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos,
+		int x, int y, int z, long hash)
+	{
+		if (!inFrame)
+		{
+			return;
+		}
+
+		try
+		{
+			int index = writeModel(model, sceneModel);
+			writeCall(TAG_DRAW, orientation, pitchSin, pitchCos, yawSin, yawCos, x, y, z);
+			out.writeInt(index);
+			out.writeLong(hash);
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	public void postDrawScene()
+	{
+		if (!inFrame)
+		{
+			return;
+		}
+
+		try
+		{
+			out.writeByte(TAG_POST_DRAW_SCENE);
+			inFrame = false;
+			if (++frameCount >= MAX_FRAMES)
+			{
+				log.info("Stopping draw callback recording after {} frames", frameCount);
+				close();
+			}
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	private void open(File file)
+	{
+		try
+		{
+			File dir = file.getParentFile();
+			if (dir != null && !dir.exists() && !dir.mkdirs())
+			{
+				throw new IOException("Unable to create directory " + dir);
+			}
+			out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			this.file = file;
+			frameCount = 0;
+			modelIndices.clear();
+			log.info("Recording draw callbacks to {}", file);
+		}
+		catch (IOException ex)
+		{
+			fail(ex);
+		}
+	}
+
+	private void close()
+	{
+		if (out == null)
+		{
+			return;
+		}
+
+		try
+		{
+			// a frame which was cut short has no postDrawScene record, so it's dropped when reading
+			out.writeByte(TAG_END);
+			out.close();
+			log.info("Recorded {} frames of draw callbacks to {}", frameCount, file);
+		}
+		catch (IOException ex)
+		{
+			log.error("Failed to finish writing draw callbacks to {}", file, ex);
+		}
+		out = null;
+		inFrame = false;
+		modelIndices.clear();
+	}
+
+	private void fail(IOException ex)
+	{
+		log.error("Failed to record draw callbacks to {}", file, ex);
+		if (out != null)
+		{
+			try
+			{
+				out.close();
+			}
+			catch (IOException ignored)
+			{
+			}
+		}
+		out = null;
+		inFrame = false;
+		modelIndices.clear();
+	}
+
+	private void writeCall(int tag, int orientation, int pitchSin, int pitchCos, int yawSin, int yawCos, int x, int y, int z) throws IOException
+	{
+		out.writeByte(tag);
+		out.writeInt(orientation);
+		out.writeInt(pitchSin);
+		out.writeInt(pitchCos);
+		out.writeInt(yawSin);
+		out.writeInt(yawCos);
+		out.writeInt(x);
+		out.writeInt(y);
+		out.writeInt(z);
+	}
+
+	private void writeTile(int tileZ, int tileX, int tileY, int zoom, int centerX, int centerY,
+		int bufferOffset, int uvBufferOffset, int bufferLength) throws IOException
+	{
+		out.writeInt(tileZ);
+		out.writeInt(tileX);
+		out.writeInt(tileY);
+		out.writeInt(zoom);
+		out.writeInt(centerX);
+		out.writeInt(centerY);
+		out.writeInt(bufferOffset);
+		out.writeInt(uvBufferOffset);
+		out.writeInt(bufferLength);
+	}
+
+	/**
+	 * Writes the model unless an identical one has already been written.
+	 *
+	 * @return the index of the model in the capture
+	 */
+	private int writeModel(Model model, boolean sceneModel) throws IOException
+	{
+		model.calculateBoundsCylinder();
+
+		modelBytes.reset();
+		DataOutputStream m = modelOut;
+		m.writeByte(sceneModel ? MODEL_FLAG_SCENE : 0);
+		m.writeInt(model.getFaceCount());
+		m.writeInt(model.getVerticesCount());
+		m.writeInt(model.getBufferOffset());
+		m.writeInt(model.getUvBufferOffset());
+		m.writeInt(model.getRadius());
+		m.writeInt(model.getXYZMag());
+		m.writeInt(model.getBottomY());
+		m.writeInt(model.getModelHeight());
+		if (!sceneModel)
+		{
+			m.writeByte(model.getOverrideAmount());
+			m.writeByte(model.getOverrideHue());
+			m.writeByte(model.getOverrideSaturation());
+			m.writeByte(model.getOverrideLuminance());
+			writeInts(m, model.getVerticesX());
+			writeInts(m, model.getVerticesY());
+			writeInts(m, model.getVerticesZ());
+			writeInts(m, model.getVertexNormalsX());
+			writeInts(m, model.getVertexNormalsY());
+			writeInts(m, model.getVertexNormalsZ());
+			writeInts(m, model.getFaceIndices1());
+			writeInts(m, model.getFaceIndices2());
+			writeInts(m, model.getFaceIndices3());
+			writeInts(m, model.getFaceColors1());
+			writeInts(m, model.getFaceColors2());
+			writeInts(m, model.getFaceColors3());
+
+			short[] faceTextures = model.getFaceTextures();
+			m.writeInt(faceTextures == null ? -1 : faceTextures.length);
+			if (faceTextures != null)
+			{
+				for (short texture : faceTextures)
+				{
+					m.writeShort(texture);
+				}
+			}
+
+			float[] uvs = model.getFaceTextureUVCoordinates();
+			m.writeInt(uvs == null ? -1 : uvs.length);
+			if (uvs != null)
+			{
+				for (float uv : uvs)
+				{
+					m.writeFloat(uv);
+				}
+			}
+
+			writeBytes(m, model.getFaceTransparencies());
+			writeBytes(m, model.getFaceRenderPriorities());
+		}
+		m.flush();
+
+		byte[] bytes = modelBytes.toByteArray();
+		long key = Hashing.murmur3_128().hashBytes(bytes).asLong();
+		Integer index = modelIndices.get(key);
+		if (index != null)
+		{
+			return index;
+		}
+
+		index = modelIndices.size();
+		modelIndices.put(key, index);
+		out.writeByte(TAG_MODEL);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return index;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] array) throws IOException
+	{
+		out.writeInt(array == null ? -1 : array.length);
+		if (array != null)
+		{
+			for (int value : array)
+			{
+				out.writeInt(value);
+			}
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] array) throws IOException
+	{
+		out.writeInt(array == null ? -1 : array.length);
+		if (array != null)
+		{
+			out.write(array);
+		}
+	}
+}
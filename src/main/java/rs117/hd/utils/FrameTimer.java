@@ -0,0 +1,307 @@
+package rs117.hd.utils;
+
+import com.jogamp.opengl.GL4;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import javax.inject.Singleton;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records how long each section of a frame takes, over a rolling window of recent frames.
+ *
+ * CPU sections are measured with {@link System#nanoTime()}, and may be entered several times per frame,
+ * in which case their times are summed. GPU sections are measured with {@code GL_TIME_ELAPSED} queries,
+ * which are kept in a ring spanning several frames. Their results are only read once available, so reading
+ * them never stalls the pipeline, and they are attributed to the frame they were issued in.
+ *
+ * Nothing is recorded while the timer is disabled.
+ */
+@Slf4j
+@Singleton
+public class FrameTimer
+{
+	@Getter
+	@RequiredArgsConstructor
+	public enum Section
+	{
+		DRAW_FRAME("Draw frame", false),
+		SCENE_UPLOAD("Scene upload", false),
+		MODEL_PUSH("Model push", false),
+		BUFFER_UPLOAD("Buffer upload", false),
+		COMPUTE("Compute", true),
+		SHADOW_PASS("Shadow pass", true),
+		MAIN_PASS("Main pass", true);
+
+		private final String name;
+		private final boolean gpu;
+	}
+
+	private static final Section[] SECTIONS = Section.values();
+
+	// the number of frames kept for percentiles and CSV dumps
+	static final int HISTORY_SIZE = 1000;
+	// the number of frames GPU queries may lag behind before their sections are skipped
+	private static final int QUERY_FRAMES = 4;
+	private static final long NOT_RECORDED = -1;
+
+	@Getter
+	private volatile boolean enabled;
+
+	// the frame currently being recorded, counted from when the timer was enabled
+	private long frame;
+	private final long[][] samples = new long[SECTIONS.length][HISTORY_SIZE];
+	private final long[] cpuStarts = new long[SECTIONS.length];
+	private final long[] cpuTotals = new long[SECTIONS.length];
+	private final long[] sortScratch = new long[HISTORY_SIZE];
+
+	// one query per GPU section per frame in the ring, or null if not created yet
+	private int[] queries;
+	// the frame each query was issued in, or -1 if it has no pending result
+	private final long[] queryFrames = new long[QUERY_FRAMES * SECTIONS.length];
+	private int activeQuery = -1;
+	private final int[] queryAvailable = new int[1];
+	private final long[] queryResult = new long[1];
+
+	public FrameTimer()
+	{
+		reset();
+	}
+
+	public synchronized void setEnabled(boolean enabled)
+	{
+		if (enabled && !this.enabled)
+		{
+			reset();
+		}
+		this.enabled = enabled;
+	}
+
+	private synchronized void reset()
+	{
+		frame = 0;
+		for (long[] sectionSamples : samples)
+		{
+			Arrays.fill(sectionSamples, NOT_RECORDED);
+		}
+		Arrays.fill(cpuTotals, NOT_RECORDED);
+		Arrays.fill(queryFrames, -1);
+		activeQuery = -1;
+	}
+
+	public void begin(Section section)
+	{
+		if (enabled)
+		{
+			cpuStarts[section.ordinal()] = System.nanoTime();
+		}
+	}
+
+	public void end(Section section)
+	{
+		if (enabled)
+		{
+			int i = section.ordinal();
+			long elapsed = System.nanoTime() - cpuStarts[i];
+			cpuTotals[i] = cpuTotals[i] == NOT_RECORDED ? elapsed : cpuTotals[i] + elapsed;
+		}
+	}
+
+	/**
+	 * Starts timing a GPU section. Only one GPU section can be timed at a time.
+	 */
+	public void beginGpu(GL4 gl, Section section)
+	{
+		if (!enabled || activeQuery != -1)
+		{
+			return;
+		}
+
+		if (queries == null)
+		{
+			queries = new int[QUERY_FRAMES * SECTIONS.length];
+			gl.glGenQueries(queries.length, queries, 0);
+		}
+
+		int query = (int) (frame % QUERY_FRAMES) * SECTIONS.length + section.ordinal();
+		if (queryFrames[query] != -1 && !collectQuery(gl, query))
+		{
+			// the GPU is too far behind, so skip this section instead of waiting for the previous result
+			return;
+		}
+
+		gl.glBeginQuery(gl.GL_TIME_ELAPSED, queries[query]);
+		activeQuery = query;
+	}
+
+	public void endGpu(GL4 gl, Section section)
+	{
+		if (activeQuery == -1 || activeQuery % SECTIONS.length != section.ordinal())
+		{
+			return;
+		}
+
+		gl.glEndQuery(gl.GL_TIME_ELAPSED);
+		queryFrames[activeQuery] = frame;
+		activeQuery = -1;
+	}
+
+	/**
+	 * Should be called once all sections of a frame have been recorded, on the thread owning the GL context.
+	 */
+	public void endFrame(GL4 gl)
+	{
+		if (!enabled)
+		{
+			destroy(gl);
+			return;
+		}
+
+		if (queries != null)
+		{
+			for (int query = 0; query < queries.length; query++)
+			{
+				if (queryFrames[query] != -1)
+				{
+					collectQuery(gl, query);
+				}
+			}
+		}
+
+		synchronized (this)
+		{
+			int row = (int) (frame % HISTORY_SIZE);
+			for (int i = 0; i < SECTIONS.length; i++)
+			{
+				if (!SECTIONS[i].gpu)
+				{
+					samples[i][row] = cpuTotals[i];
+				}
+			}
+			Arrays.fill(cpuTotals, NOT_RECORDED);
+
+			frame++;
+			row = (int) (frame % HISTORY_SIZE);
+			for (long[] sectionSamples : samples)
+			{
+				sectionSamples[row] = NOT_RECORDED;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the GPU queries. Results which haven't been read yet are discarded.
+	 */
+	public void destroy(GL4 gl)
+	{
+		if (queries != null)
+		{
+			if (activeQuery != -1)
+			{
+				gl.glEndQuery(gl.GL_TIME_ELAPSED);
+				activeQuery = -1;
+			}
+			gl.glDeleteQueries(queries.length, queries, 0);
+			queries = null;
+			Arrays.fill(queryFrames, -1);
+		}
+	}
+
+	/**
+	 * @return true if the result was available, in which case the query can be reused
+	 */
+	private boolean collectQuery(GL4 gl, int query)
+	{
+		gl.glGetQueryObjectuiv(queries[query], gl.GL_QUERY_RESULT_AVAILABLE, queryAvailable, 0);
+		if (queryAvailable[0] == 0)
+		{
+			return false;
+		}
+
+		gl.glGetQueryObjectui64v(queries[query], gl.GL_QUERY_RESULT, queryResult, 0);
+		record(SECTIONS[query % SECTIONS.length], queryFrames[query], queryResult[0]);
+		queryFrames[query] = -1;
+		return true;
+	}
+
+	synchronized void record(Section section, long frame, long nanos)
+	{
+		// results for frames which have already left the window are dropped
+		if (frame <= this.frame && this.frame - frame < HISTORY_SIZE)
+		{
+			samples[section.ordinal()][(int) (frame % HISTORY_SIZE)] = nanos;
+		}
+	}
+
+	/**
+	 * Calculates nearest-rank percentiles over the frames in the window where the section was recorded.
+	 *
+	 * @param percentiles in the range 0 to 100
+	 * @return the percentiles in milliseconds, or null if the section hasn't been recorded
+	 */
+	public synchronized double[] getPercentiles(Section section, double... percentiles)
+	{
+		int count = 0;
+		for (long sample : samples[section.ordinal()])
+		{
+			if (sample != NOT_RECORDED)
+			{
+				sortScratch[count++] = sample;
+			}
+		}
+		if (count == 0)
+		{
+			return null;
+		}
+
+		Arrays.sort(sortScratch, 0, count);
+		double[] result = new double[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++)
+		{
+			int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+			result[i] = sortScratch[Math.max(0, Math.min(count - 1, rank - 1))] / 1e6;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the completed frames in the window to a CSV file, with one row per frame and one column
+	 * per section in milliseconds. Sections which weren't recorded in a frame are left empty.
+	 */
+	public synchronized void writeCsv(File file) throws IOException
+	{
+		try (PrintWriter out = new PrintWriter(file, "UTF-8"))
+		{
+			out.print("frame");
+			for (Section section : SECTIONS)
+			{
+				out.print(',');
+				out.print(section.name + (section.gpu ? " (GPU)" : " (CPU)"));
+			}
+			out.println();
+
+			for (long f = Math.max(0, frame - HISTORY_SIZE + 1); f < frame; f++)
+			{
+				out.print(f);
+				int row = (int) (f % HISTORY_SIZE);
+				for (long[] sectionSamples : samples)
+				{
+					out.print(',');
+					if (sectionSamples[row] != NOT_RECORDED)
+					{
+						out.print(sectionSamples[row] / 1e6);
+					}
+				}
+				out.println();
+			}
+
+			if (out.checkError())
+			{
+				throw new IOException("Failed to write frame timings to " + file);
+			}
+		}
+	}
+}
@@ -121,15 +121,27 @@ public class HDUtils
 		return out;
 	}
 
-	public static int vertexHash(int[] vPos)
+	/**
+	 * Number of bits used for each component of a vertex key.
+	 * Each component is stored in two's complement, so values in the range [-2^20, 2^20) are packed exactly.
+	 */
+	public static final int VERTEX_KEY_COMPONENT_BITS = 21;
+	private static final long VERTEX_KEY_COMPONENT_MASK = (1L << VERTEX_KEY_COMPONENT_BITS) - 1;
+
+	/**
+	 * Packs a vertex position into a collision-free key. Any two distinct positions within
+	 * the supported component range are guaranteed to produce different keys.
+	 *
+	 * @param x      local X coordinate
+	 * @param y      local Y coordinate
+	 * @param height vertex height
+	 * @return the packed vertex key
+	 */
+	public static long vertexKey(int x, int y, int height)
 	{
-		// simple custom hashing function for vertex position data
-		StringBuilder s = new StringBuilder();
-		for (int i = 0; i < vPos.length; i++)
-		{
-			s.append(vPos[i]).append(",");
-		}
-		return s.toString().hashCode();
+		return (x & VERTEX_KEY_COMPONENT_MASK) << (VERTEX_KEY_COMPONENT_BITS * 2) |
+			(y & VERTEX_KEY_COMPONENT_MASK) << VERTEX_KEY_COMPONENT_BITS |
+			(height & VERTEX_KEY_COMPONENT_MASK);
 	}
 
 	public static float[] calculateSurfaceNormals(int[] vertexX, int[] vertexY, int[] vertexZ)
@@ -28,9 +28,12 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
-public class GpuFloatBuffer
+public class GpuFloatBuffer implements StreamableBuffer
 {
-	private FloatBuffer buffer = allocateDirect(65536);
+	private static final int INITIAL_CAPACITY = 65536;
+
+	private FloatBuffer buffer = allocateDirect(INITIAL_CAPACITY);
+	private boolean wrapping;
 
 	public void put(float texture, float u, float v, float pad)
 	{
@@ -41,6 +44,21 @@ public class GpuFloatBuffer
 		buffer.put(floats);
 	}
 
+	/**
+	 * Copies the range [start, end) of another buffer, leaving its position and limit untouched.
+	 */
+	public void put(FloatBuffer src, int start, int end)
+	{
+		ensureCapacity(end - start);
+		final int position = src.position();
+		final int limit = src.limit();
+		src.limit(end);
+		src.position(start);
+		buffer.put(src);
+		src.limit(limit);
+		src.position(position);
+	}
+
 	public void flip()
 	{
 		buffer.flip();
@@ -67,6 +85,7 @@ public class GpuFloatBuffer
 			buffer.flip();
 			newB.put(buffer);
 			buffer = newB;
+			wrapping = false;
 		}
 	}
 
@@ -75,6 +94,41 @@ public class GpuFloatBuffer
 		return buffer;
 	}
 
+	@Override
+	public void wrap(ByteBuffer memory)
+	{
+		buffer = memory.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		wrapping = true;
+	}
+
+	@Override
+	public void unwrap()
+	{
+		if (wrapping)
+		{
+			buffer = allocateDirect(INITIAL_CAPACITY);
+			wrapping = false;
+		}
+	}
+
+	@Override
+	public boolean isWrapping()
+	{
+		return wrapping;
+	}
+
+	@Override
+	public int getByteSize()
+	{
+		return buffer.limit() * Float.BYTES;
+	}
+
+	@Override
+	public void copyTo(ByteBuffer memory)
+	{
+		memory.order(ByteOrder.nativeOrder()).asFloatBuffer().put(buffer.duplicate());
+	}
+
 	public static FloatBuffer allocateDirect(int size)
 	{
 		return ByteBuffer.allocateDirect(size * Float.BYTES)
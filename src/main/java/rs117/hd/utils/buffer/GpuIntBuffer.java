@@ -28,9 +28,12 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
-public class GpuIntBuffer
+public class GpuIntBuffer implements StreamableBuffer
 {
-	private IntBuffer buffer = allocateDirect(65536);
+	private static final int INITIAL_CAPACITY = 65536;
+
+	private IntBuffer buffer = allocateDirect(INITIAL_CAPACITY);
+	private boolean wrapping;
 
 	public void put(int x, int y, int z)
 	{
@@ -46,6 +49,21 @@ public class GpuIntBuffer
 		buffer.put(ints);
 	}
 
+	/**
+	 * Copies the range [start, end) of another buffer, leaving its position and limit untouched.
+	 */
+	public void put(IntBuffer src, int start, int end)
+	{
+		ensureCapacity(end - start);
+		final int position = src.position();
+		final int limit = src.limit();
+		src.limit(end);
+		src.position(start);
+		buffer.put(src);
+		src.limit(limit);
+		src.position(position);
+	}
+
 	public void flip()
 	{
 		buffer.flip();
@@ -72,6 +90,7 @@ public class GpuIntBuffer
 			buffer.flip();
 			newB.put(buffer);
 			buffer = newB;
+			wrapping = false;
 		}
 
 		return this;
@@ -82,6 +101,41 @@ public class GpuIntBuffer
 		return buffer;
 	}
 
+	@Override
+	public void wrap(ByteBuffer memory)
+	{
+		buffer = memory.order(ByteOrder.nativeOrder()).asIntBuffer();
+		wrapping = true;
+	}
+
+	@Override
+	public void unwrap()
+	{
+		if (wrapping)
+		{
+			buffer = allocateDirect(INITIAL_CAPACITY);
+			wrapping = false;
+		}
+	}
+
+	@Override
+	public boolean isWrapping()
+	{
+		return wrapping;
+	}
+
+	@Override
+	public int getByteSize()
+	{
+		return buffer.limit() * Integer.BYTES;
+	}
+
+	@Override
+	public void copyTo(ByteBuffer memory)
+	{
+		memory.order(ByteOrder.nativeOrder()).asIntBuffer().put(buffer.duplicate());
+	}
+
 	public static IntBuffer allocateDirect(int size)
 	{
 		return ByteBuffer.allocateDirect(size * Integer.BYTES)
@@ -0,0 +1,82 @@
+package rs117.hd.utils.buffer;
+
+import com.jogamp.opengl.GL4;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import static rs117.hd.utils.GLUtil.glDeleteBuffer;
+import static rs117.hd.utils.GLUtil.glGenBuffers;
+import static rs117.hd.utils.GLUtil.glGetInteger;
+
+public class JoglStreamingGL implements StreamingGL
+{
+	private final GL4 gl;
+	private final Map<Integer, ByteBuffer> mappings = new HashMap<>();
+
+	public JoglStreamingGL(GL4 gl)
+	{
+		this.gl = gl;
+	}
+
+	@Override
+	public boolean isBufferStorageSupported()
+	{
+		return gl.isExtensionAvailable("GL_ARB_buffer_storage") && gl.isFunctionAvailable("glBufferStorage");
+	}
+
+	@Override
+	public int getStorageBufferOffsetAlignment()
+	{
+		return glGetInteger(gl, gl.GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT);
+	}
+
+	@Override
+	public int createMappedBuffer(long size)
+	{
+		final int flags = gl.GL_MAP_WRITE_BIT | gl.GL_MAP_PERSISTENT_BIT | gl.GL_MAP_COHERENT_BIT;
+		int buffer = glGenBuffers(gl);
+		gl.glBindBuffer(gl.GL_ARRAY_BUFFER, buffer);
+		gl.glBufferStorage(gl.GL_ARRAY_BUFFER, size, null, flags);
+		mappings.put(buffer, gl.glMapBufferRange(gl.GL_ARRAY_BUFFER, 0, size, flags));
+		gl.glBindBuffer(gl.GL_ARRAY_BUFFER, 0);
+		return buffer;
+	}
+
+	@Override
+	public ByteBuffer getMapping(int buffer)
+	{
+		return mappings.get(buffer);
+	}
+
+	@Override
+	public void deleteMappedBuffer(int buffer)
+	{
+		if (mappings.remove(buffer) != null)
+		{
+			gl.glBindBuffer(gl.GL_ARRAY_BUFFER, buffer);
+			gl.glUnmapBuffer(gl.GL_ARRAY_BUFFER);
+			gl.glBindBuffer(gl.GL_ARRAY_BUFFER, 0);
+		}
+		glDeleteBuffer(gl, buffer);
+	}
+
+	@Override
+	public long fenceSync()
+	{
+		return gl.glFenceSync(gl.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+	}
+
+	@Override
+	public boolean clientWaitSync(long sync, long timeoutNanos)
+	{
+		int result = gl.glClientWaitSync(sync, gl.GL_SYNC_FLUSH_COMMANDS_BIT, timeoutNanos);
+		// a failed wait means the fence is unusable, so there's nothing left to wait for
+		return result != gl.GL_TIMEOUT_EXPIRED;
+	}
+
+	@Override
+	public void deleteSync(long sync)
+	{
+		gl.glDeleteSync(sync);
+	}
+}
@@ -0,0 +1,210 @@
+package rs117.hd.utils.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams per-frame data to the GPU through persistently mapped buffers, so it can be written directly into
+ * GPU-visible memory instead of being copied by the driver on upload.
+ *
+ * Each buffer is split into {@link #REGIONS} equally sized regions, and each frame writes into the next region
+ * in turn. A fence is inserted once the GPU commands reading a frame's region have been issued, and the region
+ * isn't written to again until that fence has been signaled, which normally happens long before the ring wraps.
+ *
+ * When a frame writes more than fits in a region, the buffer outgrows the mapped memory and continues in regular
+ * memory. The GL buffer is then recreated with larger regions once the GPU is done with all of them, and the
+ * frame's contents are copied over.
+ */
+@Slf4j
+public class PersistentBufferRing
+{
+	public static final int REGIONS = 3;
+	static final long INITIAL_REGION_SIZE = 1 << 20;
+	private static final long FENCE_TIMEOUT_NANOS = 1_000_000_000L;
+
+	private final StreamingGL gl;
+	private final long alignment;
+	private final List<Stream> streams = new ArrayList<>();
+	private final long[] fences = new long[REGIONS];
+
+	@Getter
+	private int region = REGIONS - 1;
+	private boolean frameStarted;
+
+	public class Stream
+	{
+		private final StreamableBuffer target;
+		@Getter
+		private int glBufferId;
+		@Getter
+		private long regionSize;
+
+		private Stream(StreamableBuffer target)
+		{
+			this.target = target;
+		}
+
+		/**
+		 * @return the byte offset of the current frame's region
+		 */
+		public long getOffset()
+		{
+			return region * regionSize;
+		}
+
+		private void allocate(long regionSize)
+		{
+			this.regionSize = (regionSize + alignment - 1) / alignment * alignment;
+			glBufferId = gl.createMappedBuffer(this.regionSize * REGIONS);
+		}
+
+		private ByteBuffer slice(int region)
+		{
+			ByteBuffer mapping = gl.getMapping(glBufferId).duplicate();
+			mapping.limit((int) ((region + 1) * regionSize));
+			mapping.position((int) (region * regionSize));
+			return mapping.slice();
+		}
+	}
+
+	public PersistentBufferRing(StreamingGL gl)
+	{
+		this.gl = gl;
+		this.alignment = Math.max(1, gl.getStorageBufferOffsetAlignment());
+	}
+
+	public static boolean isSupported(StreamingGL gl)
+	{
+		return gl.isBufferStorageSupported();
+	}
+
+	/**
+	 * Streams the contents of the given buffer from now on. The buffer starts writing to mapped memory
+	 * from the next call to {@link #beginFrame()}.
+	 */
+	public Stream add(StreamableBuffer target)
+	{
+		Stream stream = new Stream(target);
+		stream.allocate(INITIAL_REGION_SIZE);
+		streams.add(stream);
+		return stream;
+	}
+
+	/**
+	 * Moves on to the next region, waiting for the GPU to finish reading from it if necessary, and points
+	 * every buffer at it. Calling this again before {@link #endFrame()} restarts the current frame.
+	 */
+	public void beginFrame()
+	{
+		if (!frameStarted)
+		{
+			region = (region + 1) % REGIONS;
+			waitForFence(region);
+			frameStarted = true;
+		}
+
+		for (Stream stream : streams)
+		{
+			stream.target.wrap(stream.slice(region));
+		}
+	}
+
+	/**
+	 * Should be called once the buffers have been flipped, before the GPU reads from them. Moves the contents
+	 * of buffers which outgrew their regions into recreated GL buffers, which stalls until the GPU is idle.
+	 */
+	public void finishWrites()
+	{
+		boolean waited = false;
+		for (Stream stream : streams)
+		{
+			if (stream.target.isWrapping())
+			{
+				continue;
+			}
+
+			if (!waited)
+			{
+				for (int i = 0; i < REGIONS; i++)
+				{
+					waitForFence(i);
+				}
+				waited = true;
+			}
+
+			long size = stream.target.getByteSize();
+			long regionSize = stream.regionSize;
+			while (regionSize < size)
+			{
+				regionSize *= 2;
+			}
+
+			if (regionSize > stream.regionSize)
+			{
+				log.debug("Growing streamed buffer {} from {} to {} bytes per region", stream.glBufferId, stream.regionSize, regionSize);
+				gl.deleteMappedBuffer(stream.glBufferId);
+				stream.allocate(regionSize);
+			}
+			stream.target.copyTo(stream.slice(region));
+		}
+	}
+
+	/**
+	 * Should be called once every GPU command reading from the current frame's region has been issued.
+	 */
+	public void endFrame()
+	{
+		if (!frameStarted)
+		{
+			return;
+		}
+
+		fences[region] = gl.fenceSync();
+		frameStarted = false;
+	}
+
+	/**
+	 * Points every buffer back at regular memory, so they can be written to outside of frames.
+	 */
+	public void detach()
+	{
+		for (Stream stream : streams)
+		{
+			stream.target.unwrap();
+		}
+	}
+
+	public void destroy()
+	{
+		detach();
+		for (int i = 0; i < REGIONS; i++)
+		{
+			waitForFence(i);
+		}
+		for (Stream stream : streams)
+		{
+			gl.deleteMappedBuffer(stream.glBufferId);
+		}
+		streams.clear();
+		frameStarted = false;
+	}
+
+	private void waitForFence(int region)
+	{
+		long fence = fences[region];
+		if (fence == 0)
+		{
+			return;
+		}
+
+		if (!gl.clientWaitSync(fence, FENCE_TIMEOUT_NANOS))
+		{
+			log.warn("Timed out waiting for the GPU to finish reading streamed buffers");
+		}
+		gl.deleteSync(fence);
+		fences[region] = 0;
+	}
+}
@@ -0,0 +1,99 @@
+package rs117.hd.utils.buffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hands out spans of a fixed capacity, such as ranges of a GL buffer, keeping track of the free spans in a
+ * free list ordered by offset. Allocation is first fit, and freed spans are merged with adjacent free spans.
+ */
+public class SpanAllocator
+{
+	// offset -> length of each free span, none of which are adjacent
+	private final TreeMap<Integer, Integer> freeSpans = new TreeMap<>();
+	private int capacity;
+	private int freeLength;
+
+	/**
+	 * Marks the first {@code used} units as allocated, and the rest up to the capacity as free.
+	 */
+	public void reset(int used, int capacity)
+	{
+		freeSpans.clear();
+		this.capacity = capacity;
+		freeLength = Math.max(0, capacity - used);
+		if (freeLength > 0)
+		{
+			freeSpans.put(used, freeLength);
+		}
+	}
+
+	/**
+	 * @return the offset of the allocated span, or -1 if no free span is large enough
+	 */
+	public int allocate(int length)
+	{
+		if (length <= 0)
+		{
+			return 0;
+		}
+
+		for (Map.Entry<Integer, Integer> span : freeSpans.entrySet())
+		{
+			int spanLength = span.getValue();
+			if (spanLength >= length)
+			{
+				int offset = span.getKey();
+				freeSpans.remove(offset);
+				if (spanLength > length)
+				{
+					freeSpans.put(offset + length, spanLength - length);
+				}
+				freeLength -= length;
+				return offset;
+			}
+		}
+
+		return -1;
+	}
+
+	public void free(int offset, int length)
+	{
+		if (length <= 0)
+		{
+			return;
+		}
+		assert offset >= 0 && offset + length <= capacity;
+		freeLength += length;
+
+		Map.Entry<Integer, Integer> previous = freeSpans.lowerEntry(offset);
+		if (previous != null && previous.getKey() + previous.getValue() == offset)
+		{
+			offset = previous.getKey();
+			length += previous.getValue();
+		}
+
+		Integer nextLength = freeSpans.remove(offset + length);
+		if (nextLength != null)
+		{
+			length += nextLength;
+		}
+
+		freeSpans.put(offset, length);
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public int getFreeLength()
+	{
+		return freeLength;
+	}
+
+	public int getFreeSpanCount()
+	{
+		return freeSpans.size();
+	}
+}
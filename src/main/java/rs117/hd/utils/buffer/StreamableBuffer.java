@@ -0,0 +1,35 @@
+package rs117.hd.utils.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A CPU-side buffer which can write directly into externally provided memory, such as a mapped GL buffer.
+ */
+public interface StreamableBuffer
+{
+	/**
+	 * Makes the buffer write into the provided memory, starting from its beginning.
+	 * If the memory runs out, the contents are moved to a newly allocated buffer, and writing continues there.
+	 */
+	void wrap(ByteBuffer memory);
+
+	/**
+	 * Stops writing into wrapped memory, if any, and discards the contents.
+	 */
+	void unwrap();
+
+	/**
+	 * @return false if the buffer isn't wrapping any memory, or has outgrown it
+	 */
+	boolean isWrapping();
+
+	/**
+	 * @return the size of the contents in bytes, once flipped
+	 */
+	int getByteSize();
+
+	/**
+	 * Copies the contents into the provided memory, once flipped.
+	 */
+	void copyTo(ByteBuffer memory);
+}
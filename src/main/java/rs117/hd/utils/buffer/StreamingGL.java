@@ -0,0 +1,40 @@
+package rs117.hd.utils.buffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The GL calls needed to stream data through persistently mapped buffers,
+ * kept separate from the rest of GL so streaming can be tested without a context.
+ */
+public interface StreamingGL
+{
+	boolean isBufferStorageSupported();
+
+	/**
+	 * @return the alignment required for offsets when binding a range of a buffer as a shader storage buffer
+	 */
+	int getStorageBufferOffsetAlignment();
+
+	/**
+	 * Creates a buffer with immutable storage of the given size, and maps all of it persistently for writing.
+	 *
+	 * @return the buffer name
+	 */
+	int createMappedBuffer(long size);
+
+	ByteBuffer getMapping(int buffer);
+
+	/**
+	 * Unmaps and deletes a buffer created by {@link #createMappedBuffer(long)}.
+	 */
+	void deleteMappedBuffer(int buffer);
+
+	long fenceSync();
+
+	/**
+	 * @return true if the fence was signaled before the timeout
+	 */
+	boolean clientWaitSync(long sync, long timeoutNanos);
+
+	void deleteSync(long sync);
+}
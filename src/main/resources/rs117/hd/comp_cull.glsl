@@ -0,0 +1,149 @@
+// Culls the tiles the client wants drawn against the view frustum and draw distance, and writes the model info
+// of the visible tiles for the unordered compute program, along with the indirect dispatch and draw counts.
+// Tiles are referenced by their slot in the scene tile table, which is uploaded along with the scene.
+
+#include version_header
+
+#define PI 3.1415926535897932384626433832795f
+#define UNIT PI / 1024.0f
+
+#define FLAG_SCENE_BUFFER int(0x80000000u)
+#define FLAG_UNDERWATER_TERRAIN 1
+#define HALF_TILE_SIZE 64
+
+layout(std140) uniform uniforms {
+    int cameraYaw;
+    int cameraPitch;
+    int centerX;
+    int centerY;
+    int zoom;
+    int cameraX;
+    int cameraY;
+    int cameraZ;
+    ivec2 sinCosTable[2048];
+};
+
+uniform int tileCount;
+uniform int viewportWidth;
+uniform int viewportHeight;
+uniform int drawDistance; // in local units
+uniform bool underwaterPass;
+
+struct tiledescriptor {
+    int offset;   // offset of the surface geometry in the scene buffer
+    int uvOffset; // offset of the surface geometry in the scene uv buffer
+    int size;     // length of the surface geometry in faces
+    int flags;
+    int x;        // scene position x
+    int z;        // scene position z
+    int minY;
+    int maxY;
+};
+
+struct modelinfo {
+    int offset;
+    int uvOffset;
+    int size;
+    int idx;
+    int flags;
+    int x;
+    int y;
+    int z;
+};
+
+layout(std430, binding = 0) readonly buffer tileslots_in {
+    int slots[];
+};
+
+layout(std430, binding = 1) readonly buffer tiletable_in {
+    tiledescriptor tiles[];
+};
+
+layout(std430, binding = 2) writeonly buffer modelinfo_out {
+    modelinfo ol[];
+};
+
+layout(std430, binding = 3) buffer dispatch_out {
+    uint numGroupsX;
+    uint numGroupsY;
+    uint numGroupsZ;
+};
+
+// the first of the indirect draw commands, which draws the tiles
+layout(std430, binding = 4) buffer draw_out {
+    uint vertexCount;
+    uint instanceCount;
+    uint firstVertex;
+    uint baseInstance;
+};
+
+layout(local_size_x = 64) in;
+
+// Signed distance from a plane through the camera, given the plane's normal in the (x, depth) plane of the view
+float planeDistance(float x, float depth, float normalX, float normalDepth) {
+    return (x * normalX + depth * normalDepth) / length(vec2(normalX, normalDepth));
+}
+
+bool isVisible(vec3 center, float radius) {
+    vec3 pos = center - vec3(cameraX, cameraY, cameraZ);
+
+    // the client limits its draw distance in tiles around the camera
+    if (max(abs(pos.x), abs(pos.z)) > drawDistance + radius) {
+        return false;
+    }
+
+    float yawSin = sin(cameraYaw * UNIT);
+    float yawCos = cos(cameraYaw * UNIT);
+    float pitchSin = sin(cameraPitch * UNIT);
+    float pitchCos = cos(cameraPitch * UNIT);
+
+    // rotate into view space the same way as toScreen
+    float viewX = pos.z * yawSin + pos.x * yawCos;
+    float rotatedZ = pos.z * yawCos - pos.x * yawSin;
+    float viewY = pos.y * pitchCos - rotatedZ * pitchSin;
+    float depth = pos.y * pitchSin + rotatedZ * pitchCos;
+
+    if (depth < -radius) {
+        return false;
+    }
+
+    // a point is on screen when 0 <= view * zoom / depth + center <= viewport size
+    return planeDistance(viewX, depth, zoom, centerX) >= -radius
+        && planeDistance(-viewX, depth, zoom, viewportWidth - centerX) >= -radius
+        && planeDistance(viewY, depth, zoom, centerY) >= -radius
+        && planeDistance(-viewY, depth, zoom, viewportHeight - centerY) >= -radius;
+}
+
+void main() {
+    uint index = gl_GlobalInvocationID.x;
+    if (index >= uint(tileCount)) {
+        return;
+    }
+
+    tiledescriptor tile = tiles[slots[index]];
+    bool hasUnderwaterTerrain = (tile.flags & FLAG_UNDERWATER_TERRAIN) != 0;
+    // underwater terrain is drawn in a pass of its own, so all of it ends up before the surface tiles
+    if (underwaterPass && !hasUnderwaterTerrain) {
+        return;
+    }
+
+    float halfHeight = (tile.maxY - tile.minY) / 2.0;
+    vec3 center = vec3(tile.x + HALF_TILE_SIZE, tile.minY + halfHeight, tile.z + HALF_TILE_SIZE);
+    float radius = length(vec3(HALF_TILE_SIZE, halfHeight, HALF_TILE_SIZE));
+    if (!isVisible(center, radius)) {
+        return;
+    }
+
+    int offset = tile.offset;
+    int uvOffset = tile.uvOffset;
+    if (underwaterPass) {
+        // the underwater terrain follows the surface geometry
+        offset += tile.size * 3;
+        uvOffset += tile.size * 3;
+    }
+
+    uint outIndex = atomicAdd(numGroupsX, 1u);
+    uint outOffset = firstVertex + atomicAdd(vertexCount, uint(tile.size * 3));
+
+    ol[outIndex] = modelinfo(offset, uvOffset, tile.size, int(outOffset), FLAG_SCENE_BUFFER, tile.x, 0, tile.z);
+}
@@ -0,0 +1,107 @@
+// Sorts models with more faces than fit in the shared memory of comp.glsl. Each work group loops over the faces of
+// its model, keeping the priority totals in shared memory like the other programs, but the sort arrays in global
+// memory, in a region of the scratch buffer reserved for the model by its position in the out buffers.
+
+#include version_header
+
+shared int totalNum[12]; // number of faces with a given priority
+shared int totalDistance[12]; // sum of distances to faces of a given priority
+
+shared int totalMappedNum[18]; // number of faces with a given adjusted priority
+
+shared int min10; // minimum distance to a face of priority 10
+
+#include comp_common.glsl
+
+// for each model, the face id and distance of every face in adjusted priority order,
+// followed by the adjusted priority, the index within that priority and the distance of every face
+// coherent, since threads read the entries other threads of the work group wrote before the barriers
+layout(std430, binding = 10) coherent buffer xlarge_scratch {
+    int dfs[];
+};
+
+layout(local_size_x = 1024) in;
+
+#include common.glsl
+#include priority_render.glsl
+
+void main() {
+    uint groupId = gl_WorkGroupID.x;
+    uint localId = gl_LocalInvocationID.x;
+    uint groupSize = gl_WorkGroupSize.x;
+    modelinfo minfo = ol[groupId];
+    ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
+    uint size = minfo.size;
+
+    // each face takes up four ints of scratch, starting at the model's first face in the out buffers
+    int sortedOffset = minfo.idx / 3 * 4;
+    int faceOffset = sortedOffset + minfo.size * 2;
+
+    if (localId == 0) {
+        min10 = 1600;
+        for (int i = 0; i < 12; ++i) {
+            totalNum[i] = 0;
+            totalDistance[i] = 0;
+        }
+        for (int i = 0; i < 18; ++i) {
+            totalMappedNum[i] = 0;
+        }
+    }
+
+    memoryBarrierShared();
+    barrier();
+
+    int prio, dis;
+    ivec4 vA, vB, vC;
+
+    for (uint face = localId; face < size; face += groupSize) {
+        get_face(face, minfo, cameraYaw, cameraPitch, prio, dis, vA, vB, vC);
+        add_face_prio_distance(face, minfo, vA, vB, vC, prio, dis, pos);
+    }
+
+    memoryBarrierShared();
+    barrier();
+
+    // the faces are read again rather than kept, since a thread handles an unbounded number of them
+    for (uint face = localId; face < size; face += groupSize) {
+        int prioAdj;
+        get_face(face, minfo, cameraYaw, cameraPitch, prio, dis, vA, vB, vC);
+        int idx = map_face_priority(face, minfo, prio, dis, prioAdj);
+        dfs[faceOffset + face * 2] = (idx << 5) | prioAdj;
+        dfs[faceOffset + face * 2 + 1] = dis;
+    }
+
+    memoryBarrierShared();
+    barrier();
+
+    for (uint face = localId; face < size; face += groupSize) {
+        int packed = dfs[faceOffset + face * 2];
+        int i = count_prio_offset(packed & 0x1f) + (packed >> 5);
+        dfs[sortedOffset + i * 2] = int(face);
+        dfs[sortedOffset + i * 2 + 1] = dfs[faceOffset + face * 2 + 1];
+    }
+
+    memoryBarrierBuffer();
+    barrier();
+
+    for (uint face = localId; face < size; face += groupSize) {
+        int prioAdj = dfs[faceOffset + face * 2] & 0x1f;
+        int thisDistance = dfs[faceOffset + face * 2 + 1];
+        int start = count_prio_offset(prioAdj);
+        int end = start + totalMappedNum[prioAdj];
+        int myOffset = start;
+
+        // ordered the same way as sort_and_insert, but without packing the ids and distances into 16 bits each
+        for (int i = start; i < end; ++i) {
+            int theirId = dfs[sortedOffset + i * 2];
+            int theirDistance = dfs[sortedOffset + i * 2 + 1];
+            if ((theirDistance > thisDistance)
+            || (theirDistance == thisDistance && theirId < face)) {
+                ++myOffset;
+            }
+        }
+
+        get_face(face, minfo, cameraYaw, cameraPitch, prio, dis, vA, vB, vC);
+        insert_face(face, minfo, myOffset, vA, vB, vC);
+    }
+}
@@ -129,6 +129,7 @@ out vec4 FragColor;
 #include colorblind.glsl
 #include utils/fetch_material.glsl
 #include utils/caustics.glsl
+#include utils/light_clusters.glsl
 
 #define WATER 1
 #define SWAMP_WATER 3
@@ -749,12 +750,31 @@ void main() {
     // point lights
     vec3 pointLightsOut = vec3(0);
     vec3 pointLightsSpecularOut = vec3(0);
-    for (int i = 0; i < pointLightsCount; i++)
-    {
-        vec3 pointLightPos = vec3(pointLight[i].position.x, pointLight[i].position.z, pointLight[i].position.y);
-        float pointLightStrength = pointLight[i].strength;
-        vec3 pointLightColor = pointLight[i].color * pointLightStrength;
-        float pointLightSize = pointLight[i].size;
+    ivec2 lightCluster = clusteredLighting ? getLightCluster(position) : ivec2(0, pointLightsCount);
+    for (int i = 0; i < lightCluster.y; i++)
+    {
+        vec3 pointLightPos;
+        float pointLightSize;
+        vec3 pointLightColor;
+        float pointLightStrength;
+        if (clusteredLighting)
+        {
+            int lightIndex = texelFetch(clusterLightIndices, lightCluster.x + i).r * 2;
+            vec4 positionAndSize = texelFetch(clusterLights, lightIndex);
+            vec4 colorAndStrength = texelFetch(clusterLights, lightIndex + 1);
+            pointLightPos = positionAndSize.xyz;
+            pointLightSize = positionAndSize.w;
+            pointLightColor = colorAndStrength.rgb;
+            pointLightStrength = colorAndStrength.a;
+        }
+        else
+        {
+            pointLightPos = vec3(pointLight[i].position.x, pointLight[i].position.z, pointLight[i].position.y);
+            pointLightSize = pointLight[i].size;
+            pointLightColor = pointLight[i].color;
+            pointLightStrength = pointLight[i].strength;
+        }
+        pointLightColor *= pointLightStrength;
         float distanceToLightSource = length(pointLightPos - position);
         vec3 pointLightDir = normalize(pointLightPos - position);
 
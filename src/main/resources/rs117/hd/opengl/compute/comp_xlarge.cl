@@ -0,0 +1,100 @@
+// Same as comp_xlarge.glsl. Each work group loops over the faces of a model with more faces than fit in local memory,
+// keeping the sort arrays in a region of the global scratch buffer reserved for the model by its position in the
+// out buffers.
+
+#include cl_types.cl
+#include common.cl
+#include priority_render.cl
+
+__kernel
+__attribute__((work_group_size_hint(256, 1, 1)))
+void computeXLarge(
+  __local struct shared_data *shared,
+  __global const struct modelinfo *ol,
+  __global const int4 *vb,
+  __global const int4 *tempvb,
+  __global const float4 *uv,
+  __global const float4 *tempuv,
+  __global int4 *vout,
+  __global float4 *uvout,
+  __global float4 *normalout,
+  __global float4 *normal,
+  __global float4 *tempnormal,
+  __constant struct uniform *uni,
+  __global int *scratch) {
+
+  size_t groupId = get_group_id(0);
+  size_t localId = get_local_id(0);
+  size_t groupSize = get_local_size(0);
+  struct modelinfo minfo = ol[groupId];
+  int4 pos = (int4)(minfo.x, minfo.y, minfo.z, 0);
+  uint size = minfo.size;
+
+  // each face takes up four ints of scratch, starting at the model's first face in the out buffers
+  int sortedOffset = minfo.idx / 3 * 4;
+  int faceOffset = sortedOffset + minfo.size * 2;
+
+  if (localId == 0) {
+    shared->min10 = 1600;
+    for (int i = 0; i < 12; ++i) {
+      shared->totalNum[i] = 0;
+      shared->totalDistance[i] = 0;
+    }
+    for (int i = 0; i < 18; ++i) {
+      shared->totalMappedNum[i] = 0;
+    }
+  }
+
+  barrier(CLK_LOCAL_MEM_FENCE);
+
+  int prio, dis;
+  int4 vA, vB, vC;
+
+  for (uint face = localId; face < size; face += groupSize) {
+    get_face(shared, uni, vb, tempvb, face, minfo, uni->cameraYaw, uni->cameraPitch, &prio, &dis, &vA, &vB, &vC);
+    add_face_prio_distance(shared, uni, face, minfo, vA, vB, vC, prio, dis, pos);
+  }
+
+  barrier(CLK_LOCAL_MEM_FENCE);
+
+  // the faces are read again rather than kept, since a work item handles an unbounded number of them
+  for (uint face = localId; face < size; face += groupSize) {
+    int prioAdj;
+    get_face(shared, uni, vb, tempvb, face, minfo, uni->cameraYaw, uni->cameraPitch, &prio, &dis, &vA, &vB, &vC);
+    int idx = map_face_priority(shared, face, minfo, prio, dis, &prioAdj);
+    scratch[faceOffset + face * 2] = (idx << 5) | prioAdj;
+    scratch[faceOffset + face * 2 + 1] = dis;
+  }
+
+  barrier(CLK_LOCAL_MEM_FENCE);
+
+  for (uint face = localId; face < size; face += groupSize) {
+    int packed = scratch[faceOffset + face * 2];
+    int i = count_prio_offset(shared, packed & 0x1f) + (packed >> 5);
+    scratch[sortedOffset + i * 2] = (int) face;
+    scratch[sortedOffset + i * 2 + 1] = scratch[faceOffset + face * 2 + 1];
+  }
+
+  barrier(CLK_GLOBAL_MEM_FENCE);
+
+  for (uint face = localId; face < size; face += groupSize) {
+    int prioAdj = scratch[faceOffset + face * 2] & 0x1f;
+    int thisDistance = scratch[faceOffset + face * 2 + 1];
+    int start = count_prio_offset(shared, prioAdj);
+    int end = start + shared->totalMappedNum[prioAdj];
+    int myOffset = start;
+
+    // ordered the same way as sort_and_insert, but without packing the ids and distances into 16 bits each
+    for (int i = start; i < end; ++i) {
+      int theirId = scratch[sortedOffset + i * 2];
+      int theirDistance = scratch[sortedOffset + i * 2 + 1];
+      if ((theirDistance > thisDistance)
+        || (theirDistance == thisDistance && theirId < (int) face)) {
+        ++myOffset;
+      }
+    }
+
+    get_face(shared, uni, vb, tempvb, face, minfo, uni->cameraYaw, uni->cameraPitch, &prio, &dis, &vA, &vB, &vC);
+    insert_face(uv, tempuv, vout, uvout, normalout, normal, tempnormal, uni, face, minfo, myOffset, vA, vB, vC);
+  }
+}
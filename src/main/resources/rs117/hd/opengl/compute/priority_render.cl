@@ -207,8 +207,8 @@ void insert_dfs(__local struct shared_data *shared, uint localId, struct modelin
   }
 }
 
-void sort_and_insert(
-  __local struct shared_data *shared,
+// write a face to the out buffers at the given position in the model's draw order
+void insert_face(
   __global const float4 *uv,
   __global const float4 *tempuv,
   __global int4 *vout,
@@ -217,25 +217,79 @@ void sort_and_insert(
   __global float4 *normal,
   __global float4 *tempnormal,
   __constant struct uniform *uni,
-  uint localId, struct modelinfo minfo, int thisPriority, int thisDistance, int4 thisrvA, int4 thisrvB, int4 thisrvC) {
-  /* compute face distance */
+  uint localId, struct modelinfo minfo, int myOffset, int4 thisrvA, int4 thisrvB, int4 thisrvC) {
   int offset = minfo.offset;
-  int size = minfo.size;
+  int outOffset = minfo.idx;
+  int uvOffset = minfo.uvOffset;
+  int flags = minfo.flags;
+  int4 pos = (int4)(minfo.x, minfo.y, minfo.z, 0);
+  int orientation = flags & 0x7ff;
+  uint ssboOffset = localId;
 
-  if (localId < size) {
-    int outOffset = minfo.idx;
-    int uvOffset = minfo.uvOffset;
-    int flags = minfo.flags;
-    int4 pos = (int4)(minfo.x, minfo.y, minfo.z, 0);
-    int orientation = flags & 0x7ff;
+  // position vertices in scene and write to out buffer
+  vout[outOffset + myOffset * 3]     = pos + thisrvA;
+  vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
+  vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
+
+  if (uvOffset < 0) {
+    uvout[outOffset + myOffset * 3]     = (float4)(0, 0, 0, 0);
+    uvout[outOffset + myOffset * 3 + 1] = (float4)(0, 0, 0, 0);
+    uvout[outOffset + myOffset * 3 + 2] = (float4)(0, 0, 0, 0);
+  } else if (flags >= 0) {
+    uvout[outOffset + myOffset * 3]     = tempuv[uvOffset + localId * 3];
+    uvout[outOffset + myOffset * 3 + 1] = tempuv[uvOffset + localId * 3 + 1];
+    uvout[outOffset + myOffset * 3 + 2] = tempuv[uvOffset + localId * 3 + 2];
+  } else {
+    uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
+    uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
+    uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+  }
+
+  float4 normA, normB, normC;
+
+  // Grab vertex normals from the correct buffer
+  if (flags < 0) {
+    normA = normal[offset + ssboOffset * 3    ];
+    normB = normal[offset + ssboOffset * 3 + 1];
+    normC = normal[offset + ssboOffset * 3 + 2];
+  } else {
+    normA = tempnormal[offset + ssboOffset * 3    ];
+    normB = tempnormal[offset + ssboOffset * 3 + 1];
+    normC = tempnormal[offset + ssboOffset * 3 + 2];
+  }
+
+  normA = (float4) (normalize(normA.xyz), normA.w);
+  normB = (float4) (normalize(normB.xyz), normB.w);
+  normC = (float4) (normalize(normC.xyz), normC.w);
+
+  float4 normrvA, normrvB, normrvC;
+
+  normrvA = rotate2(uni, normA, orientation);
+  normrvB = rotate2(uni, normB, orientation);
+  normrvC = rotate2(uni, normC, orientation);
 
+  normalout[outOffset + myOffset * 3    ] = normrvA;
+  normalout[outOffset + myOffset * 3 + 1] = normrvB;
+  normalout[outOffset + myOffset * 3 + 2] = normrvC;
+}
+
+void sort_and_insert(
+  __local struct shared_data *shared,
+  __global const float4 *uv,
+  __global const float4 *tempuv,
+  __global int4 *vout,
+  __global float4 *uvout,
+  __global float4 *normalout,
+  __global float4 *normal,
+  __global float4 *tempnormal,
+  __constant struct uniform *uni,
+  uint localId, struct modelinfo minfo, int thisPriority, int thisDistance, int4 thisrvA, int4 thisrvB, int4 thisrvC) {
+  if (localId < minfo.size) {
     const int priorityOffset = count_prio_offset(shared, thisPriority);
     const int numOfPriority = shared->totalMappedNum[thisPriority];
     int start = priorityOffset; // index of first face with this priority
     int end = priorityOffset + numOfPriority; // index of last face with this priority
     int myOffset = priorityOffset;
-    
-    uint ssboOffset = localId;
 
     // we only have to order faces against others of the same priority
     // calculate position this face will be in
@@ -253,50 +307,6 @@ void sort_and_insert(
       }
     }
 
-    // position vertices in scene and write to out buffer
-    vout[outOffset + myOffset * 3]     = pos + thisrvA;
-    vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
-    vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
-
-    if (uvOffset < 0) {
-      uvout[outOffset + myOffset * 3]     = (float4)(0, 0, 0, 0);
-      uvout[outOffset + myOffset * 3 + 1] = (float4)(0, 0, 0, 0);
-      uvout[outOffset + myOffset * 3 + 2] = (float4)(0, 0, 0, 0);
-    } else if (flags >= 0) {
-      uvout[outOffset + myOffset * 3]     = tempuv[uvOffset + localId * 3];
-      uvout[outOffset + myOffset * 3 + 1] = tempuv[uvOffset + localId * 3 + 1];
-      uvout[outOffset + myOffset * 3 + 2] = tempuv[uvOffset + localId * 3 + 2];
-    } else {
-      uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-      uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-      uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
-    }
-    
-    float4 normA, normB, normC;
-    
-    // Grab vertex normals from the correct buffer
-    if (flags < 0) {
-      normA = normal[offset + ssboOffset * 3    ];
-      normB = normal[offset + ssboOffset * 3 + 1];
-      normC = normal[offset + ssboOffset * 3 + 2];
-    } else {
-      normA = tempnormal[offset + ssboOffset * 3    ];
-      normB = tempnormal[offset + ssboOffset * 3 + 1];
-      normC = tempnormal[offset + ssboOffset * 3 + 2];
-    }
-    
-    normA = (float4) (normalize(normA.xyz), normA.w);
-    normB = (float4) (normalize(normB.xyz), normB.w);
-    normC = (float4) (normalize(normC.xyz), normC.w);
-    
-    float4 normrvA, normrvB, normrvC;
-    
-    normrvA = rotate2(uni, normA, orientation);
-    normrvB = rotate2(uni, normB, orientation);
-    normrvC = rotate2(uni, normC, orientation);
-    
-    normalout[outOffset + myOffset * 3    ] = normrvA;
-    normalout[outOffset + myOffset * 3 + 1] = normrvB;
-    normalout[outOffset + myOffset * 3 + 2] = normrvC;
+    insert_face(uv, tempuv, vout, uvout, normalout, normal, tempnormal, uni, localId, minfo, myOffset, thisrvA, thisrvB, thisrvC);
   }
 }
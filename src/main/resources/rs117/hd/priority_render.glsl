@@ -199,26 +199,73 @@ void insert_dfs(uint localId, modelinfo minfo, int adjPrio, int distance, int pr
     }
 }
 
-void sort_and_insert(uint localId, modelinfo minfo, int thisPriority, int thisDistance, ivec4 thisrvA, ivec4 thisrvB, ivec4 thisrvC) {
-    /* compute face distance */
+// write a face to the out buffers at the given position in the model's draw order
+void insert_face(uint localId, modelinfo minfo, int myOffset, ivec4 thisrvA, ivec4 thisrvB, ivec4 thisrvC) {
     int offset = minfo.offset;
-    int size = minfo.size;
+    int outOffset = minfo.idx;
+    int uvOffset = minfo.uvOffset;
+    int flags = minfo.flags;
+    ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
+    int orientation = flags & 0x7ff;
+    uint ssboOffset = localId;
+
+    // position vertices in scene and write to out buffer
+    vout[outOffset + myOffset * 3]     = pos + thisrvA;
+    vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
+    vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
+
+    if (uvOffset < 0) {
+        uvout[outOffset + myOffset * 3]     = vec4(0, 0, 0, 0);
+        uvout[outOffset + myOffset * 3 + 1] = vec4(0, 0, 0, 0);
+        uvout[outOffset + myOffset * 3 + 2] = vec4(0, 0, 0, 0);
+    } else if (flags >= 0) {
+        uvout[outOffset + myOffset * 3]     = tempuv[uvOffset + localId * 3];
+        uvout[outOffset + myOffset * 3 + 1] = tempuv[uvOffset + localId * 3 + 1];
+        uvout[outOffset + myOffset * 3 + 2] = tempuv[uvOffset + localId * 3 + 2];
+    } else {
+        uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
+        uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
+        uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
+    }
 
-    if (localId < size) {
-        int outOffset = minfo.idx;
-        int uvOffset = minfo.uvOffset;
-        int flags = minfo.flags;
-        ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
-        int orientation = flags & 0x7ff;
+    vec4 normA, normB, normC;
 
+    // Grab vertex normals from the correct buffer
+    if (flags < 0) {
+        normA = normal[offset + ssboOffset * 3    ];
+        normB = normal[offset + ssboOffset * 3 + 1];
+        normC = normal[offset + ssboOffset * 3 + 2];
+    } else {
+        normA = tempnormal[offset + ssboOffset * 3    ];
+        normB = tempnormal[offset + ssboOffset * 3 + 1];
+        normC = tempnormal[offset + ssboOffset * 3 + 2];
+    }
+
+    normA = vec4(normalize(normA.xyz), normA.w);
+    normB = vec4(normalize(normB.xyz), normB.w);
+    normC = vec4(normalize(normC.xyz), normC.w);
+
+    vec4 normrvA;
+    vec4 normrvB;
+    vec4 normrvC;
+
+    normrvA = rotate2(normA, orientation);
+    normrvB = rotate2(normB, orientation);
+    normrvC = rotate2(normC, orientation);
+
+    normalout[outOffset + myOffset * 3]     = normrvA;
+    normalout[outOffset + myOffset * 3 + 1] = normrvB;
+    normalout[outOffset + myOffset * 3 + 2] = normrvC;
+}
+
+void sort_and_insert(uint localId, modelinfo minfo, int thisPriority, int thisDistance, ivec4 thisrvA, ivec4 thisrvB, ivec4 thisrvC) {
+    if (localId < minfo.size) {
         const int priorityOffset = count_prio_offset(thisPriority);
         const int numOfPriority = totalMappedNum[thisPriority];
         int start = priorityOffset; // index of first face with this priority
         int end = priorityOffset + numOfPriority; // index of last face with this priority
         int myOffset = priorityOffset;
 
-        uint ssboOffset = localId;
-
         // we only have to order faces against others of the same priority
         // calculate position this face will be in
         for (int i = start; i < end; ++i) {
@@ -235,52 +282,6 @@ void sort_and_insert(uint localId, modelinfo minfo, int thisPriority, int thisDi
             }
         }
 
-        // position vertices in scene and write to out buffer
-        vout[outOffset + myOffset * 3]     = pos + thisrvA;
-        vout[outOffset + myOffset * 3 + 1] = pos + thisrvB;
-        vout[outOffset + myOffset * 3 + 2] = pos + thisrvC;
-
-        if (uvOffset < 0) {
-            uvout[outOffset + myOffset * 3]     = vec4(0, 0, 0, 0);
-            uvout[outOffset + myOffset * 3 + 1] = vec4(0, 0, 0, 0);
-            uvout[outOffset + myOffset * 3 + 2] = vec4(0, 0, 0, 0);
-        } else if (flags >= 0) {
-            uvout[outOffset + myOffset * 3]     = tempuv[uvOffset + localId * 3];
-            uvout[outOffset + myOffset * 3 + 1] = tempuv[uvOffset + localId * 3 + 1];
-            uvout[outOffset + myOffset * 3 + 2] = tempuv[uvOffset + localId * 3 + 2];
-        } else {
-            uvout[outOffset + myOffset * 3]     = uv[uvOffset + localId * 3];
-            uvout[outOffset + myOffset * 3 + 1] = uv[uvOffset + localId * 3 + 1];
-            uvout[outOffset + myOffset * 3 + 2] = uv[uvOffset + localId * 3 + 2];
-        }
-
-        vec4 normA, normB, normC;
-
-        // Grab vertex normals from the correct buffer
-        if (flags < 0) {
-            normA = normal[offset + ssboOffset * 3    ];
-            normB = normal[offset + ssboOffset * 3 + 1];
-            normC = normal[offset + ssboOffset * 3 + 2];
-        } else {
-            normA = tempnormal[offset + ssboOffset * 3    ];
-            normB = tempnormal[offset + ssboOffset * 3 + 1];
-            normC = tempnormal[offset + ssboOffset * 3 + 2];
-        }
-
-        normA = vec4(normalize(normA.xyz), normA.w);
-        normB = vec4(normalize(normB.xyz), normB.w);
-        normC = vec4(normalize(normC.xyz), normC.w);
-
-        vec4 normrvA;
-        vec4 normrvB;
-        vec4 normrvC;
-
-        normrvA = rotate2(normA, orientation);
-        normrvB = rotate2(normB, orientation);
-        normrvC = rotate2(normC, orientation);
-
-        normalout[outOffset + myOffset * 3]     = normrvA;
-        normalout[outOffset + myOffset * 3 + 1] = normrvB;
-        normalout[outOffset + myOffset * 3 + 2] = normrvC;
+        insert_face(localId, minfo, myOffset, thisrvA, thisrvB, thisrvC);
     }
 }
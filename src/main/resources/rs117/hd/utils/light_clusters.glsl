@@ -0,0 +1,31 @@
+// Finds the cluster of dynamic lights a fragment belongs to, the same way as LightClusters does on the CPU.
+
+#include LIGHT_CLUSTERS
+
+uniform bool clusteredLighting;
+// two texels per light, with its position and size, followed by its color and strength
+uniform samplerBuffer clusterLights;
+// the offset and light count of each cluster, followed by the light indices of every cluster
+uniform isamplerBuffer clusterLightIndices;
+uniform vec4 clusterRotation; // yaw sin, yaw cos, pitch sin, pitch cos
+uniform vec4 clusterProjection; // scale, center x, center y, depth scale
+uniform vec2 clusterTileSize;
+
+// returns the offset and count of the lights in the cluster containing the position
+ivec2 getLightCluster(vec3 position)
+{
+    // the fragment relative to the camera in local coordinates, with the height in Z
+    vec3 local = vec3(position.x - cameraX, position.z - cameraZ, position.y - cameraY);
+    float rotatedY = local.y * clusterRotation.y - local.x * clusterRotation.x;
+    vec2 view = vec2(
+        local.x * clusterRotation.y + local.y * clusterRotation.x,
+        local.z * clusterRotation.w - rotatedY * clusterRotation.z);
+    float depth = max(rotatedY * clusterRotation.w + local.z * clusterRotation.z, CLUSTER_NEAR_PLANE);
+
+    ivec2 tile = ivec2(floor((clusterProjection.yz + view * clusterProjection.x / depth) / clusterTileSize));
+    int slice = int(floor(log(depth / CLUSTER_NEAR_PLANE) * clusterProjection.w));
+    ivec3 cluster = clamp(ivec3(tile, slice), ivec3(0), ivec3(CLUSTERS_X, CLUSTERS_Y, CLUSTERS_Z) - 1);
+
+    int index = ((cluster.z * CLUSTERS_Y + cluster.y) * CLUSTERS_X + cluster.x) * 2;
+    return ivec2(texelFetch(clusterLightIndices, index).r, texelFetch(clusterLightIndices, index + 1).r);
+}
@@ -0,0 +1,53 @@
+package rs117.hd.data.environments;
+
+import org.junit.Test;
+import rs117.hd.utils.Rect;
+
+import static org.junit.Assert.assertEquals;
+
+public class AreaIndexTest
+{
+	private static boolean containsPointBruteForce(Area area, int x, int y, int z)
+	{
+		for (Rect rect : area.getRects())
+		{
+			if (rect.containsPoint(x, y, z))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void assertMatchesBruteForce(int x, int y, int z)
+	{
+		for (Area area : Area.values())
+		{
+			assertEquals(area + " at " + x + "," + y + "," + z,
+				containsPointBruteForce(area, x, y, z), area.containsPoint(x, y, z));
+		}
+	}
+
+	@Test
+	public void testRectCornersMatchBruteForce()
+	{
+		for (Area area : Area.values())
+		{
+			for (Rect rect : area.getRects())
+			{
+				int[] xs = { rect.getMinX() - 1, rect.getMinX(), rect.getMaxX(), rect.getMaxX() + 1 };
+				int[] ys = { rect.getMinY() - 1, rect.getMinY(), rect.getMaxY(), rect.getMaxY() + 1 };
+				for (int x : xs)
+				{
+					for (int y : ys)
+					{
+						for (int z = 0; z < 4; z++)
+						{
+							assertMatchesBruteForce(x, y, z);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -4,9 +4,11 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializer;
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
@@ -23,6 +25,7 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import rs117.hd.scene.lighting.Light;
+import rs117.hd.scene.lighting.LightBundle;
 import rs117.hd.scene.lighting.LightConfig;
 import rs117.hd.utils.HDUtils;
 
@@ -57,6 +60,9 @@ public class ExportLightsToJson
 		OptionSpec<?> minify = parser.accepts("minify", "Output minified JSON");
 		OptionSpec<?> disableValidationOption = parser.accepts("disable-validation", "Skip ");
 		OptionSpec<?> dryRun = parser.accepts("dry-run", "Don't write the resulting JSON to file");
+		ArgumentAcceptingOptionSpec<String> bundlePathOption = parser.accepts("bundle",
+				"Also write the lights to a binary light bundle, which is loaded by the plugin instead of the JSON")
+			.withRequiredArg();
 
 		OptionSet options = parser.parse(args);
 		Path configPath = Paths.get(options.valueOf(configPathOption));
@@ -170,6 +176,18 @@ public class ExportLightsToJson
 			os.write(json);
 			os.close();
 		}
+
+		if (options.has(bundlePathOption))
+		{
+			Path bundlePath = Paths.get(options.valueOf(bundlePathOption));
+			System.out.println("Writing " + uniqueLights.size() + " lights to light bundle: " + bundlePath.toAbsolutePath());
+			bundlePath.toFile().getAbsoluteFile().getParentFile().mkdirs();
+
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(bundlePath.toFile())))
+			{
+				LightBundle.write(uniqueLights.toArray(new Light[0]), os);
+			}
+		}
 	}
 
 	private static HashSet<Integer> toSet(int[] ints)
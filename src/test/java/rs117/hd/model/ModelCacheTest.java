@@ -0,0 +1,142 @@
+package rs117.hd.model;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelCacheTest
+{
+	private static final int PAGE_BYTES = 128 * 1024;
+
+	private static int[] colors(int seed, int length)
+	{
+		int[] colors = new int[length];
+		for (int i = 0; i < length; i++)
+		{
+			colors[i] = seed * 31 + i;
+		}
+		return colors;
+	}
+
+	private static void assertColors(int[] expected, ModelData data, int faceCount)
+	{
+		for (int face = 0; face < faceCount; face++)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				assertEquals(expected[face * 4 + i], data.getColorForFace(face, i));
+			}
+		}
+	}
+
+	@Test
+	public void testPutAndGet()
+	{
+		ModelCache cache = new ModelCache(4 * PAGE_BYTES);
+		ModelData data = new ModelData();
+		Random random = new Random(117);
+
+		int[] faceCounts = new int[200];
+		for (int key = 0; key < faceCounts.length; key++)
+		{
+			faceCounts[key] = 1 + random.nextInt(300);
+			assertTrue(cache.put(key, faceCounts[key], colors(key, faceCounts[key] * 4), faceCounts[key] * 4, data));
+			assertColors(colors(key, faceCounts[key] * 4), data, faceCounts[key]);
+		}
+
+		for (int key = 0; key < faceCounts.length; key++)
+		{
+			ModelData found = new ModelData();
+			if (cache.get(key, faceCounts[key], found))
+			{
+				assertColors(colors(key, faceCounts[key] * 4), found, faceCounts[key]);
+			}
+		}
+		assertEquals(faceCounts.length, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void testCheckGuardsAgainstCollisions()
+	{
+		ModelCache cache = new ModelCache(PAGE_BYTES);
+		ModelData data = new ModelData();
+
+		assertTrue(cache.put(1, 10, colors(1, 40), 40, data));
+		assertFalse(cache.get(1, 11, data));
+		assertEquals(1, cache.getCollisions());
+		assertTrue(cache.get(1, 10, data));
+
+		// replacing the entry with a differently sized model
+		assertTrue(cache.put(1, 100, colors(2, 400), 400, data));
+		assertFalse(cache.get(1, 10, data));
+		assertTrue(cache.get(1, 100, data));
+		assertColors(colors(2, 400), data, 100);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testStaysWithinBudget()
+	{
+		ModelCache cache = new ModelCache(8 * PAGE_BYTES);
+		ModelData data = new ModelData();
+		Random random = new Random(117);
+
+		for (int key = 0; key < 10000; key++)
+		{
+			int faceCount = 1 + random.nextInt(6144);
+			assertTrue(cache.put(key, faceCount, colors(key, faceCount * 4), faceCount * 4, data));
+			assertColors(colors(key, faceCount * 4), data, faceCount);
+			assertTrue(cache.getAllocatedBytes() <= 8 * PAGE_BYTES);
+		}
+		assertTrue(cache.getEvictions() > 0);
+		assertEquals(10000 - cache.getEvictions(), cache.size());
+	}
+
+	@Test
+	public void testReferencedEntriesSurviveEviction()
+	{
+		ModelCache cache = new ModelCache(PAGE_BYTES);
+		ModelData data = new ModelData();
+
+		// a single page fits 64 entries of 100 faces, each taking a 512 int slot
+		for (int key = 0; key < 64; key++)
+		{
+			cache.put(key, 100, colors(key, 400), 400, data);
+		}
+		assertTrue(cache.get(0, 100, data));
+
+		cache.put(64, 100, colors(64, 400), 400, data);
+		assertTrue(cache.get(0, 100, data));
+		assertFalse(cache.get(1, 100, data));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testClear()
+	{
+		ModelCache cache = new ModelCache(2 * PAGE_BYTES);
+		ModelData data = new ModelData();
+
+		for (int key = 0; key < 100; key++)
+		{
+			cache.put(key, 50, colors(key, 200), 200, data);
+		}
+		assertEquals(PAGE_BYTES, cache.getAllocatedBytes());
+		cache.clear();
+
+		assertEquals(0, cache.size());
+		assertFalse(cache.get(5, 50, data));
+		// the page is reused for a larger size class, which only fits 2 entries per page
+		for (int key = 0; key < 100; key++)
+		{
+			assertTrue(cache.put(key, 3000, colors(key, 12000), 12000, data));
+		}
+		assertEquals(2 * PAGE_BYTES, cache.getAllocatedBytes());
+		assertEquals(4, cache.size());
+		assertTrue(cache.get(99, 3000, data));
+		assertColors(colors(99, 12000), data, 3000);
+	}
+}
@@ -0,0 +1,175 @@
+package rs117.hd.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModelColorCacheTest
+{
+	// records of 56 colors take up 248 bytes, so 16 of them fit in the cap, and 12 in the compacted size
+	private static final int COLOR_COUNT = 56;
+	private static final int MAX_FILE_SIZE = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static int[] colors(int key)
+	{
+		int[] colors = new int[COLOR_COUNT];
+		for (int i = 0; i < COLOR_COUNT; i++)
+		{
+			colors[i] = key * 1000 + i;
+		}
+		return colors;
+	}
+
+	private static long check(int key)
+	{
+		return key * 31L + 7;
+	}
+
+	private static ModelColorCache open(File file) throws InterruptedException, ExecutionException
+	{
+		ModelColorCache cache = new ModelColorCache(file, MAX_FILE_SIZE);
+		cache.startUp();
+		cache.awaitLoaded();
+		return cache;
+	}
+
+	private static void put(ModelColorCache cache, int key)
+	{
+		cache.put(key, check(key), colors(key), COLOR_COUNT);
+	}
+
+	private static boolean isCached(ModelColorCache cache, int key)
+	{
+		int[] out = new int[COLOR_COUNT];
+		int length = cache.get(key, check(key), out);
+		if (length == -1)
+		{
+			return false;
+		}
+		assertEquals(COLOR_COUNT, length);
+		assertArrayEquals(colors(key), out);
+		return true;
+	}
+
+	@Test
+	public void testColorsAreKeptAcrossSessions() throws Exception
+	{
+		File file = new File(folder.getRoot(), "model-colors.cache");
+		ModelColorCache cache = open(file);
+		assertEquals(-1, cache.get(1, check(1), new int[COLOR_COUNT]));
+		put(cache, 1);
+		put(cache, 2);
+		assertTrue(isCached(cache, 1));
+		cache.shutDown();
+
+		cache = open(file);
+		assertTrue(isCached(cache, 1));
+		assertTrue(isCached(cache, 2));
+		// a different model with the same key, and a model with more colors than fit, both miss
+		assertEquals(-1, cache.get(1, check(2), new int[COLOR_COUNT]));
+		assertEquals(-1, cache.get(1, check(1), new int[COLOR_COUNT - 1]));
+		assertEquals(-1, cache.get(3, check(3), new int[COLOR_COUNT]));
+
+		// a later record for the same key supersedes the earlier one
+		int[] updated = colors(4);
+		cache.put(1, check(1), updated, COLOR_COUNT);
+		cache.shutDown();
+
+		cache = open(file);
+		int[] out = new int[COLOR_COUNT];
+		assertEquals(COLOR_COUNT, cache.get(1, check(1), out));
+		assertArrayEquals(updated, out);
+		cache.shutDown();
+	}
+
+	@Test
+	public void testOutdatedVersionIsDiscarded() throws Exception
+	{
+		File file = new File(folder.getRoot(), "model-colors.cache");
+		ModelColorCache cache = open(file);
+		put(cache, 1);
+		cache.shutDown();
+
+		int version;
+		try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel())
+		{
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+			channel.read(header, 4);
+			version = header.getInt(0);
+			header.clear();
+			header.putInt(0, version + 1);
+			channel.write(header, 4);
+		}
+
+		cache = open(file);
+		assertEquals(-1, cache.get(1, check(1), new int[COLOR_COUNT]));
+		put(cache, 2);
+		assertTrue(isCached(cache, 2));
+		cache.shutDown();
+
+		// the file was rewritten with the current version
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel())
+		{
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+			channel.read(header, 4);
+			assertEquals(version, header.getInt(0));
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedColorsAreDroppedOnceFull() throws Exception
+	{
+		File file = new File(folder.getRoot(), "model-colors.cache");
+		ModelColorCache cache = open(file);
+		for (int key = 0; key < 8; key++)
+		{
+			put(cache, key);
+		}
+		cache.shutDown();
+
+		// use half of the first session's colors in the second, then fill the cache up
+		cache = open(file);
+		for (int key = 0; key < 4; key++)
+		{
+			assertTrue(isCached(cache, key));
+		}
+		for (int key = 8; key < 17; key++)
+		{
+			put(cache, key);
+		}
+		for (int key = 8; key < 16; key++)
+		{
+			assertTrue(isCached(cache, key));
+		}
+		// nothing more is written once the cap is reached
+		assertEquals(-1, cache.get(16, check(16), new int[COLOR_COUNT]));
+		cache.shutDown();
+		assertTrue(file.length() <= MAX_FILE_SIZE);
+
+		// compacting keeps the colors used in the second session, and leaves room for more
+		cache = open(file);
+		int[] expected = { 0, 1, 2, 3, 8, 9, 10, 11, 12, 13, 14, 15 };
+		for (int key = 0; key < 17; key++)
+		{
+			assertEquals("key " + key, Arrays.binarySearch(expected, key) >= 0, isCached(cache, key));
+		}
+		put(cache, 16);
+		assertTrue(isCached(cache, 16));
+		cache.shutDown();
+	}
+}
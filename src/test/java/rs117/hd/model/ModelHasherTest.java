@@ -0,0 +1,84 @@
+package rs117.hd.model;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+public class ModelHasherTest
+{
+	@Test
+	public void testEveryElementAffectsHash()
+	{
+		// lengths which cover the unrolled loops as well as the tails
+		for (int length = 1; length <= 40; length++)
+		{
+			int[] ints = new int[length];
+			float[] floats = new float[length];
+			short[] shorts = new short[length];
+			byte[] bytes = new byte[length];
+			long intHash = ModelHasher.hash(ints, 0);
+			long floatHash = ModelHasher.hash(floats, 0);
+			long shortHash = ModelHasher.hash(shorts, 0);
+			long byteHash = ModelHasher.hash(bytes, 0);
+
+			for (int i = 0; i < length; i++)
+			{
+				ints[i] = -1;
+				floats[i] = 1;
+				shorts[i] = -1;
+				bytes[i] = -1;
+				assertNotEquals(intHash, ModelHasher.hash(ints, 0));
+				assertNotEquals(floatHash, ModelHasher.hash(floats, 0));
+				assertNotEquals(shortHash, ModelHasher.hash(shorts, 0));
+				assertNotEquals(byteHash, ModelHasher.hash(bytes, 0));
+				ints[i] = 0;
+				floats[i] = 0;
+				shorts[i] = 0;
+				bytes[i] = 0;
+			}
+		}
+	}
+
+	@Test
+	public void testNullAndEmptyArraysDiffer()
+	{
+		assertNotEquals(ModelHasher.hash((int[]) null, 0), ModelHasher.hash(new int[0], 0));
+		assertNotEquals(ModelHasher.hash(new int[0], 0), ModelHasher.hash(new int[1], 0));
+		assertEquals(ModelHasher.hash(new int[]{1, 2, 3}, 0), ModelHasher.hash(new int[]{1, 2, 3}, 0));
+	}
+
+	@Test
+	public void testNoCollisionsBetweenSimilarArrays()
+	{
+		// arrays which only differ slightly, like the colors of recolored models
+		Random random = new Random(117);
+		int[] base = new int[300];
+		for (int i = 0; i < base.length; i++)
+		{
+			base[i] = random.nextInt(1 << 16);
+		}
+
+		Set<Long> primary = new HashSet<>();
+		Set<Long> verification = new HashSet<>();
+		int count = 0;
+		for (int i = 0; i < base.length; i++)
+		{
+			for (int delta = 1; delta <= 64; delta++)
+			{
+				int[] array = base.clone();
+				array[i] += delta;
+				primary.add(ModelHasher.hash(array, 0));
+				verification.add(ModelHasher.hash(array, 0x5DEECE66DL));
+				count++;
+			}
+		}
+		assertEquals(count, primary.size());
+		assertEquals(count, verification.size());
+		assertFalse(primary.contains(ModelHasher.hash(base, 0)));
+	}
+}
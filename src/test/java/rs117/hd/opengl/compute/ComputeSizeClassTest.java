@@ -0,0 +1,39 @@
+package rs117.hd.opengl.compute;
+
+import org.junit.Test;
+import rs117.hd.HdPlugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ComputeSizeClassTest
+{
+	@Test
+	public void testSizesAreSortedAndEndWithTheLargestClass()
+	{
+		assertArrayEquals(new int[] { 64, 256, 512, 1024, 2048, HdPlugin.MAX_TRIANGLE },
+			ComputeSizeClass.parseSizes("64,256,512,1024,2048,6144"));
+		assertArrayEquals(new int[] { 1, 100, 300, HdPlugin.MAX_TRIANGLE },
+			ComputeSizeClass.parseSizes(" 300, 100,,100, abc, 0, 100000"));
+		assertArrayEquals(new int[] { HdPlugin.MAX_TRIANGLE }, ComputeSizeClass.parseSizes(""));
+	}
+
+	@Test
+	public void testFacesAreSplitAcrossThreads()
+	{
+		ComputeSizeClass small = new ComputeSizeClass(64);
+		assertEquals(64, small.threadCount);
+		assertEquals(1, small.facesPerThread);
+
+		ComputeSizeClass large = new ComputeSizeClass(6144);
+		assertEquals(ComputeSizeClass.MAX_THREAD_COUNT, large.threadCount);
+		assertEquals(6, large.facesPerThread);
+
+		// threads are only added while they have faces to handle
+		ComputeSizeClass uneven = new ComputeSizeClass(2500);
+		assertEquals(834, uneven.threadCount);
+		assertEquals(3, uneven.facesPerThread);
+
+		assertEquals(24, ComputeSizeClass.facesPerThread(6144, 256));
+	}
+}
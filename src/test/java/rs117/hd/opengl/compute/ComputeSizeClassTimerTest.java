@@ -0,0 +1,40 @@
+package rs117.hd.opengl.compute;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ComputeSizeClassTimerTest
+{
+	@Test
+	public void testPassesAreAveragedPerFrame()
+	{
+		ComputeSizeClassTimer timer = new ComputeSizeClassTimer();
+		timer.setPasses(new String[] { "<= 64", "> 6144" }, new int[] { 64, 0 });
+		assertNull(timer.getStats());
+
+		// 10 frames, with 4 models of 16 faces each in the first pass, and one extra large model every other frame
+		for (int frame = 0; frame < 10; frame++)
+		{
+			timer.record(0, 200_000, 4, 64);
+			timer.record(1, frame % 2 == 0 ? 3_000_000 : 0, frame % 2 == 0 ? 1 : 0, frame % 2 == 0 ? 10_000 : 0);
+			timer.recordFrame();
+		}
+
+		ComputeSizeClassTimer.PassStats[] stats = timer.getStats();
+		assertEquals(2, stats.length);
+		assertEquals("<= 64", stats[0].name);
+		assertEquals(.2, stats[0].gpuMs, 1e-9);
+		assertEquals(4, stats[0].models, 1e-9);
+		assertEquals(.25, stats[0].getFill(), 1e-9);
+		assertEquals(1.5, stats[1].gpuMs, 1e-9);
+		assertEquals(.5, stats[1].models, 1e-9);
+		assertTrue(Double.isNaN(stats[1].getFill()));
+
+		// changing the passes discards the results of the old ones
+		timer.setPasses(new String[] { "<= 6144" }, new int[] { 6144 });
+		assertNull(timer.getStats());
+	}
+}
@@ -0,0 +1,227 @@
+package rs117.hd.opengl.compute;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CpuComputeManagerTest
+{
+	private static final int[] SINE = new int[2048];
+	private static final int[] COSINE = new int[2048];
+
+	static
+	{
+		for (int i = 0; i < 2048; i++)
+		{
+			SINE[i] = (int) (65536.0 * Math.sin(i * Math.PI / 1024));
+			COSINE[i] = (int) (65536.0 * Math.cos(i * Math.PI / 1024));
+		}
+	}
+
+	private static final int LARGE_FACES = 3000;
+	private static final int XLARGE_FACES = 7000;
+
+	private final IntBuffer vertices = IntBuffer.allocate(XLARGE_FACES * 12);
+	private final FloatBuffer uvs = FloatBuffer.allocate(XLARGE_FACES * 12);
+	private final FloatBuffer normals = FloatBuffer.allocate(XLARGE_FACES * 12);
+
+	private CpuComputeManager createManager()
+	{
+		CpuComputeManager manager = new CpuComputeManager(SINE, COSINE);
+		// looking straight ahead along the z axis, so a face's distance is its z plus the model's radius
+		manager.setView(0, 0, 400, 300, 512, 0, 0, -1000);
+		return manager;
+	}
+
+	/**
+	 * Adds a face facing the camera at the given depth, with the face index stored in its uvs.
+	 */
+	private void addFace(int depth, int priority)
+	{
+		int face = vertices.position() / 12;
+		int w = priority << 16;
+		vertices.put(new int[] { 0, 0, depth, w, 10, 0, depth, w, 0, 10, depth, w });
+		for (int v = 0; v < 3; v++)
+		{
+			uvs.put(new float[] { face, 0, 0, 0 });
+			normals.put(new float[] { 0, 0, -1, 0 });
+		}
+	}
+
+	private static IntBuffer model(int offset, int uvOffset, int size, int idx, int radius, int x, int y, int z)
+	{
+		return IntBuffer.wrap(new int[] { offset, uvOffset, size, idx, radius << 12, x, y, z });
+	}
+
+	private void compute(CpuComputeManager manager, IntBuffer unordered, int unorderedCount, IntBuffer small, int smallCount,
+		IntBuffer large, int largeCount, int outputSize)
+	{
+		manager.compute(
+			unordered, unorderedCount,
+			new IntBuffer[] { small, large }, new int[] { smallCount, largeCount },
+			vertices, uvs, normals,
+			outputSize);
+	}
+
+	@Test
+	public void testUnorderedModelsAreCopied()
+	{
+		addFace(100, 0);
+		addFace(200, 0);
+
+		CpuComputeManager manager = createManager();
+		compute(manager, model(0, -1, 2, 5, 0, 1, 2, 3), 1, IntBuffer.allocate(0), 0, IntBuffer.allocate(0), 0, 11);
+
+		IntBuffer out = manager.getOutVertices();
+		assertEquals(11 * 4, out.remaining());
+		// the second vertex of the second face, moved to the model's position
+		int i = (5 + 4) * 4;
+		assertEquals(11, out.get(i));
+		assertEquals(2, out.get(i + 1));
+		assertEquals(203, out.get(i + 2));
+		// models without uvs get zeroed uvs
+		assertEquals(0, manager.getOutUvs().get(i), 0);
+		assertEquals(-1, manager.getOutNormals().get(i + 2), 0);
+	}
+
+	@Test
+	public void testFacesAreSortedFurthestFirst()
+	{
+		int[] depths = { 300, 100, 500, 200, 400 };
+		for (int depth : depths)
+		{
+			addFace(depth, 0);
+		}
+
+		CpuComputeManager manager = createManager();
+		compute(manager, IntBuffer.allocate(0), 0, model(0, 0, depths.length, 0, 50, 0, 0, 0), 1, IntBuffer.allocate(0), 0, 15);
+
+		int[] expectedFaces = { 2, 4, 0, 3, 1 };
+		for (int i = 0; i < expectedFaces.length; i++)
+		{
+			assertEquals(expectedFaces[i], (int) manager.getOutUvs().get(i * 12));
+		}
+	}
+
+	@Test
+	public void testFacesAreSortedByPriority()
+	{
+		addFace(100, 3);
+		addFace(500, 5);
+		addFace(300, 0);
+		addFace(50, 0);
+
+		CpuComputeManager manager = createManager();
+		compute(manager, IntBuffer.allocate(0), 0, model(0, 0, 4, 0, 50, 0, 0, 0), 1, IntBuffer.allocate(0), 0, 12);
+
+		int[] expectedFaces = { 2, 3, 0, 1 };
+		for (int i = 0; i < expectedFaces.length; i++)
+		{
+			assertEquals(expectedFaces[i], (int) manager.getOutUvs().get(i * 12));
+		}
+	}
+
+	@Test
+	public void testExtraLargeModelsAreSortedCompletely()
+	{
+		Random random = new Random(117);
+		int[] depths = new int[XLARGE_FACES];
+		for (int face = 0; face < XLARGE_FACES; face++)
+		{
+			depths[face] = random.nextInt(2000);
+			addFace(depths[face], 0);
+		}
+
+		CpuComputeManager manager = createManager();
+		manager.compute(IntBuffer.allocate(0), 0,
+			new IntBuffer[] { model(0, 0, XLARGE_FACES, 0, 50, 0, 0, 0) }, new int[] { 1 },
+			vertices, uvs, normals, XLARGE_FACES * 3);
+
+		// every face is drawn, furthest first, and faces at the same depth in order
+		boolean[] drawn = new boolean[XLARGE_FACES];
+		int previous = -1;
+		for (int i = 0; i < XLARGE_FACES; i++)
+		{
+			int face = (int) manager.getOutUvs().get(i * 12);
+			drawn[face] = true;
+			if (previous != -1)
+			{
+				assertTrue(depths[previous] > depths[face] || depths[previous] == depths[face] && previous < face);
+			}
+			previous = face;
+		}
+		for (boolean faceDrawn : drawn)
+		{
+			assertTrue(faceDrawn);
+		}
+	}
+
+	@Test
+	public void testPriorityMap()
+	{
+		assertEquals(2, CpuComputeManager.priorityMap(0, 0, 1600, 0, 0, 0));
+		assertEquals(15, CpuComputeManager.priorityMap(9, 0, 1600, 0, 0, 0));
+		// priority 10 faces are drawn before the groups of faces they are further away than
+		assertEquals(0, CpuComputeManager.priorityMap(10, 300, 1600, 200, 100, 50));
+		assertEquals(5, CpuComputeManager.priorityMap(10, 150, 1600, 200, 100, 50));
+		assertEquals(9, CpuComputeManager.priorityMap(10, 75, 1600, 200, 100, 50));
+		assertEquals(16, CpuComputeManager.priorityMap(10, 25, 1600, 200, 100, 50));
+		// priority 11 faces also depend on the closest priority 10 face
+		assertEquals(1, CpuComputeManager.priorityMap(11, 300, 250, 200, 100, 50));
+		assertEquals(6, CpuComputeManager.priorityMap(11, 300, 150, 200, 100, 50));
+		assertEquals(17, CpuComputeManager.priorityMap(11, 25, 1600, 200, 100, 50));
+	}
+
+	@Test
+	public void testPoolMatchesSingleThread()
+	{
+		Random random = new Random(117);
+		for (int face = 0; face < LARGE_FACES; face++)
+		{
+			addFace(random.nextInt(2000), random.nextInt(12));
+		}
+
+		// cover all three passes, with models small enough to be split across tasks
+		IntBuffer unordered = IntBuffer.allocate(100 * 8);
+		IntBuffer small = IntBuffer.allocate(20 * 8);
+		int outputSize = 0;
+		for (int i = 0; i < 100; i++)
+		{
+			unordered.put(model(i * 6 * 3, i * 6 * 3, 6, outputSize, 0, i, 0, i));
+			outputSize += 6 * 3;
+		}
+		for (int i = 0; i < 20; i++)
+		{
+			small.put(model(i * 100 * 3, i * 100 * 3, 100, outputSize, random.nextInt(200), 0, i, 0));
+			outputSize += 100 * 3;
+		}
+		IntBuffer large = model(0, 0, LARGE_FACES, outputSize, 100, 0, 0, 0);
+		outputSize += LARGE_FACES * 3;
+		unordered.flip();
+		small.flip();
+
+		CpuComputeManager singleThreaded = createManager();
+		compute(singleThreaded, unordered, 100, small, 20, large, 1, outputSize);
+
+		CpuComputeManager pooled = createManager();
+		pooled.startUp();
+		try
+		{
+			// the passes are reused between frames, so start with frames without models and with fewer passes
+			compute(pooled, unordered, 0, small, 0, large, 0, outputSize);
+			pooled.compute(unordered, 0, new IntBuffer[0], new int[0], vertices, uvs, normals, outputSize);
+			compute(pooled, unordered, 100, small, 20, large, 1, outputSize);
+			assertEquals(singleThreaded.getOutVertices(), pooled.getOutVertices());
+			assertEquals(singleThreaded.getOutUvs(), pooled.getOutUvs());
+			assertEquals(singleThreaded.getOutNormals(), pooled.getOutNormals());
+		}
+		finally
+		{
+			pooled.shutDown();
+		}
+	}
+}
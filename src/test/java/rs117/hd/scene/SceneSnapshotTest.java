@@ -0,0 +1,197 @@
+package rs117.hd.scene;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.GameObject;
+import net.runelite.api.Model;
+import net.runelite.api.Renderable;
+import net.runelite.api.Scene;
+import net.runelite.api.SceneTileModel;
+import net.runelite.api.SceneTilePaint;
+import net.runelite.api.Tile;
+import net.runelite.api.WallObject;
+import net.runelite.api.coords.Angle;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rs117.hd.scene.SceneSnapshot.SnapshotModel;
+import rs117.hd.scene.SceneSnapshot.SnapshotObject;
+import rs117.hd.scene.SceneSnapshot.SnapshotTile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SceneSnapshotTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Creates an instance of the interface which answers the given methods, and returns null for everything else.
+	 */
+	private static <T> T stub(Class<T> type, Object... answers)
+	{
+		Map<String, Object> values = new HashMap<>();
+		for (int i = 0; i < answers.length; i += 2)
+		{
+			values.put((String) answers[i], answers[i + 1]);
+		}
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (self, method, args) ->
+		{
+			Object value = values.get(method.getName());
+			Class<?> returnType = method.getReturnType();
+			if (value == null && returnType.isPrimitive() && returnType != void.class)
+			{
+				if (returnType == boolean.class)
+				{
+					return false;
+				}
+				return returnType == byte.class ? (Object) (byte) 0 : (Object) 0;
+			}
+			return value;
+		}));
+	}
+
+	private static Tile tile(int x, int y, int plane, Object... answers)
+	{
+		Object[] all = new Object[answers.length + 6];
+		System.arraycopy(answers, 0, all, 0, answers.length);
+		all[answers.length] = "getPlane";
+		all[answers.length + 1] = plane;
+		all[answers.length + 2] = "getRenderLevel";
+		all[answers.length + 3] = plane;
+		all[answers.length + 4] = "getWorldLocation";
+		all[answers.length + 5] = new WorldPoint(3200 + x, 3200 + y, plane);
+		return stub(Tile.class, all);
+	}
+
+	@Test
+	public void testSnapshotIsReadBack() throws IOException
+	{
+		Model model = stub(Model.class,
+			"getFaceCount", 1,
+			"getVerticesCount", 3,
+			"getVerticesX", new int[] { 0, 10, 0 },
+			"getFaceIndices1", new int[] { 0 },
+			"getFaceColors1", new int[] { 100 },
+			"getFaceTextures", new short[] { 7 });
+		GameObject gameObject = stub(GameObject.class,
+			"getId", 1234,
+			"getX", 640,
+			"getY", 704,
+			"getRenderable", model,
+			"getOrientation", new Angle(512),
+			"sizeX", 2,
+			"sizeY", 1);
+		WallObject wallObject = stub(WallObject.class,
+			"getId", 99,
+			"getRenderable1", model,
+			"getRenderable2", stub(Renderable.class),
+			"getOrientationA", 4);
+		SceneTilePaint paint = stub(SceneTilePaint.class, "getSwColor", 111, "getNeColor", 444, "getTexture", -1);
+		SceneTileModel tileModel = stub(SceneTileModel.class,
+			"getShape", 3,
+			"getFaceX", new int[] { 0, 1 },
+			"getVertexY", new int[] { -10, -20, -30 },
+			"getTriangleColorA", new int[] { 5, 6 });
+
+		Tile[][][] tiles = new Tile[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+		Tile bridge = tile(5, 7, 1, "getSceneTilePaint", paint);
+		tiles[0][5][7] = tile(5, 7, 0,
+			"getSceneTilePaint", paint,
+			"getSceneTileModel", tileModel,
+			"getWallObject", wallObject,
+			"getGameObjects", new GameObject[] { gameObject, null },
+			"getBridge", bridge);
+		// a game object covering two tiles is on both of them
+		tiles[0][6][7] = tile(6, 7, 0, "getGameObjects", new GameObject[] { null, gameObject });
+
+		byte[][][] overlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+		byte[][][] underlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+		overlayIds[0][5][7] = -128;
+		underlayIds[3][103][103] = 17;
+		int[][][] tileHeights = new int[Constants.MAX_Z][Constants.SCENE_SIZE + 1][Constants.SCENE_SIZE + 1];
+		tileHeights[1][104][0] = -480;
+		int[][][] templateChunks = new int[Constants.MAX_Z][Constants.SCENE_SIZE / 8][Constants.SCENE_SIZE / 8];
+		templateChunks[2][12][3] = 0x12345678;
+
+		Scene scene = stub(Scene.class, "getTiles", tiles, "getOverlayIds", overlayIds, "getUnderlayIds", underlayIds);
+		Client client = stub(Client.class,
+			"getScene", scene,
+			"getTileHeights", tileHeights,
+			"getBaseX", 3200,
+			"getBaseY", 3136,
+			"getPlane", 2,
+			"isInInstancedRegion", true,
+			"getInstanceTemplateChunks", templateChunks);
+
+		File file = folder.newFile("test.rlhdscene");
+		SceneSnapshot.capture(client).write(file);
+		SceneSnapshot snapshot = SceneSnapshot.read(file);
+
+		assertEquals(3200, snapshot.baseX);
+		assertEquals(3136, snapshot.baseY);
+		assertEquals(2, snapshot.plane);
+		assertTrue(snapshot.instanced);
+		assertEquals(0x12345678, snapshot.instanceTemplateChunks[2][12][3]);
+		assertEquals(-480, snapshot.tileHeights[1][104][0]);
+		assertEquals(-128, snapshot.overlayIds[0][5][7]);
+		assertEquals(17, snapshot.underlayIds[3][103][103]);
+		assertNull(snapshot.tiles[0][0][0]);
+
+		SnapshotTile tile = snapshot.tiles[0][5][7];
+		assertEquals(5, tile.x);
+		assertEquals(7, tile.y);
+		assertEquals(3205, tile.worldX);
+		assertEquals(111, tile.paint.swColor);
+		assertEquals(444, tile.paint.neColor);
+		assertEquals(-1, tile.paint.texture);
+		assertEquals(3, tile.tileModel.shape);
+		assertArrayEquals(new int[] { -10, -20, -30 }, tile.tileModel.vertexY);
+		assertArrayEquals(new int[] { 5, 6 }, tile.tileModel.triangleColorA);
+		assertNull(tile.tileModel.triangleTextureId);
+		assertNull(tile.groundObject);
+
+		assertNotNull(tile.bridge);
+		assertEquals(1, tile.bridge.renderLevel);
+		assertEquals(111, tile.bridge.paint.swColor);
+		assertNull(tile.bridge.tileModel);
+
+		// the model is shared by the wall and the game object, which is shared by both tiles
+		assertEquals(1, snapshot.models.size());
+		assertEquals(1, snapshot.gameObjects.size());
+		assertArrayEquals(new int[] { 0, -1 }, tile.gameObjects);
+		assertArrayEquals(new int[] { -1, 0 }, snapshot.tiles[0][6][7].gameObjects);
+
+		SnapshotObject wall = tile.wallObject;
+		assertEquals(99, wall.id);
+		assertEquals(4, wall.orientationA);
+		assertEquals(0, wall.renderable1);
+		assertEquals(SceneSnapshot.OTHER_RENDERABLE, wall.renderable2);
+
+		SnapshotObject object = snapshot.gameObjects.get(0);
+		assertEquals(1234, object.id);
+		assertEquals(704, object.y);
+		assertEquals(512, object.orientation);
+		assertEquals(2, object.sizeX);
+		assertEquals(0, object.renderable1);
+		assertEquals(SceneSnapshot.NO_RENDERABLE, object.renderable2);
+
+		SnapshotModel m = snapshot.models.get(0);
+		assertEquals(1, m.faceCount);
+		assertArrayEquals(new int[] { 0, 10, 0 }, m.verticesX);
+		assertArrayEquals(new int[] { 100 }, m.faceColors1);
+		assertArrayEquals(new short[] { 7 }, m.faceTextures);
+		assertNull(m.verticesY);
+		assertNull(m.faceTransparencies);
+	}
+}
@@ -0,0 +1,147 @@
+package rs117.hd.scene;
+
+import java.lang.reflect.Field;
+import org.junit.Test;
+import rs117.hd.data.materials.Material;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static rs117.hd.utils.HDUtils.vertexKey;
+
+public class TerrainVertexStoreTest
+{
+	// more vertices than fit in the initial capacity at half load
+	private static final int VERTEX_COUNT = 100_000;
+
+	private static long key(int i)
+	{
+		return vertexKey(i % 1000, i / 1000, -i % 7 * 240);
+	}
+
+	private static int getInt(TerrainVertexStore store, String name) throws ReflectiveOperationException
+	{
+		Field field = TerrainVertexStore.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.getInt(store);
+	}
+
+	@Test
+	public void testDataSurvivesGrowing() throws ReflectiveOperationException
+	{
+		TerrainVertexStore store = new TerrainVertexStore();
+		int initialCapacity = getInt(store, "capacity");
+		for (int i = 0; i < VERTEX_COUNT; i++)
+		{
+			store.setColor(key(i), i);
+			if (i % 2 == 0)
+			{
+				store.setMaterial(key(i), Material.GRASS_1);
+			}
+			if (i % 3 == 0)
+			{
+				store.setFlags(key(i), TerrainVertexStore.IS_WATER);
+			}
+		}
+		assertNotEquals(initialCapacity, getInt(store, "capacity"));
+		assertEquals(VERTEX_COUNT, store.size());
+
+		for (int i = 0; i < VERTEX_COUNT; i++)
+		{
+			assertEquals(i, store.getColor(key(i), -1));
+			assertSame(i % 2 == 0 ? Material.GRASS_1 : Material.NONE, store.getMaterial(key(i), Material.NONE));
+			assertEquals(i % 3 == 0, store.hasFlags(key(i), TerrainVertexStore.IS_WATER));
+		}
+		assertEquals(-1, store.find(key(VERTEX_COUNT)));
+	}
+
+	@Test
+	public void testClearRemovesEveryVertex()
+	{
+		TerrainVertexStore store = new TerrainVertexStore();
+		for (int i = 0; i < VERTEX_COUNT; i++)
+		{
+			store.setColor(key(i), i);
+		}
+		store.clear();
+		assertEquals(0, store.size());
+		for (int i = 0; i < VERTEX_COUNT; i++)
+		{
+			assertEquals(-1, store.find(key(i)));
+			assertEquals(-1, store.getColor(key(i), -1));
+		}
+
+		// slots are reused without the old data leaking into the new vertices
+		store.setFlags(key(1), TerrainVertexStore.IS_LAND);
+		assertEquals(-1, store.getColor(key(1), -1));
+		assertTrue(store.hasFlags(key(1), TerrainVertexStore.IS_LAND));
+	}
+
+	@Test
+	public void testClearAfterTheGenerationWrapsAround() throws ReflectiveOperationException
+	{
+		TerrainVertexStore store = new TerrainVertexStore();
+		store.setColor(key(1), 1);
+
+		// skip ahead to the last generation before wrapping around, leaving the first generation's slot behind
+		Field generation = TerrainVertexStore.class.getDeclaredField("generation");
+		generation.setAccessible(true);
+		generation.setInt(store, -1);
+		store.setColor(key(2), 2);
+		assertEquals(-1, store.find(key(1)));
+
+		store.clear();
+		assertEquals(1, getInt(store, "generation"));
+		assertEquals(-1, store.find(key(1)));
+		assertEquals(-1, store.find(key(2)));
+
+		store.setColor(key(1), 3);
+		assertEquals(3, store.getColor(key(1), -1));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void testClearedFlagsRemoveTheirData()
+	{
+		TerrainVertexStore store = new TerrainVertexStore();
+		long key = key(42);
+		store.setColor(key, 123);
+		store.setMaterial(key, Material.DIRT_1);
+		store.setUnderwaterDepth(key, 64);
+		store.setFlags(key, TerrainVertexStore.IS_OVERLAY | TerrainVertexStore.IS_WATER);
+
+		store.clearFlags(TerrainVertexStore.TERRAIN_FLAGS);
+		assertEquals(-1, store.getColor(key, -1));
+		assertSame(Material.NONE, store.getMaterial(key, Material.NONE));
+		assertFalse(store.hasFlags(key, TerrainVertexStore.IS_OVERLAY));
+
+		// flags outside the mask, and the data they guard, are kept
+		assertTrue(store.hasFlags(key, TerrainVertexStore.IS_WATER));
+		assertEquals(64, store.getUnderwaterDepth(key, 0));
+		assertTrue(store.find(key) != -1);
+	}
+
+	@Test
+	public void testNormalsAccumulate()
+	{
+		TerrainVertexStore store = new TerrainVertexStore();
+		long key = key(7);
+		float[] out = new float[3];
+		assertFalse(store.getNormals(key, out));
+
+		store.addNormals(key, new float[] { 1, 2, 3 });
+		store.addNormals(key, new float[] { .5f, -2, 1 });
+		assertTrue(store.getNormals(key, out));
+		assertArrayEquals(new float[] { 1.5f, 0, 4 }, out, 0);
+
+		// once the flag is cleared, the normals start over rather than adding to the old ones
+		store.clearFlags(TerrainVertexStore.HAS_NORMALS);
+		assertFalse(store.getNormals(key, out));
+		store.addNormals(key, new float[] { 0, 1, 0 });
+		assertTrue(store.getNormals(key, out));
+		assertArrayEquals(new float[] { 0, 1, 0 }, out, 0);
+	}
+}
@@ -0,0 +1,126 @@
+package rs117.hd.scene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TextureCacheTest
+{
+	private static ByteBuffer createLayer(int seed)
+	{
+		ByteBuffer layer = ByteBuffer.allocateDirect(TextureCache.LAYER_SIZE);
+		for (int i = 0; i < TextureCache.levelSize(0); i++)
+		{
+			layer.put((byte) (i * 31 + seed));
+		}
+		TextureCache.generateMips(layer);
+		layer.clear();
+		return layer;
+	}
+
+	@Test
+	public void testMipsOfASolidColorKeepTheColor()
+	{
+		ByteBuffer layer = ByteBuffer.allocateDirect(TextureCache.LAYER_SIZE);
+		for (int i = 0; i < TextureCache.TEXTURE_SIZE * TextureCache.TEXTURE_SIZE; i++)
+		{
+			layer.put((byte) 200).put((byte) 100).put((byte) 10).put((byte) 255);
+		}
+		TextureCache.generateMips(layer);
+
+		for (int level = 0; level < TextureCache.MIP_LEVELS; level++)
+		{
+			int offset = TextureCache.levelOffset(level);
+			for (int i = 0; i < TextureCache.levelSize(level); i += 4)
+			{
+				assertEquals(200, layer.get(offset + i) & 0xff);
+				assertEquals(100, layer.get(offset + i + 1) & 0xff);
+				assertEquals(10, layer.get(offset + i + 2) & 0xff);
+				assertEquals(255, layer.get(offset + i + 3) & 0xff);
+			}
+		}
+	}
+
+	@Test
+	public void testMipsAverageInLinearSpace()
+	{
+		// a checkerboard of black and white should average to a mid gray in linear space, which is brighter than 128
+		ByteBuffer layer = ByteBuffer.allocateDirect(TextureCache.LAYER_SIZE);
+		for (int y = 0; y < TextureCache.TEXTURE_SIZE; y++)
+		{
+			for (int x = 0; x < TextureCache.TEXTURE_SIZE; x++)
+			{
+				byte c = (byte) ((x + y) % 2 == 0 ? 255 : 0);
+				layer.put(c).put(c).put(c).put((byte) 255);
+			}
+		}
+		TextureCache.generateMips(layer);
+
+		int gray = layer.get(TextureCache.levelOffset(1)) & 0xff;
+		assertTrue("gray is " + gray, gray >= 186 && gray <= 189);
+		assertEquals(TextureCache.LAYER_SIZE - 4, TextureCache.levelOffset(TextureCache.MIP_LEVELS - 1));
+	}
+
+	@Test
+	public void testWriteAndLoad() throws IOException
+	{
+		File file = File.createTempFile("hd-textures", ".cache");
+		try
+		{
+			Map<Integer, ByteBuffer> layers = new HashMap<>();
+			layers.put(3, createLayer(3));
+			layers.put(117, createLayer(117));
+			TextureCache.write(file, 1234, layers);
+
+			assertEquals(null, TextureCache.load(file, 4321));
+			Map<Integer, ByteBuffer> loaded = TextureCache.load(file, 1234);
+			assertEquals(layers.keySet(), loaded.keySet());
+			for (int textureId : layers.keySet())
+			{
+				assertEquals(layers.get(textureId), loaded.get(textureId));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testStaleCacheIsReplaced() throws IOException
+	{
+		File file = File.createTempFile("hd-textures", ".cache");
+		try
+		{
+			Map<Integer, ByteBuffer> stale = new HashMap<>();
+			stale.put(3, createLayer(3));
+			TextureCache.write(file, 1234, stale);
+			assertNull(TextureCache.load(file, 4321));
+
+			// rebuilding in place after a miss has to be able to replace the stale file
+			Map<Integer, ByteBuffer> layers = new HashMap<>();
+			layers.put(5, createLayer(5));
+			layers.put(117, createLayer(117));
+			TextureCache.write(file, 4321, layers);
+
+			assertNull(TextureCache.load(file, 1234));
+			Map<Integer, ByteBuffer> loaded = TextureCache.load(file, 4321);
+			assertEquals(layers.keySet(), loaded.keySet());
+			for (int textureId : layers.keySet())
+			{
+				assertEquals(layers.get(textureId), loaded.get(textureId));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
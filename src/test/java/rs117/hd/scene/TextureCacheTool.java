@@ -0,0 +1,93 @@
+package rs117.hd.scene;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import joptsimple.ArgumentAcceptingOptionSpec;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+/**
+ * Builds or verifies the HD texture cache from the PNGs in the source tree, without needing a GPU.
+ */
+public class TextureCacheTool
+{
+	private static final int HD_TEXTURE_COUNT = 300;
+
+	public static void main(String[] args) throws IOException
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		OptionParser parser = new OptionParser();
+		ArgumentAcceptingOptionSpec<String> texturesOption = parser.accepts("textures",
+				"Path to the directory containing the HD texture PNGs")
+			.withRequiredArg()
+			.defaultsTo(Paths.get("src/main/resources/rs117/hd/textures").toString());
+		ArgumentAcceptingOptionSpec<String> cacheOption = parser.accepts("cache",
+				"Path to the texture cache to write or verify")
+			.withRequiredArg()
+			.defaultsTo(TextureCache.CACHE_FILE.toString());
+		OptionSpec<?> verifyOption = parser.accepts("verify",
+			"Check that the texture cache is up to date and matches freshly decoded textures, instead of writing it");
+
+		OptionSet options = parser.parse(args);
+		Path texturesPath = Paths.get(options.valueOf(texturesOption));
+		File cacheFile = new File(options.valueOf(cacheOption));
+
+		byte[][] pngs = new byte[HD_TEXTURE_COUNT][];
+		Map<Integer, ByteBuffer> layers = new LinkedHashMap<>();
+		for (int textureId = 0; textureId < HD_TEXTURE_COUNT; textureId++)
+		{
+			Path png = texturesPath.resolve(textureId + ".png");
+			if (Files.exists(png))
+			{
+				pngs[textureId] = Files.readAllBytes(png);
+				layers.put(textureId, TextureCache.decode(pngs[textureId]));
+			}
+		}
+		long checksum = TextureCache.checksum(pngs);
+		System.out.println("Decoded " + layers.size() + " textures from " + texturesPath.toAbsolutePath());
+
+		if (!options.has(verifyOption))
+		{
+			TextureCache.write(cacheFile, checksum, layers);
+			System.out.println("Wrote texture cache: " + cacheFile.getAbsolutePath());
+			return;
+		}
+
+		Map<Integer, ByteBuffer> cachedLayers = TextureCache.load(cacheFile, checksum);
+		if (cachedLayers == null)
+		{
+			System.err.println("Texture cache is missing or out of date: " + cacheFile.getAbsolutePath());
+			System.exit(1);
+		}
+
+		int mismatches = 0;
+		if (!cachedLayers.keySet().equals(layers.keySet()))
+		{
+			System.err.println("Cached textures " + cachedLayers.keySet() + " don't match " + layers.keySet());
+			mismatches++;
+		}
+		for (Map.Entry<Integer, ByteBuffer> entry : layers.entrySet())
+		{
+			ByteBuffer cached = cachedLayers.get(entry.getKey());
+			if (cached != null && !cached.equals(entry.getValue()))
+			{
+				System.err.println("Cached texture " + entry.getKey() + " differs from the decoded texture");
+				mismatches++;
+			}
+		}
+
+		if (mismatches > 0)
+		{
+			System.exit(1);
+		}
+		System.out.println("Texture cache is up to date: " + cacheFile.getAbsolutePath());
+	}
+}
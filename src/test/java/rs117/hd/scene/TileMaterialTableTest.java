@@ -0,0 +1,170 @@
+package rs117.hd.scene;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.Point;
+import net.runelite.api.Scene;
+import net.runelite.api.Tile;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Before;
+import org.junit.Test;
+import rs117.hd.HdPlugin;
+import rs117.hd.data.materials.Overlay;
+import rs117.hd.data.materials.Underlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TileMaterialTableTest
+{
+	// overlay 10 is a gravel path throughout Lumbridge, except on the bridge
+	private static final int PATH_OVERLAY = 10;
+	private static final WorldPoint BRIDGE = new WorldPoint(3245, 3226, 0);
+	private static final WorldPoint PATH = new WorldPoint(3150, 3200, 0);
+	private static final int UNKNOWN_UNDERLAY = 123;
+
+	private final Tile[][][] tiles = new Tile[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	private final byte[][][] overlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	private final byte[][][] underlayIds = new byte[Constants.MAX_Z][Constants.SCENE_SIZE][Constants.SCENE_SIZE];
+	private Scene scene;
+	private TileMaterialTable table;
+
+	/**
+	 * Creates an instance of the interface which answers the given methods, calling suppliers on each call,
+	 * and returns null or zero for everything else.
+	 */
+	private static <T> T stub(Class<T> type, Object... answers)
+	{
+		Map<String, Object> values = new HashMap<>();
+		for (int i = 0; i < answers.length; i += 2)
+		{
+			values.put((String) answers[i], answers[i + 1]);
+		}
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (self, method, args) ->
+		{
+			Object value = values.get(method.getName());
+			if (value instanceof Supplier)
+			{
+				return ((Supplier<?>) value).get();
+			}
+			Class<?> returnType = method.getReturnType();
+			if (value == null && returnType.isPrimitive() && returnType != void.class)
+			{
+				return returnType == boolean.class ? (Object) false : (Object) 0;
+			}
+			return value;
+		}));
+	}
+
+	private static Tile tile(int x, int y, int renderLevel, Supplier<WorldPoint> worldLocation, Object... answers)
+	{
+		Object[] all = new Object[answers.length + 6];
+		System.arraycopy(answers, 0, all, 0, answers.length);
+		all[answers.length] = "getSceneLocation";
+		all[answers.length + 1] = new Point(x, y);
+		all[answers.length + 2] = "getRenderLevel";
+		all[answers.length + 3] = renderLevel;
+		all[answers.length + 4] = "getWorldLocation";
+		all[answers.length + 5] = worldLocation;
+		return stub(Tile.class, all);
+	}
+
+	private static void inject(Object target, Object... dependencies) throws ReflectiveOperationException
+	{
+		for (Field field : target.getClass().getDeclaredFields())
+		{
+			for (Object dependency : dependencies)
+			{
+				if (field.getType().isInstance(dependency))
+				{
+					field.setAccessible(true);
+					field.set(target, dependency);
+				}
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws ReflectiveOperationException
+	{
+		Client client = stub(Client.class, "isInInstancedRegion", false);
+		scene = stub(Scene.class, "getTiles", tiles, "getOverlayIds", overlayIds, "getUnderlayIds", underlayIds);
+
+		HdPlugin hdPlugin = new HdPlugin();
+		hdPlugin.configWinterTheme = false;
+		table = new TileMaterialTable();
+		ProceduralGenerator proceduralGenerator = new ProceduralGenerator();
+		inject(proceduralGenerator, client, hdPlugin, table);
+		inject(table, client, proceduralGenerator);
+	}
+
+	@Test
+	public void testTilesAreLookedUpOnEveryPlane()
+	{
+		Tile bridgeTile = tile(5, 6, 0, () -> BRIDGE);
+		Tile pathTile = tile(7, 8, 1, () -> PATH);
+		// the bridge is stored on the plane above, and its own plane below
+		Tile bridgedTile = tile(5, 6, 1, () -> BRIDGE, "getBridge", bridgeTile);
+		tiles[1][5][6] = bridgedTile;
+		tiles[2][7][8] = pathTile;
+		overlayIds[0][5][6] = PATH_OVERLAY;
+		overlayIds[1][7][8] = PATH_OVERLAY;
+		underlayIds[1][7][8] = UNKNOWN_UNDERLAY;
+		table.build(scene);
+
+		assertSame(Overlay.LUM_BRIDGE, table.getOverlay(PATH_OVERLAY, bridgeTile));
+		assertSame(Overlay.LUM_BRIDGE, table.getSeasonalOverlay(PATH_OVERLAY, bridgeTile));
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getOverlay(PATH_OVERLAY, pathTile));
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getSeasonalOverlay(PATH_OVERLAY, pathTile));
+		assertSame(Underlay.NONE, table.getUnderlay(UNKNOWN_UNDERLAY, pathTile));
+		assertSame(Underlay.NONE, table.getSeasonalUnderlay(UNKNOWN_UNDERLAY, pathTile));
+		assertEquals(Underlay.getUnderlay(0, BRIDGE.getX(), BRIDGE.getY(), BRIDGE.getPlane()),
+			table.getUnderlay(0, bridgedTile));
+	}
+
+	@Test
+	public void testOtherIdsReuseTheCachedPosition()
+	{
+		WorldPoint[] location = { BRIDGE };
+		Tile tile = tile(5, 6, 0, () -> location[0]);
+		tiles[0][5][6] = tile;
+		overlayIds[0][5][6] = 56;
+		table.build(scene);
+
+		// the table doesn't ask the tile for its position again, so a tile which moved still resolves where it was
+		location[0] = PATH;
+		assertSame(Overlay.LUM_BRIDGE, table.getOverlay(PATH_OVERLAY, tile));
+		assertSame(Overlay.LUM_BRIDGE, table.getSeasonalOverlay(PATH_OVERLAY, tile));
+	}
+
+	@Test
+	public void testTilesOutsideTheTableFallBack()
+	{
+		WorldPoint[] location = { BRIDGE };
+		Tile tile = tile(5, 6, 0, () -> location[0]);
+		tiles[0][5][6] = tile;
+		overlayIds[0][5][6] = PATH_OVERLAY;
+		table.build(scene);
+
+		// a different tile at the same position resolves from its own position
+		Tile other = tile(5, 6, 0, () -> PATH);
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getOverlay(PATH_OVERLAY, other));
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getSeasonalOverlay(PATH_OVERLAY, other));
+
+		// as do tiles outside the scene
+		Tile outside = tile(-1, Constants.SCENE_SIZE, 0, () -> PATH);
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getOverlay(PATH_OVERLAY, outside));
+		assertSame(Underlay.NONE, table.getUnderlay(UNKNOWN_UNDERLAY, outside));
+
+		location[0] = PATH;
+		assertSame(Overlay.LUM_BRIDGE, table.getOverlay(PATH_OVERLAY, tile));
+		table.clear();
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getOverlay(PATH_OVERLAY, tile));
+		assertSame(Overlay.LUMBRIDGE_PATHS, table.getSeasonalOverlay(PATH_OVERLAY, tile));
+	}
+}
@@ -0,0 +1,117 @@
+package rs117.hd.scene.lighting;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LightBundleTest
+{
+	private final ArrayList<SceneLight> worldLights = new ArrayList<>();
+	private final ListMultimap<Integer, Light> npcLights = ArrayListMultimap.create();
+	private final ListMultimap<Integer, Light> objectLights = ArrayListMultimap.create();
+	private final ListMultimap<Integer, Light> projectileLights = ArrayListMultimap.create();
+	private LightBundle bundle;
+
+	private static InputStream openLights()
+	{
+		return Thread.currentThread().getContextClassLoader().getResourceAsStream("lighting/lights.json");
+	}
+
+	@Before
+	public void setup()
+	{
+		LightConfig.load(openLights(), worldLights, npcLights, objectLights, projectileLights);
+		bundle = new LightBundle(ByteBuffer.wrap(LightBundle.write(LightConfig.loadRawLights(openLights()))));
+	}
+
+	private static void assertLightEquals(Light expected, Light actual)
+	{
+		assertEquals(expected.description, actual.description);
+		assertEquals(expected.worldX, actual.worldX);
+		assertEquals(expected.worldY, actual.worldY);
+		assertEquals(expected.plane, actual.plane);
+		assertEquals(expected.height, actual.height);
+		assertEquals(expected.alignment, actual.alignment);
+		assertEquals(expected.radius, actual.radius);
+		assertEquals(expected.strength, actual.strength, 0);
+		assertTrue(expected.description, Arrays.equals(expected.color, actual.color));
+		assertEquals(expected.type, actual.type);
+		assertEquals(expected.duration, actual.duration, 0);
+		assertEquals(expected.range, actual.range, 0);
+		assertEquals(expected.fadeInDuration, actual.fadeInDuration);
+	}
+
+	private static void assertLightsEqual(ListMultimap<Integer, Light> expected, List<Light> actual, int id)
+	{
+		assertEquals("light count for ID " + id, expected.get(id).size(), actual.size());
+		for (int i = 0; i < actual.size(); i++)
+		{
+			assertLightEquals(expected.get(id).get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void testIdLookupsMatchTheJson()
+	{
+		for (int id : npcLights.keySet())
+		{
+			assertLightsEqual(npcLights, bundle.getNpcLights(id), id);
+		}
+		for (int id : objectLights.keySet())
+		{
+			assertTrue(bundle.hasObjectLights(id));
+			assertLightsEqual(objectLights, bundle.getObjectLights(id), id);
+		}
+		for (int id : projectileLights.keySet())
+		{
+			assertLightsEqual(projectileLights, bundle.getProjectileLights(id), id);
+		}
+
+		assertTrue(bundle.getNpcLights(-1).isEmpty());
+		assertTrue(!bundle.hasObjectLights(Integer.MAX_VALUE));
+		assertTrue(bundle.getProjectileLights(Integer.MAX_VALUE).isEmpty());
+	}
+
+	@Test
+	public void testWorldLightsMatchABruteForceSearch()
+	{
+		// scene-sized areas, some of which cross region boundaries
+		int[][] areas = {
+			{ 3200, 3200, 3302, 3302 },
+			{ 3136, 3392, 3238, 3494 },
+			{ 2560, 3072, 2662, 3174 },
+			{ 0, 0, 16383, 16383 },
+		};
+		for (int[] area : areas)
+		{
+			List<SceneLight> expected = new ArrayList<>();
+			for (SceneLight light : worldLights)
+			{
+				if (light.worldX >= area[0] && light.worldX <= area[2] && light.worldY >= area[1] && light.worldY <= area[3])
+				{
+					expected.add(light);
+				}
+			}
+
+			List<SceneLight> actual = bundle.getWorldLights(area[0], area[1], area[2], area[3]);
+			assertEquals(expected.size(), actual.size());
+			for (SceneLight light : expected)
+			{
+				assertTrue(light.description, actual.stream().anyMatch(l ->
+					l.worldX.equals(light.worldX) && l.worldY.equals(light.worldY) && l.plane.equals(light.plane) &&
+					Objects.equals(l.description, light.description)));
+			}
+		}
+		assertEquals(worldLights.size(), bundle.getWorldLights(0, 0, 16383, 16383).size());
+	}
+}
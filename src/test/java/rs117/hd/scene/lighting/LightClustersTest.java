@@ -0,0 +1,136 @@
+package rs117.hd.scene.lighting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LightClustersTest
+{
+	private static final int VIEWPORT_WIDTH = 765;
+	private static final int VIEWPORT_HEIGHT = 503;
+
+	private static SceneLight createLight(Random random, int cameraX, int cameraY)
+	{
+		SceneLight light = new SceneLight(0, 0, 0, 0, Alignment.CENTER, 300, 1, new float[3], LightType.STATIC, 0, 0, 0);
+		light.x = cameraX + random.nextInt(8000) - 4000;
+		light.y = cameraY + random.nextInt(8000) - 4000;
+		light.z = -random.nextInt(1500);
+		light.currentSize = 100 + random.nextInt(600);
+		return light;
+	}
+
+	private static void setRandomView(LightClusters clusters, Random random, int cameraX, int cameraY)
+	{
+		clusters.setView(cameraX, cameraY, -1000 - random.nextInt(2000), random.nextInt(2048), 128 + random.nextInt(256),
+			300 + random.nextInt(900), VIEWPORT_WIDTH / 2, VIEWPORT_HEIGHT / 2, VIEWPORT_WIDTH, VIEWPORT_HEIGHT, 6000);
+	}
+
+	private static boolean clusterContains(LightClusters clusters, int cluster, SceneLight light)
+	{
+		for (int i = 0; i < clusters.getLightCount(cluster); i++)
+		{
+			if (clusters.getLight(cluster, i) == light)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testPointsInsideLightsFindThemInTheirCluster()
+	{
+		Random random = new Random(117);
+		LightClusters clusters = new LightClusters();
+		for (int view = 0; view < 50; view++)
+		{
+			int cameraX = 6000 + random.nextInt(2000);
+			int cameraY = 6000 + random.nextInt(2000);
+			setRandomView(clusters, random, cameraX, cameraY);
+
+			List<SceneLight> lights = new ArrayList<>();
+			for (int i = 0; i < 500; i++)
+			{
+				lights.add(createLight(random, cameraX, cameraY));
+			}
+			clusters.bin(lights);
+			assertEquals(lights.size(), clusters.getBinnedLightCount());
+			// otherwise some clusters may be missing lights
+			assertTrue(clusters.getIndexCount() < LightClusters.MAX_LIGHT_INDICES);
+
+			for (SceneLight light : lights)
+			{
+				for (int sample = 0; sample < 20; sample++)
+				{
+					// a random point inside of the light's sphere
+					double dx, dy, dz;
+					do
+					{
+						dx = random.nextDouble() * 2 - 1;
+						dy = random.nextDouble() * 2 - 1;
+						dz = random.nextDouble() * 2 - 1;
+					}
+					while (dx * dx + dy * dy + dz * dz > 1);
+
+					int cluster = clusters.getCluster(
+						(float) (light.x + dx * light.currentSize),
+						(float) (light.y + dy * light.currentSize),
+						(float) (light.z + dz * light.currentSize));
+					if (cluster != -1)
+					{
+						assertTrue("light missing from cluster " + cluster, clusterContains(clusters, cluster, light));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testLightsOnlyCoverNearbyClusters()
+	{
+		Random random = new Random(117);
+		LightClusters clusters = new LightClusters();
+		setRandomView(clusters, random, 7000, 7000);
+
+		List<SceneLight> lights = new ArrayList<>();
+		for (int i = 0; i < 500; i++)
+		{
+			SceneLight light = createLight(random, 7000, 7000);
+			light.currentSize = 200;
+			lights.add(light);
+		}
+		clusters.bin(lights);
+
+		// small lights should each only be in a small part of the grid
+		assertTrue(clusters.getIndexCount() < lights.size() * LightClusters.CLUSTER_COUNT / 20);
+		int total = 0;
+		for (int cluster = 0; cluster < LightClusters.CLUSTER_COUNT; cluster++)
+		{
+			total += clusters.getLightCount(cluster);
+		}
+		assertEquals(clusters.getIndexCount(), total);
+	}
+
+	@Test
+	public void testLightsBehindTheCameraAreSkipped()
+	{
+		LightClusters clusters = new LightClusters();
+		// with no yaw or pitch, the camera looks northwards
+		clusters.setView(7000, 7000, -500, 0, 0, 512,
+			VIEWPORT_WIDTH / 2, VIEWPORT_HEIGHT / 2, VIEWPORT_WIDTH, VIEWPORT_HEIGHT, 6000);
+
+		SceneLight behind = createLight(new Random(117), 7000, 7000);
+		behind.x = 7000;
+		behind.y = 7000 - 2000;
+		behind.z = -500;
+		behind.currentSize = 500;
+		List<SceneLight> lights = new ArrayList<>();
+		lights.add(behind);
+		clusters.bin(lights);
+		assertEquals(0, clusters.getIndexCount());
+	}
+}
@@ -0,0 +1,90 @@
+package rs117.hd.scene.lighting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LightSpatialHashTest
+{
+	private static final int SCENE_EXTENT = LightSpatialHash.CELLS_PER_SIDE << LightSpatialHash.CELL_SHIFT;
+
+	private static SceneLight createLight(Random random)
+	{
+		SceneLight light = new SceneLight(0, 0, 0, 0, Alignment.CENTER, 300, 1, new float[3], LightType.STATIC, 0, 0, 0);
+		// some lights, such as projectiles, can be outside of the scene
+		light.x = random.nextInt(SCENE_EXTENT + 4000) - 2000;
+		light.y = random.nextInt(SCENE_EXTENT + 4000) - 2000;
+		light.z = -random.nextInt(2000);
+		return light;
+	}
+
+	private static List<Integer> bruteForceDistances(List<SceneLight> lights, int x, int y, int z, int maxDistance, int maxLights, Predicate<SceneLight> filter)
+	{
+		List<Integer> distances = new ArrayList<>();
+		for (SceneLight light : lights)
+		{
+			long dx = light.x - x;
+			long dy = light.y - y;
+			long dz = light.z - z;
+			int distance = (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			if (distance <= maxDistance && filter.test(light))
+			{
+				distances.add(distance);
+			}
+		}
+		distances.sort(null);
+		return distances.subList(0, Math.min(maxLights, distances.size()));
+	}
+
+	@Test
+	public void testNearestLightsMatchBruteForce()
+	{
+		Random random = new Random(117);
+		LightSpatialHash hash = new LightSpatialHash();
+		List<SceneLight> lights = new ArrayList<>();
+		for (int i = 0; i < 2000; i++)
+		{
+			SceneLight light = createLight(random);
+			lights.add(light);
+			hash.add(light);
+		}
+
+		for (int query = 0; query < 500; query++)
+		{
+			// move some lights around, and remove others
+			for (int i = 0; i < 20; i++)
+			{
+				SceneLight light = lights.get(random.nextInt(lights.size()));
+				light.x += random.nextInt(4001) - 2000;
+				light.y += random.nextInt(4001) - 2000;
+				hash.move(light);
+			}
+			SceneLight removed = lights.remove(random.nextInt(lights.size()));
+			hash.remove(removed);
+
+			int x = random.nextInt(SCENE_EXTENT);
+			int y = random.nextInt(SCENE_EXTENT);
+			int z = -random.nextInt(2000);
+			int maxDistance = 1000 + random.nextInt(8000);
+			int maxLights = 1 + random.nextInt(50);
+			Predicate<SceneLight> filter = light -> (light.x & 1) == 0;
+
+			List<SceneLight> result = new ArrayList<>();
+			hash.findNearest(x, y, z, maxDistance, maxLights, filter, result);
+
+			List<Integer> distances = new ArrayList<>();
+			for (SceneLight light : result)
+			{
+				assertTrue(filter.test(light));
+				assertTrue(lights.contains(light));
+				distances.add(light.distance);
+			}
+			assertEquals(bruteForceDistances(lights, x, y, z, maxDistance, maxLights, filter), distances);
+		}
+	}
+}
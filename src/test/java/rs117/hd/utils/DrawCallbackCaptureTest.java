@@ -0,0 +1,167 @@
+package rs117.hd.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Client;
+import net.runelite.api.Model;
+import net.runelite.api.SceneTilePaint;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rs117.hd.utils.DrawCallbackCapture.Call;
+import rs117.hd.utils.DrawCallbackCapture.CapturedModel;
+import rs117.hd.utils.DrawCallbackCapture.Frame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DrawCallbackCaptureTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Creates an instance of the interface which answers the given methods, and returns null for everything else.
+	 */
+	private static <T> T stub(Class<T> type, Object... answers)
+	{
+		Map<String, Object> values = new HashMap<>();
+		for (int i = 0; i < answers.length; i += 2)
+		{
+			values.put((String) answers[i], answers[i + 1]);
+		}
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (self, method, args) ->
+		{
+			Object value = values.get(method.getName());
+			if (value == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class)
+			{
+				return method.getReturnType() == byte.class ? (Object) (byte) 0 : (Object) 0;
+			}
+			return value;
+		}));
+	}
+
+	private static Model model(int[] colors)
+	{
+		return stub(Model.class,
+			"getFaceCount", 1,
+			"getVerticesCount", 3,
+			"getRadius", 50,
+			"getVerticesX", new int[] { 0, 10, 0 },
+			"getVerticesY", new int[] { 0, 0, 10 },
+			"getVerticesZ", new int[] { 0, 0, 0 },
+			"getFaceIndices1", new int[] { 0 },
+			"getFaceIndices2", new int[] { 1 },
+			"getFaceIndices3", new int[] { 2 },
+			"getFaceColors1", colors,
+			"getFaceColors2", colors,
+			"getFaceColors3", colors,
+			"getFaceTransparencies", new byte[] { 5 });
+	}
+
+	@Test
+	public void testRecordedFramesAreReadBack() throws IOException
+	{
+		File file = folder.newFile("test.rlhdcap");
+		Client client = stub(Client.class, "getCameraX2", 1234, "get3dZoom", 512);
+		SceneTilePaint paint = stub(SceneTilePaint.class, "getBufferOffset", 600, "getUvBufferOffset", -1, "getBufferLen", 13);
+		Model red = model(new int[] { 100 });
+		Model green = model(new int[] { 200 });
+
+		DrawCallbackRecorder recorder = new DrawCallbackRecorder();
+		// nothing is recorded before the first frame after starting
+		recorder.draw(red, false, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		recorder.start(file);
+		for (int frame = 0; frame < 2; frame++)
+		{
+			recorder.drawScene(client, 1, 2, 3, 256, 1024, 0);
+			recorder.drawScenePaint(0, 1, 2, 3, 4, 5, 6, 7, paint, 0, 10, 11, 512, 382, 251);
+			recorder.draw(red, false, 512, 1, 2, 3, 4, 100, 200, 300, 42L);
+			recorder.draw(frame == 0 ? red : green, false, 0, 1, 2, 3, 4, 0, 0, 0, 43L);
+			recorder.postDrawScene();
+		}
+		// a frame cut short by stopping is dropped
+		recorder.drawScene(client, 1, 2, 3, 256, 1024, 0);
+		recorder.shutDown();
+
+		DrawCallbackCapture capture = DrawCallbackCapture.read(file);
+		assertEquals(2, capture.frames.size());
+		// identical models are only stored once
+		assertEquals(2, capture.models.size());
+
+		Frame frame = capture.frames.get(1);
+		assertEquals(256, frame.cameraPitch);
+		assertEquals(1024, frame.cameraYaw);
+		assertEquals(1234, frame.cameraX2);
+		assertEquals(512, frame.zoom3d);
+		assertEquals(3, frame.calls.size());
+
+		Call paintCall = frame.calls.get(0);
+		assertEquals(Call.SCENE_PAINT, paintCall.type);
+		assertEquals(11, paintCall.tileY);
+		assertEquals(600, paintCall.bufferOffset);
+		assertEquals(13, paintCall.bufferLength);
+
+		Call modelCall = frame.calls.get(1);
+		assertEquals(Call.MODEL, modelCall.type);
+		assertEquals(512, modelCall.orientation);
+		assertEquals(300, modelCall.z);
+		assertEquals(42L, modelCall.hash);
+		assertEquals(0, modelCall.model);
+		assertEquals(1, frame.calls.get(2).model);
+
+		CapturedModel model = capture.models.get(1);
+		assertFalse(model.sceneModel);
+		assertEquals(1, model.faceCount);
+		assertEquals(50, model.radius);
+		assertArrayEquals(new int[] { 0, 10, 0 }, model.verticesX);
+		assertArrayEquals(new int[] { 200 }, model.faceColors1);
+		assertArrayEquals(new byte[] { 5 }, model.faceTransparencies);
+		assertNull(model.faceTextures);
+		assertNull(model.vertexNormalsX);
+	}
+
+	@Test
+	public void testSceneModelsAreStoredWithoutGeometry() throws IOException
+	{
+		File file = folder.newFile("scene.rlhdcap");
+		Model model = stub(Model.class, "getFaceCount", 1, "getBufferOffset", 4096, "getVerticesX", new int[3]);
+
+		DrawCallbackRecorder recorder = new DrawCallbackRecorder();
+		recorder.start(file);
+		recorder.drawScene(stub(Client.class), 0, 0, 0, 0, 0, 0);
+		recorder.draw(model, true, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+		recorder.postDrawScene();
+		recorder.shutDown();
+
+		CapturedModel captured = DrawCallbackCapture.read(file).models.get(0);
+		assertTrue(captured.sceneModel);
+		assertEquals(4096, captured.bufferOffset);
+		assertNull(captured.verticesX);
+	}
+
+	@Test
+	public void testStopCancelsAPendingStart() throws IOException
+	{
+		File file = new File(folder.getRoot(), "cancelled.rlhdcap");
+
+		// started and stopped again before a frame was drawn
+		DrawCallbackRecorder recorder = new DrawCallbackRecorder();
+		recorder.start(file);
+		assertTrue(recorder.isRecording());
+		recorder.stop();
+		assertFalse(recorder.isRecording());
+
+		recorder.drawScene(stub(Client.class), 0, 0, 0, 0, 0, 0);
+		recorder.postDrawScene();
+		assertFalse(recorder.isRecording());
+		assertFalse(file.exists());
+		recorder.shutDown();
+	}
+}
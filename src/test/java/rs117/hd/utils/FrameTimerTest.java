@@ -0,0 +1,91 @@
+package rs117.hd.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FrameTimerTest
+{
+	@Test
+	public void testPercentilesSkipUnrecordedFrames()
+	{
+		FrameTimer timer = new FrameTimer();
+		timer.setEnabled(true);
+
+		// the shadow pass is only recorded every other frame, with the 50 samples 1 to 50 ms
+		for (int frame = 0; frame < 100; frame++)
+		{
+			if (frame % 2 == 0)
+			{
+				timer.record(FrameTimer.Section.SHADOW_PASS, frame, (frame / 2 + 1) * 1_000_000L);
+			}
+			timer.endFrame(null);
+		}
+
+		assertArrayEquals(new double[] { 1, 25, 48, 50 },
+			timer.getPercentiles(FrameTimer.Section.SHADOW_PASS, 0, 50, 95, 100), 1e-9);
+		assertNull(timer.getPercentiles(FrameTimer.Section.MAIN_PASS, 50));
+	}
+
+	@Test
+	public void testWindowOnlyKeepsRecentFrames()
+	{
+		FrameTimer timer = new FrameTimer();
+		timer.setEnabled(true);
+
+		for (int frame = 0; frame < FrameTimer.HISTORY_SIZE * 2; frame++)
+		{
+			timer.record(FrameTimer.Section.COMPUTE, frame, frame < FrameTimer.HISTORY_SIZE ? 100_000_000L : 1_000_000L);
+			timer.endFrame(null);
+		}
+
+		assertArrayEquals(new double[] { 1 }, timer.getPercentiles(FrameTimer.Section.COMPUTE, 100), 1e-9);
+
+		// late results for frames which have left the window are dropped
+		timer.record(FrameTimer.Section.COMPUTE, 0, 100_000_000L);
+		assertArrayEquals(new double[] { 1 }, timer.getPercentiles(FrameTimer.Section.COMPUTE, 100), 1e-9);
+	}
+
+	@Test
+	public void testCsvHasOneRowPerCompletedFrame() throws IOException
+	{
+		FrameTimer timer = new FrameTimer();
+		timer.setEnabled(true);
+
+		for (int frame = 0; frame < 3; frame++)
+		{
+			timer.record(FrameTimer.Section.MAIN_PASS, frame, 2_500_000L);
+			timer.endFrame(null);
+		}
+		// a result arriving late is attributed to the frame it was issued in
+		timer.record(FrameTimer.Section.COMPUTE, 1, 500_000L);
+
+		File file = File.createTempFile("frame-timings", ".csv");
+		try
+		{
+			timer.writeCsv(file);
+			List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+			assertEquals(4, lines.size());
+
+			int sections = FrameTimer.Section.values().length;
+			assertEquals(sections + 1, lines.get(0).split(",").length);
+
+			String[] row = lines.get(2).split(",", -1);
+			assertEquals("1", row[0]);
+			assertEquals("", row[FrameTimer.Section.SCENE_UPLOAD.ordinal() + 1]);
+			assertEquals(0.5, Double.parseDouble(row[FrameTimer.Section.COMPUTE.ordinal() + 1]), 1e-9);
+			assertEquals(2.5, Double.parseDouble(row[FrameTimer.Section.MAIN_PASS.ordinal() + 1]), 1e-9);
+		}
+		finally
+		{
+			Files.delete(file.toPath());
+		}
+	}
+}
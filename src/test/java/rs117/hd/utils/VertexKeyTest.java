@@ -0,0 +1,78 @@
+package rs117.hd.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class VertexKeyTest
+{
+	@Test
+	public void testUniqueAcrossSceneGrid()
+	{
+		// random heights in the range the client uses, with the same seed every run
+		Random random = new Random(117);
+		int[][][] tileHeights = new int[Constants.MAX_Z][Constants.SCENE_SIZE + 1][Constants.SCENE_SIZE + 1];
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					tileHeights[z][x][y] = -z * 240 - random.nextInt(2048);
+				}
+			}
+		}
+
+		Map<Long, String> positionsByKey = new HashMap<>();
+		Set<String> positions = new HashSet<>();
+		for (int z = 0; z < Constants.MAX_Z; z++)
+		{
+			for (int x = 0; x <= Constants.SCENE_SIZE; x++)
+			{
+				for (int y = 0; y <= Constants.SCENE_SIZE; y++)
+				{
+					int localX = x * Perspective.LOCAL_TILE_SIZE;
+					int localY = y * Perspective.LOCAL_TILE_SIZE;
+					int height = tileHeights[z][x][y];
+					String position = localX + "," + localY + "," + height;
+					positions.add(position);
+
+					long key = HDUtils.vertexKey(localX, localY, height);
+					String previous = positionsByKey.put(key, position);
+					if (previous != null)
+					{
+						// the same key is only allowed for the exact same position
+						assertEquals(previous, position);
+					}
+				}
+			}
+		}
+
+		assertEquals(positions.size(), positionsByKey.size());
+	}
+
+	@Test
+	public void testComponentsDoNotOverlap()
+	{
+		final int max = (1 << (HDUtils.VERTEX_KEY_COMPONENT_BITS - 1)) - 1;
+		final int min = -(1 << (HDUtils.VERTEX_KEY_COMPONENT_BITS - 1));
+
+		long key = HDUtils.vertexKey(0, 0, 0);
+		assertNotEquals(key, HDUtils.vertexKey(1, 0, 0));
+		assertNotEquals(key, HDUtils.vertexKey(0, 1, 0));
+		assertNotEquals(key, HDUtils.vertexKey(0, 0, 1));
+		assertNotEquals(key, HDUtils.vertexKey(0, 0, -1));
+
+		assertNotEquals(HDUtils.vertexKey(max, min, 0), HDUtils.vertexKey(min, max, 0));
+		assertNotEquals(HDUtils.vertexKey(0, max, min), HDUtils.vertexKey(0, min, max));
+		assertNotEquals(HDUtils.vertexKey(-1, 0, 0), HDUtils.vertexKey(0, -1, -1));
+	}
+}
@@ -0,0 +1,204 @@
+package rs117.hd.utils.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentBufferRingTest
+{
+	/**
+	 * Maps buffers to regular memory, and keeps track of fences and the order they're waited on.
+	 */
+	private static class MockStreamingGL implements StreamingGL
+	{
+		private final Map<Integer, ByteBuffer> buffers = new HashMap<>();
+		private final Set<Long> liveFences = new HashSet<>();
+		private final List<Long> waitedFences = new ArrayList<>();
+		private int nextBuffer = 1;
+		private long nextFence = 1;
+
+		@Override
+		public boolean isBufferStorageSupported()
+		{
+			return true;
+		}
+
+		@Override
+		public int getStorageBufferOffsetAlignment()
+		{
+			return 256;
+		}
+
+		@Override
+		public int createMappedBuffer(long size)
+		{
+			buffers.put(nextBuffer, ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder()));
+			return nextBuffer++;
+		}
+
+		@Override
+		public ByteBuffer getMapping(int buffer)
+		{
+			return buffers.get(buffer);
+		}
+
+		@Override
+		public void deleteMappedBuffer(int buffer)
+		{
+			assertTrue(buffers.remove(buffer) != null);
+		}
+
+		@Override
+		public long fenceSync()
+		{
+			liveFences.add(nextFence);
+			return nextFence++;
+		}
+
+		@Override
+		public boolean clientWaitSync(long sync, long timeoutNanos)
+		{
+			assertTrue(liveFences.contains(sync));
+			waitedFences.add(sync);
+			return true;
+		}
+
+		@Override
+		public void deleteSync(long sync)
+		{
+			assertTrue(liveFences.remove(sync));
+		}
+
+		private int getInt(int buffer, long offset)
+		{
+			return buffers.get(buffer).getInt((int) offset);
+		}
+	}
+
+	@Test
+	public void testWritesGoToTheCurrentRegion()
+	{
+		MockStreamingGL gl = new MockStreamingGL();
+		PersistentBufferRing ring = new PersistentBufferRing(gl);
+		GpuIntBuffer buffer = new GpuIntBuffer();
+		PersistentBufferRing.Stream stream = ring.add(buffer);
+
+		for (int frame = 0; frame < PersistentBufferRing.REGIONS * 2; frame++)
+		{
+			ring.beginFrame();
+			assertTrue(buffer.isWrapping());
+			assertEquals(frame % PersistentBufferRing.REGIONS, ring.getRegion());
+			assertEquals(ring.getRegion() * stream.getRegionSize(), stream.getOffset());
+
+			buffer.ensureCapacity(3).put(frame, frame + 1, frame + 2);
+			buffer.flip();
+			ring.finishWrites();
+			ring.endFrame();
+			buffer.clear();
+
+			assertEquals(frame, gl.getInt(stream.getGlBufferId(), stream.getOffset()));
+			assertEquals(frame + 2, gl.getInt(stream.getGlBufferId(), stream.getOffset() + 8));
+		}
+	}
+
+	@Test
+	public void testRegionsAreReusedOnlyAfterTheirFence()
+	{
+		MockStreamingGL gl = new MockStreamingGL();
+		PersistentBufferRing ring = new PersistentBufferRing(gl);
+		ring.add(new GpuIntBuffer());
+
+		for (int frame = 0; frame < PersistentBufferRing.REGIONS; frame++)
+		{
+			ring.beginFrame();
+			ring.endFrame();
+		}
+		assertTrue(gl.waitedFences.isEmpty());
+		assertEquals(PersistentBufferRing.REGIONS, gl.liveFences.size());
+
+		// wrapping around to the first region waits for the first frame's fence, and only that one
+		ring.beginFrame();
+		assertEquals(1, gl.waitedFences.size());
+		assertEquals(1L, (long) gl.waitedFences.get(0));
+		assertFalse(gl.liveFences.contains(1L));
+
+		// beginning again without ending the frame stays in the same region
+		ring.beginFrame();
+		assertEquals(0, ring.getRegion());
+		assertEquals(1, gl.waitedFences.size());
+	}
+
+	@Test
+	public void testOutgrownBuffersAreRecreated()
+	{
+		MockStreamingGL gl = new MockStreamingGL();
+		PersistentBufferRing ring = new PersistentBufferRing(gl);
+		GpuFloatBuffer buffer = new GpuFloatBuffer();
+		PersistentBufferRing.Stream stream = ring.add(buffer);
+
+		ring.beginFrame();
+		ring.endFrame();
+		ring.beginFrame();
+
+		int oldBufferId = stream.getGlBufferId();
+		int floats = (int) (PersistentBufferRing.INITIAL_REGION_SIZE / Float.BYTES) + 4;
+		for (int i = 0; i < floats; i += 4)
+		{
+			buffer.ensureCapacity(4);
+			buffer.put(i, i + 1, i + 2, i + 3);
+		}
+		assertFalse(buffer.isWrapping());
+
+		buffer.flip();
+		ring.finishWrites();
+
+		// waits for the GPU before deleting the old buffer
+		assertEquals(1, gl.waitedFences.size());
+		assertFalse(gl.buffers.containsKey(oldBufferId));
+		assertEquals(PersistentBufferRing.INITIAL_REGION_SIZE * 2, stream.getRegionSize());
+		assertEquals(1, ring.getRegion());
+
+		ByteBuffer mapping = gl.getMapping(stream.getGlBufferId());
+		assertEquals(PersistentBufferRing.INITIAL_REGION_SIZE * 2 * PersistentBufferRing.REGIONS, mapping.capacity());
+		for (int i = 0; i < floats; i += 1001)
+		{
+			assertEquals(i, (int) mapping.getFloat((int) (stream.getOffset() + i * Float.BYTES)));
+		}
+		ring.endFrame();
+
+		// the next frame writes into the larger region directly
+		buffer.clear();
+		ring.beginFrame();
+		assertTrue(buffer.isWrapping());
+		assertEquals(stream.getRegionSize() / Float.BYTES, buffer.getBuffer().capacity());
+	}
+
+	@Test
+	public void testDestroyReleasesEverything()
+	{
+		MockStreamingGL gl = new MockStreamingGL();
+		PersistentBufferRing ring = new PersistentBufferRing(gl);
+		GpuIntBuffer buffer = new GpuIntBuffer();
+		ring.add(buffer);
+		ring.add(new GpuFloatBuffer());
+
+		ring.beginFrame();
+		ring.endFrame();
+		ring.beginFrame();
+		ring.destroy();
+
+		assertFalse(buffer.isWrapping());
+		assertTrue(gl.buffers.isEmpty());
+		assertTrue(gl.liveFences.isEmpty());
+	}
+}
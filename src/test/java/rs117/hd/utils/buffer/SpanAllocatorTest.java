@@ -0,0 +1,106 @@
+package rs117.hd.utils.buffer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpanAllocatorTest
+{
+	@Test
+	public void testFreedSpansAreMerged()
+	{
+		SpanAllocator allocator = new SpanAllocator();
+		allocator.reset(10, 40);
+
+		int a = allocator.allocate(10);
+		int b = allocator.allocate(10);
+		int c = allocator.allocate(10);
+		assertEquals(10, a);
+		assertEquals(20, b);
+		assertEquals(30, c);
+		assertEquals(-1, allocator.allocate(1));
+
+		allocator.free(a, 10);
+		allocator.free(c, 10);
+		assertEquals(2, allocator.getFreeSpanCount());
+		assertEquals(-1, allocator.allocate(11));
+
+		allocator.free(b, 10);
+		assertEquals(1, allocator.getFreeSpanCount());
+		assertEquals(30, allocator.getFreeLength());
+		assertEquals(10, allocator.allocate(30));
+	}
+
+	@Test
+	public void testMatchesBruteForce()
+	{
+		final int capacity = 1000;
+		Random random = new Random(117);
+		SpanAllocator allocator = new SpanAllocator();
+		allocator.reset(100, capacity);
+
+		// set bits are allocated
+		BitSet used = new BitSet(capacity);
+		used.set(0, 100);
+		List<int[]> spans = new ArrayList<>();
+
+		for (int i = 0; i < 20000; i++)
+		{
+			if (spans.isEmpty() || random.nextBoolean())
+			{
+				int length = 1 + random.nextInt(40);
+				int offset = allocator.allocate(length);
+
+				// first fit is the lowest offset with enough room
+				int expected = -1;
+				for (int start = used.nextClearBit(0); start + length <= capacity; start = used.nextClearBit(start + 1))
+				{
+					int end = used.nextSetBit(start);
+					if (end == -1 || end - start >= length)
+					{
+						expected = start;
+						break;
+					}
+					start = end;
+				}
+				assertEquals(expected, offset);
+
+				if (offset != -1)
+				{
+					assertTrue(used.get(offset, offset + length).isEmpty());
+					used.set(offset, offset + length);
+					spans.add(new int[] { offset, length });
+				}
+			}
+			else
+			{
+				int[] span = spans.remove(random.nextInt(spans.size()));
+				allocator.free(span[0], span[1]);
+				used.clear(span[0], span[0] + span[1]);
+			}
+
+			assertEquals(capacity - used.cardinality(), allocator.getFreeLength());
+		}
+
+		// no two free spans are adjacent
+		int runs = 0;
+		for (int start = used.nextClearBit(0); start < capacity; start = used.nextClearBit(start))
+		{
+			runs++;
+			int end = used.nextSetBit(start);
+			if (end == -1)
+			{
+				break;
+			}
+			start = end;
+		}
+		assertEquals(runs, allocator.getFreeSpanCount());
+		assertFalse(spans.isEmpty());
+	}
+}